@@ -0,0 +1,99 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the pool of pre-generated serial numbers.
+ *
+ * @version $Id$
+ */
+public class SernoPoolTest {
+
+    /** Generates the serial numbers 1, 2, 3, ... */
+    private static class SequentialSernoGenerator implements SernoGenerator {
+        private long next = 1;
+
+        @Override
+        public synchronized BigInteger getSerno() {
+            return BigInteger.valueOf(next++);
+        }
+
+        @Override
+        public int getNoSernoBytes() {
+            return 8;
+        }
+
+        @Override
+        public void setSeed(final long seed) {
+            next = seed;
+        }
+
+        @Override
+        public void setAlgorithm(final String algo) {}
+    }
+
+    @Test
+    public void testUsedSernosAreNotPooled() {
+        final Set<BigInteger> used = new HashSet<>();
+        used.add(BigInteger.valueOf(2));
+        used.add(BigInteger.valueOf(4));
+        final int[] checks = { 0 };
+        final SernoPool.SernoExistenceChecker checker = new SernoPool.SernoExistenceChecker() {
+            @Override
+            public Set<BigInteger> getExistingSernos(final String issuerDN, final Collection<BigInteger> sernos) {
+                assertEquals("CN=Pool CA", issuerDN);
+                checks[0]++;
+                final Set<BigInteger> ret = new HashSet<>(sernos);
+                ret.retainAll(used);
+                return ret;
+            }
+        };
+        final SernoPool sernoPool = new SernoPool("CN=Pool CA", new SequentialSernoGenerator(), 10);
+        // Without a checker nothing is pooled
+        sernoPool.refill(null);
+        assertEquals(0, sernoPool.size());
+        // An empty pool is refilled by the calling thread
+        assertEquals(BigInteger.ONE, sernoPool.getSerno(checker));
+        assertEquals("All candidates should be checked in a single call.", 1, checks[0]);
+        assertEquals("Used serial numbers should not be added.", 7, sernoPool.size());
+        assertEquals(BigInteger.valueOf(3), sernoPool.getSerno(checker));
+        assertEquals(BigInteger.valueOf(5), sernoPool.getSerno(checker));
+        assertEquals("Pool should not be refilled until it is half empty.", 1, checks[0]);
+        assertEquals(5, sernoPool.size());
+        assertEquals(BigInteger.valueOf(6), sernoPool.getSerno(checker));
+        assertEquals(2, checks[0]);
+        assertEquals("Pool should be filled up again.", 9, sernoPool.size());
+    }
+
+    @Test
+    public void testFailedRefill() {
+        final SernoPool.SernoExistenceChecker failingChecker = new SernoPool.SernoExistenceChecker() {
+            @Override
+            public Set<BigInteger> getExistingSernos(final String issuerDN, final Collection<BigInteger> sernos) {
+                throw new IllegalStateException("Database unavailable");
+            }
+        };
+        final SernoPool sernoPool = new SernoPool("CN=Pool CA", new SequentialSernoGenerator(), 10);
+        assertEquals("Serial number should be generated directly when the refill fails.", BigInteger.valueOf(11), sernoPool.getSerno(failingChecker));
+        assertEquals(0, sernoPool.size());
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the cache of parsed certificates by fingerprint.
+ *
+ * @version $Id$
+ */
+public class ParsedCertificateCacheTest {
+
+    private static final String CACHE_SIZE = "database.parsedcertificatecachesize";
+
+    private String defaultConfigurationValue = null;
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @Before
+    public void before() {
+        ParsedCertificateCache.INSTANCE.flush();
+        defaultConfigurationValue = ConfigurationHolder.getString(CACHE_SIZE);
+    }
+
+    @After
+    public void after() {
+        ConfigurationHolder.updateConfiguration(CACHE_SIZE, defaultConfigurationValue);
+        ParsedCertificateCache.INSTANCE.flush();
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        final ParsedCertificateCache cache = ParsedCertificateCache.INSTANCE;
+        ConfigurationHolder.updateConfiguration(CACHE_SIZE, "0");
+        assertFalse(cache.isEnabled());
+        ConfigurationHolder.updateConfiguration(CACHE_SIZE, "2500");
+        assertTrue(cache.isEnabled());
+        final KeyPair keyPair = KeyTools.genKeys("secp256r1", AlgorithmConstants.KEYALGORITHM_EC);
+        final Certificate cert1 = CertTools.genSelfCert("CN=Cert1", 10L, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA, false);
+        final Certificate cert2 = CertTools.genSelfCert("CN=Cert2", 10L, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA, false);
+        final String fingerprint1 = CertTools.getFingerprintAsString(cert1);
+        final String fingerprint2 = CertTools.getFingerprintAsString(cert2);
+        final long misses = cache.getMisses();
+        assertNull(cache.get(fingerprint1));
+        assertEquals(misses + 1, cache.getMisses());
+        // A certificate is not cached by the wrong fingerprint
+        cache.put(fingerprint1, cert2, 1000);
+        assertEquals(0, cache.size());
+        cache.put(fingerprint1, cert1, 1000);
+        final long hits = cache.getHits();
+        assertSame(cert1, cache.get(fingerprint1));
+        assertEquals(hits + 1, cache.getHits());
+        // The least recently used certificate is evicted when the total size is exceeded
+        cache.put(fingerprint2, cert2, 1000);
+        assertEquals(2000, cache.getWeight());
+        final long evictions = cache.getEvictions();
+        ConfigurationHolder.updateConfiguration(CACHE_SIZE, "1500");
+        assertSame(cert1, cache.get(fingerprint1));
+        cache.put(fingerprint2, cert2, 1000);
+        assertEquals(evictions + 1, cache.getEvictions());
+        assertEquals(1, cache.size());
+        assertNull("Least recently used certificate should have been evicted.", cache.get(fingerprint1));
+        assertSame(cert2, cache.get(fingerprint2));
+        // Certificates larger than the cache are not cached at all
+        cache.put(fingerprint1, cert1, 2000);
+        assertNull(cache.get(fingerprint1));
+        cache.flush();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+}
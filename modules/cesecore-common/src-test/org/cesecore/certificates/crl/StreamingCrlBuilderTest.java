@@ -0,0 +1,114 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the memory efficient CRL builder.
+ *
+ * @version $Id$
+ */
+public class StreamingCrlBuilderTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=StreamingCrlBuilderTest,O=Test,C=SE");
+    private static KeyPair keys;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+    }
+
+    /** The CRL should be identical to the one created by BC, since RSA PKCS#1 v1.5 signatures are deterministic */
+    @Test
+    public void testSameAsBouncyCastle() throws Exception {
+        assertSameAsBouncyCastle(0);
+        assertSameAsBouncyCastle(1);
+        assertSameAsBouncyCastle(1000);
+    }
+
+    /** Entries that don't fit in memory are written to a temporary file */
+    @Test
+    public void testLargeCrl() throws Exception {
+        assertSameAsBouncyCastle(150000);
+    }
+
+    private void assertSameAsBouncyCastle(final int numberOfEntries) throws Exception {
+        final Date thisUpdate = new Date();
+        final X509v2CRLBuilder expectedBuilder = createCrlBuilder(thisUpdate);
+        final X509v2CRLBuilder templateBuilder = createCrlBuilder(thisUpdate);
+        try (final StreamingCrlBuilder streamingCrlBuilder = new StreamingCrlBuilder()) {
+            for (int i = 0; i < numberOfEntries; i++) {
+                final BigInteger serialNumber = BigInteger.valueOf(i).shiftLeft(i % 160).add(BigInteger.ONE);
+                // Include dates encoded as GeneralizedTime (after 2049) and all reason codes, including none
+                final Date revocationDate = new Date(thisUpdate.getTime() + (i % 3 == 0 ? 1L : -1L) * i * 1000000000L);
+                final int reason = i % 11;
+                expectedBuilder.addCRLEntry(serialNumber, revocationDate, reason);
+                streamingCrlBuilder.addCRLEntry(serialNumber, revocationDate, reason);
+            }
+            final X509CRLHolder expected = expectedBuilder.build(createSigner());
+            final X509CRLHolder crl = streamingCrlBuilder.build(templateBuilder, createSigner());
+            assertEquals(numberOfEntries, streamingCrlBuilder.getEntryCount());
+            assertArrayEquals("CRL with " + numberOfEntries + " entries differs from the one built by BC.", expected.getEncoded(),
+                    streamingCrlBuilder.getEncoded());
+            assertArrayEquals(expected.getEncoded(), crl.getEncoded());
+            assertTrue("Signature should be valid.", streamingCrlBuilder.isSignatureValid(CertTools.genContentVerifierProvider(keys.getPublic())));
+            final KeyPair otherKeys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+            assertFalse("Signature should not verify with another key.",
+                    streamingCrlBuilder.isSignatureValid(CertTools.genContentVerifierProvider(otherKeys.getPublic())));
+            if (numberOfEntries < 2000) {
+                final X509CRL x509crl = CertTools.getCRLfromByteArray(streamingCrlBuilder.getEncoded());
+                x509crl.verify(keys.getPublic());
+                assertEquals(numberOfEntries, x509crl.getRevokedCertificates() == null ? 0 : x509crl.getRevokedCertificates().size());
+            }
+        }
+    }
+
+    private X509v2CRLBuilder createCrlBuilder(final Date thisUpdate) {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+        crlBuilder.setNextUpdate(new Date(thisUpdate.getTime() + 3600000L));
+        try {
+            crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(4711)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return crlBuilder;
+    }
+
+    private ContentSigner createSigner() throws Exception {
+        return new JcaContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA).setProvider("BC").build(keys.getPrivate());
+    }
+}
@@ -0,0 +1,193 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.ocsp.SHA1DigestCalculator;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.keybind.impl.OcspKeyBinding;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the cache that holds signed OCSP responses.
+ *
+ * @version $Id$
+ */
+public class OcspResponseCacheTest {
+
+    private static final String ISSUER_DN = "CN=OcspResponseCacheTest,O=Test,C=SE";
+    private static final int OCSP_GOOD = 0;
+
+    private static OcspSigningCacheEntry signingCacheEntry;
+    private static OcspSigningCacheEntry renewedSigningCacheEntry;
+    private static X509Certificate caCertificate;
+    private static OCSPResp ocspResponse;
+
+    private String defaultMaxEntries = null;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keys = KeyTools.genKeys("512", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCertificate = CertTools.genSelfCert(ISSUER_DN, 365, null, keys.getPrivate(), keys.getPublic(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        final X509Certificate renewedCaCertificate = CertTools.genSelfCert(ISSUER_DN, 365, null, keys.getPrivate(), keys.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        signingCacheEntry = new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Arrays.asList(caCertificate), null, keys.getPrivate(),
+                "BC", null, OcspKeyBinding.ResponderIdType.KEYHASH);
+        renewedSigningCacheEntry = new OcspSigningCacheEntry(renewedCaCertificate, CertificateStatus.OK, Arrays.asList(renewedCaCertificate), null,
+                keys.getPrivate(), "BC", null, OcspKeyBinding.ResponderIdType.KEYHASH);
+        // The content of the response is not relevant for the cache
+        ocspResponse = new OCSPRespBuilder().build(OCSPRespBuilder.UNAUTHORIZED, null);
+    }
+
+    @Before
+    public void before() {
+        OcspResponseCache.INSTANCE.flush();
+        defaultMaxEntries = ConfigurationHolder.getString(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES);
+    }
+
+    @After
+    public void after() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES, defaultMaxEntries);
+        OcspResponseCache.INSTANCE.flush();
+    }
+
+    @Test
+    public void testLookupAndInvalidation() throws Exception {
+        final CertificateID certId = getCertificateId(1);
+        assertNull("Cache should be empty from start.", OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry));
+        addCachedResponse(certId, 60000L, 30000L);
+        final OcspResponseCache.CachedResponse cachedResponse = OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry);
+        assertNotNull("Response should have been cached.", cachedResponse);
+        assertEquals("Wrong maxAge of cached response.", 30000L, cachedResponse.getMaxAge());
+        assertNull("Response for another serial number should not be cached.",
+                OcspResponseCache.INSTANCE.getCachedResponse(getCertificateId(2), signingCacheEntry));
+        OcspResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.valueOf(2));
+        assertNotNull("Invalidation of another serial number removed the response.", OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry));
+        OcspResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.valueOf(1));
+        assertNull("Response should have been invalidated.", OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry));
+        assertEquals("Invalidated certificate should have been removed from the index.", 0, OcspResponseCache.INSTANCE.getIndexedCertificateCount());
+    }
+
+    @Test
+    public void testInvalidationOfAllHashAlgorithms() throws Exception {
+        final CertificateID sha1CertId = getCertificateId(1);
+        final CertificateID sha256CertId = new JcaCertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256)), caCertificate,
+                BigInteger.valueOf(1));
+        addCachedResponse(sha1CertId, 60000L, 0L);
+        addCachedResponse(sha256CertId, 60000L, 0L);
+        addCachedResponse(getCertificateId(2), 60000L, 0L);
+        assertEquals(3, OcspResponseCache.INSTANCE.size());
+        assertEquals(2, OcspResponseCache.INSTANCE.getIndexedCertificateCount());
+        OcspResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.valueOf(1));
+        assertNull("SHA-1 response should have been invalidated.", OcspResponseCache.INSTANCE.getCachedResponse(sha1CertId, signingCacheEntry));
+        assertNull("SHA-256 response should have been invalidated.", OcspResponseCache.INSTANCE.getCachedResponse(sha256CertId, signingCacheEntry));
+        assertNotNull("Response for another serial number should remain.", OcspResponseCache.INSTANCE.getCachedResponse(getCertificateId(2), signingCacheEntry));
+        assertEquals(1, OcspResponseCache.INSTANCE.getIndexedCertificateCount());
+    }
+
+    @Test
+    public void testRenewedSigner() throws Exception {
+        final CertificateID certId = getCertificateId(1);
+        addCachedResponse(certId, 60000L, 30000L);
+        assertNull("Response signed by another certificate should not be used.", OcspResponseCache.INSTANCE.getCachedResponse(certId, renewedSigningCacheEntry));
+        assertEquals("Response signed by another certificate should have been removed.", 0, OcspResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testNoValidity() throws Exception {
+        final CertificateID certId = getCertificateId(1);
+        addCachedResponse(certId, 0L, 0L);
+        assertNull("Response without nextUpdate and maxAge should not be cached.", OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry));
+        addCachedResponse(certId, 60000L, 0L);
+        assertNotNull("Response with nextUpdate should be cached.", OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry));
+    }
+
+    @Test
+    public void testExpiryAndRefresh() throws Exception {
+        final CertificateID usedCertId = getCertificateId(1);
+        final CertificateID unusedCertId = getCertificateId(2);
+        addCachedResponse(usedCertId, 1000L, 0L);
+        addCachedResponse(unusedCertId, 1000L, 0L);
+        assertNotNull("Response should have been cached.", OcspResponseCache.INSTANCE.getCachedResponse(usedCertId, signingCacheEntry));
+        assertTrue("Nothing should be refreshed right after signing.", OcspResponseCache.INSTANCE.getResponsesToRefresh().isEmpty());
+        Thread.sleep(800);
+        assertEquals("Only the used response should be refreshed.", 1, OcspResponseCache.INSTANCE.getResponsesToRefresh().size());
+        assertEquals("Responses due for refresh should have been removed.", 0, OcspResponseCache.INSTANCE.size());
+        assertEquals("Responses due for refresh should have been removed from the index.", 0, OcspResponseCache.INSTANCE.getIndexedCertificateCount());
+        addCachedResponse(usedCertId, 200L, 0L);
+        Thread.sleep(300);
+        assertNull("Response should have expired.", OcspResponseCache.INSTANCE.getCachedResponse(usedCertId, signingCacheEntry));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES, "10");
+        for (int i = 0; i < 25; i++) {
+            addCachedResponse(getCertificateId(i), 60000L, 0L);
+            assertTrue("Cache grew beyond the configured maximum size.", OcspResponseCache.INSTANCE.size() <= 10);
+        }
+        assertEquals("Evicted responses should have been removed from the index.", OcspResponseCache.INSTANCE.size(),
+                OcspResponseCache.INSTANCE.getIndexedCertificateCount());
+        assertNotNull("Latest response should always be cached.", OcspResponseCache.INSTANCE.getCachedResponse(getCertificateId(24), signingCacheEntry));
+    }
+
+    @Test
+    public void testStatusChangedWhileSigning() throws Exception {
+        final CertificateID certId = getCertificateId(1);
+        final long statusVersion = OcspResponseCache.INSTANCE.getVersion();
+        // The status of the certificate is changed and committed after the responder read the status
+        OcspResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.valueOf(1));
+        OcspResponseCache.INSTANCE.addCachedResponse(certId, signingCacheEntry, ISSUER_DN, new byte[0], ocspResponse, OCSP_GOOD, 60000L, 0L,
+                statusVersion);
+        assertNull("Response with a status read before the invalidation should not be cached.",
+                OcspResponseCache.INSTANCE.getCachedResponse(certId, signingCacheEntry));
+        assertEquals(0, OcspResponseCache.INSTANCE.size());
+        assertEquals(0, OcspResponseCache.INSTANCE.getIndexedCertificateCount());
+    }
+
+    private void addCachedResponse(final CertificateID certId, final long untilNextUpdate, final long maxAge) {
+        OcspResponseCache.INSTANCE.addCachedResponse(certId, signingCacheEntry, ISSUER_DN, new byte[0], ocspResponse, OCSP_GOOD, untilNextUpdate, maxAge,
+                OcspResponseCache.INSTANCE.getVersion());
+    }
+
+    private CertificateID getCertificateId(final long serialNumber) throws Exception {
+        return new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), caCertificate, BigInteger.valueOf(serialNumber));
+    }
+}
@@ -0,0 +1,139 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test of the in-memory revocation status index.
+ *
+ * @version $Id$
+ */
+public class RevocationStatusIndexTest {
+
+    private static final String ISSUER_DN = "CN=RevocationStatusIndexTest,O=Test,C=SE";
+    private static final int PROFILE_ID = 4711;
+    private static final long RELOAD_TIME = 60000L;
+
+    @After
+    public void after() {
+        RevocationStatusIndex.INSTANCE.flush();
+    }
+
+    @Test
+    public void testLoadAndLookup() {
+        final BigInteger largeSerialNumber = new BigInteger("7f0102030405060708090a0b0c0d0e0f10111213", 16);
+        final BigInteger maxLongSerialNumber = new BigInteger("ffffffffffffffff", 16);
+        final RevocationStatusIndex.Loader loader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, RELOAD_TIME);
+        for (int i = 1; i <= 5000; i++) {
+            loader.add(BigInteger.valueOf(i), ok());
+        }
+        loader.add(largeSerialNumber, ok());
+        loader.add(maxLongSerialNumber, ok());
+        loader.add(BigInteger.valueOf(6000), revoked());
+        assertNull("Index should not be used while loading.", RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+        assertTrue(loader.finish());
+        for (int i = 1; i <= 5000; i++) {
+            final CertificateStatus status = RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(i));
+            assertEquals("Wrong status for serial number " + i, CertificateStatus.OK, status);
+            assertEquals("Wrong certificate profile for serial number " + i, PROFILE_ID, status.certificateProfileId);
+        }
+        assertEquals(CertificateStatus.OK, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, largeSerialNumber));
+        assertEquals(CertificateStatus.OK, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, maxLongSerialNumber));
+        final CertificateStatus revokedStatus = RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(6000));
+        assertEquals(CertificateStatus.REVOKED, revokedStatus);
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revokedStatus.revocationReason);
+        assertNull("Unknown serial number should not be answered by the index.", RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(5001)));
+        assertNull("Unknown issuer should not be answered by the index.", RevocationStatusIndex.INSTANCE.getStatus("CN=Other", BigInteger.ONE));
+    }
+
+    @Test
+    public void testUpdates() {
+        final RevocationStatusIndex.Loader loader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, RELOAD_TIME);
+        // Revoked by the certificate store while the old status is being loaded
+        RevocationStatusIndex.INSTANCE.update(ISSUER_DN, BigInteger.ONE, revoked());
+        loader.add(BigInteger.ONE, ok());
+        loader.add(BigInteger.valueOf(2), ok());
+        assertTrue(loader.finish());
+        assertEquals("Update while loading was lost.", CertificateStatus.REVOKED, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+        // Revoke and unrevoke
+        RevocationStatusIndex.INSTANCE.update(ISSUER_DN, BigInteger.valueOf(2), revoked());
+        assertEquals(CertificateStatus.REVOKED, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(2)));
+        RevocationStatusIndex.INSTANCE.update(ISSUER_DN, BigInteger.valueOf(2), ok());
+        assertEquals(CertificateStatus.OK, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(2)));
+        // Status from the database does not replace the status set by the certificate store
+        RevocationStatusIndex.INSTANCE.addIfUnknown(ISSUER_DN, BigInteger.ONE, ok());
+        assertEquals(CertificateStatus.REVOKED, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+        RevocationStatusIndex.INSTANCE.addIfUnknown(ISSUER_DN, BigInteger.valueOf(3), ok());
+        assertEquals(CertificateStatus.OK, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(3)));
+        // Removed limited entry
+        RevocationStatusIndex.INSTANCE.update(ISSUER_DN, BigInteger.valueOf(4), revoked());
+        RevocationStatusIndex.INSTANCE.update(ISSUER_DN, BigInteger.valueOf(4), CertificateStatus.NOT_AVAILABLE);
+        assertNull(RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(4)));
+        RevocationStatusIndex.INSTANCE.flush(ISSUER_DN);
+        assertNull("Flushed issuer should not be answered by the index.", RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        final RevocationStatusIndex.Loader loader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, RELOAD_TIME);
+        loader.add(BigInteger.ONE, ok());
+        assertTrue(loader.finish());
+        assertFalse("Index was just loaded.", RevocationStatusIndex.INSTANCE.isLoadingNeeded(ISSUER_DN, RELOAD_TIME));
+        assertTrue("Index should be reloaded after the reload time.", RevocationStatusIndex.INSTANCE.isLoadingNeeded(ISSUER_DN, 0L));
+        // The old index is used while reloading, and only one load at a time is allowed
+        final RevocationStatusIndex.Loader reloader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, RELOAD_TIME);
+        assertNull("Concurrent loading of the same issuer should not be allowed.", RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, RELOAD_TIME));
+        assertFalse(RevocationStatusIndex.INSTANCE.isLoadingNeeded(ISSUER_DN, 0L));
+        reloader.add(BigInteger.ONE, revoked());
+        RevocationStatusIndex.INSTANCE.update(ISSUER_DN, BigInteger.valueOf(2), revoked());
+        assertEquals(CertificateStatus.OK, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+        assertTrue(reloader.finish());
+        assertEquals("Change made by another node should be picked up by the reload.", CertificateStatus.REVOKED,
+                RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+        assertEquals("Update while reloading was lost.", CertificateStatus.REVOKED, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(2)));
+        // Flushing while loading, e.g. when all certificates of the CA are revoked, discards the loaded data
+        final RevocationStatusIndex.Loader flushedLoader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, RELOAD_TIME);
+        flushedLoader.add(BigInteger.valueOf(3), ok());
+        RevocationStatusIndex.INSTANCE.flush(ISSUER_DN);
+        assertFalse("Loading of a flushed index should not be finished.", flushedLoader.finish());
+        assertNull(RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.valueOf(3)));
+        // An index that has not been reloaded within twice the reload time is not used
+        final RevocationStatusIndex.Loader expiringLoader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, 50L);
+        assertNotNull(expiringLoader);
+        expiringLoader.add(BigInteger.ONE, ok());
+        assertTrue(expiringLoader.finish());
+        Thread.sleep(150L);
+        assertNull("Index that has not been reloaded in time should not be used.", RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+    }
+
+    private CertificateStatus ok() {
+        return new CertificateStatus(CertificateStatus.OK.toString(), -1L, RevokedCertInfo.NOT_REVOKED, PROFILE_ID);
+    }
+
+    private CertificateStatus revoked() {
+        return new CertificateStatus(CertificateStatus.REVOKED.toString(), System.currentTimeMillis(), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+                PROFILE_ID);
+    }
+}
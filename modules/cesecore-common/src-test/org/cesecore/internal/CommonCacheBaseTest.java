@@ -0,0 +1,115 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test of the version based update checks of CommonCacheBase.
+ *
+ * @version $Id$
+ */
+public class CommonCacheBaseTest {
+
+    /** Version source that counts how many times the versions were read */
+    private static class TestVersionSource implements CommonCacheBase.VersionSource {
+        final Map<Integer, Integer> versions = new HashMap<>();
+        int reads = 0;
+
+        @Override
+        public Map<Integer, Integer> getVersions() {
+            reads++;
+            return new HashMap<>(versions);
+        }
+    }
+
+    /** Cache where the time only changes when the test advances it */
+    private static class TestCache extends CommonCacheBase<String> {
+        long cacheTime = 0L;
+        long now = 1000L;
+
+        @Override
+        protected long getCacheTime() {
+            return cacheTime;
+        }
+
+        @Override
+        protected long getMaxCacheLifeTime() {
+            return 0L;
+        }
+
+        @Override
+        protected long getCurrentTime() {
+            return now;
+        }
+    }
+
+    @Test
+    public void testVersionedUpdateCheck() {
+        final TestCache cache = new TestCache();
+        cache.cacheTime = 50L;
+        final TestVersionSource versionSource = new TestVersionSource();
+        assertTrue("Object that is not cached should be read.", cache.shouldCheckForUpdates(1, versionSource));
+        cache.updateWith(1, 123, "one", "object1", 0);
+        cache.updateWith(2, 456, "two", "object2", 0);
+        versionSource.versions.put(1, 0);
+        versionSource.versions.put(2, 0);
+        cache.now += 60;
+        assertFalse("Unchanged object should not be read again.", cache.shouldCheckForUpdates(1, versionSource));
+        assertFalse("Unchanged object should not be read again.", cache.shouldCheckForUpdates(2, versionSource));
+        assertEquals("Versions of all objects should be read at most once per cache time.", 1, versionSource.reads);
+        // Change one of the objects
+        versionSource.versions.put(2, 1);
+        cache.now += 60;
+        assertFalse(cache.shouldCheckForUpdates(1, versionSource));
+        assertTrue("Changed object should be read again.", cache.shouldCheckForUpdates(2, versionSource));
+        cache.updateWith(2, 789, "two", "object2b", 1);
+        assertEquals("object2b", cache.getEntry(2));
+        cache.now += 60;
+        assertFalse(cache.shouldCheckForUpdates(2, versionSource));
+        // Same content with a new version only updates the version
+        versionSource.versions.put(1, 1);
+        cache.now += 60;
+        assertTrue(cache.shouldCheckForUpdates(1, versionSource));
+        cache.updateWith(1, 123, "one", "object1", 1);
+        cache.now += 60;
+        assertFalse(cache.shouldCheckForUpdates(1, versionSource));
+        // Removed objects are read again
+        versionSource.versions.remove(1);
+        cache.now += 60;
+        assertTrue("Removed object should be read again.", cache.shouldCheckForUpdates(1, versionSource));
+    }
+
+    @Test
+    public void testUnversionedAndDisabled() {
+        final TestCache cache = new TestCache();
+        final TestVersionSource versionSource = new TestVersionSource();
+        cache.updateWith(1, 123, "one", "object1");
+        cache.now += 5;
+        assertTrue("Objects cached without version should use the cache time.", cache.shouldCheckForUpdates(1, versionSource));
+        assertEquals(0, versionSource.reads);
+        cache.cacheTime = 60000L;
+        cache.updateWith(2, 456, "two", "object2", 0);
+        assertFalse(cache.shouldCheckForUpdates(2, versionSource));
+        assertEquals("Versions should not be read before the cache time has expired.", 0, versionSource.reads);
+        cache.cacheTime = -1L;
+        assertTrue("Disabled cache should always be read.", cache.shouldCheckForUpdates(2, versionSource));
+    }
+}
@@ -0,0 +1,80 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the pool of pre-generated key pairs.
+ *
+ * @version $Id$
+ */
+public class KeyPairPoolTest {
+
+    /** Pool that is only refilled when the test calls refill */
+    private static class TestKeyPairPool extends KeyPairPool {
+        TestKeyPairPool(final boolean encrypted) {
+            super("secp256r1", AlgorithmConstants.KEYALGORITHM_EC, 3, encrypted);
+        }
+
+        @Override
+        protected void scheduleRefill() {
+        }
+    }
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @Test
+    public void testKeyPairsAreNotReused() throws Exception {
+        for (final boolean encrypted : new boolean[] { false, true }) {
+            final KeyPairPool pool = new TestKeyPairPool(encrypted);
+            pool.refill();
+            assertEquals(3, pool.size());
+            final Set<String> publicKeys = new HashSet<>();
+            for (int i = 0; i < 3; i++) {
+                final KeyPair keyPair = pool.getKeyPair();
+                assertTrue("A key pair should only be handed out once.", publicKeys.add(keyPair.getPublic().toString()));
+                // The private key must still match the public key after encryption in the pool
+                final Signature signer = Signature.getInstance(AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA);
+                signer.initSign(keyPair.getPrivate());
+                signer.update(new byte[] { 1, 2, 3 });
+                final byte[] signature = signer.sign();
+                final Signature verifier = Signature.getInstance(AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA);
+                verifier.initVerify(keyPair.getPublic());
+                verifier.update(new byte[] { 1, 2, 3 });
+                assertTrue(verifier.verify(signature));
+            }
+            assertEquals(0, pool.size());
+            // An empty pool generates key pairs directly
+            final KeyPair keyPair = pool.getKeyPair();
+            assertNotNull(keyPair);
+            assertFalse(publicKeys.contains(keyPair.getPublic().toString()));
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.security.cert.X509Certificate;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -352,6 +353,30 @@ public class RsaKeyValidatorTest {
         log.trace("<test01HasSmallerFactorThan()");
     }
 
+    @Test
+    public void test02HasSmallerFactorThanMatchesTrialDivision() throws Exception {
+        log.trace(">test02HasSmallerFactorThanMatchesTrialDivision()");
+        final Random random = new Random(4711);
+        // Including a bound where the product of the primes is split into several products
+        for (final int factor : new int[] { 3, 5, 11, 753, 5001 }) {
+            for (int i = 0; i < 200; i++) {
+                final BigInteger n = BigInteger.valueOf(random.nextInt(100000) + 1).multiply(BigInteger.valueOf(random.nextInt(6000) + 1));
+                boolean expected = false;
+                for (int j = 2; j <= factor && !expected; j++) {
+                    expected = n.mod(BigInteger.valueOf(j)).signum() == 0;
+                }
+                Assert.assertEquals("Wrong result for " + n + " and factor " + factor, expected, RsaKeyValidator.hasSmallerFactorThan(n, factor));
+            }
+        }
+        // Factors above the bound of the cached products of primes are found with trial division
+        final BigInteger n = BigInteger.valueOf(65537).multiply(BigInteger.valueOf(65539));
+        Assert.assertFalse(RsaKeyValidator.hasSmallerFactorThan(n, 65535));
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(n, 65537));
+        Assert.assertTrue(RsaKeyValidator.hasSmallerFactorThan(n, 100001));
+        Assert.assertFalse(RsaKeyValidator.hasSmallerFactorThan(BigInteger.valueOf(100003).multiply(BigInteger.valueOf(100019)), 100001));
+        log.trace("<test02HasSmallerFactorThanMatchesTrialDivision()");
+    }
+
     @Test
     public void test03RsaParameterValidations() throws Exception {
         log.trace(">test03RsaParameterValidations()");
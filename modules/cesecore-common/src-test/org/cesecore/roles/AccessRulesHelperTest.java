@@ -16,6 +16,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -173,4 +178,55 @@ public class AccessRulesHelperTest {
             log.debug(" " + entry.getKey() + ":" + (entry.getValue().booleanValue()?"allow":"deny"));
         }
     }
+
+    @Test
+    public void testCompiledAccessRules() {
+        log.trace(">testCompiledAccessRules");
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/", Role.STATE_ALLOW);
+        accessRules.put("/ca/", Role.STATE_DENY);
+        accessRules.put("/ca/1/", Role.STATE_ALLOW);
+        accessRules.put("/ra_functionality", Role.STATE_DENY);
+        accessRules.put("/ra_functionality/view_end_entity/", Role.STATE_ALLOW);
+        // Both forms of the same rule, the form without trailing slash wins
+        accessRules.put("/administrator", Role.STATE_DENY);
+        accessRules.put("/administrator/", Role.STATE_ALLOW);
+        final CompiledAccessRules compiledAccessRules = new CompiledAccessRules(accessRules);
+        final String[] resources = { "/", "/ca", "/ca/", "/ca/1", "/ca/1/", "/ca/12", "/ca/1/x/y", "/ca1", "/ra_functionality",
+                "/ra_functionality/view_end_entity", "/ra_functionality/view_end_entity_history", "/ra_functionality/view_end_entity/x/",
+                "/administrator", "/administrator/", "/other/resource", "//", "/ca//1", "no/leading/slash", null };
+        for (final String resource : resources) {
+            assertEquals("Compiled rules gave a different result for " + resource, AccessRulesHelper.hasAccessToResource(accessRules, resource),
+                    AccessRulesHelper.hasAccessToResource(compiledAccessRules, resource));
+        }
+        assertTrue(compiledAccessRules.hasAccessToResource("/ca/1/x"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/ca/12"));
+        assertFalse(compiledAccessRules.hasAccessToResource("/administrator"));
+        // Modifications are reflected in the compiled rules
+        compiledAccessRules.remove("/");
+        assertFalse(compiledAccessRules.hasAccessToResource("/other/resource"));
+        compiledAccessRules.put("/other/", Role.STATE_ALLOW);
+        assertTrue(compiledAccessRules.hasAccessToResource("/other/resource"));
+        log.trace("<testCompiledAccessRules");
+    }
+
+    @Test
+    public void testCompiledAccessRulesSerializedAsHashMap() throws IOException, ClassNotFoundException {
+        log.trace(">testCompiledAccessRulesSerializedAsHashMap");
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/", Role.STATE_ALLOW);
+        accessRules.put("/ca/", Role.STATE_DENY);
+        final CompiledAccessRules compiledAccessRules = new CompiledAccessRules(accessRules);
+        assertTrue(compiledAccessRules.hasAccessToResource("/other"));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(compiledAccessRules);
+        }
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            final Object deserialized = ois.readObject();
+            assertEquals("Compiled access rules should be serialized as a plain HashMap.", HashMap.class, deserialized.getClass());
+            assertEquals(accessRules, deserialized);
+        }
+        log.trace("<testCompiledAccessRulesSerializedAsHashMap");
+    }
 }
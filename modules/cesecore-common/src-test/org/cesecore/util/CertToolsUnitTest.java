@@ -17,6 +17,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -2787,4 +2788,22 @@ public class CertToolsUnitTest {
             log.debug(infoMessage, e);
         }
     }
+
+    @Test
+    public void testCachedDnAndCertificateFields() throws Exception {
+        final String dn = CertTools.stringToBCDNString("C=SE, O=PrimeKey, CN=Cached DN");
+        assertEquals("CN=Cached DN,O=PrimeKey,C=SE", dn);
+        assertSame("Normalized DN should be cached.", dn, CertTools.stringToBCDNString("C=SE, O=PrimeKey, CN=Cached DN"));
+        // Certificates that are not BC objects are re-encoded to get the DN, which should only be done once per certificate
+        final X509Certificate bcCert = CertTools.getCertfromByteArray(testcert, X509Certificate.class);
+        final X509Certificate sunCert = (X509Certificate) java.security.cert.CertificateFactory.getInstance("X.509", "SUN")
+                .generateCertificate(new ByteArrayInputStream(testcert));
+        final String subjectDn = CertTools.getSubjectDN(sunCert);
+        assertEquals(CertTools.getSubjectDN(bcCert), subjectDn);
+        assertSame(subjectDn, CertTools.getSubjectDN(sunCert));
+        assertEquals(CertTools.getIssuerDN(bcCert), CertTools.getIssuerDN(sunCert));
+        final String fingerprint = CertTools.getFingerprintAsString(sunCert);
+        assertEquals(CertTools.getFingerprintAsString(testcert), fingerprint);
+        assertSame(fingerprint, CertTools.getFingerprintAsString(sunCert));
+    }
 }
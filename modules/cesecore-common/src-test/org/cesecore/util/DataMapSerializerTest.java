@@ -0,0 +1,93 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.XMLEncoder;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.cesecore.internal.UpgradeableDataHashMap;
+import org.junit.Test;
+
+/**
+ * Test of the serialization of data maps in the compact and XML formats.
+ *
+ * @version $Id$
+ */
+public class DataMapSerializerTest {
+
+    private static LinkedHashMap<Object, Object> getDataMap() {
+        final LinkedHashMap<Object, Object> dataMap = new Base64PutHashMap();
+        dataMap.put(UpgradeableDataHashMap.VERSION, Float.valueOf(46.0f));
+        dataMap.put("name", "Profile with åäö and a long value " + new String(new char[70000]).replace('\0', 'x'));
+        dataMap.put("null", null);
+        dataMap.put("int", Integer.valueOf(4711));
+        dataMap.put("long", Long.valueOf(Long.MAX_VALUE));
+        dataMap.put("bool", Boolean.TRUE);
+        dataMap.put("double", Double.valueOf(0.5));
+        dataMap.put("date", new Date(1234567890L));
+        dataMap.put("bytes", new byte[] { 1, 2, 3 });
+        dataMap.put("list", new ArrayList<>(Arrays.asList(Integer.valueOf(1), "two", null)));
+        final HashMap<Object, Object> nested = new HashMap<>();
+        nested.put(Integer.valueOf(1), new LinkedHashMap<>());
+        dataMap.put("map", nested);
+        dataMap.put("set", new TreeSet<>(Arrays.asList("b", "a")));
+        return dataMap;
+    }
+
+    @Test
+    public void testCompactRoundTrip() {
+        final LinkedHashMap<Object, Object> dataMap = getDataMap();
+        final String data = DataMapSerializer.encodeCompact(dataMap);
+        assertTrue(DataMapSerializer.isCompact(data));
+        final Map<?, ?> decoded = DataMapSerializer.deserialize(data);
+        assertEquals("Order of the entries should be kept.", new ArrayList<>(dataMap.keySet()), new ArrayList<>(decoded.keySet()));
+        for (final Object key : dataMap.keySet()) {
+            final Object expected = dataMap.get(key);
+            if (expected instanceof byte[]) {
+                assertArrayEquals((byte[]) expected, (byte[]) decoded.get(key));
+            } else {
+                assertEquals("Wrong value for " + key, expected, decoded.get(key));
+                if (expected != null) {
+                    assertEquals("Wrong type for " + key, expected.getClass(), decoded.get(key).getClass());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLegacyXml() {
+        final LinkedHashMap<Object, Object> dataMap = getDataMap();
+        dataMap.remove("bytes");
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final XMLEncoder encoder = new XMLEncoder(baos);
+        encoder.writeObject(dataMap);
+        encoder.close();
+        final String xml = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        assertFalse(DataMapSerializer.isCompact(xml));
+        assertEquals("XML data should still be readable.", dataMap, DataMapSerializer.deserialize(xml));
+        assertTrue("Compact format should be smaller than XML.", DataMapSerializer.encodeCompact(dataMap).length() < xml.length());
+    }
+}
@@ -24,6 +24,7 @@ import org.cesecore.authentication.AuthenticationFailedException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.access.AuthorizationCacheReload;
 import org.cesecore.authorization.access.AuthorizationCacheReloadListener;
+import org.cesecore.roles.CompiledAccessRules;
 import org.cesecore.util.ValidityDate;
 
 /**
@@ -172,10 +173,11 @@ public enum AuthorizationCache {
                 final AuthorizationResult authorizationResult = authorizationCacheCallback.loadAuthorization(authenticationToken);
                 ret.updateNumber = authorizationResult.updateNumber;
                 setUpdateNumberIfLower(ret.updateNumber);
-                ret.accessRules = new HashMap<>();
                 if (authorizationResult.accessRules != null) {
-                    // Cache a copy of the loaded access rules map
-                    ret.accessRules.putAll(authorizationResult.accessRules);
+                    // Cache a copy of the loaded access rules map, compiled for fast lookups
+                    ret.accessRules = new CompiledAccessRules(authorizationResult.accessRules);
+                } else {
+                    ret.accessRules = new CompiledAccessRules(new HashMap<String, Boolean>());
                 }
             } finally {
                 // Ensure that we release any waiting thread
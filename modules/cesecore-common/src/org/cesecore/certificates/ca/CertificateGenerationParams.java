@@ -15,6 +15,7 @@ package org.cesecore.certificates.ca;
 import java.io.Serializable;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.certificates.ca.internal.SernoPool;
 import org.cesecore.certificates.certificatetransparency.CTAuditLogCallback;
 import org.cesecore.certificates.certificatetransparency.CTSubmissionConfigParams;
 import org.cesecore.keys.validation.CertificateValidationDomainService;
@@ -47,6 +48,7 @@ public final class CertificateGenerationParams implements Serializable {
     
     private AuthenticationToken authenticationToken;
     private CertificateValidationDomainService certificateValidationDomainService;
+    private transient SernoPool.SernoExistenceChecker sernoExistenceChecker;
     
     /**
      * Sets CT parameters that are not specific to the certificate profile, for example list of available CT logs.
@@ -104,4 +106,20 @@ public final class CertificateGenerationParams implements Serializable {
     public void setAuthenticationToken(AuthenticationToken authenticationToken) {
         this.authenticationToken = authenticationToken;
     }
+
+    /**
+     * Gets the checker of existing serial numbers, used when a serial number pool is configured.
+     * @return the checker, or null if serial numbers can not be checked.
+     */
+    public SernoPool.SernoExistenceChecker getSernoExistenceChecker() {
+        return sernoExistenceChecker;
+    }
+
+    /**
+     * Sets the checker of existing serial numbers.
+     * @param sernoExistenceChecker the checker.
+     */
+    public void setSernoExistenceChecker(SernoPool.SernoExistenceChecker sernoExistenceChecker) {
+        this.sernoExistenceChecker = sernoExistenceChecker;
+    }
 }
@@ -0,0 +1,142 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca.internal;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of pre-generated certificate serial numbers for one CA.
+ *
+ * There is no background thread. When the pool is half empty, the first issuing thread that notices refills it, so the existence
+ * check runs in the context of the calling session bean. The candidate serial numbers are checked in bulk against the certificates
+ * already issued by the CA, and only unused serial numbers are added to the pool. This replaces one existence check per certificate
+ * with one check per batch, and avoids retries of the whole issuance when a serial number is already used. Other threads are not
+ * blocked by a refill, and while the pool is empty, for example just after startup, the serial number is generated directly instead.
+ *
+ * A serial number from the pool may still have been used by another node in a cluster since it was checked, so the caller
+ * must still handle collisions.
+ *
+ * @version $Id$
+ */
+public class SernoPool {
+
+    private static final Logger log = Logger.getLogger(SernoPool.class);
+
+    /** Checks which serial numbers are already used */
+    public interface SernoExistenceChecker {
+        /**
+         * @param issuerDN the issuer DN of the certificates
+         * @param sernos the serial numbers to check
+         * @return the serial numbers that are already used by a certificate issued by issuerDN
+         */
+        Set<BigInteger> getExistingSernos(String issuerDN, Collection<BigInteger> sernos);
+    }
+
+    /** A registry of instances, one for each issuer and serial number octet size */
+    private static final Map<String, SernoPool> instances = new HashMap<>();
+
+    private final String issuerDN;
+    private final SernoGenerator sernoGenerator;
+    private final int poolSize;
+    private final BlockingQueue<BigInteger> pool = new LinkedBlockingQueue<>();
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    /**
+     * Creates (if needed) a serial number pool and returns the object.
+     *
+     * @param issuerDN the issuer DN of the CA
+     * @param noOctets the serial number octet size of the CA
+     * @param poolSize the number of serial numbers to keep in the pool
+     * @return An instance of the serial number pool.
+     */
+    public static synchronized SernoPool instance(final String issuerDN, final int noOctets, final int poolSize) {
+        final String key = noOctets + ";" + issuerDN;
+        SernoPool instance = instances.get(key);
+        if (instance == null || instance.poolSize != poolSize) {
+            instance = new SernoPool(issuerDN, SernoGeneratorRandom.instance(noOctets), poolSize);
+            instances.put(key, instance);
+        }
+        return instance;
+    }
+
+    /** DO NOT USE: Protected only to do testing of this implementation, use {@link #instance(String, int, int)} instead */
+    protected SernoPool(final String issuerDN, final SernoGenerator sernoGenerator, final int poolSize) {
+        this.issuerDN = issuerDN;
+        this.sernoGenerator = sernoGenerator;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param sernoExistenceChecker used to check the serial numbers if the pool is refilled by the calling thread
+     * @return a serial number from the pool, or a newly generated serial number if the pool is empty
+     */
+    public BigInteger getSerno(final SernoExistenceChecker sernoExistenceChecker) {
+        if (pool.size() <= poolSize / 2 && refilling.compareAndSet(false, true)) {
+            try {
+                refill(sernoExistenceChecker);
+            } catch (RuntimeException e) {
+                // Serial numbers are generated directly until the next successful refill
+                log.warn("Failed to refill serial number pool for '" + issuerDN + "': " + e.getMessage());
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to refill serial number pool.", e);
+                }
+            } finally {
+                refilling.set(false);
+            }
+        }
+        final BigInteger serno = pool.poll();
+        if (serno != null) {
+            return serno;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Serial number pool for '" + issuerDN + "' is empty, generating serial number directly.");
+        }
+        return sernoGenerator.getSerno();
+    }
+
+    /** @return the number of serial numbers in the pool */
+    public int size() {
+        return pool.size();
+    }
+
+    /** Fills the pool with serial numbers that are not used. Protected only for testing. */
+    protected void refill(final SernoExistenceChecker checker) {
+        final int missing = poolSize - pool.size();
+        if (checker == null || missing <= 0) {
+            return;
+        }
+        final Set<BigInteger> candidates = new LinkedHashSet<>();
+        for (int i = 0; i < missing; i++) {
+            candidates.add(sernoGenerator.getSerno());
+        }
+        candidates.removeAll(new HashSet<>(pool));
+        final Set<BigInteger> existing = checker.getExistingSernos(issuerDN, candidates);
+        candidates.removeAll(existing);
+        pool.addAll(candidates);
+        if (log.isDebugEnabled()) {
+            log.debug("Added " + candidates.size() + " serial numbers to the pool for '" + issuerDN + "', discarded " + existing.size()
+                    + " already used serial numbers.");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.security.cert.Certificate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.util.CertTools;
+
+/**
+ * Least recently used cache of parsed certificates by fingerprint, shared by everything that reads certificates from the database.
+ * Configured through CesecoreConfiguration.getParsedCertificateCacheSize(), disabled by default.
+ *
+ * The size of the cache is limited by the total length of the Base64 encoded certificates, so that a few very large certificates
+ * can not use more memory than expected. Certificate objects are immutable, so the same object can be returned to all callers.
+ * A certificate is only added if its fingerprint is the one it is cached by.
+ *
+ * @version $Id$
+ */
+public enum ParsedCertificateCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(ParsedCertificateCache.class);
+
+    private static class Entry {
+        final Certificate certificate;
+        final int weight;
+
+        Entry(final Certificate certificate, final int weight) {
+            this.certificate = certificate;
+            this.weight = weight;
+        }
+    }
+
+    /** Certificates in least recently used order, guarded by synchronization on itself */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalWeight = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** @return true if the cache is enabled */
+    public boolean isEnabled() {
+        return CesecoreConfiguration.getParsedCertificateCacheSize() > 0;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the certificate
+     * @return the cached certificate, or null if it is not cached
+     */
+    public Certificate get(final String fingerprint) {
+        if (fingerprint == null) {
+            return null;
+        }
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(fingerprint);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.certificate;
+    }
+
+    /**
+     * Adds a certificate to the cache and evicts the least recently used certificates if the cache is full.
+     *
+     * @param fingerprint the fingerprint the certificate is looked up by
+     * @param certificate the parsed certificate
+     * @param weight the size of the encoded certificate
+     */
+    public void put(final String fingerprint, final Certificate certificate, final int weight) {
+        final long maxWeight = CesecoreConfiguration.getParsedCertificateCacheSize();
+        if (fingerprint == null || certificate == null || weight > maxWeight) {
+            return;
+        }
+        if (!fingerprint.equals(CertTools.getFingerprintAsString(certificate))) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not caching certificate with fingerprint '" + CertTools.getFingerprintAsString(certificate) + "' as '" + fingerprint + "'.");
+            }
+            return;
+        }
+        synchronized (entries) {
+            final Entry previous = entries.put(fingerprint, new Entry(certificate, weight));
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (totalWeight > maxWeight && iterator.hasNext()) {
+                totalWeight -= iterator.next().weight;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /** Removes all certificates from the cache. */
+    public void flush() {
+        synchronized (entries) {
+            entries.clear();
+            totalWeight = 0;
+        }
+    }
+
+    /** @return the number of lookups that found a cached certificate */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return the number of lookups that did not find a cached certificate */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return the number of certificates removed to make room for other certificates */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** @return the number of cached certificates */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** @return the total size of the cached certificates, as given when they were added */
+    public long getWeight() {
+        synchronized (entries) {
+            return totalWeight;
+        }
+    }
+
+    /** @return the metrics of the cache as a map, e.g. for logging or health checks */
+    public Map<String, Long> getStatistics() {
+        final Map<String, Long> ret = new LinkedHashMap<>();
+        ret.put("hits", getHits());
+        ret.put("misses", getMisses());
+        ret.put("evictions", getEvictions());
+        synchronized (entries) {
+            ret.put("entries", Long.valueOf(entries.size()));
+            ret.put("weight", totalWeight);
+        }
+        return ret;
+    }
+}
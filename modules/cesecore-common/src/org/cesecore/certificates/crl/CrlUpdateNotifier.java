@@ -0,0 +1,48 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of when CRLs were last stored on this node, so caches of CRLs can check if they need to be reloaded without
+ * querying the database on every lookup.
+ *
+ * Only CRLs stored on this node are tracked, so caches must still re-validate their content against the database at intervals.
+ *
+ * @version $Id$
+ */
+public enum CrlUpdateNotifier {
+    INSTANCE;
+
+    private final Map<String, Long> lastUpdateTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Invoked when a CRL or delta CRL (for any partition) has been stored for an issuer.
+     *
+     * @param issuerDn the issuer DN of the CRL, as stored in the database
+     */
+    public void crlUpdated(final String issuerDn) {
+        lastUpdateTimes.put(issuerDn, Long.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * @param issuerDn the issuer DN of the CRL, as stored in the database
+     * @return the time in milliseconds when a CRL was last stored for the issuer on this node, or 0 if none has been stored since startup
+     */
+    public long getLastUpdateTime(final String issuerDn) {
+        final Long lastUpdateTime = lastUpdateTimes.get(issuerDn);
+        return lastUpdateTime == null ? 0L : lastUpdateTime.longValue();
+    }
+}
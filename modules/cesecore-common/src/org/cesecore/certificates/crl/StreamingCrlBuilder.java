@@ -0,0 +1,343 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Enumeration;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.cert.X509CRLHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+/**
+ * Builds CRLs with a very large number of entries using a fraction of the memory needed by {@link X509v2CRLBuilder}.
+ *
+ * Each entry is DER encoded as soon as it is added and only the encoding is kept, in memory for small CRLs and in a temporary
+ * file when the entries grow larger than {@link #SPILL_THRESHOLD} bytes. When the CRL is built, all other fields and the extensions
+ * are taken from an X509v2CRLBuilder without entries, and the to-be-signed part is streamed to the signer. The encoding is the same
+ * as the one produced by X509v2CRLBuilder.addCRLEntry(BigInteger, Date, int) for the same entries.
+ *
+ * The returned X509CRLHolder is parsed lazily, so the list of revoked certificates is not turned into objects unless it is accessed.
+ * Use {@link #isSignatureValid(ContentVerifierProvider)} instead of X509CRLHolder.isSignatureValid for the same reason.
+ *
+ * Instances should be closed after use to remove the temporary file.
+ *
+ * @version $Id$
+ */
+public class StreamingCrlBuilder implements Closeable {
+
+    private static final Logger log = Logger.getLogger(StreamingCrlBuilder.class);
+
+    /** Size in bytes of encoded entries that are kept in memory, before they are written to a temporary file instead */
+    public static final int SPILL_THRESHOLD = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Pre-encoded reason code extensions, shared by all entries with the same reason */
+    private static final ASN1Sequence[] REASON_EXTENSIONS = new ASN1Sequence[11];
+    static {
+        for (int i = 0; i < REASON_EXTENSIONS.length; i++) {
+            REASON_EXTENSIONS[i] = createReasonExtensions(i);
+        }
+    }
+
+    private ByteArrayOutputStream memoryEntries = new ByteArrayOutputStream();
+    private File entriesFile = null;
+    private OutputStream entriesOut = memoryEntries;
+    private long entriesLength = 0;
+    private int entryCount = 0;
+    private byte[] encodedCrl = null;
+    private int tbsOffset;
+    private int tbsLength;
+    private byte[] signature;
+    private AlgorithmIdentifier signatureAlgorithm;
+
+    /**
+     * Add a revoked certificate to the CRL.
+     *
+     * @param userCertificateSerial serial number of the revoked certificate
+     * @param revocationDate date of revocation
+     * @param reason the reason code, as indicated in CRLReason, i.e CRLReason.keyCompromise, or 0 if not to be used
+     * @throws IOException if the entry could not be written to the temporary file
+     */
+    public void addCRLEntry(final BigInteger userCertificateSerial, final Date revocationDate, final int reason) throws IOException {
+        if (encodedCrl != null) {
+            throw new IllegalStateException("CRL has already been built.");
+        }
+        final ASN1EncodableVector v = new ASN1EncodableVector();
+        v.add(new ASN1Integer(userCertificateSerial));
+        v.add(new Time(revocationDate));
+        if (reason != 0) {
+            if (reason < 0) {
+                throw new IllegalArgumentException("invalid reason value: " + reason);
+            }
+            v.add(reason < REASON_EXTENSIONS.length ? REASON_EXTENSIONS[reason] : createReasonExtensions(reason));
+        }
+        final byte[] encodedEntry = new DERSequence(v).getEncoded(ASN1Encoding.DER);
+        if (entriesFile == null && entriesLength + encodedEntry.length > SPILL_THRESHOLD) {
+            spillToFile();
+        }
+        entriesOut.write(encodedEntry);
+        entriesLength += encodedEntry.length;
+        entryCount++;
+    }
+
+    /** @return the number of entries added to the CRL */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Sign the CRL.
+     *
+     * @param crlBuilder builder with issuer, dates and extensions of the CRL, but without any entries
+     * @param signer the signer to use
+     * @return the signed CRL
+     * @throws IOException if the entries could not be read back from the temporary file, or the CRL is too large for a byte array
+     */
+    public X509CRLHolder build(final X509v2CRLBuilder crlBuilder, final ContentSigner signer) throws IOException {
+        entriesOut.flush();
+        signatureAlgorithm = signer.getAlgorithmIdentifier();
+        // Let BC encode everything except the entries, without actually signing anything
+        final X509CRLHolder template = crlBuilder.build(new TemplateSigner(signatureAlgorithm));
+        final ASN1Sequence templateTbs = (ASN1Sequence) template.toASN1Structure().getTBSCertList().toASN1Primitive();
+        if (template.toASN1Structure().getTBSCertList().getRevokedCertificates().length > 0) {
+            throw new IllegalArgumentException("The CRL builder must not contain any entries.");
+        }
+        // Entries go before the optional [0] crlExtensions, after all other fields
+        final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        final ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        for (final Enumeration<?> e = templateTbs.getObjects(); e.hasMoreElements();) {
+            final ASN1Encodable element = (ASN1Encodable) e.nextElement();
+            (element instanceof ASN1TaggedObject ? tail : head).write(element.toASN1Primitive().getEncoded(ASN1Encoding.DER));
+        }
+        final byte[] entriesHeader = entryCount == 0 ? new byte[0] : encodeHeader(entriesLength);
+        final long tbsContentLength = head.size() + entriesHeader.length + (entryCount == 0 ? 0 : entriesLength) + tail.size();
+        final byte[] tbsHeader = encodeHeader(tbsContentLength);
+        // Pass 1: stream the to-be-signed part to the signer
+        final OutputStream signerOut = signer.getOutputStream();
+        writeTbs(signerOut, tbsHeader, head, entriesHeader, tail);
+        signerOut.close();
+        signature = signer.getSignature();
+        // Pass 2: write the complete CRL, now that the length of the signature is known
+        final byte[] encodedAlgorithm = signatureAlgorithm.getEncoded(ASN1Encoding.DER);
+        final byte[] encodedSignature = new DERBitString(signature).getEncoded(ASN1Encoding.DER);
+        final long tbsTotalLength = tbsHeader.length + tbsContentLength;
+        final byte[] crlHeader = encodeHeader(tbsTotalLength + encodedAlgorithm.length + encodedSignature.length);
+        final long crlLength = crlHeader.length + tbsTotalLength + encodedAlgorithm.length + encodedSignature.length;
+        if (crlLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("CRL with " + entryCount + " entries is too large to be encoded (" + crlLength + " bytes).");
+        }
+        final FixedByteArrayOutputStream crlOut = new FixedByteArrayOutputStream((int) crlLength);
+        crlOut.write(crlHeader);
+        tbsOffset = crlHeader.length;
+        tbsLength = (int) tbsTotalLength;
+        writeTbs(crlOut, tbsHeader, head, entriesHeader, tail);
+        crlOut.write(encodedAlgorithm);
+        crlOut.write(encodedSignature);
+        encodedCrl = crlOut.getBuffer();
+        if (log.isDebugEnabled()) {
+            log.debug("Built CRL with " + entryCount + " entries, " + encodedCrl.length + " bytes.");
+        }
+        return new X509CRLHolder(encodedCrl);
+    }
+
+    /**
+     * @return the DER encoding of the CRL, which is the same array as used by the X509CRLHolder returned by build
+     */
+    public byte[] getEncoded() {
+        if (encodedCrl == null) {
+            throw new IllegalStateException("CRL has not been built.");
+        }
+        return encodedCrl;
+    }
+
+    /**
+     * Verify the signature of the built CRL, without parsing the list of revoked certificates.
+     *
+     * @param verifierProvider a provider for a verifier with the public key of the issuer
+     * @return true if the signature is valid
+     * @throws OperatorCreationException if no verifier could be created for the signature algorithm
+     * @throws IOException if the CRL could not be written to the verifier
+     */
+    public boolean isSignatureValid(final ContentVerifierProvider verifierProvider) throws OperatorCreationException, IOException {
+        if (encodedCrl == null) {
+            throw new IllegalStateException("CRL has not been built.");
+        }
+        final ContentVerifier verifier = verifierProvider.get(signatureAlgorithm);
+        final OutputStream verifierOut = verifier.getOutputStream();
+        verifierOut.write(encodedCrl, tbsOffset, tbsLength);
+        verifierOut.close();
+        return verifier.verify(signature);
+    }
+
+    /** Remove the temporary file, if any. */
+    @Override
+    public void close() {
+        try {
+            entriesOut.close();
+        } catch (IOException e) {
+            log.debug("Failed to close CRL entries file: " + e.getMessage());
+        }
+        if (entriesFile != null && !entriesFile.delete()) {
+            log.warn("Failed to remove temporary CRL entries file " + entriesFile.getAbsolutePath());
+        }
+        entriesFile = null;
+        memoryEntries = null;
+    }
+
+    private void spillToFile() throws IOException {
+        entriesFile = File.createTempFile("crlentries", ".der");
+        if (log.isDebugEnabled()) {
+            log.debug("Writing CRL entries to temporary file " + entriesFile.getAbsolutePath() + " after " + entryCount + " entries.");
+        }
+        entriesOut = new BufferedOutputStream(new FileOutputStream(entriesFile), BUFFER_SIZE);
+        memoryEntries.writeTo(entriesOut);
+        memoryEntries = null;
+    }
+
+    private void writeTbs(final OutputStream out, final byte[] tbsHeader, final ByteArrayOutputStream head, final byte[] entriesHeader,
+            final ByteArrayOutputStream tail) throws IOException {
+        out.write(tbsHeader);
+        head.writeTo(out);
+        if (entryCount > 0) {
+            out.write(entriesHeader);
+            if (entriesFile == null) {
+                memoryEntries.writeTo(out);
+            } else {
+                try (final InputStream in = new BufferedInputStream(new FileInputStream(entriesFile), BUFFER_SIZE)) {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        tail.writeTo(out);
+    }
+
+    /** @return the DER tag and length octets of a SEQUENCE with the given content length */
+    private static byte[] encodeHeader(final long length) {
+        if (length < 128) {
+            return new byte[] { 0x30, (byte) length };
+        }
+        int lengthOctets = 0;
+        for (long l = length; l > 0; l >>>= 8) {
+            lengthOctets++;
+        }
+        final byte[] header = new byte[2 + lengthOctets];
+        header[0] = 0x30;
+        header[1] = (byte) (0x80 | lengthOctets);
+        for (int i = 0; i < lengthOctets; i++) {
+            header[2 + i] = (byte) (length >>> (8 * (lengthOctets - 1 - i)));
+        }
+        return header;
+    }
+
+    /** @return the crlEntryExtensions with a reasonCode extension, encoded like V2TBSCertListGenerator does */
+    private static ASN1Sequence createReasonExtensions(final int reason) {
+        try {
+            final ASN1Sequence reasonExtension = new DERSequence(
+                    new ASN1Encodable[] { Extension.reasonCode, new DEROctetString(CRLReason.lookup(reason).getEncoded()) });
+            return new DERSequence(reasonExtension);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("error encoding reason: " + e.getMessage(), e);
+        }
+    }
+
+    /** Signer that only provides the algorithm identifier, used to let X509v2CRLBuilder encode everything except the entries. */
+    private static class TemplateSigner implements ContentSigner {
+        private final AlgorithmIdentifier algorithmIdentifier;
+
+        private TemplateSigner(final AlgorithmIdentifier algorithmIdentifier) {
+            this.algorithmIdentifier = algorithmIdentifier;
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return algorithmIdentifier;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(final int b) {}
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {}
+            };
+        }
+
+        @Override
+        public byte[] getSignature() {
+            return new byte[0];
+        }
+    }
+
+    /** Output stream writing directly into a byte array of the final size, avoiding the copies made by ByteArrayOutputStream. */
+    private static class FixedByteArrayOutputStream extends OutputStream {
+        private final byte[] buffer;
+        private int position = 0;
+
+        private FixedByteArrayOutputStream(final int size) {
+            this.buffer = new byte[size];
+        }
+
+        @Override
+        public void write(final int b) {
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            System.arraycopy(b, off, buffer, position, len);
+            position += len;
+        }
+
+        private byte[] getBuffer() {
+            if (position != buffer.length) {
+                throw new IllegalStateException("Encoded CRL length " + position + " does not match calculated length " + buffer.length + ".");
+            }
+            return buffer;
+        }
+    }
+}
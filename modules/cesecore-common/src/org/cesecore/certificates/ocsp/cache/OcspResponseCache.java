@@ -0,0 +1,315 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Cache of signed OCSP responses for requests that can be answered with an identical response, i.e. requests
+ * with a single CertID and without a nonce or other request extensions (RFC 5019 style clients).
+ *
+ * Entries are keyed by the CertID and are only valid as long as the same signer (see OcspSigningCacheEntry.getSignerId())
+ * is used for the CertID, so a renewed CA or OCSP signing certificate implicitly invalidates the cached responses. An entry
+ * expires when the shortest of untilNextUpdate and maxAge has passed and is removed when the status of the certificate
+ * is changed. The cache keys of each certificate are indexed by issuer DN and serial number, so an invalidation does not
+ * have to scan the cache. Lookups are lock free, while all additions and removals update the cache and the index together.
+ * <p>
+ * Status changes are invalidated after the transaction that made them has been committed. A response that was created
+ * from a status read before the commit could otherwise be added after the invalidation, so every response is added with
+ * the {@link #getVersion()} read before the status lookup, and is not cached if any invalidation happened since then.
+ *
+ * @version $Id$
+ */
+public enum OcspResponseCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspResponseCache.class);
+
+    /** Cache entry holding a signed response and what is needed to re-create it. */
+    public static class CachedResponse {
+        private final String signerId;
+        private final String issuerDn;
+        private final BigInteger serialNumber;
+        private final byte[] request;
+        private final OCSPResp ocspResponse;
+        private final int certStatus;
+        private final long maxAge;
+        private final long expireTime;
+        private final long refreshTime;
+        private volatile boolean used = false;
+
+        private CachedResponse(final String signerId, final String issuerDn, final BigInteger serialNumber,
+                final byte[] request, final OCSPResp ocspResponse, final int certStatus, final long maxAge, final long validity) {
+            this.signerId = signerId;
+            this.issuerDn = issuerDn;
+            this.serialNumber = serialNumber;
+            this.request = request;
+            this.ocspResponse = ocspResponse;
+            this.certStatus = certStatus;
+            this.maxAge = maxAge;
+            final long now = System.currentTimeMillis();
+            this.expireTime = now + validity;
+            // Re-sign when three quarters of the validity has passed, so the background job has time to replace the entry
+            this.refreshTime = now + validity - validity/4;
+        }
+
+        /** @return the encoded OCSP request that the response was created for */
+        public byte[] getRequest() { return request; }
+
+        /** @return the signed OCSP response */
+        public OCSPResp getOcspResponse() { return ocspResponse; }
+
+        /** @return one of the OCSPResponseItem.OCSP_* status values for the CertID in the response */
+        public int getCertStatus() { return certStatus; }
+
+        /** @return the maxAge in milliseconds that was used when the response was created */
+        public long getMaxAge() { return maxAge; }
+
+        private boolean isExpired(final long now) {
+            return expireTime <= now;
+        }
+    }
+
+    private final Map<String, CachedResponse> cache = new ConcurrentHashMap<String, CachedResponse>();
+    /** The cache keys of the responses for each certificate. Guarded by itself, which must also be held when the cache is modified. */
+    private final Map<String, Set<String>> keysByCertificate = new HashMap<String, Set<String>>();
+    /** Incremented by every invalidation */
+    private final AtomicLong version = new AtomicLong();
+
+    /** @return the current version of the cache, to be read before the certificate status of a response is looked up */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Create a cache lookup key from all parts of a CertID, since two requests for the same certificate
+     * using different hash algorithms should get responses with the requested CertID.
+     *
+     * @param certId the CertID of the single request
+     * @return a key that can be used for cache lookup
+     */
+    public String createCacheLookupKey(final CertificateID certId) {
+        return certId.getHashAlgOID().getId() + ";" + Hex.toHexString(certId.getIssuerNameHash()) + ";" +
+                Hex.toHexString(certId.getIssuerKeyHash()) + ";" + certId.getSerialNumber().toString(16);
+    }
+
+    /**
+     * @param certId the CertID of the single request
+     * @param ocspSigningCacheEntry the currently used signing cache entry for the CertID
+     * @return a cached response that is still valid and was signed by the signer of the given entry, or null if a new response has to be created
+     */
+    public CachedResponse getCachedResponse(final CertificateID certId, final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        final String key = createCacheLookupKey(certId);
+        final CachedResponse cachedResponse = cache.get(key);
+        if (cachedResponse == null) {
+            return null;
+        }
+        if (!cachedResponse.signerId.equals(ocspSigningCacheEntry.getSignerId()) || cachedResponse.isExpired(System.currentTimeMillis())) {
+            // The signer has been renewed or the response is too old to be re-used
+            remove(key, cachedResponse);
+            return null;
+        }
+        cachedResponse.used = true;
+        return cachedResponse;
+    }
+
+    /**
+     * Add a signed response to the cache.
+     *
+     * @param certId the CertID of the single request
+     * @param ocspSigningCacheEntry the signing cache entry that was used to sign the response
+     * @param issuerDn the subject DN of the CA that issued the certificate, BC normalized
+     * @param request the encoded OCSP request, used for re-signing the response before it expires
+     * @param ocspResponse the signed response
+     * @param certStatus one of the OCSPResponseItem.OCSP_* status values
+     * @param untilNextUpdate the untilNextUpdate value in milliseconds used for the response, or 0 if nextUpdate was not set
+     * @param maxAge the maxAge value in milliseconds used for the response, or 0 if not set
+     * @param statusVersion the {@link #getVersion()} read before the certificate status was looked up
+     */
+    public void addCachedResponse(final CertificateID certId, final OcspSigningCacheEntry ocspSigningCacheEntry, final String issuerDn,
+            final byte[] request, final OCSPResp ocspResponse, final int certStatus, final long untilNextUpdate, final long maxAge,
+            final long statusVersion) {
+        final long validity;
+        if (untilNextUpdate > 0 && maxAge > 0) {
+            validity = Math.min(untilNextUpdate, maxAge);
+        } else {
+            validity = Math.max(untilNextUpdate, maxAge);
+        }
+        if (validity <= 0) {
+            // Without nextUpdate or maxAge every client expects a freshly produced response
+            return;
+        }
+        final int maxEntries = OcspConfiguration.getResponseCacheMaxEntries();
+        if (cache.size() >= maxEntries) {
+            evict(maxEntries);
+        }
+        final String key = createCacheLookupKey(certId);
+        final CachedResponse cachedResponse = new CachedResponse(ocspSigningCacheEntry.getSignerId(), issuerDn, certId.getSerialNumber(), request,
+                ocspResponse, certStatus, maxAge, validity);
+        put(key, cachedResponse);
+        if (version.get() != statusVersion) {
+            // A status change was committed after the status was read, so the response may be stale. Checked after the put, since an
+            // invalidation running concurrently with the put may have missed the new entry.
+            remove(key, cachedResponse);
+            if (log.isDebugEnabled()) {
+                log.debug("Not caching OCSP response for certificate with serial '" + certId.getSerialNumber().toString(16)
+                        + "', since the cache was invalidated while it was created.");
+            }
+        }
+    }
+
+    /**
+     * Remove all cached responses for a certificate. Invoked when the status of the certificate changes.
+     *
+     * @param issuerDn the issuer DN of the certificate, BC normalized
+     * @param serialNumber the serial number of the certificate
+     */
+    public void invalidate(final String issuerDn, final BigInteger serialNumber) {
+        version.incrementAndGet();
+        if (cache.isEmpty()) {
+            return;
+        }
+        synchronized (keysByCertificate) {
+            final Set<String> keys = keysByCertificate.remove(getCertificateKey(issuerDn, serialNumber));
+            if (keys != null) {
+                for (final String key : keys) {
+                    cache.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove and return all cached responses that are about to expire and have been used since they were signed.
+     * Unused and expired entries are dropped.
+     *
+     * @return responses that the caller should re-create
+     */
+    public List<CachedResponse> getResponsesToRefresh() {
+        final List<CachedResponse> ret = new ArrayList<CachedResponse>();
+        final long now = System.currentTimeMillis();
+        for (final Entry<String, CachedResponse> entry : cache.entrySet()) {
+            final CachedResponse cachedResponse = entry.getValue();
+            if (cachedResponse.isExpired(now)) {
+                remove(entry.getKey(), cachedResponse);
+            } else if (cachedResponse.refreshTime <= now) {
+                if (remove(entry.getKey(), cachedResponse) && cachedResponse.used) {
+                    ret.add(cachedResponse);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** @return the number of cached responses */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Clear cache. */
+    public void flush() {
+        version.incrementAndGet();
+        synchronized (keysByCertificate) {
+            cache.clear();
+            keysByCertificate.clear();
+        }
+    }
+
+    /** @return the number of certificates in the invalidation index. Package private only for testing. */
+    int getIndexedCertificateCount() {
+        synchronized (keysByCertificate) {
+            return keysByCertificate.size();
+        }
+    }
+
+    /** Make room for new entries by first dropping expired entries and then a tenth of the remaining entries. */
+    private void evict(final int maxEntries) {
+        final long now = System.currentTimeMillis();
+        for (final Entry<String, CachedResponse> entry : cache.entrySet()) {
+            if (entry.getValue().isExpired(now)) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (cache.size() >= maxEntries) {
+            int toRemove = cache.size() - maxEntries + Math.max(1, maxEntries/10);
+            if (log.isDebugEnabled()) {
+                log.debug("OCSP response cache is full. Evicting " + toRemove + " entries.");
+            }
+            for (final Iterator<Entry<String, CachedResponse>> iterator = cache.entrySet().iterator(); iterator.hasNext() && toRemove > 0; toRemove--) {
+                final Entry<String, CachedResponse> entry = iterator.next();
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** @return the key of a certificate in the invalidation index */
+    private static String getCertificateKey(final String issuerDn, final BigInteger serialNumber) {
+        return serialNumber.toString(16) + ";" + issuerDn;
+    }
+
+    /** Add or replace a cached response and index its key. */
+    private void put(final String key, final CachedResponse cachedResponse) {
+        synchronized (keysByCertificate) {
+            final CachedResponse previous = cache.put(key, cachedResponse);
+            if (previous != null) {
+                unindex(key, previous);
+            }
+            final String certificateKey = getCertificateKey(cachedResponse.issuerDn, cachedResponse.serialNumber);
+            Set<String> keys = keysByCertificate.get(certificateKey);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                keysByCertificate.put(certificateKey, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /** @return true if the cached response was removed, false if the key is mapped to another response or not cached at all */
+    private boolean remove(final String key, final CachedResponse cachedResponse) {
+        synchronized (keysByCertificate) {
+            if (!cache.remove(key, cachedResponse)) {
+                return false;
+            }
+            unindex(key, cachedResponse);
+            return true;
+        }
+    }
+
+    /** Remove the key of a cached response from the index. The caller must hold the lock of the index. */
+    private void unindex(final String key, final CachedResponse cachedResponse) {
+        final String certificateKey = getCertificateKey(cachedResponse.issuerDn, cachedResponse.serialNumber);
+        final Set<String> keys = keysByCertificate.get(certificateKey);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByCertificate.remove(certificateKey);
+            }
+        }
+    }
+}
@@ -54,6 +54,7 @@ public class OcspSigningCacheEntry {
     private RespID respId;
     private final X509Certificate[] responseCertChain;
     private final boolean signingCertificateForOcspSigning;
+    private final String signerId;
 
     public OcspSigningCacheEntry(X509Certificate issuerCaCertificate, CertificateStatus issuerCaCertificateStatus,
             List<X509Certificate> signingCaCertificateChain, X509Certificate ocspSigningCertificate, PrivateKey privateKey,
@@ -89,6 +90,7 @@ public class OcspSigningCacheEntry {
             signingCertificateForOcspSigning = true;
             signingCertificateIssuerDn = null;
             signingCertificateIssuerDnRaw = null;
+            signerId = null;
         } else {
             // Pre-calculate the Responder ID
             if (OcspKeyBinding.ResponderIdType.NAME.equals(responderIdType)) {
@@ -108,6 +110,7 @@ public class OcspSigningCacheEntry {
             }
             signingCertificateIssuerDn = CertTools.getIssuerDN(signingCertificate);
             signingCertificateIssuerDnRaw = signingCertificate.getIssuerDN().getName();
+            signerId = CertTools.getFingerprintAsString(signingCertificate) + ";" + (ocspKeyBinding == null ? 0 : ocspKeyBinding.getId());
         }
         if (fullCertificateChain==null) {
             responseCertChain = null;
@@ -166,6 +169,9 @@ public class OcspSigningCacheEntry {
      */
     public boolean isUsingSeparateOcspSigningCertificate() { return ocspSigningCertificate != null; }
 
+    /** @return an identifier of the signing certificate and key binding that stays the same when the cache is reloaded, or null for placeholders */
+    public String getSignerId() { return signerId; }
+
     /** @return false when we are using a non-CA signing certificate and the certificate lacks the OCSP signing EKU */
     public boolean isSigningCertificateForOcspSigning() { return signingCertificateForOcspSigning; }
 
@@ -0,0 +1,369 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+
+/**
+ * In-memory index of the status of all certificates issued by a CA, used by the VA to answer "is issuer X serial Y revoked?"
+ * without querying the database.
+ *
+ * For each issuer the revoked certificates are kept with their full status, while the certificates that are not revoked are
+ * only kept as serial number and certificate profile id in a primitive hash table, so a few million certificates only need
+ * some tens of megabytes. The index of an issuer is loaded from the database (see CertificateStoreSessionLocal.loadRevocationStatusIndex)
+ * and is then kept up to date from the certificate store when status changes made on this node have been committed.
+ *
+ * Status changes made by other nodes are only picked up when the index is reloaded, which is done periodically while the old
+ * index keeps serving lookups. An index that has not been reloaded within its maximum age is not used at all, so a failing
+ * reload makes the lookups fall back to the database instead of answering with an old status.
+ *
+ * A lookup returns null when the index can not answer, i.e. for issuers that are not (yet) loaded, for indexes that are too
+ * old and for unknown serial numbers. The caller should then fall back to the database.
+ *
+ * @version $Id$
+ */
+public enum RevocationStatusIndex {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(RevocationStatusIndex.class);
+
+    /** Loading of the index of an issuer, see {@link RevocationStatusIndex#startLoading(String, long)} */
+    public static final class Loader {
+        private final String issuerDn;
+        private final IssuerIndex issuerIndex;
+
+        private Loader(final String issuerDn, final IssuerIndex issuerIndex) {
+            this.issuerDn = issuerDn;
+            this.issuerIndex = issuerIndex;
+        }
+
+        /**
+         * Add a certificate read from the database.
+         *
+         * @param serialNumber the serial number of the certificate
+         * @param status the status of the certificate in the database
+         */
+        public void add(final BigInteger serialNumber, final CertificateStatus status) {
+            issuerIndex.lock.writeLock().lock();
+            try {
+                if (!issuerIndex.updatedWhileLoading.contains(serialNumber)) {
+                    issuerIndex.put(serialNumber, status);
+                }
+            } finally {
+                issuerIndex.lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Make the loaded index available for lookups, replacing the previous index of the issuer.
+         *
+         * @return false if the index of the issuer was flushed while loading, in which case the loaded data is discarded
+         */
+        public boolean finish() {
+            issuerIndex.lock.writeLock().lock();
+            try {
+                issuerIndex.updatedWhileLoading = null;
+            } finally {
+                issuerIndex.lock.writeLock().unlock();
+            }
+            synchronized (INSTANCE) {
+                if (INSTANCE.loading.get(issuerDn) != issuerIndex) {
+                    return false;
+                }
+                // Published before it is removed from the loading indexes, so concurrent updates always reach it
+                INSTANCE.issuers.put(issuerDn, issuerIndex);
+                INSTANCE.loading.remove(issuerDn, issuerIndex);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Revocation status index for '" + issuerDn + "' loaded with " + issuerIndex.size() + " certificates.");
+            }
+            return true;
+        }
+
+        /** Discard the loaded data, e.g. when loading failed. The previous index of the issuer is kept until it is too old. */
+        public void abort() {
+            INSTANCE.loading.remove(issuerDn, issuerIndex);
+        }
+    }
+
+    /** Index of the certificates of a single issuer. All access is guarded by the read-write lock. */
+    private static class IssuerIndex {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        /** Full status of revoked certificates, which takes precedence over the table of known certificates */
+        private final Map<BigInteger, CertificateStatus> revoked = new HashMap<>();
+        /** Known serial numbers that do not fit in a long, mapped to the certificate profile id */
+        private final Map<BigInteger, Integer> largeSerialNumbers = new HashMap<>();
+        /** Open addressing hash table of known serial numbers that fit in 64 bits, with the certificate profile id as value */
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] values = new int[INITIAL_CAPACITY];
+        private boolean[] used = new boolean[INITIAL_CAPACITY];
+        private int size = 0;
+        /** Serial numbers updated by the certificate store while loading, these must not be overwritten by the (older) loaded data */
+        private Set<BigInteger> updatedWhileLoading = new HashSet<>();
+        /** Time when loading of the index started */
+        private final long loadTime;
+        /** Time when the index must not be used anymore */
+        private final long expireTime;
+
+        private IssuerIndex(final long loadTime, final long expireTime) {
+            this.loadTime = loadTime;
+            this.expireTime = expireTime;
+        }
+
+        private CertificateStatus getStatus(final BigInteger serialNumber) {
+            final CertificateStatus revokedStatus = revoked.get(serialNumber);
+            if (revokedStatus != null) {
+                return revokedStatus;
+            }
+            final Integer certificateProfileId;
+            if (fitsInLong(serialNumber)) {
+                final int slot = findSlot(serialNumber.longValue());
+                certificateProfileId = used[slot] ? Integer.valueOf(values[slot]) : null;
+            } else {
+                certificateProfileId = largeSerialNumbers.get(serialNumber);
+            }
+            if (certificateProfileId == null) {
+                return null;
+            }
+            return new CertificateStatus(CertificateStatus.OK.toString(), -1L, RevokedCertInfo.NOT_REVOKED, certificateProfileId.intValue());
+        }
+
+        private void put(final BigInteger serialNumber, final CertificateStatus status) {
+            if (status.equals(CertificateStatus.NOT_AVAILABLE)) {
+                // Only revoked limited entries are removed from the database
+                revoked.remove(serialNumber);
+            } else if (status.equals(CertificateStatus.REVOKED)) {
+                revoked.put(serialNumber, status);
+            } else {
+                revoked.remove(serialNumber);
+                if (fitsInLong(serialNumber)) {
+                    putKnown(serialNumber.longValue(), status.certificateProfileId);
+                } else {
+                    largeSerialNumbers.put(serialNumber, Integer.valueOf(status.certificateProfileId));
+                }
+            }
+        }
+
+        private void putKnown(final long key, final int value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            final int slot = findSlot(key);
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        /** @return the slot holding the key, or the empty slot where it should be inserted */
+        private int findSlot(final long key) {
+            final int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize() {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            final boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    final int slot = findSlot(oldKeys[i]);
+                    used[slot] = true;
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private int size() {
+            return revoked.size() + largeSerialNumbers.size() + size;
+        }
+
+        /** Serial numbers are positive, so all values below 2^64 are stored exactly as the lower 64 bits */
+        private static boolean fitsInLong(final BigInteger serialNumber) {
+            return serialNumber.signum() >= 0 && serialNumber.bitLength() <= 64;
+        }
+    }
+
+    /** Loaded indexes, used for lookups */
+    private final Map<String, IssuerIndex> issuers = new ConcurrentHashMap<>();
+    /** Indexes that are being loaded */
+    private final Map<String, IssuerIndex> loading = new ConcurrentHashMap<>();
+
+    /**
+     * @param issuerDn the subject DN of the CA, BC normalized
+     * @param serialNumber the serial number of the certificate
+     * @return the status of the certificate or null if the index can not answer and the database should be used
+     */
+    public CertificateStatus getStatus(final String issuerDn, final BigInteger serialNumber) {
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        if (issuerIndex == null) {
+            return null;
+        }
+        if (issuerIndex.expireTime <= System.currentTimeMillis()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Revocation status index for '" + issuerDn + "' has not been reloaded in time and is not used.");
+            }
+            return null;
+        }
+        issuerIndex.lock.readLock().lock();
+        try {
+            return issuerIndex.getStatus(serialNumber);
+        } finally {
+            issuerIndex.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Update the status of a certificate, if the issuer is indexed. Invoked by the certificate store when a status change made on this
+     * node has been committed.
+     *
+     * @param issuerDn the subject DN of the CA, BC normalized
+     * @param serialNumber the serial number of the certificate
+     * @param status the new status, where CertificateStatus.NOT_AVAILABLE means that the certificate was removed
+     */
+    public void update(final String issuerDn, final BigInteger serialNumber, final CertificateStatus status) {
+        final IssuerIndex loadingIndex = loading.get(issuerDn);
+        if (loadingIndex != null) {
+            loadingIndex.lock.writeLock().lock();
+            try {
+                if (loadingIndex.updatedWhileLoading != null) {
+                    loadingIndex.updatedWhileLoading.add(serialNumber);
+                }
+                loadingIndex.put(serialNumber, status);
+            } finally {
+                loadingIndex.lock.writeLock().unlock();
+            }
+        }
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        if (issuerIndex != null) {
+            issuerIndex.lock.writeLock().lock();
+            try {
+                issuerIndex.put(serialNumber, status);
+            } finally {
+                issuerIndex.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Add the status of a certificate that was unknown to the index and has been looked up in the database, for example
+     * since it was stored by another node. Unlike {@link #update(String, BigInteger, CertificateStatus)} this never replaces
+     * a status set by the certificate store in the meantime.
+     *
+     * @param issuerDn the subject DN of the CA, BC normalized
+     * @param serialNumber the serial number of the certificate
+     * @param status the status of the certificate in the database
+     */
+    public void addIfUnknown(final String issuerDn, final BigInteger serialNumber, final CertificateStatus status) {
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        if (issuerIndex == null || status.equals(CertificateStatus.NOT_AVAILABLE)) {
+            return;
+        }
+        issuerIndex.lock.writeLock().lock();
+        try {
+            if (issuerIndex.getStatus(serialNumber) == null) {
+                issuerIndex.put(serialNumber, status);
+            }
+        } finally {
+            issuerIndex.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param issuerDn the subject DN of the CA, BC normalized
+     * @param reloadTime the time in milliseconds after which an index should be reloaded
+     * @return true if the index of the issuer is not loaded, or was loaded more than reloadTime ago, and is not being loaded
+     */
+    public boolean isLoadingNeeded(final String issuerDn, final long reloadTime) {
+        if (loading.containsKey(issuerDn)) {
+            return false;
+        }
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        return issuerIndex == null || issuerIndex.loadTime + reloadTime <= System.currentTimeMillis();
+    }
+
+    /**
+     * Start loading the index of an issuer. The current index of the issuer, if any, is used until the loading has finished.
+     * Updates from the certificate store are recorded so they are not overwritten by the loaded data.
+     *
+     * @param issuerDn the subject DN of the CA, BC normalized
+     * @param reloadTime the time in milliseconds after which the index should be reloaded. The index is not used after twice this time.
+     * @return a loader for the index, or null if the index of the issuer is already being loaded
+     */
+    public Loader startLoading(final String issuerDn, final long reloadTime) {
+        final long now = System.currentTimeMillis();
+        final IssuerIndex issuerIndex = new IssuerIndex(now, now + 2*reloadTime);
+        synchronized (this) {
+            if (loading.putIfAbsent(issuerDn, issuerIndex) != null) {
+                return null;
+            }
+        }
+        return new Loader(issuerDn, issuerIndex);
+    }
+
+    /**
+     * @param issuerDn the subject DN of the CA, BC normalized
+     * @return the number of certificates in the index of the issuer
+     */
+    public int size(final String issuerDn) {
+        final IssuerIndex issuerIndex = issuers.get(issuerDn);
+        if (issuerIndex == null) {
+            return 0;
+        }
+        issuerIndex.lock.readLock().lock();
+        try {
+            return issuerIndex.size();
+        } finally {
+            issuerIndex.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the index of an issuer, for example when all certificates of the CA have been revoked. An index that is being loaded is
+     * discarded when the loading finishes.
+     *
+     * @param issuerDn the subject DN of the CA, BC normalized
+     */
+    public synchronized void flush(final String issuerDn) {
+        loading.remove(issuerDn);
+        issuers.remove(issuerDn);
+    }
+
+    /** Clear the index of all issuers. */
+    public synchronized void flush() {
+        loading.clear();
+        issuers.clear();
+    }
+}
@@ -0,0 +1,41 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.exception;
+
+/**
+ * Thrown when an OCSP response can not be signed right now, since the signing queue of the signer is full.
+ * The client should be answered with "tryLater".
+ * 
+ * @version $Id$
+ *
+ */
+public class OcspSigningQueueFullException extends Exception {
+
+    private static final long serialVersionUID = 4655263851203617187L;
+
+    /**
+     * @param msg the detail message
+     */
+    public OcspSigningQueueFullException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * @param msg the detail message
+     * @param t the cause
+     */
+    public OcspSigningQueueFullException(String msg, Throwable t) {
+        super(msg, t);
+    }
+
+}
@@ -96,6 +96,32 @@ public final class CesecoreConfiguration {
         return ConfigurationHolder.getString("ca.rngalgorithm");
     }
 
+    /**
+     * The number of pre-generated certificate serial numbers to keep for each CA, or 0 to generate each serial number when it is used.
+     */
+    public static int getCaSerialNumberPoolSize() {
+        return (int) getLongValue("ca.serialnumberpoolsize", 0L, "number of serial numbers");
+    }
+
+    /**
+     * The number of pre-generated key pairs to keep for each key algorithm and specification used for server-side key generation,
+     * or 0 to generate each key pair when it is used.
+     */
+    public static int getKeyPairPoolSize() {
+        return (int) getLongValue("keygeneration.poolsize", 0L, "number of key pairs");
+    }
+
+    /** The number of background threads that generate key pairs for the key pair pools. */
+    public static int getKeyPairPoolThreads() {
+        return Math.max(1, (int) getLongValue("keygeneration.poolthreads", 1L, "threads"));
+    }
+
+    /** Option if the private keys in the key pair pools should be kept encrypted in memory until they are used. Default true. */
+    public static boolean isKeyPairPoolEncrypted() {
+        final String value = ConfigurationHolder.getString("keygeneration.poolencrypted");
+        return value == null || !value.trim().equalsIgnoreCase("false");
+    }
+
     /**
      * The date and time from which an expire date of a certificate is to be considered to be too far in the future.
      */
@@ -215,6 +241,12 @@ public final class CesecoreConfiguration {
         return getLongValue("blacklist.cachetime", 30000L, "milliseconds to cache public key blacklist entries");
     }
 
+    /** @return the path of the public key blacklist index file, built with 'ca publickeyblacklistindex', or null if none is used */
+    public static String getPublicKeyBlacklistIndexFile() {
+        final String value = ConfigurationHolder.getString("blacklist.indexfile");
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
     /**
      * Parameter to specify if retrieving KeyValidator objects from KeyValidatorSession should be cached, and in that case for how long.
      */
@@ -222,6 +254,15 @@ public final class CesecoreConfiguration {
         return getLongValue("validator.cachetime", 30000L, "milliseconds to cache validators");
     }
 
+    /**
+     * Option if the successful authorization checks in a transaction should be written as one access control audit record when the
+     * transaction completes, instead of one audit record per check. Default false.
+     */
+    public static boolean isCoalesceAccessControlAuditEvents() {
+        final String value = ConfigurationHolder.getString("securityeventsaudit.coalesceaccesscontrol");
+        return value != null && value.trim().equalsIgnoreCase(TRUE);
+    }
+
     /** Parameter to specify if retrieving Authorization Access Rules (in AuthorizationSession) should be cached, and in that case for how long. */
     public static long getCacheAuthorizationTime() {
         return getLongValue("authorization.cachetime", 30000L, "milliseconds to cache authorization");
@@ -279,6 +320,15 @@ public final class CesecoreConfiguration {
         return value != null && value.trim().equalsIgnoreCase(TRUE);
     }
 
+    /**
+     * Option if the data of CAs, profiles, publishers and services should be stored in the compact format instead of as XML.
+     * Both formats can always be read. Default false, since nodes running older versions can not read the compact format.
+     */
+    public static boolean isCompactDataSerialization() {
+        final String value = ConfigurationHolder.getString("db.compactdataserialization");
+        return value != null && value.trim().equalsIgnoreCase(TRUE);
+    }
+
     /**
      * Option if we should keep internal CA keystores in the CAData table to be compatible with CeSecore 1.1/EJBCA 5.0.
      * Default to true. Set to false when all nodes in a cluster have been upgraded to CeSecore 1.2/EJBCA 5.1 or later,
@@ -403,6 +453,11 @@ public final class CesecoreConfiguration {
         return Long.valueOf(getLongValue("database.crlgenfetchsize", 500000L, "rows")).intValue();
     }
 
+    /** @return the maximum total size in bytes of the Base64 encoded certificates in the parsed certificate cache, or 0 if the cache is disabled */
+    public static long getParsedCertificateCacheSize() {
+        return getLongValue("database.parsedcertificatecachesize", 0L, "bytes");
+    }
+
     /**
      * Used just in {@link #getForbiddenCharacters()}. The method is called very
      * often so we declare this String in the class so it does not have to be
@@ -39,6 +39,13 @@ public class OcspConfiguration {
     public static final String DEFAULT_RESPONDER = "ocsp.defaultresponder";
     public static final String SIGNING_CERTD_VALID_TIME = "ocsp.signingCertsValidTime";
     public static final String REQUEST_SIGNING_CERT_REVOCATION_CACHE_TIME = "ocsp.reqsigncertrevcachetime";
+    public static final String RESPONSE_CACHE_ENABLED = "ocsp.responsecache.enabled";
+    public static final String RESPONSE_CACHE_MAX_ENTRIES = "ocsp.responsecache.maxentries";
+    public static final String RESPONSE_CACHE_REFRESH_TIME = "ocsp.responsecache.refreshtime";
+    public static final String SIGNING_WORKERS = "ocsp.signing.workers";
+    public static final String SIGNING_QUEUE_SIZE = "ocsp.signing.queuesize";
+    public static final String REVOCATION_INDEX_ENABLED = "ocsp.revocationindex.enabled";
+    public static final String REVOCATION_INDEX_RELOAD_TIME = "ocsp.revocationindex.reloadtime";
     public static final String SIGNING_TRUSTSTORE_VALID_TIME = "ocsp.signtrustvalidtime";
     public static final String SIGNATUREREQUIRED = "ocsp.signaturerequired";
     public static final String CARD_PASSWORD = "ocsp.keys.cardPassword";
@@ -156,6 +163,103 @@ public class OcspConfiguration {
         return timeInSeconds;
     }
 
+    /**
+     * @return true if signed responses to nonce-less single requests should be cached and re-used until they expire
+     */
+    public static boolean isResponseCacheEnabled() {
+        final String value = ConfigurationHolder.getString(RESPONSE_CACHE_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * @return the maximum number of signed responses that are kept in the OCSP response cache
+     */
+    public static int getResponseCacheMaxEntries() {
+        final int defaultMaxEntries = 100000;
+        try {
+            return Integer.parseInt(ConfigurationHolder.getString(RESPONSE_CACHE_MAX_ENTRIES));
+        } catch (NumberFormatException e) {
+            log.warn(RESPONSE_CACHE_MAX_ENTRIES + " is not a decimal integer. Using default " + defaultMaxEntries + ".");
+            return defaultMaxEntries;
+        }
+    }
+
+    /**
+     * The interval on which cached OCSP responses that are about to expire are re-signed in milliseconds
+     */
+    public static long getResponseCacheRefreshTimeInMilliseconds() {
+        final long defaultTimeInSeconds = 60; // 1 minute
+        long timeInSeconds;
+        try {
+            timeInSeconds = Long.parseLong(ConfigurationHolder.getString(RESPONSE_CACHE_REFRESH_TIME));
+        } catch (NumberFormatException e) {
+            timeInSeconds = defaultTimeInSeconds;
+            log.warn(RESPONSE_CACHE_REFRESH_TIME + " is not a decimal long. Using default 1 minute.");
+        }
+        return timeInSeconds*1000L;
+    }
+
+    /**
+     * @return the number of threads that sign OCSP responses concurrently for each signer
+     */
+    public static int getSigningWorkers() {
+        final int defaultWorkers = 8;
+        try {
+            final int workers = Integer.parseInt(ConfigurationHolder.getString(SIGNING_WORKERS));
+            if (workers > 0) {
+                return workers;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        log.warn(SIGNING_WORKERS + " is not a positive decimal integer. Using default " + defaultWorkers + ".");
+        return defaultWorkers;
+    }
+
+    /**
+     * @return the maximum number of OCSP responses waiting to be signed for each signer, before new requests are answered with "tryLater"
+     */
+    public static int getSigningQueueSize() {
+        final int defaultQueueSize = 1000;
+        try {
+            final int queueSize = Integer.parseInt(ConfigurationHolder.getString(SIGNING_QUEUE_SIZE));
+            if (queueSize > 0) {
+                return queueSize;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        log.warn(SIGNING_QUEUE_SIZE + " is not a positive decimal integer. Using default " + defaultQueueSize + ".");
+        return defaultQueueSize;
+    }
+
+    /**
+     * @return true if the status of certificates issued by the CAs of the OCSP responder should be kept in memory
+     */
+    public static boolean isRevocationIndexEnabled() {
+        final String value = ConfigurationHolder.getString(REVOCATION_INDEX_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * @return the time in milliseconds after which the revocation status index of a CA is reloaded from the database. The index is not
+     * used if it could not be reloaded within twice this time.
+     */
+    public static long getRevocationIndexReloadTimeInMilliseconds() {
+        final long defaultTimeInSeconds = 300; // 5 minutes
+        long timeInSeconds;
+        try {
+            timeInSeconds = Long.parseLong(ConfigurationHolder.getString(REVOCATION_INDEX_RELOAD_TIME));
+        } catch (NumberFormatException e) {
+            timeInSeconds = defaultTimeInSeconds;
+            log.warn(REVOCATION_INDEX_RELOAD_TIME + " is not a decimal long. Using default 5 minutes.");
+        }
+        if (timeInSeconds <= 0) {
+            timeInSeconds = defaultTimeInSeconds;
+        }
+        return timeInSeconds*1000L;
+    }
+
     /**
      * If set to true the responder will enforce OCSP request signing
      */
@@ -29,26 +29,53 @@ import org.apache.log4j.Logger;
  * will prevent memory leaks to some extent through checking for stale data
  * during updates.
  * 
+ * Objects can be cached with a version, typically the rowVersion of the database row. When the cache time of such an object has expired,
+ * {@link #shouldCheckForUpdates(int, VersionSource)} compares its version with the current versions of all objects, which are read with
+ * a single query at most once per cache time. Only objects that were changed (on any node in a cluster) then have to be read again.
+ * 
  * @version $Id$
  */
 public abstract class CommonCacheBase<T> implements CommonCache<T> {
     
+    /** Source of the current versions of all objects that can be cached, such as the rowVersion column of a database table. */
+    public interface VersionSource {
+        /** @return map of object id to version for all existing objects */
+        Map<Integer, Integer> getVersions();
+    }
+
     private class CacheEntry {
         long lastUpdate;
         final int digest;
         final String name;
         final T object;
-        CacheEntry(long lastUpdate, int digest, String name, T object) {
+        /** The version of the object, or null if the object is not versioned */
+        volatile Integer version;
+        /** The time the version was set */
+        volatile long versionTime;
+        CacheEntry(long lastUpdate, int digest, String name, T object, Integer version) {
             this.lastUpdate = lastUpdate;
             this.digest = digest;
             this.name = name;
             this.object = object;
+            this.version = version;
+            this.versionTime = lastUpdate;
+        }
+    }
+
+    private static class VersionSnapshot {
+        final long time;
+        final Map<Integer, Integer> versions;
+        VersionSnapshot(long time, Map<Integer, Integer> versions) {
+            this.time = time;
+            this.versions = versions;
         }
     }
     
     private final Logger log = Logger.getLogger(CommonCacheBase.class);
     private Map<Integer, CacheEntry> cache = new HashMap<Integer, CacheEntry>();
     private Map<String, Integer> nameToIdMap = new HashMap<String, Integer>();
+    private final Object versionSnapshotLock = new Object();
+    private volatile VersionSnapshot versionSnapshot = null;
 
     /** @return how long to cache objects in milliseconds. */
     protected abstract long getCacheTime();
@@ -56,6 +83,11 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     /** @return the maximum allowed time an object may reside in the cache before it is purged. 0 means live forever. */
     protected abstract long getMaxCacheLifeTime();
 
+    /** @return the current time in milliseconds, which can be overridden in tests */
+    protected long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
     @Override
     public T getEntry(final Integer id) {
         final CacheEntry cacheEntry = getCacheEntry(id);
@@ -80,7 +112,7 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
 
     @Override
     public boolean shouldCheckForUpdates(final int id) {
-        final long now = System.currentTimeMillis();
+        final long now = getCurrentTime();
         final long cacheTime = getCacheTime();
         if (cacheTime<0) {
             // Cache is disabled, caller should check db
@@ -107,6 +139,80 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     }
 
 
+    /**
+     * Like {@link #shouldCheckForUpdates(int)}, but objects that were cached with a version are only reported as needing an update when
+     * their version has changed. The versions of all objects are read from the version source at most once per cache time.
+     * 
+     * @param id id of the object
+     * @param versionSource provides the current versions of all objects
+     * @return true when the object is not cached or has been changed since it was cached
+     */
+    public boolean shouldCheckForUpdates(final int id, final VersionSource versionSource) {
+        final long cacheTime = getCacheTime();
+        final CacheEntry cacheEntry = cache.get(Integer.valueOf(id));
+        if (cacheTime<0 || cacheEntry == null || cacheEntry.version == null) {
+            return shouldCheckForUpdates(id);
+        }
+        final long now = getCurrentTime();
+        if (cacheEntry.lastUpdate+cacheTime<now) {
+            synchronized (cacheEntry) {
+                if (cacheEntry.lastUpdate+cacheTime<now) {
+                    // To prevent other threads to ask the database for the same thing, we reset the cache time.
+                    cacheEntry.lastUpdate = now;
+                    final VersionSnapshot snapshot = getVersionSnapshot(versionSource, now, cacheTime);
+                    if (snapshot.time <= cacheEntry.versionTime) {
+                        // The object was read after the versions, so it is at least as recent
+                        return false;
+                    }
+                    final Integer currentVersion = snapshot.versions.get(Integer.valueOf(id));
+                    if (cacheEntry.version.equals(currentVersion)) {
+                        return false;
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("Version of cached " + cacheEntry.object.getClass().getSimpleName() + " with id " + id + " changed from "
+                                + cacheEntry.version + " to " + currentVersion + ".");
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** @return the versions of all objects, read from the version source if the last read versions are older than the cache time */
+    private VersionSnapshot getVersionSnapshot(final VersionSource versionSource, final long now, final long cacheTime) {
+        VersionSnapshot snapshot = versionSnapshot;
+        if (snapshot == null || snapshot.time+cacheTime<now) {
+            synchronized (versionSnapshotLock) {
+                snapshot = versionSnapshot;
+                if (snapshot == null || snapshot.time+cacheTime<now) {
+                    // Use the time before reading, since objects may be changed while the versions are read
+                    final long time = getCurrentTime();
+                    snapshot = new VersionSnapshot(time, versionSource.getVersions());
+                    versionSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Update the cache with the current version read from the database, like {@link #updateWith(int, int, String, Object)}, and
+     * keep track of the version of the object for {@link #shouldCheckForUpdates(int, VersionSource)}.
+     * 
+     * @param version the version of the object, typically the rowVersion of the database row it was read from
+     */
+    public void updateWith(int id, int digest, String name, T object, int version) {
+        final CacheEntry cacheEntry = getCacheEntry(Integer.valueOf(id));
+        if (cacheEntry != null && name != null && object != null && getCacheTime()>=0 && !willUpdate(id, digest)) {
+            // Same object, but the version may still have changed
+            cacheEntry.version = Integer.valueOf(version);
+            cacheEntry.versionTime = getCurrentTime();
+        } else {
+            updateWith(id, digest, name, object, Integer.valueOf(version));
+        }
+    }
+
     @Override
     public void removeEntry(int id) {
         updateWith(id, 0, null, null);
@@ -129,6 +235,10 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     
     @Override
     public void updateWith(int id, int digest, String name, T object) {
+        updateWith(id, digest, name, object, null);
+    }
+
+    private void updateWith(int id, int digest, String name, T object, Integer version) {
         final Integer key = Integer.valueOf(id);
         if (name==null || object == null || getCacheTime()<0) {
             // Remove from cache
@@ -138,7 +248,7 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
             if (willUpdate(id, digest)) {
                 final CacheEntry cacheEntry = getCacheEntry(key);
                 // Create new object and store it in the cache.
-                final CacheEntry newCacheEntry = new CacheEntry(System.currentTimeMillis(), digest, name, object);
+                final CacheEntry newCacheEntry = new CacheEntry(getCurrentTime(), digest, name, object, version);
                 setCacheEntry(key, newCacheEntry);
                 if (log.isDebugEnabled()) {
                     log.debug("Updated " + object.getClass().getSimpleName() + " cache. Digest was " + digest + ", cacheEntry digest was " + (cacheEntry == null ? "null" : cacheEntry.digest));
@@ -163,7 +273,7 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
         final Map<Integer, CacheEntry> cacheStage = new HashMap<Integer, CacheEntry>();
         final Map<String, Integer> nameToIdMapStage = new HashMap<String, Integer>();
         final long maxCacheLifeTime = getMaxCacheLifeTime();
-        final long staleCutOffTime = System.currentTimeMillis()-maxCacheLifeTime;
+        final long staleCutOffTime = getCurrentTime()-maxCacheLifeTime;
         synchronized (this) {
             // Process all entries except for the one that will change
             for (final Entry<Integer,CacheEntry> entry : cache.entrySet()) {
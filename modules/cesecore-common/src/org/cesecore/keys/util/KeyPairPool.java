@@ -0,0 +1,265 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.util;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Pool of pre-generated key pairs for one key algorithm and specification, used for server-side key generation.
+ *
+ * The pool is refilled by background threads as soon as a key pair is taken, so slow key generation (e.g. RSA 4096) is moved
+ * out of enrollment. If the pool is empty, for example just after startup, the key pair is generated directly instead. Key pairs
+ * are removed from the pool when they are taken, so the same key pair is never handed out twice, and they are only kept in memory.
+ * Optionally the private keys are kept encrypted with a random key, that only exists in memory, until they are taken.
+ *
+ * Configured through CesecoreConfiguration.getKeyPairPoolSize(), disabled by default.
+ *
+ * @version $Id$
+ */
+public class KeyPairPool {
+
+    private static final Logger log = Logger.getLogger(KeyPairPool.class);
+
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
+
+    /** A registry of instances, one for each key algorithm and specification */
+    private static final Map<String, KeyPairPool> instances = new HashMap<>();
+
+    /** Refills all pools, created on first use with the configured number of threads */
+    private static ExecutorService refillExecutor = null;
+
+    /** Encrypts the pooled private keys. Created on first use and never stored. */
+    private static SecretKey poolEncryptionKey = null;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    /** A pooled key pair, with the private key either as is or encrypted */
+    private static class PooledKeyPair {
+        final PublicKey publicKey;
+        final PrivateKey privateKey;
+        final String privateKeyAlgorithm;
+        final byte[] iv;
+        final byte[] encryptedPrivateKey;
+
+        PooledKeyPair(final KeyPair keyPair) {
+            publicKey = keyPair.getPublic();
+            privateKey = keyPair.getPrivate();
+            privateKeyAlgorithm = null;
+            iv = null;
+            encryptedPrivateKey = null;
+        }
+
+        PooledKeyPair(final KeyPair keyPair, final SecretKey encryptionKey) throws GeneralSecurityException {
+            publicKey = keyPair.getPublic();
+            privateKey = null;
+            privateKeyAlgorithm = keyPair.getPrivate().getAlgorithm();
+            iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            final byte[] encoded = keyPair.getPrivate().getEncoded();
+            encryptedPrivateKey = cipher.doFinal(encoded);
+            Arrays.fill(encoded, (byte) 0);
+        }
+
+        KeyPair getKeyPair(final SecretKey encryptionKey) throws GeneralSecurityException {
+            if (encryptedPrivateKey == null) {
+                return new KeyPair(publicKey, privateKey);
+            }
+            final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            final byte[] encoded = cipher.doFinal(encryptedPrivateKey);
+            try {
+                final KeyFactory keyFactory = KeyFactory.getInstance(privateKeyAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
+                return new KeyPair(publicKey, keyFactory.generatePrivate(new PKCS8EncodedKeySpec(encoded)));
+            } finally {
+                Arrays.fill(encoded, (byte) 0);
+            }
+        }
+    }
+
+    private final String keySpec;
+    private final String keyAlg;
+    private final int poolSize;
+    private final boolean encrypted;
+    private final BlockingQueue<PooledKeyPair> pool;
+    private final AtomicInteger refillTasks = new AtomicInteger(0);
+
+    /**
+     * Returns a key pair from the pool for the key algorithm and specification if the pool is enabled, or generates the key pair.
+     *
+     * @param keySpec the key specification, as for {@link KeyTools#genKeys(String, String)}
+     * @param keyAlg the key algorithm, as for {@link KeyTools#genKeys(String, String)}
+     * @return a key pair that has not been handed out before
+     * @throws InvalidAlgorithmParameterException if the key specification is not valid for the key algorithm
+     */
+    public static KeyPair getKeyPair(final String keySpec, final String keyAlg) throws InvalidAlgorithmParameterException {
+        final int poolSize = CesecoreConfiguration.getKeyPairPoolSize();
+        if (poolSize <= 0) {
+            return KeyTools.genKeys(keySpec, keyAlg);
+        }
+        final String key = keyAlg + ";" + keySpec;
+        final KeyPairPool instance;
+        synchronized (KeyPairPool.class) {
+            final KeyPairPool existing = instances.get(key);
+            if (existing != null && existing.poolSize == poolSize && existing.encrypted == CesecoreConfiguration.isKeyPairPoolEncrypted()) {
+                instance = existing;
+            } else {
+                instance = null;
+            }
+        }
+        if (instance != null) {
+            return instance.getKeyPair();
+        }
+        // The first key pair is generated directly, so that no pool is created for an invalid key specification
+        final KeyPair keyPair = KeyTools.genKeys(keySpec, keyAlg);
+        synchronized (KeyPairPool.class) {
+            final KeyPairPool created = new KeyPairPool(keySpec, keyAlg, poolSize, CesecoreConfiguration.isKeyPairPoolEncrypted());
+            instances.put(key, created);
+            created.scheduleRefill();
+        }
+        return keyPair;
+    }
+
+    /** DO NOT USE: Protected only to do testing of this implementation, use {@link #getKeyPair(String, String)} instead */
+    protected KeyPairPool(final String keySpec, final String keyAlg, final int poolSize, final boolean encrypted) {
+        this.keySpec = keySpec;
+        this.keyAlg = keyAlg;
+        this.poolSize = poolSize;
+        this.encrypted = encrypted;
+        this.pool = new LinkedBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * @return a key pair from the pool, or a newly generated key pair if the pool is empty
+     * @throws InvalidAlgorithmParameterException if the key specification is not valid for the key algorithm
+     */
+    public KeyPair getKeyPair() throws InvalidAlgorithmParameterException {
+        final PooledKeyPair pooledKeyPair = pool.poll();
+        scheduleRefill();
+        if (pooledKeyPair != null) {
+            try {
+                return pooledKeyPair.getKeyPair(encrypted ? getPoolEncryptionKey() : null);
+            } catch (GeneralSecurityException e) {
+                log.warn("Failed to decrypt pooled " + keyAlg + " " + keySpec + " key pair, generating key pair directly: " + e.getMessage());
+            }
+        } else if (log.isDebugEnabled()) {
+            log.debug("Key pair pool for " + keyAlg + " " + keySpec + " is empty, generating key pair directly.");
+        }
+        return KeyTools.genKeys(keySpec, keyAlg);
+    }
+
+    /** @return the number of key pairs in the pool */
+    public int size() {
+        return pool.size();
+    }
+
+    /** Refills the pool in the background, with up to the configured number of threads. Protected only for testing. */
+    protected void scheduleRefill() {
+        final ExecutorService executor = getRefillExecutor();
+        while (pool.remainingCapacity() > refillTasks.get()) {
+            final int tasks = refillTasks.get();
+            if (tasks >= CesecoreConfiguration.getKeyPairPoolThreads()) {
+                return;
+            }
+            if (refillTasks.compareAndSet(tasks, tasks + 1)) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refill();
+                        } catch (RuntimeException | GeneralSecurityException e) {
+                            // Key pairs are generated directly until the next successful refill
+                            log.warn("Failed to refill key pair pool for " + keyAlg + " " + keySpec + ": " + e.getMessage());
+                            if (log.isDebugEnabled()) {
+                                log.debug("Failed to refill key pair pool.", e);
+                            }
+                        } finally {
+                            refillTasks.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /** Generates key pairs until the pool is full. Protected only for testing. */
+    protected void refill() throws GeneralSecurityException {
+        int added = 0;
+        while (pool.remainingCapacity() > 0) {
+            final KeyPair keyPair = KeyTools.genKeys(keySpec, keyAlg);
+            final PooledKeyPair pooledKeyPair = encrypted ? new PooledKeyPair(keyPair, getPoolEncryptionKey()) : new PooledKeyPair(keyPair);
+            if (!pool.offer(pooledKeyPair)) {
+                // Filled by another thread in the meantime, the key pair is discarded
+                break;
+            }
+            added++;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Added " + added + " key pairs to the pool for " + keyAlg + " " + keySpec + ".");
+        }
+    }
+
+    private static synchronized ExecutorService getRefillExecutor() {
+        if (refillExecutor == null) {
+            refillExecutor = Executors.newFixedThreadPool(CesecoreConfiguration.getKeyPairPoolThreads(), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(0);
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "KeyPairPoolRefill-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    // Key generation in the background should not slow down request processing
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return refillExecutor;
+    }
+
+    private static synchronized SecretKey getPoolEncryptionKey() throws GeneralSecurityException {
+        if (poolEncryptionKey == null) {
+            final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256, secureRandom);
+            poolEncryptionKey = keyGenerator.generateKey();
+        }
+        return poolEncryptionKey;
+    }
+}
@@ -36,13 +36,6 @@ import java.math.BigInteger;
 public class RocaBrokenKey {
     private static final int[] prims = new int[]{3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73, 79, 83, 89, 97, 101,
             103, 107, 109, 113, 127, 131, 137, 139, 149, 151, 157, 163, 167};
-    private static final BigInteger[] primes = new BigInteger[prims.length];
-
-    static {
-        for (int i = 0; i < prims.length; i++) {
-            primes[i] = BigInteger.valueOf(prims[i]);
-        }
-    }
 
     private static final BigInteger[] markers = new BigInteger[]{
             new BigInteger("6"),
@@ -101,10 +94,56 @@ public class RocaBrokenKey {
 //        return true;
 //    }
 
+    /** The residues of the modulus that are possible for an affected key, by prime, i.e. the bits of the markers */
+    private static final boolean[][] affectedResidues = new boolean[prims.length][];
+    /** Products of consecutive primes that fit in a long, so that the modulus only has to be reduced once for each group of primes */
+    private static final BigInteger[] groupProducts;
+    /** The index of the first prime after each group */
+    private static final int[] groupEnds;
+
+    static {
+        for (int i = 0; i < prims.length; i++) {
+            affectedResidues[i] = new boolean[prims[i]];
+            for (int residue = 0; residue < prims[i]; residue++) {
+                affectedResidues[i][residue] = markers[i].testBit(residue);
+            }
+        }
+        final BigInteger[] products = new BigInteger[prims.length];
+        final int[] ends = new int[prims.length];
+        int groups = 0;
+        long product = 1;
+        for (int i = 0; i < prims.length; i++) {
+            if (product > Long.MAX_VALUE / prims[i]) {
+                products[groups] = BigInteger.valueOf(product);
+                ends[groups++] = i;
+                product = 1;
+            }
+            product *= prims[i];
+        }
+        products[groups] = BigInteger.valueOf(product);
+        ends[groups++] = prims.length;
+        groupProducts = new BigInteger[groups];
+        groupEnds = new int[groups];
+        System.arraycopy(products, 0, groupProducts, 0, groups);
+        System.arraycopy(ends, 0, groupEnds, 0, groups);
+    }
+
+    /**
+     * Same test as the original code above, but with the bits of the markers looked up in precomputed tables, and with one remainder
+     * per group of primes instead of one remainder and two BigInteger operations per prime.
+     */
     public static boolean isAffected(BigInteger modulus) {
-        for (int i = 0; i < primes.length; i++) {
-            if (BigInteger.ONE.shiftLeft(modulus.remainder(primes[i]).intValue()).and(markers[i]).equals(BigInteger.ZERO)) {
-                return false;
+        if (modulus.signum() <= 0) {
+            // Not affected according to the original code either
+            return false;
+        }
+        int i = 0;
+        for (int group = 0; group < groupProducts.length; group++) {
+            final long remainder = modulus.remainder(groupProducts[group]).longValue();
+            for (; i < groupEnds[group]; i++) {
+                if (!affectedResidues[i][(int) (remainder % prims[i])]) {
+                    return false;
+                }
             }
         }
         return true;
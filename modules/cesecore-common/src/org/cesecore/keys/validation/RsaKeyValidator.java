@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -76,6 +77,28 @@ public class RsaKeyValidator extends KeyValidatorBase {
     /** The key validator type. */
     private static final String TYPE_IDENTIFIER = "RSA_KEY_VALIDATOR";
 
+    /** Maximum size in bits of the products of small primes used to test for small factors. */
+    private static final int PRIME_PRODUCT_MAX_BITS = 4096;
+
+    /** Largest factor tested with the cached products of primes, larger factors are tested with trial division. */
+    private static final int PRIME_PRODUCT_MAX_BOUND = 65536;
+
+    /** Products of the primes up to a bound, by bound, see {@link #hasSmallerFactorThan(BigInteger, int)}. */
+    private static final Map<Integer, BigInteger[]> primeProducts = new ConcurrentHashMap<>();
+
+    /** Number of recently validated moduli to keep the results of the modulus checks for. */
+    private static final int MODULUS_CACHE_SIZE = 1000;
+
+    /** Results of the modulus checks by modulus, in least recently used order, guarded by synchronization on itself. */
+    private static final Map<BigInteger, ModulusProperties> modulusCache = new LinkedHashMap<BigInteger, ModulusProperties>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<BigInteger, ModulusProperties> eldest) {
+            return size() > MODULUS_CACHE_SIZE;
+        }
+    };
+
     protected static final String BIT_LENGTHS = "bitLengths";
 
     protected static final String PUBLIC_KEY_EXPONENT_ONLY_ALLOW_ODD = "publicKeyExponentOnlyAllowOdd";
@@ -174,20 +197,30 @@ public class RsaKeyValidator extends KeyValidatorBase {
   //    }
 
     /**
-     * Gets the smallest factor of the positive natural number greater than 2.
+     * Tests if the number is even, or has an odd factor from 3 up to and including intFactor if intFactor is odd. Instead of one
+     * division per odd candidate factor, this is a gcd with the product of the odd primes up to intFactor, which is cached.
+     * Factors above {@link #PRIME_PRODUCT_MAX_BOUND} are tested with trial division, so the memory used does not depend on intFactor.
+     * As with trial division by intFactor, intFactor - 2, ..., 3, an even intFactor only tests if the number is even.
      * @param n the number
-     * @return the smallest factor or 2 for n=0.
+     * @param intFactor the largest factor to test
+     * @return true if n has such a factor, always false for intFactor less than 3.
      */
     protected static final boolean hasSmallerFactorThan(BigInteger n, int intFactor) {
-        //        BigInteger factor = BigInteger.valueOf(intFactor);
-        final BigInteger two = new BigInteger("2");
         if (intFactor < 3) {
             return false;
         }
-        if (n.mod(two).equals(BigInteger.ZERO) && intFactor > 2) {
+        if (!n.testBit(0)) {
             return true;
         }
-        for (int i = intFactor; i > 2; i = i - 2) {
+        if (intFactor % 2 == 0) {
+            return false;
+        }
+        for (final BigInteger product : getPrimeProducts(Math.min(intFactor, PRIME_PRODUCT_MAX_BOUND))) {
+            if (!n.gcd(product).equals(BigInteger.ONE)) {
+                return true;
+            }
+        }
+        for (int i = intFactor; i > PRIME_PRODUCT_MAX_BOUND; i -= 2) {
             if (n.mod(BigInteger.valueOf(i)).equals(BigInteger.ZERO)) {
                 return true;
             }
@@ -195,6 +228,86 @@ public class RsaKeyValidator extends KeyValidatorBase {
         return false;
     }
 
+    /**
+     * Gets the product of all odd primes up to and including the bound, split into products of at most {@link #PRIME_PRODUCT_MAX_BITS} bits
+     * so that a large bound does not result in a gcd with a huge number.
+     * @param bound the largest prime, at most {@link #PRIME_PRODUCT_MAX_BOUND}
+     * @return the products, cached by bound.
+     */
+    private static BigInteger[] getPrimeProducts(final int bound) {
+        BigInteger[] products = primeProducts.get(bound);
+        if (products == null) {
+            final List<BigInteger> result = new ArrayList<>();
+            // Sieve of Eratosthenes
+            final boolean[] composite = new boolean[bound + 1];
+            BigInteger product = BigInteger.ONE;
+            for (int i = 3; i <= bound; i += 2) {
+                if (!composite[i]) {
+                    for (long j = (long) i * i; j <= bound; j += 2 * i) {
+                        composite[(int) j] = true;
+                    }
+                    product = product.multiply(BigInteger.valueOf(i));
+                    if (product.bitLength() >= PRIME_PRODUCT_MAX_BITS) {
+                        result.add(product);
+                        product = BigInteger.ONE;
+                    }
+                }
+            }
+            if (!product.equals(BigInteger.ONE)) {
+                result.add(product);
+            }
+            products = result.toArray(new BigInteger[result.size()]);
+            primeProducts.put(bound, products);
+        }
+        return products;
+    }
+
+    /**
+     * Gets the results of the checks that only depend on the modulus, so that the same key is not checked again when it is
+     * validated again, e.g. for a renewal or a retried request.
+     * @param modulus the RSA modulus
+     * @return the cached results for the modulus.
+     */
+    private static ModulusProperties getModulusProperties(final BigInteger modulus) {
+        synchronized (modulusCache) {
+            ModulusProperties ret = modulusCache.get(modulus);
+            if (ret == null) {
+                ret = new ModulusProperties(modulus);
+                modulusCache.put(modulus, ret);
+            }
+            return ret;
+        }
+    }
+
+    /** Results of the checks that only depend on the RSA modulus, each performed when first needed. */
+    private static final class ModulusProperties {
+        private final BigInteger modulus;
+        private volatile Boolean powerOfPrime = null;
+        private volatile Boolean rocaAffected = null;
+
+        private ModulusProperties(final BigInteger modulus) {
+            this.modulus = modulus;
+        }
+
+        boolean isPowerOfPrime() {
+            Boolean ret = powerOfPrime;
+            if (ret == null) {
+                ret = Boolean.valueOf(RsaKeyValidator.isPowerOfPrime(modulus));
+                powerOfPrime = ret;
+            }
+            return ret.booleanValue();
+        }
+
+        boolean isRocaAffected() {
+            Boolean ret = rocaAffected;
+            if (ret == null) {
+                ret = Boolean.valueOf(RocaBrokenKey.isAffected(modulus));
+                rocaAffected = ret;
+            }
+            return ret.booleanValue();
+        }
+    }
+
 
     /**
      * Public constructor needed for deserialization.
@@ -700,15 +813,16 @@ public class RsaKeyValidator extends KeyValidatorBase {
                 log.trace("isPublicKeyModulusOnlyAllowOdd passed");
             }
         }
+        final ModulusProperties modulusProperties = getModulusProperties(publicKeyModulus);
         if (isPublicKeyModulusDontAllowPowerOfPrime()) {
-            if (isPowerOfPrime(publicKeyModulus)) {
+            if (modulusProperties.isPowerOfPrime()) {
                 messages.add("Invalid: RSA public key modulus is not allowed to be the power of a prime.");
             } else {
                 log.trace("isPublicKeyModulusDontAllowPowerOfPrime passed");
             }
         }
         if (isPublicKeyModulusDontAllowRocaWeakKeys()) {
-            if (RocaBrokenKey.isAffected(publicKeyModulus)) {
+            if (modulusProperties.isRocaAffected()) {
                 messages.add("Invalid: RSA public key modulus is a weak key according to CVE-2017-15361.");
             } else {
                 log.trace("isPublicKeyModulusDontAllowRocaWeakKeys passed");
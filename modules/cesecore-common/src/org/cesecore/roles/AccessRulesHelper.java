@@ -45,6 +45,9 @@ public abstract class AccessRulesHelper {
 
     /** @return true if the provided map of access rules allows access to the given resource */
     public static boolean hasAccessToResource(final HashMap<String, Boolean> accessRules, final String resource) {
+        if (accessRules instanceof CompiledAccessRules) {
+            return ((CompiledAccessRules) accessRules).hasAccessToResource(resource);
+        }
         if (resource==null || resource.charAt(0)!='/') {
             return false;
         }
@@ -0,0 +1,166 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Access rules map with a lookup table compiled from the rules, so that {@link AccessRulesHelper#hasAccessToResource(HashMap, String)}
+ * does not have to create a substring of the resource for every level of the resource path.
+ *
+ * The lookup table is an open addressing hash table of the rules, with each rule stored without its trailing '/'. A resource is looked
+ * up by hashing it from the start and probing the table at each '/', without any allocation. The table is compiled when first used and
+ * compiled again after the map is modified through put, putAll, remove or clear. Maps that are shared, such as the cached authorization
+ * results, should not be modified at all.
+ *
+ * Instances are serialized as a plain HashMap, since the rules are sent to remote RA peers in the authorization result, and the peer
+ * may run a version without this class.
+ *
+ * @version $Id$
+ */
+public class CompiledAccessRules extends HashMap<String, Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Immutable lookup table of the rules */
+    private static final class LookupTable {
+        final String[] keys;
+        final int[] hashes;
+        final boolean[] states;
+        final int mask;
+
+        LookupTable(final Map<String, Boolean> accessRules) {
+            // Rules are stored without trailing '/'. If both forms of a rule exist, the form without '/' wins, as in AccessRulesHelper.
+            final Map<String, Boolean> normalized = new HashMap<>();
+            final Set<String> withoutSlash = new HashSet<>();
+            for (final Map.Entry<String, Boolean> entry : accessRules.entrySet()) {
+                final String resource = entry.getKey();
+                if (resource == null || entry.getValue() == null) {
+                    continue;
+                }
+                if (resource.endsWith("/")) {
+                    final String key = resource.substring(0, resource.length() - 1);
+                    if (!withoutSlash.contains(key)) {
+                        normalized.put(key, entry.getValue());
+                    }
+                } else {
+                    withoutSlash.add(resource);
+                    normalized.put(resource, entry.getValue());
+                }
+            }
+            int size = 2;
+            while (size < normalized.size() * 2) {
+                size <<= 1;
+            }
+            keys = new String[size];
+            hashes = new int[size];
+            states = new boolean[size];
+            mask = size - 1;
+            for (final Map.Entry<String, Boolean> entry : normalized.entrySet()) {
+                final String key = entry.getKey();
+                final int hash = key.hashCode();
+                int index = spread(hash) & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                hashes[index] = hash;
+                states[index] = entry.getValue().booleanValue();
+            }
+        }
+
+        /** @return the index of the rule equal to the first length characters of the resource, or -1 if there is none */
+        int find(final String resource, final int length, final int hash) {
+            int index = spread(hash) & mask;
+            String key;
+            while ((key = keys[index]) != null) {
+                if (hashes[index] == hash && key.length() == length && resource.regionMatches(0, key, 0, length)) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private transient volatile LookupTable lookupTable = null;
+
+    public CompiledAccessRules(final Map<String, Boolean> accessRules) {
+        super(accessRules);
+    }
+
+    /** @return true if the access rules allow access to the given resource, with the same result as AccessRulesHelper */
+    public boolean hasAccessToResource(final String resource) {
+        if (resource == null || resource.charAt(0) != '/') {
+            return false;
+        }
+        LookupTable table = lookupTable;
+        if (table == null) {
+            table = new LookupTable(this);
+            lookupTable = table;
+        }
+        // Check the resource with a trailing '/' at each '/', the rule for the longest matching path wins
+        final int length = resource.length();
+        final int lengthWithTrailingSlash = resource.charAt(length - 1) == '/' ? length : length + 1;
+        int hash = 0;
+        int match = -1;
+        for (int i = 0; i < lengthWithTrailingSlash; i++) {
+            final char c = i < length ? resource.charAt(i) : '/';
+            if (c == '/') {
+                // The hash is now the String hashCode of the first i characters
+                final int index = table.find(resource, i, hash);
+                if (index != -1) {
+                    match = index;
+                }
+            }
+            hash = 31 * hash + c;
+        }
+        return match != -1 && table.states[match];
+    }
+
+    @Override
+    public Boolean put(final String key, final Boolean value) {
+        lookupTable = null;
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ? extends Boolean> m) {
+        lookupTable = null;
+        super.putAll(m);
+    }
+
+    @Override
+    public Boolean remove(final Object key) {
+        lookupTable = null;
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        lookupTable = null;
+        super.clear();
+    }
+
+    /** @return a plain HashMap with the rules to serialize instead of this object */
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+}
@@ -22,6 +22,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -67,6 +70,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -180,6 +184,55 @@ public abstract class CertTools {
 
     private static final InternalResources intres = InternalResources.getInstance();
 
+    /** Maximum number of DNs kept in the cache of {@link #stringToBCDNString(String)} */
+    private static final int BC_DN_CACHE_MAX_SIZE = 20000;
+    /**
+     * Normalized DNs by the DN string they were created from. The cache is cleared when it is full, which keeps memory bounded without
+     * tracking usage. The same issuer and subject DNs are normalized over and over again, so they are quickly cached again.
+     */
+    private static final ConcurrentHashMap<String, String> bcDnCache = new ConcurrentHashMap<>();
+
+    /** Fields derived from a certificate, so they only have to be computed once for each certificate object */
+    private static class CertificateMemo {
+        volatile String subjectDn;
+        volatile String issuerDn;
+        volatile String fingerprint;
+    }
+
+    /** Weak reference to a certificate that is compared by identity, so the encoded certificate is not hashed like in {@link Certificate#hashCode()} */
+    private static class CertificateReference extends WeakReference<Certificate> {
+        private final int hashCode;
+
+        CertificateReference(final Certificate cert, final ReferenceQueue<Certificate> queue) {
+            super(cert, queue);
+            this.hashCode = System.identityHashCode(cert);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CertificateReference)) {
+                return false;
+            }
+            final Certificate cert = get();
+            return cert != null && cert == ((CertificateReference) obj).get();
+        }
+    }
+
+    /**
+     * Derived fields of certificates in use, by certificate object. Entries of certificate objects that have been garbage collected are
+     * removed when new entries are added.
+     */
+    private static final ConcurrentHashMap<CertificateReference, CertificateMemo> certificateMemos = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Certificate> collectedCertificates = new ReferenceQueue<>();
+
     // Initialize dnComponents
     static {
         DnComponents.getDnObjects(true);
@@ -493,7 +546,28 @@ public abstract class CertTools {
      * 
      * @return String containing DN, or empty string if dn does not contain any real DN components, or null if input is null
      */
-    public static String stringToBCDNString(String dn) {
+    public static String stringToBCDNString(final String dn) {
+        if (dn == null) {
+            return null;
+        }
+        final String cached = bcDnCache.get(dn);
+        if (cached != null) {
+            return cached;
+        }
+        final String ret = stringToBCDNStringNoCache(dn);
+        if (ret != null) {
+            if (bcDnCache.size() >= BC_DN_CACHE_MAX_SIZE) {
+                bcDnCache.clear();
+            }
+            final String existing = bcDnCache.putIfAbsent(dn, ret);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return ret;
+    }
+
+    private static String stringToBCDNStringNoCache(String dn) {
         // BC now seem to handle multi-valued RDNs, but we keep escaping this for now to keep the behavior until support is required
         //dn = handleUnescapedPlus(dn); // Log warning if dn contains unescaped '+'
         if (isDNReversed(dn)) {
@@ -872,10 +946,39 @@ public abstract class CertTools {
      * @return String containing the DN, or null if cert is null.
      */
     private static String getDN(final Certificate cert, final int which) {
-        String ret = null;
         if (cert == null) {
             return null;
         }
+        final CertificateMemo memo = getCertificateMemo(cert);
+        String ret = which == 1 ? memo.subjectDn : memo.issuerDn;
+        if (ret == null) {
+            ret = getDNNoCache(cert, which);
+            if (which == 1) {
+                memo.subjectDn = ret;
+            } else {
+                memo.issuerDn = ret;
+            }
+        }
+        return ret;
+    }
+
+    /** @return the memo of derived fields of the certificate, which is created if there is none */
+    private static CertificateMemo getCertificateMemo(final Certificate cert) {
+        final CertificateMemo memo = certificateMemos.get(new CertificateReference(cert, null));
+        if (memo != null) {
+            return memo;
+        }
+        Reference<? extends Certificate> collected;
+        while ((collected = collectedCertificates.poll()) != null) {
+            certificateMemos.remove(collected);
+        }
+        final CertificateMemo newMemo = new CertificateMemo();
+        final CertificateMemo existing = certificateMemos.putIfAbsent(new CertificateReference(cert, collectedCertificates), newMemo);
+        return existing == null ? newMemo : existing;
+    }
+
+    private static String getDNNoCache(final Certificate cert, final int which) {
+        String ret = null;
         if (cert instanceof X509Certificate) {
             // cert.getType=X.509
             try {
@@ -3492,10 +3595,14 @@ public abstract class CertTools {
         if (cert == null) {
             return null;
         }
+        final CertificateMemo memo = getCertificateMemo(cert);
+        if (memo.fingerprint != null) {
+            return memo.fingerprint;
+        }
         try {
             byte[] res = generateSHA1Fingerprint(cert.getEncoded());
-
-            return new String(Hex.encode(res));
+            memo.fingerprint = new String(Hex.encode(res));
+            return memo.fingerprint;
         } catch (CertificateEncodingException cee) {
             log.error("Error encoding certificate.", cee);
         }
@@ -0,0 +1,275 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Serializes the data maps of UpgradeableDataHashMap based objects (CAs, profiles, publishers, services) for storage in the database.
+ *
+ * By default the maps are stored as java.beans.XMLEncoder output. Optionally (db.compactdataserialization=true) a compact format is
+ * used instead, which is a versioned, deflated binary encoding of the map, stored as Base64 with the prefix {@value #COMPACT_PREFIX}.
+ * The compact format handles the value types normally found in data maps natively, other values are embedded as XMLEncoder output.
+ * Both formats can always be read, so the setting can be changed at any time, once all nodes in a cluster can read the compact format.
+ *
+ * @version $Id$
+ */
+public final class DataMapSerializer {
+
+    /** Prefix of data in the compact format, including the format version. Never the start of XML data. */
+    public static final String COMPACT_PREFIX = "#CDM1:";
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_FLOAT = 5;
+    private static final byte TYPE_DOUBLE = 6;
+    private static final byte TYPE_DATE = 7;
+    private static final byte TYPE_BYTES = 8;
+    private static final byte TYPE_ARRAYLIST = 9;
+    private static final byte TYPE_LINKEDHASHMAP = 10;
+    private static final byte TYPE_HASHMAP = 11;
+    private static final byte TYPE_XML = 12;
+
+    private DataMapSerializer() {}
+
+    /**
+     * Serializes a data map in the format configured for this installation.
+     *
+     * @param dataMap the map to serialize, with any Base64 encoding of string values already done
+     * @return the serialized map
+     */
+    public static String serialize(final Map<?, ?> dataMap) {
+        if (CesecoreConfiguration.isCompactDataSerialization()) {
+            return encodeCompact(dataMap);
+        }
+        return encodeXml(dataMap);
+    }
+
+    /**
+     * Deserializes a data map in either the compact or the XML format.
+     *
+     * @param data the serialized map
+     * @return the map, a LinkedHashMap for data in the compact format, or whatever map type was encoded for XML data
+     */
+    public static Map<?, ?> deserialize(final String data) {
+        if (isCompact(data)) {
+            return decodeCompact(data);
+        }
+        final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+        try {
+            return (Map<?, ?>) decoder.readObject();
+        } finally {
+            decoder.close();
+        }
+    }
+
+    /** @return true if the data is in the compact format */
+    public static boolean isCompact(final String data) {
+        return data != null && data.startsWith(COMPACT_PREFIX);
+    }
+
+    /** @return the map encoded in the compact format */
+    public static String encodeCompact(final Map<?, ?> dataMap) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(baos))) {
+            writeMap(out, dataMap);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        return COMPACT_PREFIX + java.util.Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+
+    /**
+     * @return the map decoded from the compact format
+     * @throws IllegalArgumentException if the data is not valid data in the compact format
+     */
+    public static LinkedHashMap<Object, Object> decodeCompact(final String data) {
+        if (!isCompact(data)) {
+            throw new IllegalArgumentException("Data is not in the compact data map format.");
+        }
+        final byte[] bytes = java.util.Base64.getDecoder().decode(data.substring(COMPACT_PREFIX.length()));
+        try (final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+            final LinkedHashMap<Object, Object> ret = new LinkedHashMap<>();
+            readMapEntries(in, ret);
+            return ret;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid data in the compact data map format: " + e.getMessage(), e);
+        }
+    }
+
+    private static String encodeXml(final Object object) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final XMLEncoder encoder = new XMLEncoder(baos);
+        encoder.writeObject(object);
+        encoder.close();
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeMap(final DataOutputStream out, final Map<?, ?> map) throws IOException {
+        out.writeInt(map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+        // Exact classes are required, so that decoding gives the same types as XMLDecoder would
+        final Class<?> clazz = value.getClass();
+        if (clazz == String.class) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (clazz == Integer.class) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (clazz == Long.class) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (clazz == Boolean.class) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (clazz == Float.class) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (clazz == Double.class) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (clazz == Date.class) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (clazz == byte[].class) {
+            out.writeByte(TYPE_BYTES);
+            final byte[] bytes = (byte[]) value;
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (clazz == ArrayList.class) {
+            out.writeByte(TYPE_ARRAYLIST);
+            final List<?> list = (List<?>) value;
+            out.writeInt(list.size());
+            for (final Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (clazz == LinkedHashMap.class) {
+            out.writeByte(TYPE_LINKEDHASHMAP);
+            writeMap(out, (Map<?, ?>) value);
+        } else if (clazz == HashMap.class) {
+            out.writeByte(TYPE_HASHMAP);
+            writeMap(out, (Map<?, ?>) value);
+        } else {
+            // Anything else, such as enums and bean classes, is stored the same way as in the XML format
+            out.writeByte(TYPE_XML);
+            writeString(out, encodeXml(value));
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        // Not writeUTF, since strings may be longer than 64 kB
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void readMapEntries(final DataInputStream in, final Map<Object, Object> map) throws IOException {
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            final Object key = readValue(in);
+            map.put(key, readValue(in));
+        }
+    }
+
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_INTEGER:
+            return Integer.valueOf(in.readInt());
+        case TYPE_LONG:
+            return Long.valueOf(in.readLong());
+        case TYPE_BOOLEAN:
+            return Boolean.valueOf(in.readBoolean());
+        case TYPE_FLOAT:
+            return Float.valueOf(in.readFloat());
+        case TYPE_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case TYPE_DATE:
+            return new Date(in.readLong());
+        case TYPE_BYTES: {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+        case TYPE_ARRAYLIST: {
+            final int size = in.readInt();
+            final ArrayList<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        }
+        case TYPE_LINKEDHASHMAP: {
+            final LinkedHashMap<Object, Object> map = new LinkedHashMap<>();
+            readMapEntries(in, map);
+            return map;
+        }
+        case TYPE_HASHMAP: {
+            final HashMap<Object, Object> map = new HashMap<>();
+            readMapEntries(in, map);
+            return map;
+        }
+        case TYPE_XML: {
+            final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(readString(in).getBytes(StandardCharsets.UTF_8)));
+            try {
+                return decoder.readObject();
+            } finally {
+                decoder.close();
+            }
+        }
+        default:
+            throw new IOException("Unknown value type " + type + ".");
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
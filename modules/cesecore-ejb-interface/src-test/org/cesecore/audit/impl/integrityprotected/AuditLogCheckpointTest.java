@@ -0,0 +1,141 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Properties;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.audit.audit.AuditLogReportElem;
+import org.cesecore.audit.audit.AuditLogValidationReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the checkpoint used for resuming audit log verification.
+ *
+ * @version $Id$
+ */
+public class AuditLogCheckpointTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("auditlogcheckpoint", ".properties");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testResumeFromFile() throws Exception {
+        final AuditLogCheckpoint checkpoint = new ProtectedCheckpoint(file);
+        assertEquals("Unverified node should start from the beginning.", -1L, checkpoint.getLastSequenceNumber("node1"));
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        report.error(new AuditLogReportElem(Long.valueOf(11L), Long.valueOf(12L), "Missing sequence number"));
+        report.warn(new AuditLogReportElem(Long.valueOf(41L), Long.valueOf(42L), "Time went backwards"));
+        checkpoint.update("node1", 4711L, report);
+        checkpoint.update("node2", 17L, new AuditLogValidationReport());
+        assertTrue("Checkpoint should have been written to file.", file.exists());
+        final AuditLogCheckpoint resumed = new ProtectedCheckpoint(file);
+        assertEquals(4711L, resumed.getLastSequenceNumber("node1"));
+        final List<AuditLogReportElem> errors = resumed.getErrors("node1");
+        assertEquals("Errors found before the interruption should be kept.", 1, errors.size());
+        assertEquals(Long.valueOf(11L), errors.get(0).getFirst());
+        assertEquals(Long.valueOf(12L), errors.get(0).getSecond());
+        assertEquals("Missing sequence number", errors.get(0).getReasons().get(0));
+        assertEquals(1, resumed.getWarnings("node1").size());
+        assertEquals(Long.valueOf(41L), resumed.getWarnings("node1").get(0).getFirst());
+        assertEquals(17L, resumed.getLastSequenceNumber("node2"));
+        assertTrue(resumed.getErrors("node2").isEmpty());
+        assertTrue(resumed.getWarnings("node2").isEmpty());
+        resumed.completed();
+        assertFalse("Checkpoint file should be removed after completed verification.", file.exists());
+    }
+
+    @Test
+    public void testModifiedFileIsIgnored() throws Exception {
+        final AuditLogCheckpoint checkpoint = new ProtectedCheckpoint(file);
+        checkpoint.update("node1", 10L, new AuditLogValidationReport());
+        final Properties properties = new Properties();
+        try (final InputStream is = new FileInputStream(file)) {
+            properties.load(is);
+        }
+        // Try to skip verification of more records
+        properties.setProperty("node1.sequenceNumber", "1000000");
+        try (final OutputStream os = new FileOutputStream(file)) {
+            properties.store(os, null);
+        }
+        final AuditLogCheckpoint resumed = new ProtectedCheckpoint(file);
+        assertEquals("Modified checkpoint should not be used.", -1L, resumed.getLastSequenceNumber("node1"));
+    }
+
+    @Test
+    public void testWithoutProtection() throws Exception {
+        // Database integrity protection is not enabled in the unit test environment
+        final AuditLogCheckpoint checkpoint = new AuditLogCheckpoint(file);
+        checkpoint.update("node1", 10L, new AuditLogValidationReport());
+        assertFalse("Unprotected checkpoint should not be written to file.", file.exists());
+        assertEquals(10L, checkpoint.getLastSequenceNumber("node1"));
+        checkpoint.completed();
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        final AuditLogCheckpoint checkpoint = new AuditLogCheckpoint(null);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        report.error(new AuditLogReportElem(Long.valueOf(1L), Long.valueOf(2L), "Bad protection"));
+        checkpoint.update("node1", 10L, report);
+        assertEquals(10L, checkpoint.getLastSequenceNumber("node1"));
+        assertEquals(1, checkpoint.getErrors("node1").size());
+        checkpoint.completed();
+    }
+
+    /** Checkpoint protected with a fixed HMAC key, in place of the database integrity protection key */
+    private static class ProtectedCheckpoint extends AuditLogCheckpoint {
+        private ProtectedCheckpoint(final File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        protected String calculateProtection(final String protectString) throws IOException {
+            try {
+                final Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec("foo123".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                return Hex.toHexString(mac.doFinal(protectString.getBytes(StandardCharsets.UTF_8)));
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -201,11 +201,37 @@ public class AuditDevicesConfig {
         return getInt(properties, "validate.fetchsize", 1000);
     }
 
+    /** Parameter to specify the number of nodes whose logs are validated concurrently. */
+    public static int getAuditLogValidationThreads(final Properties properties) {
+        return Math.max(1, getInt(properties, "validate.threads", 1));
+    }
+
+    /** Parameter to specify a file where the progress of a validation is kept, so an interrupted validation can be resumed. Not set by default. */
+    public static File getAuditLogValidationCheckpointFile(final Properties properties) {
+        final String p = properties == null ? null : properties.getProperty("validate.checkpointfile");
+        return p == null || p.trim().isEmpty() ? null : new File(p.trim());
+    }
+
     /** Parameter to specify the number of logs to be fetched in each export round trip. */
     public static int getAuditLogExportFetchSize(final Properties properties) {
         return getInt(properties, "export.fetchsize", 1000);
     }
 
+    /** Parameter to enable writing concurrently logged audit records in batches, with one transaction per batch. */
+    public static boolean isGroupCommitEnabled(final Properties properties) {
+        return properties != null && Boolean.parseBoolean(properties.getProperty("groupcommit.enabled", "false").trim());
+    }
+
+    /** Parameter to specify the maximum number of audit records written in one transaction when group commit is enabled. */
+    public static int getGroupCommitBatchSize(final Properties properties) {
+        return Math.max(1, getInt(properties, "groupcommit.batchsize", 100));
+    }
+
+    /** Parameter to specify the maximum time in milliseconds to wait for another transaction to commit the audit record when group commit is enabled. */
+    public static long getGroupCommitTimeout(final Properties properties) {
+        return Math.max(1, getInt(properties, "groupcommit.timeout", 30000));
+    }
+
     private static int getInt(final Properties properties, final String key, final int defaultValue) {
         int ret = defaultValue;
         try {
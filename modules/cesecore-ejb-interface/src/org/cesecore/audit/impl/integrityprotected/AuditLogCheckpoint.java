@@ -0,0 +1,217 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.audit.AuditLogReportElem;
+import org.cesecore.audit.audit.AuditLogValidationReport;
+import org.cesecore.dbprotection.DatabaseProtectionException;
+import org.cesecore.dbprotection.ProtectedData;
+
+/**
+ * Position of an audit log verification for each node, so an interrupted verification of a large audit log can be resumed
+ * instead of being started over.
+ *
+ * For each node the last verified sequence number and the problems found up to that point are kept. When a file is used, it is
+ * rewritten each time a position is updated, and removed when the verification has completed. Since a modified checkpoint could
+ * be used to skip verification of a part of the audit log, the file is protected with the database integrity protection key of
+ * the audit log. A checkpoint file that can not be authenticated is ignored, and the verification starts from the beginning.
+ * Without database integrity protection, the checkpoint is only kept in memory.
+ *
+ * @version $Id$
+ */
+public class AuditLogCheckpoint {
+
+    private static final Logger log = Logger.getLogger(AuditLogCheckpoint.class);
+
+    private static final String SEQUENCE_NUMBER_SUFFIX = ".sequenceNumber";
+    private static final String ERROR_INFIX = ".error.";
+    private static final String WARNING_INFIX = ".warning.";
+    private static final String PROTECTION = "protection";
+
+    private final File file;
+    private final Properties positions = new Properties();
+
+    /**
+     * @param file the file to keep the checkpoint in, or null to only keep it in memory
+     * @throws IOException if an existing checkpoint file could not be read, or the protection could not be calculated
+     */
+    public AuditLogCheckpoint(final File file) throws IOException {
+        if (file != null && calculateProtection("") == null) {
+            log.warn("Database integrity protection is not enabled for the audit log, so the audit log verification checkpoint is not kept in "
+                    + file.getCanonicalPath());
+            this.file = null;
+            return;
+        }
+        this.file = file;
+        if (file != null && file.exists()) {
+            final Properties loaded = new Properties();
+            try (final InputStream is = new FileInputStream(file)) {
+                loaded.load(is);
+            }
+            final String protection = (String) loaded.remove(PROTECTION);
+            final String expected = calculateProtection(getProtectString(loaded));
+            if (protection != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), protection.getBytes(StandardCharsets.UTF_8))) {
+                positions.putAll(loaded);
+                log.info("Resuming audit log verification from checkpoint file " + file.getCanonicalPath());
+            } else {
+                log.error("Audit log verification checkpoint file " + file.getCanonicalPath() + " could not be authenticated. Verifying from the beginning.");
+            }
+        }
+    }
+
+    /** @return the sequence number of the last verified record of the node, or -1 if the node has not been verified */
+    public synchronized long getLastSequenceNumber(final String nodeId) {
+        return Long.parseLong(positions.getProperty(nodeId + SEQUENCE_NUMBER_SUFFIX, "-1"));
+    }
+
+    /** @return the errors found on the node up to the last verified record */
+    public synchronized List<AuditLogReportElem> getErrors(final String nodeId) {
+        return getProblems(nodeId + ERROR_INFIX);
+    }
+
+    /** @return the warnings found on the node up to the last verified record */
+    public synchronized List<AuditLogReportElem> getWarnings(final String nodeId) {
+        return getProblems(nodeId + WARNING_INFIX);
+    }
+
+    /**
+     * @param nodeId the node identifier
+     * @param lastSequenceNumber the sequence number of the last verified record of the node
+     * @param nodeReport the problems found on the node up to and including this record
+     * @throws IOException if the checkpoint file could not be written
+     */
+    public synchronized void update(final String nodeId, final long lastSequenceNumber, final AuditLogValidationReport nodeReport) throws IOException {
+        positions.setProperty(nodeId + SEQUENCE_NUMBER_SUFFIX, String.valueOf(lastSequenceNumber));
+        setProblems(nodeId + ERROR_INFIX, nodeReport.errors());
+        setProblems(nodeId + WARNING_INFIX, nodeReport.warnings());
+        if (file != null) {
+            final Properties protectedPositions = new Properties();
+            protectedPositions.putAll(positions);
+            protectedPositions.setProperty(PROTECTION, calculateProtection(getProtectString(positions)));
+            // Write to a temporary file first, so an interruption never leaves a truncated checkpoint
+            final File tmpFile = new File(file.getPath() + ".tmp");
+            try (final OutputStream os = new FileOutputStream(tmpFile)) {
+                protectedPositions.store(os, "Audit log verification checkpoint");
+            }
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException("Unable to write audit log verification checkpoint to " + file.getCanonicalPath());
+            }
+        }
+    }
+
+    /** Removes the checkpoint file, since the verification has completed. */
+    public synchronized void completed() {
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("Unable to remove audit log verification checkpoint file " + file.getPath());
+        }
+    }
+
+    /**
+     * Calculates the protection of the checkpoint with the database integrity protection key of the audit log.
+     * @return the protection, or null if database integrity protection is not available
+     * @throws IOException if the protection could not be calculated
+     */
+    protected String calculateProtection(final String protectString) throws IOException {
+        try {
+            return new CheckpointProtection(protectString).calculateProtection();
+        } catch (DatabaseProtectionException e) {
+            throw new IOException("Unable to protect audit log verification checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    private List<AuditLogReportElem> getProblems(final String prefix) {
+        final List<AuditLogReportElem> ret = new ArrayList<>();
+        for (int i = 0; positions.containsKey(prefix + i + ".first"); i++) {
+            final List<String> reasons = new ArrayList<>();
+            for (int j = 0; positions.containsKey(prefix + i + ".reason." + j); j++) {
+                reasons.add(positions.getProperty(prefix + i + ".reason." + j));
+            }
+            ret.add(new AuditLogReportElem(Long.valueOf(positions.getProperty(prefix + i + ".first")), Long.valueOf(positions.getProperty(prefix + i + ".second")),
+                    reasons));
+        }
+        return ret;
+    }
+
+    private void setProblems(final String prefix, final List<AuditLogReportElem> problems) {
+        for (int i = 0; i < problems.size(); i++) {
+            final AuditLogReportElem problem = problems.get(i);
+            positions.setProperty(prefix + i + ".first", String.valueOf(problem.getFirst()));
+            positions.setProperty(prefix + i + ".second", String.valueOf(problem.getSecond()));
+            for (int j = 0; j < problem.getReasons().size(); j++) {
+                positions.setProperty(prefix + i + ".reason." + j, problem.getReasons().get(j));
+            }
+        }
+    }
+
+    /** @return the entries of the checkpoint in a well defined order */
+    private static String getProtectString(final Properties properties) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String key : new TreeSet<>(properties.stringPropertyNames())) {
+            sb.append(key.length()).append(':').append(key).append(properties.getProperty(key).length()).append(':').append(properties.getProperty(key));
+        }
+        return sb.toString();
+    }
+
+    /** Protects the checkpoint in the same way as the records of the audit log, using the key configured for the AuditRecordData table. */
+    private static class CheckpointProtection extends ProtectedData {
+        private final String protectString;
+
+        private CheckpointProtection(final String protectString) {
+            this.protectString = protectString;
+        }
+
+        @Override
+        protected String getProtectString(final int rowversion) {
+            return protectString;
+        }
+
+        @Override
+        protected int getProtectVersion() {
+            return 1;
+        }
+
+        @Override
+        public void setRowProtection(final String rowProtection) {
+            // The protection is stored in the checkpoint file
+        }
+
+        @Override
+        public String getRowProtection() {
+            return null;
+        }
+
+        @Override
+        protected String getRowId() {
+            return AuditLogCheckpoint.class.getSimpleName();
+        }
+
+        @Override
+        protected String getTableName() {
+            return AuditRecordData.class.getSimpleName();
+        }
+    }
+}
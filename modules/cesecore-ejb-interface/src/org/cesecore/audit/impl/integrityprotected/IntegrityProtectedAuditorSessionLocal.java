@@ -12,12 +12,15 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
 import org.cesecore.audit.Auditable;
+import org.cesecore.audit.audit.AuditLogValidationReport;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 
@@ -39,4 +42,11 @@ public interface IntegrityProtectedAuditorSessionLocal extends Auditable {
 	 * @throws AuthorizationDeniedException unless token has StandardRules.AUDITLOGEXPORT rights
 	 */
 	int deleteRows(AuthenticationToken token, Date timestamp, Properties properties) throws AuthorizationDeniedException;
+
+	/**
+	 * Internal method used for parallel validation, do not use. Asynchronously validates the log of a single node up to the specified time.
+	 * @param checkpoint where to start and where to record the progress of the node
+	 * @return the problems found on the node
+	 */
+	Future<AuditLogValidationReport> verifyNodeLogsIntegrity(String nodeId, Date timestamp, int fetchSize, AuditLogCheckpoint checkpoint) throws IOException;
 }
@@ -33,6 +33,9 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     /** @return the found entity instance or null if the entity does not exist */
     CertificateData findByFingerprint(String fingerprint);
 
+    /** @return the entities found for the given fingerprints in a single query, entities that do not exist are not returned */
+    List<CertificateData> findByFingerprints(Collection<String> fingerprints);
+
     /** @return return the query results as a Set. */
     Set<String> findUsernamesBySubjectDNAndIssuerDN(String subjectDN, String issuerDN);
     
@@ -45,6 +48,19 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     /** @return return the query results as a List. */
     List<CertificateData> findByIssuerDNSerialNumber(String issuerDN, String serialNumber);
 
+    /** @return return the query results as a List, for all the given serial numbers (as decimal strings) in a single query. */
+    List<CertificateData> findByIssuerDNSerialNumbers(String issuerDN, Collection<String> serialNumbers);
+
+    /**
+     * Get the status columns of the certificates of an issuer, ordered by serial number, for loading the revocation status index.
+     * 
+     * @param issuerDN the issuer DN, BC normalized
+     * @param afterSerialNumber only return certificates with a serial number (as decimal string) after this one, or null to start from the beginning
+     * @param maxResults the maximum number of rows to return
+     * @return rows of serialNumber (String), status (Integer), revocationDate (Long), revocationReason (Integer) and certificateProfileId (Integer)
+     */
+    List<Object[]> findRevocationStatusData(String issuerDN, String afterSerialNumber, int maxResults);
+
     /** @return return the query results as a List. */
     CertificateInfo findFirstCertificateInfo(String issuerDN, String serialNumber);
     
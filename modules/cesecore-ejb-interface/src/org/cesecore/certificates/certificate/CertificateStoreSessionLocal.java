@@ -17,6 +17,8 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.ejb.Local;
 
@@ -40,6 +42,26 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     CertificateInfo findFirstCertificateInfo(String issuerDN, BigInteger serno);
 
+    /**
+     * Get the status of several certificates from the same issuer using a single database query. Used when
+     * answering OCSP requests with multiple CertIDs.
+     *
+     * @param issuerDN issuer DN of the certificates
+     * @param sernos serial numbers of the certificates
+     * @return a map from each of the given serial numbers to the status of the certificate, which is CertificateStatus.NOT_AVAILABLE for
+     *      unknown certificates. If there are multiple certificates with the same serial number, the first one found is used, like in getStatus.
+     */
+    Map<BigInteger, CertificateStatus> getStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /**
+     * Load or reload the in-memory revocation status index of a CA from the database. After this, getStatus and getStatuses will answer
+     * from memory for this CA, if the index is enabled with ocsp.revocationindex.enabled, until the index is older than twice
+     * ocsp.revocationindex.reloadtime. Does nothing if the index of the CA is already being loaded.
+     * 
+     * @param issuerDN subject DN of the CA
+     */
+    void loadRevocationStatusIndex(String issuerDN);
+
     /**
      * Stores a certificate.
      * 
@@ -85,6 +107,12 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     CertificateDataWrapper getCertificateData(final String fingerprint);
 
+    /**
+     * Retrieve the full wrapped CertificateData and Base64CertData objects for a number of certificates, using a single query per table.
+     * @return map of fingerprint to certificate, fingerprints for which no data exists are not included
+     */
+    Map<String, CertificateDataWrapper> getCertificateDatas(final Collection<String> fingerprints);
+
     /**
      * Update the base64cert column if the database row exists, but the column is empty.
      * @return true if the column was empty and is now populated.
@@ -257,6 +285,14 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     boolean existsByIssuerAndSerno(String issuerDN, BigInteger serno);
 
+    /** Method for checking in bulk which of the given serial numbers are already used for certificates issued by issuerDN.
+     * 
+     * @param issuerDN issuer DN of the certificates.
+     * @param sernos serial numbers to check.
+     * @return the serial numbers that are used by a certificate, never null
+     */
+    Set<BigInteger> getExistingSernos(String issuerDN, Collection<BigInteger> sernos);
+
     /** Gets the status of the certificate, or -1 if the certificate does not exist. 
      * If more than one certificate exists with the issuerDN/serialNumber, the first one is returned.
      * This query performs limited database read and thus will not verify database integrity protection.
@@ -15,6 +15,7 @@ package org.cesecore.profiles;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.Local;
 
@@ -88,4 +89,12 @@ public interface ProfileSessionLocal {
      */
     List<ProfileData> findByNameAndType(final String name, final String type);
 
+    /**
+     * Reads the row versions of all profiles of a type, which is much cheaper than reading the profiles themselves.
+     * 
+     * @param profileType the profile type
+     * @return map of profile id to row version
+     */
+    Map<Integer, Integer> getRowVersions(final String profileType);
+
 }
@@ -0,0 +1,225 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of grouping concurrently logged audit records into batches.
+ *
+ * @version $Id$
+ */
+public class GroupCommitQueueTest {
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>(10);
+        final TestWriter writer = new TestWriter();
+        final Future<Boolean> first = log(queue, writer, 0);
+        writer.started.acquire();
+        // The rest of the records are logged while the first batch is being written
+        final List<Future<Boolean>> others = new ArrayList<>();
+        for (int i = 1; i < 15; i++) {
+            others.add(log(queue, writer, i));
+        }
+        waitForOpenBatchSize(queue, 10);
+        writer.release.release();
+        assertTrue(first.get());
+        // The records that did not fit in the second batch are logged while it is being written
+        writer.started.acquire();
+        waitForOpenBatchSize(queue, 4);
+        writer.release.release(2);
+        for (final Future<Boolean> future : others) {
+            assertTrue("Record should have been committed in a batch.", future.get());
+        }
+        assertEquals("Wrong number of transactions.", 3, writer.batches.size());
+        assertEquals(Arrays.asList(0), writer.batches.get(0));
+        assertEquals("Batch size limit was not respected.", 10, writer.batches.get(1).size());
+        assertEquals(4, writer.batches.get(2).size());
+        final Set<Integer> written = new HashSet<>();
+        for (final List<Integer> batch : writer.batches) {
+            written.addAll(batch);
+        }
+        assertEquals("All records should have been written once.", 15, written.size());
+    }
+
+    @Test
+    public void testFailedRecordInBatch() throws Exception {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>(10);
+        final TestWriter writer = new TestWriter();
+        writer.badRecords.add(3);
+        final Future<Boolean> first = log(queue, writer, 0);
+        writer.started.acquire();
+        final List<Future<Boolean>> others = new ArrayList<>();
+        for (int i = 1; i < 6; i++) {
+            others.add(log(queue, writer, i));
+        }
+        waitForOpenBatchSize(queue, 5);
+        writer.release.release(100);
+        assertTrue(first.get());
+        assertWriterFailedOthersRetried(others);
+        assertEquals("The failed batch should not have been written.", 1, writer.batches.size());
+        // The queue should still work
+        assertTrue(log(queue, writer, 6).get());
+    }
+
+    @Test
+    public void testRolledBackBatch() throws Exception {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>(10);
+        final TestWriter writer = new TestWriter();
+        writer.rollbackRecords.add(2);
+        final Future<Boolean> first = log(queue, writer, 0);
+        writer.started.acquire();
+        final List<Future<Boolean>> others = new ArrayList<>();
+        for (int i = 1; i < 4; i++) {
+            others.add(log(queue, writer, i));
+        }
+        waitForOpenBatchSize(queue, 3);
+        writer.release.release(100);
+        assertTrue(first.get());
+        // The writer of the batch returns true since its record is in its own transaction, which then rolls back
+        int retried = 0;
+        for (final Future<Boolean> future : others) {
+            if (!future.get()) {
+                retried++;
+            }
+        }
+        assertEquals("Records waiting for a rolled back batch should be written separately.", 2, retried);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final GroupCommitQueue<Integer> queue = new GroupCommitQueue<>(10);
+        final TestWriter writer = new TestWriter();
+        final Future<Boolean> first = log(queue, writer, 0);
+        writer.started.acquire();
+        try {
+            queue.submit(1, writer, 100);
+            fail("Should time out while the first batch is being written.");
+        } catch (AuditRecordStorageException e) {
+            // Expected
+        }
+        assertEquals("Record that timed out should not be written later.", 0, queue.getOpenBatchSize());
+        writer.release.release(100);
+        assertTrue(first.get());
+        assertEquals(1, writer.batches.size());
+    }
+
+    private void assertWriterFailedOthersRetried(final List<Future<Boolean>> futures) throws InterruptedException {
+        int failed = 0;
+        for (final Future<Boolean> future : futures) {
+            try {
+                assertFalse("Record should be written separately when the batch fails.", future.get());
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AuditRecordStorageException);
+                failed++;
+            }
+        }
+        assertEquals("Only the writer of the failed batch should fail.", 1, failed);
+    }
+
+    private void waitForOpenBatchSize(final GroupCommitQueue<Integer> queue, final int size) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (queue.getOpenBatchSize() < size) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Records were not added to the open batch.");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /** Logs a record on another thread, and completes the "transaction" of the thread after the record was submitted, like the logger session bean */
+    private Future<Boolean> log(final GroupCommitQueue<Integer> queue, final TestWriter writer, final int record) {
+        return executorService.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    return queue.submit(record, writer, 10000);
+                } finally {
+                    writer.completeTransaction();
+                }
+            }
+        });
+    }
+
+    /** Writes batches, where each batch waits until released, and the transaction is completed by {@link #completeTransaction()} */
+    private static class TestWriter implements GroupCommitQueue.BatchWriter<Integer> {
+        final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        final Set<Integer> badRecords = Collections.synchronizedSet(new HashSet<Integer>());
+        final Set<Integer> rollbackRecords = Collections.synchronizedSet(new HashSet<Integer>());
+        final Semaphore started = new Semaphore(0);
+        final Semaphore release = new Semaphore(0);
+        private final ThreadLocal<GroupCommitQueue.Batch<Integer>> transactionBatch = new ThreadLocal<>();
+        private final ThreadLocal<List<Integer>> transactionRecords = new ThreadLocal<>();
+
+        @Override
+        public void write(final List<Integer> records, final GroupCommitQueue.Batch<Integer> batch) throws Exception {
+            transactionBatch.set(batch);
+            transactionRecords.set(new ArrayList<>(records));
+            started.release();
+            release.acquire();
+            for (final Integer record : records) {
+                if (badRecords.contains(record)) {
+                    throw new IllegalStateException("Bad record " + record);
+                }
+            }
+        }
+
+        void completeTransaction() {
+            final GroupCommitQueue.Batch<Integer> batch = transactionBatch.get();
+            if (batch != null) {
+                final List<Integer> records = transactionRecords.get();
+                final boolean committed = Collections.disjoint(records, badRecords) && Collections.disjoint(records, rollbackRecords);
+                if (committed) {
+                    batches.add(records);
+                }
+                batch.completed(committed);
+                transactionBatch.remove();
+                transactionRecords.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.authorization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.junit.Test;
+
+/**
+ * Test of the coalescing of access control audit records within a transaction.
+ *
+ * @version $Id$
+ */
+public class AccessControlAuditCollectorTest {
+
+    private static class TestAuditWriter implements AccessControlAuditCollector.AuditWriter {
+        final List<String> authTokens = new ArrayList<>();
+        final List<Map<String, Object>> details = new ArrayList<>();
+        boolean fail = false;
+
+        @Override
+        public void write(final String authToken, final Map<String, Object> details) throws AuditRecordStorageException {
+            if (fail) {
+                throw new AuditRecordStorageException("Audit log is full");
+            }
+            this.authTokens.add(authToken);
+            this.details.add(details);
+        }
+    }
+
+    @Test
+    public void testCoalescedRecords() {
+        final TestAuditWriter auditWriter = new TestAuditWriter();
+        final AccessControlAuditCollector collector = new AccessControlAuditCollector(auditWriter);
+        collector.add("admin1", Arrays.asList("/ca/1", "/ra_functionality/create_end_entity"));
+        collector.add("admin2", Arrays.asList("/administrator"));
+        collector.add("admin1", Arrays.asList("/ca/1", "/endentityprofilesrules/2/create_end_entity"));
+        assertEquals("Nothing should be written before the transaction completes.", 0, auditWriter.authTokens.size());
+        collector.beforeCompletion();
+        collector.afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals("There should be one record per authentication token.", Arrays.asList("admin1", "admin2"), auditWriter.authTokens);
+        final Map<String, Object> details = auditWriter.details.get(0);
+        assertEquals("/ca/1", details.get("resource0"));
+        assertEquals("/ra_functionality/create_end_entity", details.get("resource1"));
+        assertEquals("/endentityprofilesrules/2/create_end_entity", details.get("resource2"));
+        assertEquals(Integer.valueOf(2), details.get("checks"));
+        assertEquals(4, details.size());
+    }
+
+    @Test
+    public void testRollback() {
+        final TestAuditWriter auditWriter = new TestAuditWriter();
+        final AccessControlAuditCollector collector = new AccessControlAuditCollector(auditWriter);
+        collector.add("admin1", Arrays.asList("/ca/1"));
+        // beforeCompletion is not invoked for transactions that are rolled back
+        collector.afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertEquals("Records should be written after a rollback.", Arrays.asList("admin1"), auditWriter.authTokens);
+        assertEquals("/ca/1", auditWriter.details.get(0).get("resource0"));
+        // A failure to write after the rollback is only logged, since the operation has already failed
+        final TestAuditWriter rollbackFailingWriter = new TestAuditWriter();
+        rollbackFailingWriter.fail = true;
+        final AccessControlAuditCollector rollbackFailingCollector = new AccessControlAuditCollector(rollbackFailingWriter);
+        rollbackFailingCollector.add("admin1", Arrays.asList("/ca/1"));
+        rollbackFailingCollector.afterCompletion(Status.STATUS_ROLLEDBACK);
+        final TestAuditWriter failingWriter = new TestAuditWriter();
+        failingWriter.fail = true;
+        final AccessControlAuditCollector failingCollector = new AccessControlAuditCollector(failingWriter);
+        failingCollector.add("admin1", Arrays.asList("/ca/1"));
+        try {
+            failingCollector.beforeCompletion();
+            fail("Failure to write the audit record should roll back the transaction.");
+        } catch (AuditRecordStorageException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRollbackAfterPartialWrite() {
+        final List<String> failTokens = new ArrayList<>(Arrays.asList("admin2"));
+        final List<String> written = new ArrayList<>();
+        final AccessControlAuditCollector collector = new AccessControlAuditCollector(new AccessControlAuditCollector.AuditWriter() {
+            @Override
+            public void write(final String authToken, final Map<String, Object> details) throws AuditRecordStorageException {
+                if (failTokens.remove(authToken)) {
+                    throw new AuditRecordStorageException("Audit log is unavailable");
+                }
+                written.add(authToken);
+            }
+        });
+        collector.add("admin1", Arrays.asList("/ca/1"));
+        collector.add("admin2", Arrays.asList("/ca/2"));
+        try {
+            collector.beforeCompletion();
+            fail("Failure to write the audit record should roll back the transaction.");
+        } catch (AuditRecordStorageException e) {
+            // Expected
+        }
+        collector.afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertEquals("Each record should be written exactly once.", Arrays.asList("admin1", "admin2"), written);
+    }
+}
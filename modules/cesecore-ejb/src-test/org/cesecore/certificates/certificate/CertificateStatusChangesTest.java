@@ -0,0 +1,107 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.RevocationStatusIndex;
+import org.junit.Test;
+
+/**
+ * Test that certificate status changes are applied to the in-memory caches only after commit.
+ *
+ * @version $Id$
+ */
+public class CertificateStatusChangesTest {
+
+    private static final String ISSUER_DN = "CN=CertificateStatusChangesTest";
+
+    /** Registry of a single active transaction */
+    private static class TestRegistry implements TransactionSynchronizationRegistry {
+        final Map<Object, Object> resources = new HashMap<>();
+        Synchronization synchronization;
+
+        @Override
+        public Object getTransactionKey() { return this; }
+        @Override
+        public void putResource(final Object key, final Object value) { resources.put(key, value); }
+        @Override
+        public Object getResource(final Object key) { return resources.get(key); }
+        @Override
+        public void registerInterposedSynchronization(final Synchronization sync) { synchronization = sync; }
+        @Override
+        public int getTransactionStatus() { return Status.STATUS_ACTIVE; }
+        @Override
+        public void setRollbackOnly() { }
+        @Override
+        public boolean getRollbackOnly() { return false; }
+    }
+
+    @Test
+    public void testInvalidationAfterCommit() {
+        final TestRegistry registry = new TestRegistry();
+        long version = OcspResponseCache.INSTANCE.getVersion();
+        CertificateStatusChanges.getInstance(registry).invalidateOcspResponses(ISSUER_DN, BigInteger.ONE);
+        CertificateStatusChanges.getInstance(registry).invalidateOcspResponses(ISSUER_DN, BigInteger.TEN);
+        assertEquals("Cached responses should not be invalidated before commit.", version, OcspResponseCache.INSTANCE.getVersion());
+        registry.synchronization.beforeCompletion();
+        assertEquals("Cached responses should not be invalidated before commit.", version, OcspResponseCache.INSTANCE.getVersion());
+        registry.synchronization.afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals("Both certificates should have been invalidated.", version + 2, OcspResponseCache.INSTANCE.getVersion());
+        // Without a transaction the changes are applied immediately
+        version = OcspResponseCache.INSTANCE.getVersion();
+        CertificateStatusChanges.getInstance(null).flushOcspResponses();
+        assertTrue(OcspResponseCache.INSTANCE.getVersion() > version);
+    }
+
+    @Test
+    public void testRollback() {
+        final RevocationStatusIndex.Loader loader = RevocationStatusIndex.INSTANCE.startLoading(ISSUER_DN, 60000L);
+        loader.add(BigInteger.ONE, CertificateStatus.REVOKED);
+        loader.finish();
+        try {
+            final TestRegistry registry = new TestRegistry();
+            final long version = OcspResponseCache.INSTANCE.getVersion();
+            CertificateStatusChanges.getInstance(registry).flushOcspResponses();
+            // Store of a new certificate and unrevocation of a revoked certificate that are rolled back
+            final CertificateStatus good = new CertificateStatus(CertificateStatus.OK.toString(), -1L, RevokedCertInfo.NOT_REVOKED, 0);
+            CertificateStatusChanges.getInstance(registry).updateRevocationStatusIndex(ISSUER_DN, BigInteger.TEN, good);
+            CertificateStatusChanges.getInstance(registry).updateRevocationStatusIndex(ISSUER_DN, BigInteger.ONE, good);
+            assertNull(RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.TEN));
+            registry.synchronization.afterCompletion(Status.STATUS_ROLLEDBACK);
+            assertEquals("Nothing should be applied after a rollback.", version, OcspResponseCache.INSTANCE.getVersion());
+            assertNull("Certificate that was never stored should not be in the index.", RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.TEN));
+            assertEquals(CertificateStatus.REVOKED, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+            // ..and the same changes committed
+            final TestRegistry committedRegistry = new TestRegistry();
+            CertificateStatusChanges.getInstance(committedRegistry).updateRevocationStatusIndex(ISSUER_DN, BigInteger.ONE, good);
+            assertEquals(CertificateStatus.REVOKED, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+            committedRegistry.synchronization.afterCompletion(Status.STATUS_COMMITTED);
+            assertEquals(CertificateStatus.OK, RevocationStatusIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE));
+        } finally {
+            RevocationStatusIndex.INSTANCE.flush();
+        }
+    }
+}
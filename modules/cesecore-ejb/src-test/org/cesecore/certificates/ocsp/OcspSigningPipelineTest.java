@@ -0,0 +1,138 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.cesecore.certificates.ocsp.exception.OcspSigningQueueFullException;
+import org.junit.Test;
+
+/**
+ * Tests the signing queue of an OCSP signer, without any actual signing.
+ *
+ * @version $Id$
+ */
+public class OcspSigningPipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /** Signing task that waits until the latch is released */
+    private static Callable<BasicOCSPResp> getBlockingTask(final CountDownLatch started, final CountDownLatch release) {
+        return new Callable<BasicOCSPResp>() {
+            @Override
+            public BasicOCSPResp call() throws Exception {
+                started.countDown();
+                assertTrue("Signing task was never released.", release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                return null;
+            }
+        };
+    }
+
+    /** Signing task that takes at least the given time */
+    private static Callable<BasicOCSPResp> getSleepingTask(final long millis) {
+        return new Callable<BasicOCSPResp>() {
+            @Override
+            public BasicOCSPResp call() throws Exception {
+                Thread.sleep(millis);
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        final OcspSigningPipeline pipeline = new OcspSigningPipeline("testQueueFull", 1, 1);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Future<BasicOCSPResp> signing = pipeline.submit(getBlockingTask(started, release));
+            assertTrue("Signing task was never started.", started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            final Future<BasicOCSPResp> queued = pipeline.submit(getBlockingTask(new CountDownLatch(1), release));
+            assertEquals(1, pipeline.getQueueDepth());
+            try {
+                pipeline.submit(getBlockingTask(new CountDownLatch(1), release));
+                fail("Response should be rejected when the queue is full.");
+            } catch (OcspSigningQueueFullException e) {
+                assertEquals("Signing queue of OCSP signer 'testQueueFull' is full (1 responses).", e.getMessage());
+            }
+            assertEquals(1, pipeline.getRejectedCount());
+            release.countDown();
+            assertNull(signing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertNull(queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(2, pipeline.getSignedCount());
+            assertEquals(0, pipeline.getQueueDepth());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void testLatencyAccounting() throws Exception {
+        final OcspSigningPipeline pipeline = new OcspSigningPipeline("testLatencyAccounting", 2, 10);
+        try {
+            assertEquals("Latency should be 0 when nothing has been signed.", 0, pipeline.getLatencyPercentile(50), 0);
+            final List<Future<BasicOCSPResp>> futures = new ArrayList<>();
+            for (int i = 1; i <= 4; i++) {
+                futures.add(pipeline.submit(getSleepingTask(i * 20)));
+            }
+            for (final Future<BasicOCSPResp> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            assertEquals(4, pipeline.getSignedCount());
+            assertEquals(0, pipeline.getRejectedCount());
+            // The percentiles are taken from the sorted latencies of the signing tasks only, not including the time spent in the queue
+            assertTrue("Lowest latency should be at least 20 ms.", pipeline.getLatencyPercentile(0) >= 20);
+            assertTrue("Median latency should be at least 40 ms.", pipeline.getLatencyPercentile(50) >= 40);
+            assertTrue("Highest latency should be at least 80 ms.", pipeline.getLatencyPercentile(100) >= 80);
+            assertTrue("Latency percentiles should be ordered.", pipeline.getLatencyPercentile(50) <= pipeline.getLatencyPercentile(99));
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final OcspSigningPipeline pipeline = new OcspSigningPipeline("testShutdown", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<BasicOCSPResp> signing = pipeline.submit(getBlockingTask(started, release));
+        assertTrue("Signing task was never started.", started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final Future<BasicOCSPResp> queued = pipeline.submit(getBlockingTask(new CountDownLatch(1), release));
+        pipeline.shutdown();
+        assertTrue(pipeline.isShutdown());
+        try {
+            pipeline.submit(getSleepingTask(0));
+            fail("Response should not be accepted by a pipeline that has been shut down.");
+        } catch (IllegalStateException e) {
+            assertEquals("Signing queue of OCSP signer 'testShutdown' has been shut down.", e.getMessage());
+        }
+        assertEquals("A pipeline that has been shut down should not report the response as rejected by a full queue.", 0,
+                pipeline.getRejectedCount());
+        // Responses already in the queue are still signed
+        release.countDown();
+        assertNull(signing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, pipeline.getSignedCount());
+    }
+}
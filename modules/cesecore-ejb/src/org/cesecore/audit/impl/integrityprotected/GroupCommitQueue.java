@@ -0,0 +1,179 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.log.AuditRecordStorageException;
+
+/**
+ * Groups audit records that are logged concurrently, so they can be written to the database in one transaction instead of one
+ * transaction per record ("group commit").
+ *
+ * There is no background thread. Records are added to an open batch of limited size. When no batch is being written, the first
+ * thread that finds its record in the open batch becomes the writer of the batch and writes all its records in its own transaction,
+ * while the other threads wait for that transaction to complete. Meanwhile, records logged by other threads are added to a new open
+ * batch, that is written when the previous transaction has completed.
+ *
+ * If a batch could not be committed, the threads that were waiting for it are told to write their records in their own transactions
+ * instead, so only a record that can not be written by itself fails (and leaves a gap in the sequence numbers).
+ *
+ * @version $Id$
+ */
+public class GroupCommitQueue<T> {
+
+    private static final Logger log = Logger.getLogger(GroupCommitQueue.class);
+
+    /** Writes the records of a batch in the transaction of the calling thread. */
+    public interface BatchWriter<T> {
+        /**
+         * Writes the records in the transaction of the calling thread. The implementation must make sure that
+         * {@link Batch#completed(boolean)} is called when the transaction has completed.
+         */
+        void write(List<T> records, Batch<T> batch) throws Exception;
+    }
+
+    /** A group of records written in the same transaction. */
+    public static class Batch<T> {
+        private final GroupCommitQueue<T> queue;
+        private final List<T> records = new ArrayList<>();
+        private boolean writing = false;
+        private boolean done = false;
+        private boolean committed = false;
+
+        private Batch(final GroupCommitQueue<T> queue) {
+            this.queue = queue;
+        }
+
+        public int size() {
+            return records.size();
+        }
+
+        /**
+         * Called when the transaction that wrote the batch has completed. Only the first call has any effect.
+         *
+         * @param committed true if the transaction was committed
+         */
+        public void completed(final boolean committed) {
+            queue.completed(this, committed);
+        }
+    }
+
+    private final int batchSize;
+    private Batch<T> openBatch = new Batch<>(this);
+    private Batch<T> writingBatch = null;
+
+    /** @param batchSize the maximum number of records written in one transaction */
+    public GroupCommitQueue(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds a record to the open batch, and waits until the batch has either been written by another thread, or the calling thread
+     * has been chosen to write it. In the latter case, the records of the batch are written with the batch writer before returning.
+     *
+     * @param record the record to write
+     * @param batchWriter used if the calling thread writes the batch
+     * @param timeoutMillis the maximum time to wait for room in a batch and for another thread to write the batch
+     * @return true if the record has been written (by the calling thread, in its transaction that has not yet been committed, or committed
+     *     by another thread), or false if the batch written by another thread failed and the caller should write the record by itself.
+     * @throws AuditRecordStorageException if the calling thread failed to write the batch, or the time to wait was exceeded
+     */
+    public boolean submit(final T record, final BatchWriter<T> batchWriter, final long timeoutMillis) throws AuditRecordStorageException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        final Batch<T> batch;
+        synchronized (this) {
+            while (openBatch.size() >= batchSize) {
+                waitUntil(deadline, "Timed out waiting for room in audit log group commit batch.");
+            }
+            batch = openBatch;
+            batch.records.add(record);
+            while (!batch.writing && writingBatch != null) {
+                try {
+                    waitUntil(deadline, "Timed out waiting for audit log group commit batch to be written.");
+                } catch (AuditRecordStorageException e) {
+                    if (!batch.writing) {
+                        // Don't leave the record to be written by someone else after reporting that logging failed
+                        batch.records.remove(record);
+                    }
+                    throw e;
+                }
+            }
+            if (!batch.writing) {
+                // Nobody is writing, so this thread writes the open batch, including the records added while the previous batch was written
+                batch.writing = true;
+                writingBatch = batch;
+                openBatch = new Batch<>(this);
+                notifyAll();
+            } else {
+                // Another thread is writing the batch
+                while (!batch.done) {
+                    waitUntil(deadline, "Timed out waiting for audit log group commit batch to be committed.");
+                }
+                if (!batch.committed && log.isDebugEnabled()) {
+                    log.debug("Audit log group commit batch of " + batch.size() + " records failed, writing the record in a separate transaction.");
+                }
+                return batch.committed;
+            }
+        }
+        // This thread writes the batch, outside of the lock so records can be added to the next batch meanwhile
+        try {
+            batchWriter.write(Collections.unmodifiableList(batch.records), batch);
+            if (log.isTraceEnabled()) {
+                log.trace("Wrote audit log group commit batch of " + batch.size() + " records.");
+            }
+            return true;
+        } catch (Exception e) {
+            batch.completed(false);
+            throw new AuditRecordStorageException(e.getMessage(), e);
+        }
+    }
+
+    private synchronized void completed(final Batch<T> batch, final boolean committed) {
+        if (!batch.done) {
+            batch.done = true;
+            batch.committed = committed;
+            if (writingBatch == batch) {
+                writingBatch = null;
+            }
+            notifyAll();
+        }
+    }
+
+    /** @return the number of records waiting for the batch that is being written to complete */
+    public synchronized int getOpenBatchSize() {
+        return openBatch.size();
+    }
+
+    /** @return true if this queue was created with the given batch size */
+    public boolean isConfiguredWith(final int batchSize) {
+        return this.batchSize == batchSize;
+    }
+
+    /** Waits for a change in the batches, or throws if the deadline has passed. Must be called holding the lock. */
+    private void waitUntil(final long deadline, final String timeoutMessage) throws AuditRecordStorageException {
+        final long timeLeft = deadline - System.currentTimeMillis();
+        if (timeLeft <= 0) {
+            throw new AuditRecordStorageException(timeoutMessage);
+        }
+        try {
+            wait(timeLeft);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuditRecordStorageException("Interrupted while waiting for audit log group commit.", e);
+        }
+    }
+}
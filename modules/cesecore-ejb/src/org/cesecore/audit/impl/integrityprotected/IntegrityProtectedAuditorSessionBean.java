@@ -14,15 +14,21 @@ package org.cesecore.audit.impl.integrityprotected;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
@@ -74,6 +80,8 @@ import org.cesecore.util.query.QueryGenerator;
 public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedAuditorSessionLocal {
 
 	private static final Logger log = Logger.getLogger(IntegrityProtectedAuditorSessionBean.class);
+	/** Number of processed records between progress messages */
+	private static final long PROGRESS_INTERVAL = 100000L;
 	
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -154,7 +162,10 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	public AuditLogValidationReport verifyLogsIntegrity(final AuthenticationToken token, final Date timestamp, final Properties properties) throws AuditLogValidatorException {
         final AuditLogValidationReport report = new AuditLogValidationReport();
         try {
-            verifyAndOptionalExport(null, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+            final AuditLogCheckpoint checkpoint = new AuditLogCheckpoint(AuditDevicesConfig.getAuditLogValidationCheckpointFile(properties));
+            verifyInParallel(report, timestamp, AuditDevicesConfig.getAuditLogValidationFetchSize(properties),
+                    AuditDevicesConfig.getAuditLogValidationThreads(properties), checkpoint);
+            checkpoint.completed();
         	// Log the success or failure depending on if verification returns error or not
         	logVerificationResult(report.errors().size(), timestamp, token);
         } catch (final Exception e) {
@@ -163,6 +174,70 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return report;
 	}
 
+	@Override
+	@Asynchronous
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public Future<AuditLogValidationReport> verifyNodeLogsIntegrity(final String nodeId, final Date timestamp, final int fetchSize,
+	        final AuditLogCheckpoint checkpoint) throws IOException {
+	    return new AsyncResult<AuditLogValidationReport>(verifyNode(nodeId, timestamp, fetchSize, checkpoint));
+	}
+
+	/**
+	 * Verify the log of each node, with up to the given number of nodes verified concurrently using asynchronous invocations.
+	 * The reports of the nodes are merged into the report, in the order of the nodes.
+	 */
+	private void verifyInParallel(final AuditLogValidationReport report, final Date timestamp, final int fetchSize, final int threads,
+	        final AuditLogCheckpoint checkpoint) throws Exception {
+	    final Deque<Future<AuditLogValidationReport>> pending = new ArrayDeque<>();
+	    for (final String nodeId : getNodeIds()) {
+	        if (threads <= 1) {
+	            addNodeReport(report, verifyNode(nodeId, timestamp, fetchSize, checkpoint));
+	            continue;
+	        }
+	        if (pending.size() >= threads) {
+	            // Wait for the oldest node before starting another one, so no more than "threads" nodes are verified at a time
+	            addNodeReport(report, getNodeReport(pending.removeFirst()));
+	        }
+	        pending.add(integrityProtectedAuditorSession.verifyNodeLogsIntegrity(nodeId, timestamp, fetchSize, checkpoint));
+	    }
+	    while (!pending.isEmpty()) {
+	        addNodeReport(report, getNodeReport(pending.removeFirst()));
+	    }
+	}
+
+	private AuditLogValidationReport getNodeReport(final Future<AuditLogValidationReport> future) throws Exception {
+	    try {
+	        return future.get();
+	    } catch (ExecutionException e) {
+	        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+	    }
+	}
+
+	private void addNodeReport(final AuditLogValidationReport report, final AuditLogValidationReport nodeReport) {
+	    // The problems have already been logged when they were added to the node report
+	    report.errors().addAll(nodeReport.errors());
+	    report.warnings().addAll(nodeReport.warnings());
+	}
+
+	/**
+	 * Verify the log of a single node, starting after the position in the checkpoint.
+	 * @return the problems found on the node, including those found before the position in the checkpoint
+	 */
+	private AuditLogValidationReport verifyNode(final String nodeId, final Date timestamp, final int fetchSize, final AuditLogCheckpoint checkpoint)
+	        throws IOException {
+	    final AuditLogValidationReport nodeReport = new AuditLogValidationReport();
+	    final long resumedAfterSeqNumber = checkpoint.getLastSequenceNumber(nodeId);
+	    // Problems found before the verification was interrupted are not lost when it is resumed
+	    nodeReport.errors().addAll(checkpoint.getErrors(nodeId));
+	    nodeReport.warnings().addAll(checkpoint.getWarnings(nodeId));
+	    verifyAndOptionalExportNode(null, nodeReport, nodeId, timestamp, fetchSize, checkpoint);
+	    if (resumedAfterSeqNumber != -1L) {
+	        nodeReport.warn(new AuditLogReportElem(Long.valueOf(0L), Long.valueOf(resumedAfterSeqNumber), "logs with sequence number 0 to "
+	                + resumedAfterSeqNumber + " on nodeId " + nodeId + " were verified by a previous, interrupted verification and not verified again"));
+	    }
+	    return nodeReport;
+	}
+
 	/**
 	 * Read batches of logs from the database. If the database integrity check fails, the batch will be processed row by row.
 	 * Results are added to the report.
@@ -173,59 +248,84 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	private void verifyAndOptionalExport(AuditExporter auditExporter, AuditLogValidationReport report, Date timestamp, final int fetchSize) throws IOException {
     	// Get a list of the nodes that have data in the database
     	for (final String nodeId : getNodeIds()) {
-    		if (log.isDebugEnabled()) {
-    			log.debug("exportAuditLogs for nodeId " + nodeId);
-    		}
-    		// Assuming timeStamp is in UTC
-    		final QueryCriteria queryCriteria = QueryCriteria.create().add((Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())))).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-    		int startIndex = 1;
-    		final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(-1L));
-    		while (true) {
-    			try {
-        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
-    				final int results = queryResult.size();
-    				if (results == 0) {
-    					break;	// No more data for this node
-    				}
-    				startIndex += results;
-					if (auditExporter!=null) {
-						for (final AuditRecordData auditRecordData : queryResult) {
-							writeToExport(auditExporter, auditRecordData);
-        					((AuditLogExportReport) report).incExportCount();
-						}
-					}
-    			} catch (DatabaseProtectionException e) {
-    				// One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
-    				for (int i=0; i<fetchSize; i++) {
-        				try {
-                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, 1, queryCriteria, report, lastSeqNumber, nodeId);
-            				final int results = queryResult.size();
-            				if (results != 1) {
-            					break;	// No more data for this node
-            				}
-        					if (auditExporter!=null) {
-        						writeToExport(auditExporter, queryResult.get(0));
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				} catch (DatabaseProtectionException e2) {
-        					final AuditRecordData auditRecordData = (AuditRecordData) e2.getEntity();
-        					// Add to report
-        					report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
-        					lastSeqNumber.set(auditRecordData.getSequenceNumber());
-        					// We still export it
-        					// TODO: It might make sense to make it configurable to export when verification fails..
-        					if (auditExporter!=null) {
-            					writeToExport(auditExporter, auditRecordData);
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				}
-        				startIndex += 1;
-    				}
-    			}
-    		}
+    	    verifyAndOptionalExportNode(auditExporter, report, nodeId, timestamp, fetchSize, null);
     	}
 	}
 
+	/**
+	 * Read batches of logs of a single node from the database, in sequence number order. Each batch is read from where the previous
+	 * batch ended (keyset pagination), so the cost of reading a batch does not grow with the position in the log.
+	 * If the database integrity check fails, the batch will be processed row by row. Results are added to the report.
+	 * @param auditExporter can be null if no export should take place
+	 * @param report is a AuditLogValidationReport or AuditLogExportReport
+	 * @param nodeId identifier of the node to process the log of
+	 * @param timestamp process all entries up until this time (should be epoch GMT)
+	 * @param checkpoint where to start and where to record the progress, or null to process the whole log of the node
+	 */
+	private void verifyAndOptionalExportNode(final AuditExporter auditExporter, final AuditLogValidationReport report, final String nodeId, final Date timestamp,
+	        final int fetchSize, final AuditLogCheckpoint checkpoint) throws IOException {
+	    if (log.isDebugEnabled()) {
+	        log.debug("exportAuditLogs for nodeId " + nodeId);
+	    }
+	    final long startTime = System.currentTimeMillis();
+	    final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(checkpoint == null ? -1L : checkpoint.getLastSequenceNumber(nodeId)));
+	    long processed = 0;
+	    long nextProgress = PROGRESS_INTERVAL;
+	    while (true) {
+	        try {
+	            final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(fetchSize, timestamp, report, lastSeqNumber, nodeId);
+	            final int results = queryResult.size();
+	            if (results == 0) {
+	                break;	// No more data for this node
+	            }
+	            processed += results;
+	            if (auditExporter!=null) {
+	                for (final AuditRecordData auditRecordData : queryResult) {
+	                    writeToExport(auditExporter, auditRecordData);
+	                    ((AuditLogExportReport) report).incExportCount();
+	                }
+	            }
+	        } catch (DatabaseProtectionException e) {
+	            // One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
+	            for (int i=0; i<fetchSize; i++) {
+	                try {
+	                    final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(1, timestamp, report, lastSeqNumber, nodeId);
+	                    final int results = queryResult.size();
+	                    if (results != 1) {
+	                        break;	// No more data for this node
+	                    }
+	                    if (auditExporter!=null) {
+	                        writeToExport(auditExporter, queryResult.get(0));
+	                        ((AuditLogExportReport) report).incExportCount();
+	                    }
+	                } catch (DatabaseProtectionException e2) {
+	                    final AuditRecordData auditRecordData = (AuditRecordData) e2.getEntity();
+	                    // Add to report
+	                    report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
+	                    lastSeqNumber.set(auditRecordData.getSequenceNumber());
+	                    // We still export it
+	                    // TODO: It might make sense to make it configurable to export when verification fails..
+	                    if (auditExporter!=null) {
+	                        writeToExport(auditExporter, auditRecordData);
+	                        ((AuditLogExportReport) report).incExportCount();
+	                    }
+	                }
+	                processed++;
+	            }
+	        }
+	        if (checkpoint != null) {
+	            checkpoint.update(nodeId, lastSeqNumber.get().longValue(), report);
+	        }
+	        if (processed >= nextProgress) {
+	            log.info("Processed " + processed + " audit log records of nodeId " + nodeId + ", up to sequence number " + lastSeqNumber.get() + ".");
+	            nextProgress += PROGRESS_INTERVAL;
+	        }
+	    }
+	    if (log.isDebugEnabled()) {
+	        log.debug("Processed " + processed + " audit log records of nodeId " + nodeId + " in " + (System.currentTimeMillis() - startTime) + " ms.");
+	    }
+	}
+
 	/** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
     private void writeToExport(final AuditExporter auditExporter, final AuditRecordData auditRecordData) throws IOException {
         auditExporter.writeStartObject();
@@ -249,17 +349,20 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     /**
      * Fetch a batch of log rows from the database (implying database integrity check) and verifies
      * that all sequence numbers are present.
-     * @param startIndex start batch from this position 
      * @param max entries per batch
-     * @param queryCriteria where clause
+     * @param timestamp fetch entries up until this time
      * @param report will be updated when a problem is found
-     * @param lastSeqNumber will be updated to the last sequence number processed in this subset
+     * @param lastSeqNumber the batch starts after this sequence number, and it will be updated to the last sequence number processed in this subset
      * @param nodeId identifier of which node that claims to have written this data
      * @return the log entries we fetched from the database so the caller may export these
      * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
      */
-	private List<AuditRecordData> verifyLogsIntegritySubset(final int startIndex, final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
-		final List<AuditRecordData> queryResult = internalSelectAuditLogs(startIndex, max, queryCriteria);	// Might throw DatabaseProtectionException
+	private List<AuditRecordData> verifyLogsIntegritySubset(final int max, final Date timestamp, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
+	    // Assuming timeStamp is in UTC
+	    final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId),
+	            Criteria.and(Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime()), Criteria.grt(AuditLogEntry.FIELD_SEQUENCENUMBER, lastSeqNumber.get()))))
+	            .add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
+		final List<AuditRecordData> queryResult = internalSelectAuditLogs(0, max, queryCriteria);	// Might throw DatabaseProtectionException
 		// Loop through results and verify that the sequence order is correct
 		for (int i=0; i<queryResult.size(); i++) {
 			final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
@@ -12,18 +12,25 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.log4j.Logger;
+import org.cesecore.audit.AuditDevicesConfig;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.enums.EventType;
 import org.cesecore.audit.enums.ModuleType;
@@ -46,10 +53,15 @@ import org.cesecore.util.QueryResultWrapper;
 public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLoggerSessionLocal {
 
     private static final Logger log = Logger.getLogger(IntegrityProtectedLoggerSessionBean.class);
+    private static final ReentrantLock groupCommitQueueLock = new ReentrantLock(false);
+    private static volatile GroupCommitQueue<AuditRecordData> groupCommitQueue = null;
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @PostConstruct
     public void postConstruct() {
         CryptoProviderTools.installBCProviderIfNotAvailable();
@@ -94,7 +106,15 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             final Long timeStamp = Long.valueOf(trustedTime.getTime().getTime());
             final AuditRecordData auditRecordData = new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, authToken,
                     service, module, customId, searchDetail1, searchDetail2, additionalDetails);
-            entityManager.persist(auditRecordData);
+            // With group commit, the record is written in this transaction together with concurrently logged records, or in the
+            // transaction of another invocation, which is waited for. If that transaction fails, the record is written here by itself.
+            if (!AuditDevicesConfig.isGroupCommitEnabled(properties)
+                    || !getGroupCommitQueue(properties).submit(auditRecordData, groupCommitWriter, AuditDevicesConfig.getGroupCommitTimeout(properties))) {
+                entityManager.persist(auditRecordData);
+            }
+        } catch (AuditRecordStorageException e) {
+            log.error(e.getMessage(), e);
+            throw e;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             throw new AuditRecordStorageException(e.getMessage(), e);
@@ -104,4 +124,46 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             }
         }
     }
+
+    /** Writes a group commit batch in the transaction of the log invocation that was chosen to write it. */
+    private final GroupCommitQueue.BatchWriter<AuditRecordData> groupCommitWriter = new GroupCommitQueue.BatchWriter<AuditRecordData>() {
+        @Override
+        public void write(final List<AuditRecordData> records, final GroupCommitQueue.Batch<AuditRecordData> batch) {
+            // Let the invocations waiting for the batch know the outcome when this transaction completes
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {}
+
+                @Override
+                public void afterCompletion(final int status) {
+                    batch.completed(status == Status.STATUS_COMMITTED);
+                }
+            });
+            for (final AuditRecordData auditRecordData : records) {
+                entityManager.persist(auditRecordData);
+            }
+            // Let the inserts be sent to the database together, and fail here instead of at commit if they can't be written
+            entityManager.flush();
+        }
+    };
+
+    /** @return the group commit queue, (re-)created if needed to match the current configuration */
+    private GroupCommitQueue<AuditRecordData> getGroupCommitQueue(final Properties properties) {
+        final int batchSize = AuditDevicesConfig.getGroupCommitBatchSize(properties);
+        GroupCommitQueue<AuditRecordData> ret = groupCommitQueue;
+        if (ret == null || !ret.isConfiguredWith(batchSize)) {
+            groupCommitQueueLock.lock();
+            try {
+                ret = groupCommitQueue;
+                if (ret == null || !ret.isConfiguredWith(batchSize)) {
+                    // Batches in the previous queue are still completed by their transactions
+                    ret = new GroupCommitQueue<>(batchSize);
+                    groupCommitQueue = ret;
+                }
+            } finally {
+                groupCommitQueueLock.unlock();
+            }
+        }
+        return ret;
+    }
 }
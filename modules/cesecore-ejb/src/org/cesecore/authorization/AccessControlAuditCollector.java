@@ -0,0 +1,114 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.authorization;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.log.AuditRecordStorageException;
+
+/**
+ * Collects the successful authorization checks made within one transaction, and writes them as a single access control
+ * audit record per authentication token when the transaction completes.
+ *
+ * Audit records are always persisted in a separate transaction by the audit logger, so the records written for each check are kept
+ * even if the transaction of the operation is rolled back. The coalesced records are therefore written on rollback too. They are
+ * written before the transaction commits, so a failure to write them rolls back the transaction, the same way as a failure to write
+ * an access control record immediately fails the operation. If the transaction is rolled back, the records that have not been
+ * written yet are written after the rollback instead.
+ *
+ * @version $Id$
+ */
+public class AccessControlAuditCollector implements Synchronization {
+
+    private static final Logger log = Logger.getLogger(AccessControlAuditCollector.class);
+
+    /** Writes an access control audit record */
+    public interface AuditWriter {
+        void write(String authToken, Map<String, Object> details) throws AuditRecordStorageException;
+    }
+
+    private final AuditWriter auditWriter;
+    /** Authorized resources by authentication token, in the order they were checked */
+    private final Map<String, Set<String>> resourcesByToken = new LinkedHashMap<>();
+    private final Map<String, Integer> checksByToken = new LinkedHashMap<>();
+
+    public AccessControlAuditCollector(final AuditWriter auditWriter) {
+        this.auditWriter = auditWriter;
+    }
+
+    /**
+     * Adds a successful authorization check.
+     *
+     * @param authToken the authentication token, as it is written to the audit log
+     * @param resources the resources the token was authorized to
+     */
+    public synchronized void add(final String authToken, final Collection<String> resources) {
+        Set<String> tokenResources = resourcesByToken.get(authToken);
+        if (tokenResources == null) {
+            tokenResources = new LinkedHashSet<>();
+            resourcesByToken.put(authToken, tokenResources);
+            checksByToken.put(authToken, 0);
+        }
+        tokenResources.addAll(resources);
+        checksByToken.put(authToken, checksByToken.get(authToken) + 1);
+    }
+
+    /** Writes one audit record per authentication token with all resources it was authorized to, unless it has already been written. */
+    public synchronized void write() throws AuditRecordStorageException {
+        int count = 0;
+        final Iterator<Map.Entry<String, Set<String>>> iterator = resourcesByToken.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Set<String>> entry = iterator.next();
+            final Map<String, Object> details = new LinkedHashMap<>();
+            int i = 0;
+            for (final String resource : entry.getValue()) {
+                details.put("resource" + i++, resource);
+            }
+            details.put("checks", checksByToken.get(entry.getKey()));
+            auditWriter.write(entry.getKey(), details);
+            // Each record is persisted by itself, so a failure must not write the records before it again
+            iterator.remove();
+            count++;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Wrote coalesced access control audit records for " + count + " authentication tokens.");
+        }
+    }
+
+    @Override
+    public void beforeCompletion() {
+        // Throwing here rolls back the transaction
+        write();
+    }
+
+    @Override
+    public void afterCompletion(final int status) {
+        if (status != Status.STATUS_COMMITTED) {
+            // beforeCompletion is not invoked for transactions that are rolled back, and the audit logger writes in a new transaction
+            try {
+                write();
+            } catch (RuntimeException e) {
+                log.error("Failed to write access control audit records after transaction rollback: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -31,6 +31,8 @@ import javax.ejb.TimerConfig;
 import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -81,6 +83,8 @@ public class AuthorizationSessionBean implements AuthorizationSessionLocal, Auth
 
     @Resource
     private SessionContext sessionContext;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
     private TimerService timerService; // When the sessionContext is injected, the timerService should be looked up.
     private AuthorizationSessionLocal authorizationSession;
 
@@ -128,12 +132,14 @@ public class AuthorizationSessionBean implements AuthorizationSessionLocal, Auth
         try {
             final HashMap<String, Boolean> accessRules = getAccessAvailableToAuthenticationToken(authenticationToken);
             final Map<String, Object> details = doLogging ? new LinkedHashMap<String, Object>() : null;
+            final List<String> authorizedResources = doLogging ? new ArrayList<String>(resources.length) : null;
             for (int i=0; i<resources.length; i++) {
                 final String resource = resources[i];
                 final boolean authorizedToResource = AccessRulesHelper.hasAccessToResource(accessRules, resource);
                 if (authorizedToResource) {
                     if (doLogging) {
                         details.put("resource"+i, resource);
+                        authorizedResources.add(resource);
                     }
                 } else {
                     // At least log failed authorization attempts as INFO, even though CC does not require any sec audit
@@ -150,7 +156,7 @@ public class AuthorizationSessionBean implements AuthorizationSessionLocal, Auth
                     return false;
                 }
             }
-            if (doLogging) {
+            if (doLogging && !addToCoalescedAudit(authenticationToken, authorizedResources)) {
                 internalSecurityEventsLoggerSession.log(getTrustedTime(), EventTypes.ACCESS_CONTROL, EventStatus.SUCCESS, ModuleTypes.ACCESSCONTROL,
                         ServiceTypes.CORE, authenticationToken.toString(), null, null, null, details);
             }
@@ -286,6 +292,45 @@ public class AuthorizationSessionBean implements AuthorizationSessionLocal, Auth
         return accessRules;
     }
 
+    /**
+     * Adds a successful authorization check to the access control audit record of the current transaction, if coalescing of access control
+     * audit records is enabled and there is an active transaction.
+     *
+     * @return true if the check will be audit logged when the transaction completes, false if it should be logged now
+     */
+    private boolean addToCoalescedAudit(final AuthenticationToken authenticationToken, final List<String> authorizedResources) {
+        if (!CesecoreConfiguration.isCoalesceAccessControlAuditEvents() || transactionSynchronizationRegistry == null
+                || transactionSynchronizationRegistry.getTransactionKey() == null
+                || transactionSynchronizationRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            return false;
+        }
+        AccessControlAuditCollector collector = (AccessControlAuditCollector) transactionSynchronizationRegistry.getResource(AccessControlAuditCollector.class);
+        if (collector == null) {
+            // The collector writes when the transaction completes, after this bean instance may have been returned to the pool, so only the
+            // (thread safe) EJB references are used
+            final InternalSecurityEventsLoggerSessionLocal auditSession = internalSecurityEventsLoggerSession;
+            final TrustedTimeWatcherSessionLocal trustedTimeSession = trustedTimeWatcherSession;
+            collector = new AccessControlAuditCollector(new AccessControlAuditCollector.AuditWriter() {
+                @Override
+                public void write(final String authToken, final Map<String, Object> details) throws AuditRecordStorageException {
+                    final TrustedTime trustedTime;
+                    try {
+                        trustedTime = trustedTimeSession.getTrustedTime(false);
+                    } catch (TrustedTimeProviderException e) {
+                        log.error(e.getMessage(), e);
+                        throw new AuditRecordStorageException(e.getMessage(), e);
+                    }
+                    auditSession.log(trustedTime, EventTypes.ACCESS_CONTROL, EventStatus.SUCCESS, ModuleTypes.ACCESSCONTROL, ServiceTypes.CORE, authToken,
+                            null, null, null, details);
+                }
+            });
+            transactionSynchronizationRegistry.putResource(AccessControlAuditCollector.class, collector);
+            transactionSynchronizationRegistry.registerInterposedSynchronization(collector);
+        }
+        collector.add(authenticationToken.toString(), authorizedResources);
+        return true;
+    }
+
     /** @return the trusted time requires for audit logging */
     private TrustedTime getTrustedTime() throws AuditRecordStorageException {
         try {
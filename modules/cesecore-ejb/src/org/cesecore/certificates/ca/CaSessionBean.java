@@ -61,6 +61,7 @@ import org.cesecore.certificates.certificate.CertificateWrapper;
 import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
+import org.cesecore.internal.CommonCacheBase;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.internal.UpgradeableDataHashMap;
 import org.cesecore.jndi.JndiConstants;
@@ -797,6 +798,19 @@ public class CaSessionBean implements CaSessionLocal, CaSessionRemote {
         return ret;
     }
 
+    /** Reads the row versions of all CAs, used for detecting which cached CAs have been changed on any node */
+    private final CommonCacheBase.VersionSource caVersionSource = new CommonCacheBase.VersionSource() {
+        @Override
+        public Map<Integer, Integer> getVersions() {
+            final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.caId, a.rowVersion FROM CAData a", Object[].class);
+            final Map<Integer, Integer> ret = new HashMap<>();
+            for (final Object[] row : query.getResultList()) {
+                ret.put((Integer) row[0], (Integer) row[1]);
+            }
+            return ret;
+        }
+    };
+
     /** @return the CA object, from the database (including any upgrades) is necessary */
     private CACommon getCa(int caId) {
         final Integer realCAId = CACacheHelper.getCaCertHash(Integer.valueOf(caId));
@@ -804,8 +818,8 @@ public class CaSessionBean implements CaSessionLocal, CaSessionRemote {
             // Since we have found a cached "real" CA Id and the cache will use this one (if cached)
             caId = realCAId.intValue();
         }
-        // 1. Check (new) CaCache if it is time to sync-up with database
-        if (CaCache.INSTANCE.shouldCheckForUpdates(caId)) {
+        // 1. Check (new) CaCache if it is time to sync-up with database, which is only needed if the CA has been changed
+        if (CaCache.INSTANCE.shouldCheckForUpdates(caId, caVersionSource)) {
             log.debug("CA with ID " + caId + " will be checked for updates.");
             // 2. If cache is expired or missing, first thread to discover this reloads item from database and sends it to the cache         
             CAData caData = getCAData(caId, null);
@@ -816,7 +830,7 @@ public class CaSessionBean implements CaSessionLocal, CaSessionRemote {
                 CACommon ca = caData.getCA();
                 if (ca != null) {
                     // Note that we store using the "real" CAId in the cache.
-                    CaCache.INSTANCE.updateWith(caData.getCaId(), digest, ca.getName(), ca);
+                    CaCache.INSTANCE.updateWith(caData.getCaId(), digest, ca.getName(), ca, caData.getRowVersion());
                 }
                 // Since caching might be disabled, we return the value returned from the database here
                 return ca;
@@ -28,7 +28,7 @@ import org.cesecore.internal.CommonCacheBase;
 public enum CaCache implements CommonCache<CACommon> {
     INSTANCE;
 
-    final private CommonCache<CACommon> caCache = new CommonCacheBase<CACommon>() {
+    final private CommonCacheBase<CACommon> caCache = new CommonCacheBase<CACommon>() {
         @Override
         protected long getCacheTime() {
             return CesecoreConfiguration.getCacheCaTimeInCaSession();
@@ -63,6 +63,16 @@ public enum CaCache implements CommonCache<CACommon> {
         caCache.updateWith(caId, digest, name, caInterface);
     }
 
+    /** @see CommonCacheBase#shouldCheckForUpdates(int, org.cesecore.internal.CommonCacheBase.VersionSource) */
+    public boolean shouldCheckForUpdates(final int caId, final CommonCacheBase.VersionSource versionSource) {
+        return caCache.shouldCheckForUpdates(caId, versionSource);
+    }
+
+    /** Update the cache with a CA read from the database, where version is the rowVersion of the database row. */
+    public void updateWith(int caId, int digest, String name, CACommon caInterface, int version) {
+        caCache.updateWith(caId, digest, name, caInterface, version);
+    }
+
     @Override
     public void removeEntry(int caId) {
         caCache.removeEntry(caId);
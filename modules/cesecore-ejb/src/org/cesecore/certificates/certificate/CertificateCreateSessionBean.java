@@ -71,6 +71,7 @@ import org.cesecore.certificates.ca.X509CA;
 import org.cesecore.certificates.ca.catoken.CAToken;
 import org.cesecore.certificates.ca.catoken.CATokenConstants;
 import org.cesecore.certificates.ca.internal.RequestAndPublicKeySelector;
+import org.cesecore.certificates.ca.internal.SernoPool;
 import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
 import org.cesecore.certificates.certificate.certextensions.CertificateExtensionException;
 import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
@@ -134,6 +135,14 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
 
+    /** Checks serial numbers for the serial number pools of the CAs, see SernoPool */
+    private final SernoPool.SernoExistenceChecker sernoExistenceChecker = new SernoPool.SernoExistenceChecker() {
+        @Override
+        public Set<BigInteger> getExistingSernos(final String issuerDN, final Collection<BigInteger> sernos) {
+            return certificateStoreSession.getExistingSernos(issuerDN, sernos);
+        }
+    };
+
     /** Default create for SessionBean without any creation Arguments. */
     @PostConstruct
     public void postConstruct() {
@@ -455,6 +464,8 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
                         globalConfigurationSession.getCachedConfiguration(AvailableCustomCertificateExtensionsConfiguration.CONFIGURATION_ID);
                 certGenParams.setAuthenticationToken(admin);
                 certGenParams.setCertificateValidationDomainService(keyValidatorSession);
+                // Serial numbers from the pool can only be checked against the database if certificates are stored
+                certGenParams.setSernoExistenceChecker(ca.isUseCertificateStorage() && certProfile.getUseCertificateStorage() ? sernoExistenceChecker : null);
 
                 // Validate ValidatorPhase.PRE_CERTIFICATE_VALIDATION (X.509 CA only)
                 cert = ca.generateCertificate(cryptoToken, endEntityInformation, request, pk, keyusage, notBefore, notAfter, certProfile, extensions, sequence, certGenParams, cceConfig);
@@ -14,6 +14,7 @@ package org.cesecore.certificates.certificate;
 
 import java.math.BigInteger;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -71,6 +72,17 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return entityManager.find(CertificateData.class, fingerprint);
     }
 
+    @Override
+    public List<CertificateData> findByFingerprints(final Collection<String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)",
+                CertificateData.class);
+        query.setParameter("fingerprints", fingerprints);
+        return query.getResultList();
+    }
+
     /** @return return the query results as a Set. */
     @Override
     public Set<String> findUsernamesBySubjectDNAndIssuerDN(final String subjectDN, final String issuerDN) {
@@ -105,6 +117,31 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return query.getResultList();
     }
 
+    @Override
+    public List<CertificateData> findByIssuerDNSerialNumbers(final String issuerDN, final Collection<String> serialNumbers) {
+        final TypedQuery<CertificateData> query = entityManager.createQuery(
+                "SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN (:serialNumbers)", CertificateData.class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("serialNumbers", serialNumbers);
+        return query.getResultList();
+    }
+
+    @Override
+    public List<Object[]> findRevocationStatusData(final String issuerDN, final String afterSerialNumber, final int maxResults) {
+        final String select = "SELECT a.serialNumber, a.status, a.revocationDate, a.revocationReason, a.certificateProfileId FROM CertificateData a WHERE a.issuerDN=:issuerDN";
+        final TypedQuery<Object[]> query;
+        if (afterSerialNumber == null) {
+            // No "serialNumber>''" for the first page, since Oracle treats the empty string as NULL
+            query = entityManager.createQuery(select + " ORDER BY a.serialNumber", Object[].class);
+        } else {
+            query = entityManager.createQuery(select + " AND a.serialNumber>:serialNumber ORDER BY a.serialNumber", Object[].class);
+            query.setParameter("serialNumber", afterSerialNumber);
+        }
+        query.setParameter("issuerDN", issuerDN);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
     @Override
     public CertificateInfo findFirstCertificateInfo(final String issuerDN, final String serialNumber) {
         CertificateInfo ret = null;
@@ -0,0 +1,144 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.RevocationStatusIndex;
+
+/**
+ * Certificate status changes of a transaction, that are applied to the in-memory OCSP caches when the transaction has been committed.
+ *
+ * Invalidating cached OCSP responses before the commit would let a concurrent OCSP request read the old, still committed, status and
+ * cache it again, and updating the revocation status index before the commit would keep the new status in the index if the transaction
+ * is rolled back. The changes are only kept in memory, and no EJBs are invoked after the transaction has completed.
+ *
+ * @version $Id$
+ */
+final class CertificateStatusChanges implements Synchronization {
+
+    private static final Logger log = Logger.getLogger(CertificateStatusChanges.class);
+
+    private final boolean immediate;
+    private boolean flushOcspResponses = false;
+    private final List<String> ocspIssuerDns = new ArrayList<>();
+    private final List<BigInteger> ocspSerialNumbers = new ArrayList<>();
+    private final List<String> indexIssuerDns = new ArrayList<>();
+    private final List<BigInteger> indexSerialNumbers = new ArrayList<>();
+    private final List<CertificateStatus> indexStatuses = new ArrayList<>();
+    private final Set<String> indexFlushIssuerDns = new LinkedHashSet<>();
+
+    private CertificateStatusChanges(final boolean immediate) {
+        this.immediate = immediate;
+    }
+
+    /**
+     * @param transactionSynchronizationRegistry registry of the container, or null if not available
+     * @return the status changes of the current transaction, or status changes that are applied immediately if there is no transaction
+     */
+    static CertificateStatusChanges getInstance(final TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        if (transactionSynchronizationRegistry == null || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            return new CertificateStatusChanges(true);
+        }
+        CertificateStatusChanges changes = (CertificateStatusChanges) transactionSynchronizationRegistry.getResource(CertificateStatusChanges.class);
+        if (changes == null) {
+            changes = new CertificateStatusChanges(false);
+            transactionSynchronizationRegistry.putResource(CertificateStatusChanges.class, changes);
+            transactionSynchronizationRegistry.registerInterposedSynchronization(changes);
+        }
+        return changes;
+    }
+
+    /** Removes the cached OCSP responses for a certificate, when the status change is committed */
+    synchronized void invalidateOcspResponses(final String issuerDn, final BigInteger serialNumber) {
+        if (immediate) {
+            OcspResponseCache.INSTANCE.invalidate(issuerDn, serialNumber);
+        } else {
+            ocspIssuerDns.add(issuerDn);
+            ocspSerialNumbers.add(serialNumber);
+        }
+    }
+
+    /** Removes all cached OCSP responses, when the status change is committed */
+    synchronized void flushOcspResponses() {
+        if (immediate) {
+            OcspResponseCache.INSTANCE.flush();
+        } else {
+            flushOcspResponses = true;
+        }
+    }
+
+    /** Updates the status of a certificate in the revocation status index, when the status change is committed */
+    synchronized void updateRevocationStatusIndex(final String issuerDn, final BigInteger serialNumber, final CertificateStatus status) {
+        if (immediate) {
+            RevocationStatusIndex.INSTANCE.update(issuerDn, serialNumber, status);
+        } else {
+            indexIssuerDns.add(issuerDn);
+            indexSerialNumbers.add(serialNumber);
+            indexStatuses.add(status);
+        }
+    }
+
+    /** Removes the revocation status index of a CA, when the status change is committed */
+    synchronized void flushRevocationStatusIndex(final String issuerDn) {
+        if (immediate) {
+            RevocationStatusIndex.INSTANCE.flush(issuerDn);
+        } else {
+            indexFlushIssuerDns.add(issuerDn);
+        }
+    }
+
+    @Override
+    public void beforeCompletion() {
+        // Nothing is applied before the outcome of the transaction is known
+    }
+
+    @Override
+    public synchronized void afterCompletion(final int status) {
+        if (status == Status.STATUS_ROLLEDBACK) {
+            return;
+        }
+        // Removing cached responses is always safe, so it is also done when the outcome is unknown
+        if (flushOcspResponses) {
+            OcspResponseCache.INSTANCE.flush();
+        } else {
+            for (int i = 0; i < ocspSerialNumbers.size(); i++) {
+                OcspResponseCache.INSTANCE.invalidate(ocspIssuerDns.get(i), ocspSerialNumbers.get(i));
+            }
+        }
+        if (status == Status.STATUS_COMMITTED) {
+            for (int i = 0; i < indexSerialNumbers.size(); i++) {
+                RevocationStatusIndex.INSTANCE.update(indexIssuerDns.get(i), indexSerialNumbers.get(i), indexStatuses.get(i));
+            }
+        } else {
+            // The status in the database is not known, so the index of the affected CAs is reloaded from the database
+            indexFlushIssuerDns.addAll(indexIssuerDns);
+        }
+        for (final String issuerDn : indexFlushIssuerDns) {
+            RevocationStatusIndex.INSTANCE.flush(issuerDn);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Applied certificate status changes after transaction completion with status " + status + ".");
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -46,6 +47,7 @@ import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -67,6 +69,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.ocsp.cache.RevocationStatusIndex;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.GlobalCesecoreConfiguration;
 import org.cesecore.config.OcspConfiguration;
@@ -109,6 +112,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     // Myself needs to be looked up in postConstruct
     @Resource
     private SessionContext sessionContext;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
     private CertificateStoreSessionLocal certificateStoreSession;
     /* When the sessionContext is injected, the timerService should be looked up.
      * This is due to the Glassfish EJB verifier complaining.
@@ -214,6 +219,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final CertificateData certificateData = new CertificateData(incert, pubk, username, cafp, certificateRequest, status, type, certificateProfileId, endEntityProfileId,
                 crlPartitionIndex, tag, updateTime, !useBase64CertTable && storeCertificateData, storeSubjectAlternativeName);
         entityManager.persist(certificateData);
+        updateRevocationStatusIndex(certificateData);
         if (doAuditLog) {
             final String serialNo = CertTools.getSerialNumberAsString(incert);
             final String msg = INTRES.getLocalizedMessage("store.storecert", username, certificateData.getFingerprint(), certificateData.getSubjectDnNeverNull(), certificateData.getIssuerDN(), serialNo);
@@ -241,6 +247,27 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return new CertificateDataWrapper(certificateData, base64CertData);
     }
 
+    @Override
+    public Map<String, CertificateDataWrapper> getCertificateDatas(final Collection<String> fingerprints) {
+        final Map<String, CertificateDataWrapper> ret = new HashMap<>();
+        if (fingerprints.isEmpty()) {
+            return ret;
+        }
+        final Map<String, Base64CertData> base64CertDatas = new HashMap<>();
+        if (CesecoreConfiguration.useBase64CertTable()) {
+            for (final Base64CertData base64CertData : Base64CertData.findByFingerprints(entityManager, fingerprints)) {
+                base64CertDatas.put(base64CertData.getFingerprint(), base64CertData);
+            }
+        }
+        for (final CertificateData certificateData : certificateDataSession.findByFingerprints(fingerprints)) {
+            ret.put(certificateData.getFingerprint(), new CertificateDataWrapper(certificateData, base64CertDatas.get(certificateData.getFingerprint())));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Found " + ret.size() + " of " + fingerprints.size() + " requested certificates.");
+        }
+        return ret;
+    }
+
     /**
      * We need special handling here of CVC certificate with EC keys, because they lack EC parameters in all certs
      * except the Root certificate (CVCA)
@@ -709,6 +736,35 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return ret;
     }
 
+    // Called when refilling a serial number pool during issuance, so a failed lookup must not roll back the issuing transaction
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Set<BigInteger> getExistingSernos(final String issuerDN, final Collection<BigInteger> sernos) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getExistingSernos(), dn:" + issuerDN + ", sernos.size=" + sernos.size());
+        }
+        final Set<BigInteger> ret = new HashSet<>();
+        final String dn = CertTools.stringToBCDNString(StringTools.strip(issuerDN));
+        final List<String> serialNumbers = new ArrayList<>(sernos.size());
+        for (final BigInteger serno : sernos) {
+            serialNumbers.add(serno.toString());
+        }
+        // Check in chunks, to keep the number of parameters in each query well below database limits
+        final int chunkSize = 100;
+        for (int i = 0; i < serialNumbers.size(); i += chunkSize) {
+            final Query query = entityManager.createQuery("SELECT a.serialNumber FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN (:serialNumbers)");
+            query.setParameter("issuerDN", dn);
+            query.setParameter("serialNumbers", serialNumbers.subList(i, Math.min(i + chunkSize, serialNumbers.size())));
+            for (final Object serialNumber : query.getResultList()) {
+                ret.add(new BigInteger((String) serialNumber));
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<getExistingSernos(), dn:" + issuerDN + ", existing=" + ret.size());
+        }
+        return ret;
+    }
+
 
     @Override
     public Certificate findCertificateByIssuerAndSerno(String issuerDN, BigInteger serno) {
@@ -1118,6 +1174,14 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             } else {
                 entityManager.merge(certificateData);
             }
+            updateRevocationStatusIndex(certificateData);
+            // Cached OCSP responses for this certificate must not be served anymore, once the change has been committed
+            if (certificateData.getType() == CertificateConstants.CERTTYPE_SUBCA || certificateData.getType() == CertificateConstants.CERTTYPE_ROOTCA) {
+                // ..and the status of a CA certificate affects the responses for all certificates issued by the CA
+                CertificateStatusChanges.getInstance(transactionSynchronizationRegistry).flushOcspResponses();
+            } else {
+                invalidateCachedOcspResponses(issuerDn, certificateData.getSerialNumber());
+            }
         }
         if (log.isTraceEnabled()) {
             log.trace("<private setRevokeStatusNoAuth(), issuerdn=" + issuerDn + ", serno=" + serialNumber);
@@ -1125,6 +1189,33 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return returnVal;
     }
 
+    /**
+     * Remove cached OCSP responses for a certificate when a status change has been committed. Certificates without a decimal serial number
+     * are never cached.
+     */
+    private void invalidateCachedOcspResponses(final String issuerDn, final String serialNumber) {
+        try {
+            CertificateStatusChanges.getInstance(transactionSynchronizationRegistry).invalidateOcspResponses(issuerDn, new BigInteger(serialNumber, 10));
+        } catch (NumberFormatException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not an X.509 serial number, no cached OCSP responses to invalidate: " + serialNumber);
+            }
+        }
+    }
+
+    /** Update the in-memory revocation status index when the change has been committed, if the issuer of the certificate is indexed. */
+    private void updateRevocationStatusIndex(final BaseCertificateData certificateData) {
+        try {
+            CertificateStatusChanges.getInstance(transactionSynchronizationRegistry).updateRevocationStatusIndex(
+                    CertTools.stringToBCDNString(certificateData.getIssuerDN()), new BigInteger(certificateData.getSerialNumber(), 10),
+                    CertificateStatusHelper.getCertificateStatus(certificateData));
+        } catch (NumberFormatException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not an X.509 serial number, not in revocation status index: " + certificateData.getSerialNumber());
+            }
+        }
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public void revokeAllCertByCA(AuthenticationToken admin, String issuerdn, int reason) throws AuthorizationDeniedException {
@@ -1153,6 +1244,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             	firstResult += maxRows;
             	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
             }
+            CertificateStatusChanges.getInstance(transactionSynchronizationRegistry).flushOcspResponses();
+            // Reloaded from the database with the next reload of the revocation status index, loads in progress are discarded
+            CertificateStatusChanges.getInstance(transactionSynchronizationRegistry).flushRevocationStatusIndex(bcdn);
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, Integer.valueOf(revoked), Integer.valueOf(reason));
     		Map<String, Object> details = new LinkedHashMap<>();
     		details.put("msg", msg);
@@ -1228,7 +1322,15 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         // First make a DN in our well-known format
         final String dn = CertTools.stringToBCDNString(issuerDN);
-
+        if (OcspConfiguration.isRevocationIndexEnabled()) {
+            final CertificateStatus indexedStatus = RevocationStatusIndex.INSTANCE.getStatus(dn, serno);
+            if (indexedStatus != null) {
+                if (log.isTraceEnabled()) {
+                    log.trace("<getStatus() returned " + indexedStatus + " from revocation status index for cert number " + serno.toString(16));
+                }
+                return indexedStatus;
+            }
+        }
         try {
             Collection<CertificateData> coll = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
 
@@ -1240,6 +1342,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
 
             for(CertificateData data : coll) {
                 final CertificateStatus result = CertificateStatusHelper.getCertificateStatus(data);
+                RevocationStatusIndex.INSTANCE.addIfUnknown(dn, serno, result);
                 if (log.isTraceEnabled()) {
                     log.trace("<getStatus() returned " + result + " for cert number " + serno.toString(16));
                 }
@@ -1254,6 +1357,101 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return CertificateStatus.NOT_AVAILABLE;
     }
 
+    @Override
+    public Map<BigInteger, CertificateStatus> getStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getStatuses(), dn:" + issuerDN + ", " + sernos.size() + " serial numbers");
+        }
+        final Map<BigInteger, CertificateStatus> ret = new HashMap<>();
+        if (sernos.isEmpty()) {
+            return ret;
+        }
+        final String dn = CertTools.stringToBCDNString(issuerDN);
+        final boolean useIndex = OcspConfiguration.isRevocationIndexEnabled();
+        final Set<String> serialNumbers = new HashSet<>();
+        for (final BigInteger serno : sernos) {
+            final CertificateStatus indexedStatus = useIndex ? RevocationStatusIndex.INSTANCE.getStatus(dn, serno) : null;
+            if (indexedStatus != null) {
+                ret.put(serno, indexedStatus);
+            } else {
+                serialNumbers.add(serno.toString());
+            }
+        }
+        if (serialNumbers.isEmpty()) {
+            return ret;
+        }
+        try {
+            for (final CertificateData data : certificateDataSession.findByIssuerDNSerialNumbers(dn, serialNumbers)) {
+                final BigInteger serno = new BigInteger(data.getSerialNumber());
+                if (ret.containsKey(serno)) {
+                    final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
+                    log.error(msg);
+                } else {
+                    final CertificateStatus status = CertificateStatusHelper.getCertificateStatus(data);
+                    RevocationStatusIndex.INSTANCE.addIfUnknown(dn, serno, status);
+                    ret.put(serno, status);
+                }
+            }
+        } catch (Exception e) {
+            throw new EJBException(e);
+        }
+        for (final BigInteger serno : sernos) {
+            if (!ret.containsKey(serno)) {
+                ret.put(serno, CertificateStatus.NOT_AVAILABLE);
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<getStatuses() returned " + ret.size() + " statuses");
+        }
+        return ret;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void loadRevocationStatusIndex(final String issuerDN) {
+        final String dn = CertTools.stringToBCDNString(issuerDN);
+        final long startTime = System.currentTimeMillis();
+        final int maxResults = 10000;
+        final RevocationStatusIndex.Loader loader = RevocationStatusIndex.INSTANCE.startLoading(dn,
+                OcspConfiguration.getRevocationIndexReloadTimeInMilliseconds());
+        if (loader == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Revocation status index for '" + dn + "' is already being loaded.");
+            }
+            return;
+        }
+        boolean loaded = false;
+        try {
+            String lastSerialNumber = null;
+            List<Object[]> rows;
+            do {
+                rows = certificateDataSession.findRevocationStatusData(dn, lastSerialNumber, maxResults);
+                for (final Object[] row : rows) {
+                    lastSerialNumber = (String) row[0];
+                    final BigInteger serno;
+                    try {
+                        serno = new BigInteger(lastSerialNumber, 10);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    loader.add(serno, CertificateStatusHelper.getCertificateStatus(((Integer) row[1]).intValue(),
+                            ((Long) row[2]).longValue(), ((Integer) row[3]).intValue(), (Integer) row[4]));
+                }
+            } while (rows.size() == maxResults);
+            loaded = true;
+            if (loader.finish()) {
+                log.info("Loaded revocation status index for '" + dn + "' with " + RevocationStatusIndex.INSTANCE.size(dn) + " certificates in "
+                        + (System.currentTimeMillis() - startTime) + " ms.");
+            } else {
+                log.info("Revocation status index for '" + dn + "' was flushed while loading and is reloaded later.");
+            }
+        } finally {
+            if (!loaded) {
+                loader.abort();
+            }
+        }
+    }
+
     @Override
     public CertificateStatusHolder getCertificateAndStatus(String issuerDN, BigInteger serno) {
         if (log.isTraceEnabled()) {
@@ -1297,6 +1495,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         authorizedToCA(admin, caid);
 
         certificateData.setStatus(status);
+        updateRevocationStatusIndex(certificateData);
+        invalidateCachedOcspResponses(certificateData.getIssuerDN(), certificateData.getSerialNumber());
         final Certificate certificate = certificateData.getCertificate(this.entityManager);
         String serialNo;
         if (certificate==null) {
@@ -1563,11 +1763,23 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             // Refuse to update a normal entry with this method
         	throw new UnsupportedOperationException("Only limited certificate entries can be updated using this method.");
         }
+        final CertificateStatusChanges statusChanges = CertificateStatusChanges.getInstance(transactionSynchronizationRegistry);
+        if (reasonCode == RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
+            statusChanges.updateRevocationStatusIndex(CertTools.stringToBCDNString(issuerDn), serialNumber, CertificateStatus.NOT_AVAILABLE);
+        } else {
+            statusChanges.updateRevocationStatusIndex(CertTools.stringToBCDNString(issuerDn), serialNumber, new CertificateStatus(
+                    CertificateStatus.REVOKED.toString(), revocationDate.getTime(), reasonCode, CertificateProfileConstants.CERTPROFILE_NO_PROFILE));
+        }
+        statusChanges.invalidateOcspResponses(CertTools.stringToBCDNString(issuerDn), serialNumber);
     }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public void reloadCaCertificateCache() {
+        if (ParsedCertificateCache.INSTANCE.isEnabled()) {
+            log.info("Flushing parsed certificate cache: " + ParsedCertificateCache.INSTANCE.getStatistics());
+        }
+        ParsedCertificateCache.INSTANCE.flush();
         log.info("Reloading CA certificate cache.");
         Collection<Certificate> certs = EJBTools.unwrapCertCollection(certificateStoreSession.findCertificatesByType(CertificateConstants.CERTTYPE_SUBCA +
                 CertificateConstants.CERTTYPE_ROOTCA, null));
@@ -194,6 +194,22 @@ public class NoConflictCertificateStoreSessionBean implements NoConflictCertific
         final Collection<NoConflictCertificateData> certDatas = noConflictCertificateDataSession.findByFingerprint(fingerprint);
         return new CertificateDataWrapper(filterMostRecentCertData(certDatas));
     }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public Map<String, CertificateDataWrapper> getCertificateDatas(final Collection<String> fingerprints) {
+        final Map<String, CertificateDataWrapper> ret = certificateStoreSession.getCertificateDatas(fingerprints);
+        // Certificates that are not in CertificateData are rare (throw away CAs only), so look them up one by one
+        for (final String fingerprint : fingerprints) {
+            if (!ret.containsKey(fingerprint)) {
+                final NoConflictCertificateData noConflictCert = filterMostRecentCertData(noConflictCertificateDataSession.findByFingerprint(fingerprint));
+                if (noConflictCert != null) {
+                    ret.put(fingerprint, new CertificateDataWrapper(noConflictCert));
+                }
+            }
+        }
+        return ret;
+    }
     
     @Override
     public Collection<RevokedCertInfo> listRevokedCertInfo(String issuerdn, int crlPartitionIndex, long lastbasecrldate) {
@@ -35,6 +35,10 @@ import org.cesecore.config.CesecoreConfiguration;
  * 
  * The intention of this design is better throughput than fully ordered sequential updates.
  * 
+ * When the cache time has expired, the row versions of all profiles are read first, and only profiles that were changed (on any node)
+ * since they were cached are read again. A forced update reads all profiles, and the next update after it does the same, since the
+ * forced update may have read changes that were never committed.
+ * 
  * Probably based on EJBCA's org.ejbca.core.ejb.ca.store.CertificateProfileCache r11155
  * 
  * @version $Id$
@@ -56,6 +60,8 @@ public enum CertificateProfileCache {
     private volatile Map<String, Integer> nameIdMapCache = null;
     /** Cache of certificate profiles, with Id as keys */
     private volatile Map<Integer, CertificateProfile> profileCache = null;
+    /** Row versions of the cached profiles, with Id as keys, or null if all profiles should be read at the next update */
+    private volatile Map<Integer, Integer> versionCache = null;
 
     private volatile long lastUpdate = 0;
 
@@ -103,10 +109,19 @@ public enum CertificateProfileCache {
         } finally {
             lock.unlock();
         }
+        if (!force && versionCache != null && updateChangedProfiles(entityManager)) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("<updateProfileCache");
+            }
+            return;
+        }
+        Map<Integer, Integer> versions = null;
         final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
         final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
         final Map<Integer, CertificateProfile> profCache = new HashMap<Integer, CertificateProfile>();
         try {
+            // Versions are read first, so a profile changed while reading is read again at the next update
+            final Map<Integer, Integer> currentVersions = force ? null : CertificateProfileData.findRowVersions(entityManager);
             final List<CertificateProfileData> result = CertificateProfileData.findAll(entityManager);
             for (final CertificateProfileData current : result) {
                 final Integer id = Integer.valueOf(current.getId());
@@ -115,17 +130,69 @@ public enum CertificateProfileCache {
                 nameIdCache.put(certificateProfileName, id);
                 profCache.put(id, current.getCertificateProfile());
             }
+            versions = currentVersions;
         } catch (Exception e) {
             LOG.error("Error reading certificate profiles: ", e);
         }
         idNameMapCache = idNameCache;
         nameIdMapCache = nameIdCache;
         profileCache = profCache;
+        versionCache = versions;
         if (LOG.isTraceEnabled()) {
             LOG.trace("<updateProfileCache");
         }
     }
 
+    /**
+     * Reads the row versions of all profiles, and reads only the profiles that were added or changed since they were cached.
+     * 
+     * @return false if the profiles could not be read, and all profiles should be read instead
+     */
+    private boolean updateChangedProfiles(final EntityManager entityManager) {
+        try {
+            final Map<Integer, Integer> versions = CertificateProfileData.findRowVersions(entityManager);
+            final Map<Integer, Integer> cachedVersions = versionCache;
+            if (versions.equals(cachedVersions)) {
+                return true;
+            }
+            final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
+            final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
+            final Map<Integer, CertificateProfile> profCache = new HashMap<Integer, CertificateProfile>();
+            int changed = 0;
+            for (final Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+                final Integer id = entry.getKey();
+                final String certificateProfileName;
+                final CertificateProfile certificateProfile;
+                if (entry.getValue().equals(cachedVersions.get(id)) && profileCache.containsKey(id)) {
+                    certificateProfileName = idNameMapCache.get(id);
+                    certificateProfile = profileCache.get(id);
+                } else {
+                    final CertificateProfileData current = CertificateProfileData.findById(entityManager, id);
+                    if (current == null) {
+                        continue; // Removed since the versions were read
+                    }
+                    certificateProfileName = current.getCertificateProfileName();
+                    certificateProfile = current.getCertificateProfile();
+                    changed++;
+                }
+                idNameCache.put(id, certificateProfileName);
+                nameIdCache.put(certificateProfileName, id);
+                profCache.put(id, certificateProfile);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Read " + changed + " added or changed certificate profiles.");
+            }
+            idNameMapCache = idNameCache;
+            nameIdMapCache = nameIdCache;
+            profileCache = profCache;
+            versionCache = versions;
+            return true;
+        } catch (Exception e) {
+            LOG.error("Error reading certificate profiles: ", e);
+            return false;
+        }
+    }
+
     /** @return the latest object from the cache or a current database representation if no caching is used. */
     public Map<Integer, CertificateProfile> getProfileCache(final EntityManager entityManager) {
         updateProfileCache(entityManager, false);
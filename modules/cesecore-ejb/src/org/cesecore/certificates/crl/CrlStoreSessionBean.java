@@ -16,6 +16,7 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.Stateless;
@@ -23,6 +24,9 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -62,6 +66,8 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
     private AuthorizationSessionLocal authorizationSession;
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
     @Override
     public void storeCRL(final AuthenticationToken admin, final byte[] incrl, final String cafp, final int number, final String issuerDN, final int crlPartitionIndex,
@@ -84,6 +90,7 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
             }
             CRLData data = new CRLData(incrl, number, crlPartitionIndex, issuerDN, thisUpdate, nextUpdate, cafp, deltaCRLIndicator);
             this.entityManager.persist(data);
+            notifyCrlUpdatedAfterCommit(data.getIssuerDN());
             String msg = intres.getLocalizedMessage("store.storecrl", Integer.valueOf(number), data.getFingerprint(), data.getIssuerDN());
             Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", msg);
@@ -98,6 +105,27 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
         }
     }
 
+    /**
+     * Notifies the CRL caches on this node that a CRL has been stored for the issuer, when the current transaction commits. A cache that
+     * is notified before the commit could reload the previous CRL and then serve it as fresh.
+     */
+    private void notifyCrlUpdatedAfterCommit(final String issuerDn) {
+        if (transactionSynchronizationRegistry == null || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            CrlUpdateNotifier.INSTANCE.crlUpdated(issuerDn);
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(final int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    CrlUpdateNotifier.INSTANCE.crlUpdated(issuerDn);
+                }
+            }
+        });
+    }
 
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -43,12 +43,15 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -127,16 +130,21 @@ import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.ocsp.cache.OcspConfigurationCache;
 import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.RevocationStatusIndex;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
 import org.cesecore.certificates.ocsp.exception.CryptoProviderException;
 import org.cesecore.certificates.ocsp.exception.IllegalNonceException;
 import org.cesecore.certificates.ocsp.exception.MalformedRequestException;
 import org.cesecore.certificates.ocsp.exception.OcspFailureException;
+import org.cesecore.certificates.ocsp.exception.OcspSigningQueueFullException;
 import org.cesecore.certificates.ocsp.extension.OCSPExtension;
 import org.cesecore.certificates.ocsp.extension.OCSPExtensionType;
 import org.cesecore.certificates.ocsp.logging.AuditLogger;
+import org.cesecore.certificates.ocsp.logging.GuidHolder;
 import org.cesecore.certificates.ocsp.logging.PatternLogger;
+import org.cesecore.certificates.ocsp.logging.TransactionCounter;
 import org.cesecore.certificates.ocsp.logging.TransactionLogger;
 import org.cesecore.certificates.util.AlgorithmTools;
 import org.cesecore.config.AvailableExtendedKeyUsagesConfiguration;
@@ -186,12 +194,15 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     private static final int MAX_REQUEST_SIZE = 100000;
     /** Timer identifiers */
     private static final int TIMERID_OCSPSIGNINGCACHE = 1;
+    private static final int TIMERID_OCSPRESPONSECACHE = 2;
+    private static final int TIMERID_REVOCATIONINDEX = 3;
 
     private static final Logger log = Logger.getLogger(OcspResponseGeneratorSessionBean.class);
 
     private static final InternalResources intres = InternalResources.getInstance();
     
-    private static volatile ExecutorService service = Executors.newCachedThreadPool();
+    /** Signing queues of the OCSP signers, mapped by OcspSigningCacheEntry.getSignerId() */
+    private static final Map<String, OcspSigningPipeline> signingPipelines = new ConcurrentHashMap<String, OcspSigningPipeline>();
     
     @Resource
     private SessionContext sessionContext;
@@ -235,6 +246,12 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             log.info("Not initing OCSP reload timers, there are already some.");
         }
+        if (OcspConfiguration.isResponseCacheEnabled() && getTimerCount(TIMERID_OCSPRESPONSECACHE)==0) {
+            addTimer(OcspConfiguration.getResponseCacheRefreshTimeInMilliseconds(), TIMERID_OCSPRESPONSECACHE);
+        }
+        if (OcspConfiguration.isRevocationIndexEnabled() && getTimerCount(TIMERID_REVOCATIONINDEX)==0) {
+            addTimer(getRevocationIndexTimerInterval(), TIMERID_REVOCATIONINDEX);
+        }
     }
     
     @Override
@@ -261,6 +278,12 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void reloadOcspSigningCache() {
+        // Explicit reloads follow configuration changes, so responses created with the old configuration should not be re-used
+        OcspResponseCache.INSTANCE.flush();
+        reloadOcspSigningCacheAndSetTimeout();
+    }
+
+    private void reloadOcspSigningCacheAndSetTimeout() {
     	if (log.isTraceEnabled()) {
     		log.trace(">reloadOcspSigningCache");
     	}
@@ -402,6 +425,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     }
                 }
                 OcspSigningCache.INSTANCE.stagingCommit(ocspConfiguration.getOcspDefaultResponderReference());
+                releaseStaleSigningPipelines();
+                if (OcspConfiguration.isRevocationIndexEnabled()) {
+                    loadRevocationStatusIndexes();
+                }
             } finally {
                 OcspSigningCache.INSTANCE.stagingRelease();
             }
@@ -988,8 +1015,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (log.isTraceEnabled()) {
             log.trace(">timeoutHandler: " + timer.getInfo().toString());
         }
-        // reloadTokenAndChainCache cancels old timers and adds a new timer
-        reloadOcspSigningCache();
+        if (((Integer) timer.getInfo()).intValue() == TIMERID_OCSPRESPONSECACHE) {
+            refreshOcspResponseCache();
+        } else if (((Integer) timer.getInfo()).intValue() == TIMERID_REVOCATIONINDEX) {
+            reloadRevocationStatusIndexes();
+        } else {
+            // reloadOcspSigningCacheAndSetTimeout cancels old timers and adds a new timer
+            reloadOcspSigningCacheAndSetTimeout();
+        }
         if (log.isTraceEnabled()) {
             log.trace("<timeoutHandler");
         }
@@ -1072,7 +1105,6 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             final String msg = intres.getLocalizedMessage("request.toolarge", MAX_REQUEST_SIZE, request.length);
             throw new MalformedRequestException(msg);
         }
-        byte[] respBytes = null;
         final Date startTime = new Date();
         OCSPResp ocspResponse = null;
         // Start logging process time after we have received the request
@@ -1112,10 +1144,20 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
             }
+            // Responses to a single request without nonce or other extensions are the same for every client and can be re-used
+            final boolean responseCacheable = OcspConfiguration.isResponseCacheEnabled() && ocspRequests.length == 1 && !req.hasExtensions()
+                    && !req.isSigned();
+            // Read before the status lookup, so a status change committed after the lookup prevents caching of the response
+            final long responseCacheVersion = OcspResponseCache.INSTANCE.getVersion();
+            Integer responseCacheCertStatus = null;
+            String responseCacheIssuerDn = null;
             OcspSigningCacheEntry ocspSigningCacheEntry = null;
             long nextUpdate = OcspConfiguration.getUntilNextUpdate(CertificateProfileConstants.CERTPROFILE_NO_PROFILE);
             Map<ASN1ObjectIdentifier, Extension> responseExtensions = new HashMap<>();
             
+            // Look up the status of all CertIDs from the same CA with a single database query
+            final Map<String, Map<BigInteger, CertificateStatus>> prefetchedStatuses = prefetchCertificateStatuses(ocspRequests);
+
             // Look over the status requests
             List<OCSPResponseItem> responseList = new ArrayList<OCSPResponseItem>();
             boolean addExtendedRevokedExtension = false;
@@ -1159,6 +1201,19 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         transactionLogger.paramPut(TransactionLogger.ISSUER_NAME_DN, ocspSigningCacheEntry.getSigningCertificateIssuerDn());
                         transactionLogger.paramPut(TransactionLogger.ISSUER_NAME_DN_RAW, ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
                     }
+                    if (responseCacheable) {
+                        final OcspResponseCache.CachedResponse cachedResponse = OcspResponseCache.INSTANCE.getCachedResponse(certId, ocspSigningCacheEntry);
+                        if (cachedResponse != null) {
+                            if (log.isDebugEnabled()) {
+                                log.debug("Using cached OCSP response for certificate with serial '" + certId.getSerialNumber().toString(16) + "'.");
+                            }
+                            if (transactionLogger.isEnabled()) {
+                                transactionLogger.paramPut(TransactionLogger.CERT_STATUS, cachedResponse.getCertStatus());
+                            }
+                            ocspResponse = finishOcspResponse(cachedResponse.getOcspResponse(), responseGenerator, startTime, auditLogger, transactionLogger);
+                            return new OcspResponseInformation(ocspResponse, cachedResponse.getMaxAge(), ocspSigningCacheEntry.getSigningCertificate());
+                        }
+                    }
                 } else {
                     /*
                      * if the certId was issued by an unknown CA 
@@ -1227,6 +1282,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     log.info(intres.getLocalizedMessage("ocsp.signcertissuerrevoked", CertTools.getSerialNumberAsString(caCertificate),
                             CertTools.getSubjectDN(caCertificate)));
                     respItem = new OCSPResponseItem(certId, certStatus, nextUpdate);
+                    responseCacheCertStatus = OCSPResponseItem.OCSP_REVOKED;
                     if (transactionLogger.isEnabled()) {
                         transactionLogger.paramPut(TransactionLogger.CERT_STATUS, OCSPResponseItem.OCSP_REVOKED);
                         transactionLogger.paramPut(TransactionLogger.REV_REASON, signerIssuerCertStatus.revocationReason);
@@ -1238,7 +1294,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                      * the certificate in the same transaction.
                      */
                     final CertificateStatus status;
-                    if (extensionOids.isEmpty()) {
+                    final Map<BigInteger, CertificateStatus> prefetchedCaStatuses = prefetchedStatuses.get(caCertificateSubjectDn);
+                    if (extensionOids.isEmpty() && prefetchedCaStatuses != null && prefetchedCaStatuses.containsKey(certId.getSerialNumber())) {
+                        status = prefetchedCaStatuses.get(certId.getSerialNumber());
+                    } else if (extensionOids.isEmpty()) {
                         status = certificateStoreSession.getStatus(caCertificateSubjectDn, certId.getSerialNumber());
                     } else {
                         certificateStatusHolder = certificateStoreSession.getCertificateAndStatus(caCertificateSubjectDn, certId.getSerialNumber());
@@ -1338,6 +1397,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                                 OcspConfiguration.isRevokedMaxAgeConfigured(status.certificateProfileId)) {
                             maxAge = OcspConfiguration.getRevokedMaxAge(status.certificateProfileId);
                         }
+                        responseCacheCertStatus = OCSPResponseItem.OCSP_REVOKED;
                     } else {
                         sStatus = "good";
                         certStatus = null;
@@ -1345,6 +1405,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                             transactionLogger.paramPut(TransactionLogger.CERT_STATUS, OCSPResponseItem.OCSP_GOOD);
                         }
                         addArchiveCutoff = checkAddArchiveCuttoff(caCertificateSubjectDn, certId);
+                        responseCacheCertStatus = OCSPResponseItem.OCSP_GOOD;
                     }
                     if (log.isDebugEnabled()) {
                         log.debug("Set nextUpdate=" + nextUpdate + ", and maxAge=" + maxAge + " for certificateProfileId="
@@ -1357,6 +1418,11 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         producedAt = new Date();
                     }
                 }
+                if (!extensionOids.isEmpty()) {
+                    // Extensions may depend on the client or the time of the request
+                    responseCacheCertStatus = null;
+                }
+                responseCacheIssuerDn = caCertificateSubjectDn;
  
                 for (String oidstr : extensionOids) {
                     boolean useAlways = false;
@@ -1424,6 +1490,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 BasicOCSPResp basicresp = signOcspResponse(req, responseList, exts, ocspSigningCacheEntry, producedAt);
                 signerCert = ocspSigningCacheEntry.getSigningCertificate();
                 ocspResponse = responseGenerator.build(OCSPRespBuilder.SUCCESSFUL, basicresp);
+                if (responseCacheable && responseCacheCertStatus != null && ocspSigningCacheEntry.getSignerId() != null) {
+                    OcspResponseCache.INSTANCE.addCachedResponse(ocspRequests[0].getCertID(), ocspSigningCacheEntry, responseCacheIssuerDn, request,
+                            ocspResponse, responseCacheCertStatus, nextUpdate, maxAge, responseCacheVersion);
+                }
                 if (auditLogger.isEnabled()) {
                     auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
                 }
@@ -1500,9 +1570,76 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             ocspResponse = processDefaultError(responseGenerator, transactionLogger, auditLogger, e);
         } catch (CryptoTokenOfflineException e) {
             ocspResponse = processDefaultError(responseGenerator, transactionLogger, auditLogger, e);
+        } catch (OcspSigningQueueFullException e) {
+            if (transactionLogger.isEnabled()) {
+                transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+            }
+            if (auditLogger.isEnabled()) {
+                auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+            }
+            log.info(e.getMessage());
+            // RFC 2560: responseBytes are not set on error.
+            ocspResponse = responseGenerator.build(OCSPRespBuilder.TRY_LATER, null);
+            if (transactionLogger.isEnabled()) {
+                transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.TRY_LATER);
+            }
+            if (auditLogger.isEnabled()) {
+                auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.TRY_LATER);
+            }
         }
+        ocspResponse = finishOcspResponse(ocspResponse, responseGenerator, startTime, auditLogger, transactionLogger);
+        return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
+    }
+
+    /**
+     * Looks up the status of the certificates in a request with multiple CertIDs, using one database query per CA instead of one per CertID.
+     * Only CertIDs where the status alone is needed are included, i.e. not when the CA certificate is revoked or when OCSP extensions need
+     * the certificate itself. Those, and CertIDs of CAs that are not in the signing cache, are looked up one by one as before.
+     * 
+     * @return map from CA subject DN to a map of serial numbers and certificate status, empty if there are less than two CertIDs from the same CA
+     */
+    private Map<String, Map<BigInteger, CertificateStatus>> prefetchCertificateStatuses(final Req[] ocspRequests) {
+        final Map<String, Map<BigInteger, CertificateStatus>> ret = new HashMap<>();
+        if (ocspRequests.length < 2 || OcspConfiguration.getAlwaysSendCustomOCSPExtension() != null) {
+            return ret;
+        }
+        final Map<String, Set<BigInteger>> serialNumbersByCa = new HashMap<>();
+        for (final Req ocspRequest : ocspRequests) {
+            final CertificateID certId = ocspRequest.getCertID();
+            final OcspSigningCacheEntry ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
+            if (ocspSigningCacheEntry == null || CertificateStatus.REVOKED.equals(ocspSigningCacheEntry.getIssuerCaCertificateStatus())) {
+                continue;
+            }
+            final OcspKeyBinding ocspKeyBinding = ocspSigningCacheEntry.getOcspKeyBinding();
+            if (ocspKeyBinding != null && !ocspKeyBinding.getOcspExtensions().isEmpty()) {
+                continue;
+            }
+            final String caCertificateSubjectDn = CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate());
+            Set<BigInteger> serialNumbers = serialNumbersByCa.get(caCertificateSubjectDn);
+            if (serialNumbers == null) {
+                serialNumbers = new HashSet<>();
+                serialNumbersByCa.put(caCertificateSubjectDn, serialNumbers);
+            }
+            serialNumbers.add(certId.getSerialNumber());
+        }
+        for (final Entry<String, Set<BigInteger>> entry : serialNumbersByCa.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                ret.put(entry.getKey(), certificateStoreSession.getStatuses(entry.getKey(), entry.getValue()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the transaction and audit log entries for a response and verifies that logging has been working while the
+     * response was created, if this has been configured.
+     * 
+     * @return the response to return to the client, which is an INTERNAL_ERROR response if logging has failed.
+     */
+    private OCSPResp finishOcspResponse(OCSPResp ocspResponse, final OCSPRespBuilder responseGenerator, final Date startTime,
+            final AuditLogger auditLogger, final TransactionLogger transactionLogger) throws OCSPException {
         try {
-            respBytes = ocspResponse.getEncoded();
+            final byte[] respBytes = ocspResponse.getEncoded();
             if (auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.OCSPRESPONSE, new String(Hex.encode(respBytes)));
                 auditLogger.writeln();
@@ -1538,7 +1675,42 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 auditLogger.flush();
             }
         }
-        return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
+        return ocspResponse;
+    }
+
+    /** Re-creates cached OCSP responses that are about to expire and have been requested since they were created. */
+    private void refreshOcspResponseCache() {
+        if (log.isTraceEnabled()) {
+            log.trace(">refreshOcspResponseCache");
+        }
+        cancelTimers(TIMERID_OCSPRESPONSECACHE);
+        try {
+            if (!OcspConfiguration.isResponseCacheEnabled()) {
+                OcspResponseCache.INSTANCE.flush();
+                return;
+            }
+            final List<OcspResponseCache.CachedResponse> cachedResponses = OcspResponseCache.INSTANCE.getResponsesToRefresh();
+            if (log.isDebugEnabled()) {
+                log.debug("Refreshing " + cachedResponses.size() + " of " + (cachedResponses.size() + OcspResponseCache.INSTANCE.size())
+                        + " cached OCSP responses.");
+            }
+            for (final OcspResponseCache.CachedResponse cachedResponse : cachedResponses) {
+                // The entry has been removed from the cache, so a new response will be created and cached
+                final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
+                final TransactionLogger transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), "");
+                final AuditLogger auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), "");
+                try {
+                    getOcspResponse(cachedResponse.getRequest(), null, "", null, null, auditLogger, transactionLogger);
+                } catch (MalformedRequestException | OCSPException e) {
+                    log.info("Failed to refresh cached OCSP response: " + e.getMessage());
+                }
+            }
+        } finally {
+            addTimer(OcspConfiguration.getResponseCacheRefreshTimeInMilliseconds(), TIMERID_OCSPRESPONSECACHE);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<refreshOcspResponseCache");
+        }
     }
     
     private boolean checkAddArchiveCuttoff(String caCertificateSubjectDn, CertificateID certId) {
@@ -1654,7 +1826,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     }
     
     private BasicOCSPResp signOcspResponse(OCSPReq req, List<OCSPResponseItem> responseList, Extensions exts, 
-            final OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt) throws CryptoTokenOfflineException {
+            final OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt) throws CryptoTokenOfflineException, OcspSigningQueueFullException {
         assertAcceptableResponseExtension(req);
         if (!ocspSigningCacheEntry.isSigningCertificateForOcspSigning()) {
             log.warn("Signing with non OCSP certificate (no 'OCSP Signing' Extended Key Usage) bound by OcspKeyBinding '" + ocspSigningCacheEntry.getOcspKeyBinding().getName() + "'.");
@@ -1682,9 +1854,104 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
     }
     
+    /**
+     * @return the signing queue for the signer of the given entry, created on first use or when the configured sizes have changed
+     */
+    private OcspSigningPipeline getSigningPipeline(final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        final String signerId = String.valueOf(ocspSigningCacheEntry.getSignerId());
+        final int workers = OcspConfiguration.getSigningWorkers();
+        final int queueSize = OcspConfiguration.getSigningQueueSize();
+        OcspSigningPipeline signingPipeline = signingPipelines.get(signerId);
+        if (signingPipeline == null || signingPipeline.isShutdown() || !signingPipeline.isConfiguredWith(workers, queueSize)) {
+            synchronized (signingPipelines) {
+                signingPipeline = signingPipelines.get(signerId);
+                if (signingPipeline == null || signingPipeline.isShutdown() || !signingPipeline.isConfiguredWith(workers, queueSize)) {
+                    final OcspKeyBinding ocspKeyBinding = ocspSigningCacheEntry.getOcspKeyBinding();
+                    final String name = ocspKeyBinding == null ? CertTools.getSubjectDN(ocspSigningCacheEntry.getSigningCertificate())
+                            : ocspKeyBinding.getName();
+                    final OcspSigningPipeline oldSigningPipeline = signingPipeline;
+                    signingPipeline = new OcspSigningPipeline(name, workers, queueSize);
+                    signingPipelines.put(signerId, signingPipeline);
+                    if (oldSigningPipeline != null) {
+                        oldSigningPipeline.shutdown();
+                    }
+                }
+            }
+        }
+        return signingPipeline;
+    }
+
+    /** Load the revocation status index for the CAs in the signing cache that are not indexed yet, or were loaded more than the reload time ago. */
+    private void loadRevocationStatusIndexes() {
+        final long reloadTime = OcspConfiguration.getRevocationIndexReloadTimeInMilliseconds();
+        final Set<String> issuerDns = new HashSet<>();
+        for (final OcspSigningCacheEntry ocspSigningCacheEntry : OcspSigningCache.INSTANCE.getEntries()) {
+            if (ocspSigningCacheEntry.getIssuerCaCertificate() != null) {
+                issuerDns.add(CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate()));
+            }
+        }
+        for (final String issuerDn : issuerDns) {
+            if (RevocationStatusIndex.INSTANCE.isLoadingNeeded(issuerDn, reloadTime)) {
+                try {
+                    certificateStoreSession.loadRevocationStatusIndex(issuerDn);
+                } catch (RuntimeException e) {
+                    log.warn("Unable to load revocation status index for '" + issuerDn + "': " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Reloads the revocation status indexes, so status changes made by other nodes are picked up. */
+    private void reloadRevocationStatusIndexes() {
+        if (log.isTraceEnabled()) {
+            log.trace(">reloadRevocationStatusIndexes");
+        }
+        cancelTimers(TIMERID_REVOCATIONINDEX);
+        try {
+            if (!OcspConfiguration.isRevocationIndexEnabled()) {
+                RevocationStatusIndex.INSTANCE.flush();
+                return;
+            }
+            loadRevocationStatusIndexes();
+        } finally {
+            if (OcspConfiguration.isRevocationIndexEnabled()) {
+                addTimer(getRevocationIndexTimerInterval(), TIMERID_REVOCATIONINDEX);
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<reloadRevocationStatusIndexes");
+        }
+    }
+
+    /** @return the interval of the revocation status index timer, which is shorter than the reload time so indexes are reloaded on time */
+    private long getRevocationIndexTimerInterval() {
+        return Math.max(1000L, OcspConfiguration.getRevocationIndexReloadTimeInMilliseconds()/4);
+    }
+
+    /** Stop the signing queues of signers that are no longer in the signing cache, and log the statistics of the remaining ones. */
+    private void releaseStaleSigningPipelines() {
+        final Set<String> signerIds = new HashSet<>();
+        for (final OcspSigningCacheEntry ocspSigningCacheEntry : OcspSigningCache.INSTANCE.getEntries()) {
+            signerIds.add(String.valueOf(ocspSigningCacheEntry.getSignerId()));
+        }
+        synchronized (signingPipelines) {
+            for (final Iterator<Entry<String, OcspSigningPipeline>> iterator = signingPipelines.entrySet().iterator(); iterator.hasNext();) {
+                final Entry<String, OcspSigningPipeline> entry = iterator.next();
+                if (signerIds.contains(entry.getKey())) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(entry.getValue().toString());
+                    }
+                } else {
+                    iterator.remove();
+                    entry.getValue().shutdown();
+                }
+            }
+        }
+    }
+
     private BasicOCSPResp generateBasicOcspResp(Extensions exts, List<OCSPResponseItem> responses, String sigAlg,
                         X509Certificate signerCert, OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt)
-                                throws OCSPException, NoSuchProviderException, CryptoTokenOfflineException {
+                                throws OCSPException, NoSuchProviderException, CryptoTokenOfflineException, OcspSigningQueueFullException {
         final PrivateKey signerKey = ocspSigningCacheEntry.getPrivateKey();
         final String provider = ocspSigningCacheEntry.getSignatureProviderName();
         BasicOCSPResp returnval = null;
@@ -1718,7 +1985,17 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
          * Note that this does in no way break the spirit of the EJB standard, which is to not interrupt EJB's transaction handling by 
          * competing with its own thread pool, since these operations have no database impact.
          */
-        final Future<BasicOCSPResp> task = service.submit(new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt));
+        final HsmResponseThread hsmResponseThread = new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt);
+        Future<BasicOCSPResp> task;
+        try {
+            task = getSigningPipeline(ocspSigningCacheEntry).submit(hsmResponseThread);
+        } catch (IllegalStateException e) {
+            // The signing queue was replaced or released after it was looked up, so use the current one of the signer
+            if (log.isDebugEnabled()) {
+                log.debug(e.getMessage() + " Submitting the response to the current signing queue.");
+            }
+            task = getSigningPipeline(ocspSigningCacheEntry).submit(hsmResponseThread);
+        }
         try {
             returnval = task.get(HsmResponseThread.HSM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
@@ -0,0 +1,170 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.cesecore.certificates.ocsp.exception.OcspSigningQueueFullException;
+
+/**
+ * Signing queue for a single OCSP signer (CA or OcspKeyBinding).
+ *
+ * A fixed number of worker threads, that should match the number of sessions the HSM can use concurrently for the key, sign
+ * responses from a bounded queue. When the queue is full, new responses are rejected immediately instead of piling up threads
+ * that compete for the same HSM sessions, so the caller can answer with "tryLater".
+ *
+ * @version $Id$
+ */
+public class OcspSigningPipeline {
+
+    /** Number of recent signing latencies kept for percentile calculation */
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final String name;
+    private final int workers;
+    private final int queueSize;
+    private final ThreadPoolExecutor executor;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyIndex = 0;
+    private int latencyCount = 0;
+    private final AtomicLong signedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param name name of the signer, used for naming the worker threads
+     * @param workers the number of threads that will sign responses concurrently
+     * @param queueSize the maximum number of responses waiting to be signed
+     */
+    public OcspSigningPipeline(final String name, final int workers, final int queueSize) {
+        this.name = name;
+        this.workers = workers;
+        this.queueSize = queueSize;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "OcspSigner-" + name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        // Don't keep idle threads for signers that are seldom used
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a response for signing.
+     *
+     * @param signingTask the signing task, normally a {@link HsmResponseThread}
+     * @return a Future for the signed response
+     * @throws OcspSigningQueueFullException if the queue of this signer is full
+     * @throws IllegalStateException if this pipeline has been shut down, since it was replaced or released. The response should be
+     *  submitted to the current pipeline of the signer instead.
+     */
+    public Future<BasicOCSPResp> submit(final Callable<BasicOCSPResp> signingTask) throws OcspSigningQueueFullException {
+        try {
+            return executor.submit(new Callable<BasicOCSPResp>() {
+                @Override
+                public BasicOCSPResp call() throws Exception {
+                    final long startTime = System.nanoTime();
+                    final BasicOCSPResp basicOcspResp = signingTask.call();
+                    addLatency(System.nanoTime() - startTime);
+                    return basicOcspResp;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw new IllegalStateException("Signing queue of OCSP signer '" + name + "' has been shut down.", e);
+            }
+            rejectedCount.incrementAndGet();
+            throw new OcspSigningQueueFullException("Signing queue of OCSP signer '" + name + "' is full (" + queueSize + " responses).", e);
+        }
+    }
+
+    /** @return true if this pipeline was created with the given sizes */
+    public boolean isConfiguredWith(final int workers, final int queueSize) {
+        return this.workers == workers && this.queueSize == queueSize;
+    }
+
+    /** @return the number of responses waiting to be signed */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /** @return the number of responses signed by this pipeline */
+    public long getSignedCount() {
+        return signedCount.get();
+    }
+
+    /** @return the number of responses that were rejected since the queue was full */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @param percentile a value between 0 and 100
+     * @return the signing latency in milliseconds at the given percentile of the recently signed responses, or 0 if nothing has been signed
+     */
+    public double getLatencyPercentile(final double percentile) {
+        final long[] samples;
+        synchronized (latencies) {
+            samples = Arrays.copyOf(latencies, latencyCount);
+        }
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        final int index = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+        return samples[Math.max(0, Math.min(index, samples.length - 1))] / 1000000.0;
+    }
+
+    /** Stop accepting new responses. Responses already in the queue will still be signed. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /** @return true if this pipeline has been shut down */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "OCSP signer '" + name + "': workers=" + workers + ", queueDepth=" + getQueueDepth() + "/" + queueSize + ", signed=" + getSignedCount()
+                + ", rejected=" + getRejectedCount() + ", latency p50=" + getLatencyPercentile(50) + " ms, p95=" + getLatencyPercentile(95)
+                + " ms, p99=" + getLatencyPercentile(99) + " ms";
+    }
+
+    private void addLatency(final long nanos) {
+        signedCount.incrementAndGet();
+        synchronized (latencies) {
+            latencies[latencyIndex] = nanos;
+            latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+            if (latencyCount < LATENCY_SAMPLES) {
+                latencyCount++;
+            }
+        }
+    }
+}
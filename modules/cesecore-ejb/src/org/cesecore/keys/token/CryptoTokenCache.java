@@ -27,7 +27,7 @@ import org.cesecore.internal.CommonCacheBase;
 public enum CryptoTokenCache implements CommonCache<CryptoToken> {
     INSTANCE;
 
-    final private CommonCache<CryptoToken> cryptoTokenCache = new CommonCacheBase<CryptoToken>() {
+    final private CommonCacheBase<CryptoToken> cryptoTokenCache = new CommonCacheBase<CryptoToken>() {
         @Override
         protected long getCacheTime() {
             // We should never disable storage of CryptoTokens in the cache completely, since we want to keep any activation
@@ -64,6 +64,16 @@ public enum CryptoTokenCache implements CommonCache<CryptoToken> {
         cryptoTokenCache.updateWith(cryptoTokenId, digest, name, object);
     }
 
+    /** @see CommonCacheBase#shouldCheckForUpdates(int, org.cesecore.internal.CommonCacheBase.VersionSource) */
+    public boolean shouldCheckForUpdates(final int cryptoTokenId, final CommonCacheBase.VersionSource versionSource) {
+        return cryptoTokenCache.shouldCheckForUpdates(cryptoTokenId, versionSource);
+    }
+
+    /** Update the cache with a crypto token read from the database, where version is the rowVersion of the database row. */
+    public void updateWith(int cryptoTokenId, int digest, String name, CryptoToken object, int version) {
+        cryptoTokenCache.updateWith(cryptoTokenId, digest, name, object, version);
+    }
+
     @Override
     public void removeEntry(int cryptoTokenId) {
         cryptoTokenCache.removeEntry(cryptoTokenId);
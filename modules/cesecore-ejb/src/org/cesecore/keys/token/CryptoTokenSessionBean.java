@@ -24,9 +24,11 @@ import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.apache.log4j.Logger;
 import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.internal.CommonCacheBase;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.p11.exception.NoSuchSlotException;
@@ -71,11 +73,24 @@ public class CryptoTokenSessionBean implements CryptoTokenSessionLocal, CryptoTo
         }
     }
 
+    /** Reads the row versions of all crypto tokens, used for detecting which cached crypto tokens have been changed on any node */
+    private final CommonCacheBase.VersionSource cryptoTokenVersionSource = new CommonCacheBase.VersionSource() {
+        @Override
+        public Map<Integer, Integer> getVersions() {
+            final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM CryptoTokenData a", Object[].class);
+            final Map<Integer, Integer> ret = new HashMap<>();
+            for (final Object[] row : query.getResultList()) {
+                ret.put((Integer) row[0], (Integer) row[1]);
+            }
+            return ret;
+        }
+    };
+
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     @Override
     public CryptoToken getCryptoToken(final int cryptoTokenId) {
         // 1. Check (new) CryptoTokenCache if it is time to sync-up with database
-        if (CryptoTokenCache.INSTANCE.shouldCheckForUpdates(cryptoTokenId)) {
+        if (CryptoTokenCache.INSTANCE.shouldCheckForUpdates(cryptoTokenId, cryptoTokenVersionSource)) {
             if (log.isDebugEnabled()) {
                 log.debug("CryptoToken with ID " + cryptoTokenId + " will be checked for updates.");
             }
@@ -106,7 +121,11 @@ public class CryptoTokenSessionBean implements CryptoTokenSessionLocal, CryptoTo
                         // This should never happen now, since the specify allowNonExistingSlot in the createCryptoToken call
                         throw new IllegalStateException("Attempted to find a slot for a PKCS#11 crypto token, but it did not exists. Perhaps the token was removed?");
                     }
-                    CryptoTokenCache.INSTANCE.updateWith(cryptoTokenId, digest, tokenName, cryptoToken);                    
+                    CryptoTokenCache.INSTANCE.updateWith(cryptoTokenId, digest, tokenName, cryptoToken, cryptoTokenData.getRowVersion());
+                } else {
+                    // Keep the cached (and possibly activated) crypto token, but remember the current version
+                    CryptoTokenCache.INSTANCE.updateWith(cryptoTokenId, digest, cryptoTokenData.getTokenName(), CryptoTokenCache.INSTANCE.getEntry(cryptoTokenId),
+                            cryptoTokenData.getRowVersion());
                 }
             }
         }
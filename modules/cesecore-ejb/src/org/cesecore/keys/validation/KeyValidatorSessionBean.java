@@ -60,6 +60,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLoc
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.config.ExternalScriptsConfiguration;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
+import org.cesecore.internal.CommonCacheBase;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.profiles.ProfileData;
@@ -693,6 +694,14 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
                 null, null, null, details);
     }
 
+    /** Reads the row versions of all validators, used for detecting which cached validators have been changed on any node */
+    private final CommonCacheBase.VersionSource validatorVersionSource = new CommonCacheBase.VersionSource() {
+        @Override
+        public Map<Integer, Integer> getVersions() {
+            return profileSession.getRowVersions(Validator.TYPE_NAME);
+        }
+    };
+
     /**
      * Gets a validator by cache or database, can return null. Puts it into the cache, if not already present.
      *
@@ -703,7 +712,7 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
     private Validator getValidatorInternal(int id, boolean fromCache) {
         Validator result = null;
         // If we should read from cache, and we have an id to use in the cache, and the cache does not need to be updated
-        if (fromCache && !ValidatorCache.INSTANCE.shouldCheckForUpdates(id)) {
+        if (fromCache && !ValidatorCache.INSTANCE.shouldCheckForUpdates(id, validatorVersionSource)) {
             // Get from cache (or null)
             result = ValidatorCache.INSTANCE.getEntry(id);
         }
@@ -721,7 +730,7 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
                 final int digest = data.getProtectString(0).hashCode();
                 // The cache compares the database data with what is in the cache
                 // If database is different from cache, replace it in the cache
-                ValidatorCache.INSTANCE.updateWith(data.getId(), digest, data.getProfileName(), result);
+                ValidatorCache.INSTANCE.updateWith(data.getId(), digest, data.getProfileName(), result, data.getRowVersion());
             } else {
                 // Ensure that it is removed from cache if it exists
                 ValidatorCache.INSTANCE.removeEntry(id);
@@ -28,7 +28,7 @@ import org.cesecore.internal.CommonCacheBase;
 public enum ValidatorCache implements CommonCache<Validator> {
     INSTANCE;
 
-    private final CommonCache<Validator> cache = new CommonCacheBase<Validator>() {
+    private final CommonCacheBase<Validator> cache = new CommonCacheBase<Validator>() {
         @Override
         protected long getCacheTime() {
             long time = Math.max( CesecoreConfiguration.getCacheKeyValidatorTime(), -1);
@@ -65,6 +65,16 @@ public enum ValidatorCache implements CommonCache<Validator> {
         cache.updateWith(id, digest, name, object);
     }
 
+    /** @see CommonCacheBase#shouldCheckForUpdates(int, org.cesecore.internal.CommonCacheBase.VersionSource) */
+    public boolean shouldCheckForUpdates(final int id, final CommonCacheBase.VersionSource versionSource) {
+        return cache.shouldCheckForUpdates(id, versionSource);
+    }
+
+    /** Update the cache with a validator read from the database, where version is the rowVersion of the database row. */
+    public void updateWith(int id, int digest, String name, Validator object, int version) {
+        cache.updateWith(id, digest, name, object, version);
+    }
+
     @Override
     public void removeEntry(int id) {
         cache.removeEntry(id);
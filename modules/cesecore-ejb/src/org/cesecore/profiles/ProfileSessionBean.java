@@ -13,7 +13,9 @@
 package org.cesecore.profiles;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -135,6 +137,18 @@ public class ProfileSessionBean implements ProfileSessionLocal {
         return ret;
     }
     
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public Map<Integer, Integer> getRowVersions(final String profileType) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM ProfileData a WHERE a.profileType=:profileType", Object[].class);
+        query.setParameter("profileType", profileType);
+        final Map<Integer, Integer> ret = new HashMap<>();
+        for (final Object[] row : query.getResultList()) {
+            ret.put((Integer) row[0], (Integer) row[1]);
+        }
+        return ret;
+    }
+
     private boolean isFreeProfileId(final int id) {
         boolean foundfree = false;
         if (findById(id) == null) {
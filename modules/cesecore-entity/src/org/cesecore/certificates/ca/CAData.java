@@ -13,7 +13,6 @@
 package org.cesecore.certificates.ca;
 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.security.cert.Certificate;
 import java.util.Date;
 import java.util.LinkedHashMap;
@@ -33,6 +32,7 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.DataMapSerializer;
 
 /**
  * Representation of a CA instance.
@@ -168,39 +168,25 @@ public class CAData extends ProtectedData implements Serializable {
 
 	@Transient
 	public LinkedHashMap<Object, Object> getDataMap() {
-        try {
-            java.beans.XMLDecoder decoder = new  java.beans.XMLDecoder(new java.io.ByteArrayInputStream(getData().getBytes("UTF8")));
-            final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
-            decoder.close();
-            // Handle Base64 encoded string values
-            @SuppressWarnings("unchecked")
-            final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
-            return dataMap;
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);  // No UTF8 would be real trouble
-        }
+        final Map<?, ?> h = DataMapSerializer.deserialize(getData());
+        // Handle Base64 encoded string values
+        @SuppressWarnings("unchecked")
+        final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
+        return dataMap;
 	}
 
     @Transient
     @SuppressWarnings({"rawtypes", "unchecked"})
 	public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        try {
-            // We must base64 encode string for UTF safety
-            final LinkedHashMap<?, ?> a = new Base64PutHashMap();
-            a.putAll((LinkedHashMap)dataMap);
-            final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-            final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-            encoder.writeObject(a);
-            encoder.close();
-            final String data = baos.toString("UTF8");
-            if (log.isDebugEnabled()) {
-                log.debug("Saving CA data with length: "+data.length()+" for CA.");
-            }
-            setData(data);
-            setUpdateTime(System.currentTimeMillis());
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        // We must base64 encode string for UTF safety
+        final LinkedHashMap<?, ?> a = new Base64PutHashMap();
+        a.putAll((LinkedHashMap)dataMap);
+        final String data = DataMapSerializer.serialize(a);
+        if (log.isDebugEnabled()) {
+            log.debug("Saving CA data with length: "+data.length()+" for CA.");
         }
+        setData(data);
+        setUpdateTime(System.currentTimeMillis());
 	}
 
 	//
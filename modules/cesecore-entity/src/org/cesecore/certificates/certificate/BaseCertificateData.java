@@ -348,6 +348,21 @@ public abstract class BaseCertificateData extends ProtectedData {
         return res.getBase64Cert();
     }
     
+    /** @return the parsed certificate, from the parsed certificate cache if it is enabled */
+    private Certificate parseCertificate(final String certEncoded) throws CertificateException {
+        final ParsedCertificateCache cache = ParsedCertificateCache.INSTANCE;
+        if (!cache.isEnabled()) {
+            return CertTools.getCertfromByteArray(Base64.decode(certEncoded.getBytes()), Certificate.class);
+        }
+        final String fingerprint = getFingerprint();
+        Certificate certificate = cache.get(fingerprint);
+        if (certificate == null) {
+            certificate = CertTools.getCertfromByteArray(Base64.decode(certEncoded.getBytes()), Certificate.class);
+            cache.put(fingerprint, certificate, certEncoded.length());
+        }
+        return certificate;
+    }
+
     /**
      * Returns the certificate as an object.
      *
@@ -363,7 +378,7 @@ public abstract class BaseCertificateData extends ProtectedData {
                 }
                 return null;
             }
-            return CertTools.getCertfromByteArray(Base64.decode(certEncoded.getBytes()), Certificate.class);
+            return parseCertificate(certEncoded);
         } catch (CertificateException ce) {
             log.error("Can't decode certificate.", ce);
             return null;
@@ -391,7 +406,7 @@ public abstract class BaseCertificateData extends ProtectedData {
                 }
                 return null;
             }
-            return CertTools.getCertfromByteArray(Base64.decode(certEncoded.getBytes()), Certificate.class);
+            return parseCertificate(certEncoded);
         } catch (CertificateException ce) {
             log.error("Can't decode " + getClassName() + ".", ce);
             return null;
@@ -13,8 +13,10 @@
 package org.cesecore.certificates.certificateprofile;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -24,6 +26,7 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.DatabaseProtectionException;
@@ -199,6 +202,16 @@ public class CertificateProfileData extends ProtectedData implements Serializabl
         return query.getResultList();
     }
 
+    /** @return map of profile id to row version for all certificate profiles */
+    public static Map<Integer, Integer> findRowVersions(final EntityManager entityManager) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM CertificateProfileData a", Object[].class);
+        final Map<Integer, Integer> ret = new HashMap<>();
+        for (final Object[] row : query.getResultList()) {
+            ret.put((Integer) row[0], (Integer) row[1]);
+        }
+        return ret;
+    }
+
     //
     // Start Database integrity protection methods
     //
@@ -79,7 +79,6 @@ import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.KeyUsage;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
-import org.bouncycastle.cert.CertException;
 import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v2CRLBuilder;
@@ -117,8 +116,8 @@ import org.cesecore.certificates.ca.extendedservices.ExtendedCAServiceInfo;
 import org.cesecore.certificates.ca.extendedservices.ExtendedCAServiceTypes;
 import org.cesecore.certificates.ca.internal.CertificateValidity;
 import org.cesecore.certificates.ca.internal.RequestAndPublicKeySelector;
-import org.cesecore.certificates.ca.internal.SernoGenerator;
 import org.cesecore.certificates.ca.internal.SernoGeneratorRandom;
+import org.cesecore.certificates.ca.internal.SernoPool;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateCreateException;
 import org.cesecore.certificates.certificate.IllegalKeyException;
@@ -135,6 +134,7 @@ import org.cesecore.certificates.certificatetransparency.CTLogInfo;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlBuilder;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
@@ -1135,12 +1135,10 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
                 if (ei != null && ei.certificateSerialNumber()!=null) {
                     serno = ei.certificateSerialNumber();
                 } else {
-                    SernoGenerator instance = SernoGeneratorRandom.instance(getSerialNumberOctetSize());
-                    serno = instance.getSerno();
+                    serno = generateSerno(CertTools.getSubjectDN(cacert), certGenParams);
                 }
             } else {
-                SernoGenerator instance = SernoGeneratorRandom.instance(getSerialNumberOctetSize());
-                serno = instance.getSerno();
+                serno = generateSerno(CertTools.getSubjectDN(cacert), certGenParams);
                 if ((ei != null) && (ei.certificateSerialNumber() != null)) {
                     final String msg = intres.getLocalizedMessage("createcert.certprof_not_allowing_cert_sn_override_using_normal", ei.certificateSerialNumber().toString(16));
                     log.info(msg);
@@ -1820,6 +1818,18 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         return gen;
     }
     
+    /**
+     * Generates a random serial number, from the pool of pre-generated serial numbers of this CA if a pool is configured
+     * (ca.serialnumberpoolsize) and the serial numbers can be checked against the database.
+     */
+    private BigInteger generateSerno(final String issuerDN, final CertificateGenerationParams certGenParams) {
+        final int poolSize = CesecoreConfiguration.getCaSerialNumberPoolSize();
+        if (poolSize > 0 && certGenParams != null && certGenParams.getSernoExistenceChecker() != null) {
+            return SernoPool.instance(issuerDN, getSerialNumberOctetSize(), poolSize).getSerno(certGenParams.getSernoExistenceChecker());
+        }
+        return SernoGeneratorRandom.instance(getSerialNumberOctetSize()).getSerno();
+    }
+
     /**
      * Generate a CRL or a deltaCRL
      *
@@ -1882,18 +1892,6 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
 
         final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(issuer, thisUpdate);
         crlgen.setNextUpdate(nextUpdate);
-        if (certs != null) {
-            if (log.isDebugEnabled()) {
-                log.debug("Adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-            for (final RevokedCertInfo certinfo : certs) {
-                crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Finished adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-        }
-
 
         // Authority key identifier
         if (getUseAuthorityKeyIdentifier() == true) {
@@ -1998,25 +1996,10 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
             }
         }
 
-        final X509CRLHolder crl;
-        if (log.isDebugEnabled()) {
-            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
-        final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
-        try {
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), X509CAImpl.SIGN_BUFFER_SIZE);
-            crl = crlgen.build(signer);
-        } catch (OperatorCreationException e) {
-            // Very fatal error
-            throw new RuntimeException("Can not create Jca content signer: ", e);
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
-
         // Verify using the CA certificate before returning
         // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
         // because something is wrong...
+        final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
         final PublicKey verifyKey;
         if (cacert != null) {
             verifyKey = cacert.getPublicKey();
@@ -2029,9 +2012,31 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
                 log.trace("Got the verify key from the CA token.");
             }
         }
-        try {
+        final X509CRLHolder crl;
+        // The entries are encoded one by one and streamed to the signer, since CRLs with millions of entries
+        // need far too much memory as an ASN.1 object tree
+        try (final StreamingCrlBuilder streamingCrlBuilder = new StreamingCrlBuilder()) {
+            if (certs != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
+                }
+                for (final RevokedCertInfo certinfo : certs) {
+                    streamingCrlBuilder.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Finished adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+            }
+            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), X509CAImpl.SIGN_BUFFER_SIZE);
+            crl = streamingCrlBuilder.build(crlgen, signer);
+            if (log.isDebugEnabled()) {
+                log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+            }
             final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
-            if (!crl.isSignatureValid(verifier)) {
+            if (!streamingCrlBuilder.isSignatureValid(verifier)) {
                 throw new SignatureException("Cannot verify the signature of the CRL for issuer " + "'" + issuer
                         + "' using the public key with SHA-1 fingerprint " + CertTools.createPublicKeyFingerprint(verifyKey, "SHA-1")
                         + ". The CRL signature was created with a private key stored in the token " + cryptoToken.getTokenName()
@@ -2040,8 +2045,6 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
-        } catch (CertException e) {
-            throw new SignatureException(e.getMessage(), e);
         }
         if (log.isDebugEnabled()) {
             log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
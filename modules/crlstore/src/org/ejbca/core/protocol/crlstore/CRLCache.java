@@ -14,8 +14,9 @@
 package org.ejbca.core.protocol.crlstore;
 
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -24,11 +25,17 @@ import org.cesecore.certificates.ca.internal.CaCertificateCache;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CRLInfo;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlUpdateNotifier;
 import org.cesecore.util.CertTools;
+import org.ejbca.config.VAConfiguration;
 
 /**
  * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the 
  * VA responder needs to fetch.
+ * 
+ * The latest CRL and delta CRL of each CA and partition are kept as immutable {@link CachedCrl} objects, that are served without
+ * locking as long as they are fresh. A cached CRL is fresh for "crlstore.cachetime" milliseconds after it was last checked against
+ * the database, unless a CRL for the issuer has been stored on this node since then (see {@link CrlUpdateNotifier}).
  *
  * @version $Id$
  */
@@ -40,26 +47,51 @@ public class CRLCache {
 	
 	private final CrlStoreSessionLocal crlSession;
 	private final CaCertificateCache certCache;
-	final private Map<Integer, CRLEntity> crls = new HashMap<>();
-	final private Map<Integer, CRLEntity> deltaCrls = new HashMap<>();
-	private class CRLEntity {
-		final CRLInfo crlInfo;
-		final byte encoded[];
+	final private Map<Long, CRLEntity> crls = new ConcurrentHashMap<>();
+	final private Map<Long, CRLEntity> deltaCrls = new ConcurrentHashMap<>();
+
+	/** An encoded CRL with the information needed for answering conditional HTTP requests. Instances are shared by all requests and must not be modified. */
+	public static class CachedCrl {
+		private final byte[] encoded;
+		private final int crlNumber;
+		private final long thisUpdate;
+		private final String eTag;
+
 		/**
-		 * @param crlInfo
-		 * @param encoded
+		 * @param encoded the DER encoded CRL
+		 * @param crlNumber the CRL number
+		 * @param thisUpdate thisUpdate of the CRL in milliseconds, or -1 if not known
 		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
-			super();
-			this.crlInfo = crlInfo;
+		CachedCrl(final byte[] encoded, final int crlNumber, final long thisUpdate) {
 			this.encoded = encoded;
+			this.crlNumber = crlNumber;
+			this.thisUpdate = thisUpdate;
+			this.eTag = "\"" + CertTools.getFingerprintAsString(encoded) + "\"";
+		}
+
+		/** @return the DER encoded CRL. The array is shared and must not be modified. */
+		public byte[] getEncoded() { return encoded; }
+		public int getCrlNumber() { return crlNumber; }
+		/** @return thisUpdate of the CRL in milliseconds, or -1 if not known */
+		public long getThisUpdate() { return thisUpdate; }
+		/** @return a strong HTTP entity tag for the CRL, including the quotes */
+		public String getETag() { return eTag; }
+	}
+
+	private static class CRLEntity {
+		final CachedCrl crl;
+		/** When the CRL was last checked against the database */
+		final long validatedTime;
+
+		CRLEntity(final CachedCrl crl, final long validatedTime) {
+			this.crl = crl;
+			this.validatedTime = validatedTime;
 		}
 	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
+	/** Locks used when (re-)loading a CRL, so concurrent requests for a stale CRL only cause a single reload. The same lock is used for
+	 * the CRL and delta CRL of a partition. Readers of fresh CRLs never take a lock.
 	 */
-	final private Lock rebuildlock = new ReentrantLock();
+	final private ConcurrentMap<Long, Lock> reloadLocks = new ConcurrentHashMap<>();
 
 	 /**
      * @return  {@link CRLCache} for the CA.
@@ -95,7 +127,7 @@ public class CRLCache {
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
      * @return CRL or null if the CRL does not exist in the cache.
      */
-	public byte[] findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+	public CachedCrl findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findBySubjectKeyIdentifier(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
@@ -105,56 +137,89 @@ public class CRLCache {
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
      * @return CRL or null if the CRL does not exist in the cache.
      */
-	public byte[] findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+	public CachedCrl findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findLatestBySubjectDN(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
-	private byte[] findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
+	private CachedCrl findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
 				log.debug("No CA certificate, returning null.");
 			}
 			return null;
 		}
-		final HashID id = HashID.getFromSubjectDN(caCert);
 		final String issuerDN = CertTools.getSubjectDN(caCert);
-		this.rebuildlock.lock();
+		if (crlNumber > -1) {
+			// Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+			if (log.isDebugEnabled()) {
+				log.debug("Getting CRL with CRL number "+crlNumber);
+			}
+			final byte[] encoded = this.crlSession.getCRL(issuerDN, crlPartitionIndex, crlNumber);
+			return encoded == null ? null : new CachedCrl(encoded, crlNumber, -1L);
+		}
+		final Long key = Long.valueOf(((long) HashID.getFromSubjectDN(caCert).getKey().intValue() << 32) | (crlPartitionIndex & 0xffffffffL));
+		final Map<Long, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
+		final CRLEntity cachedCRL = usedCrls.get(key);
+		if (cachedCRL != null && isFresh(cachedCRL, issuerDN, System.currentTimeMillis())) {
+			return cachedCRL.crl;
+		}
+		final Lock reloadLock = getReloadLock(key);
+		reloadLock.lock();
 		try {
+			// Another thread may have reloaded the CRL while we waited for the lock
+			final CRLEntity currentCRL = usedCrls.get(key);
+			final long now = System.currentTimeMillis();
+			if (currentCRL != null && isFresh(currentCRL, issuerDN, now)) {
+				return currentCRL.crl;
+			}
 			final CRLInfo crlInfo = this.crlSession.getLastCRLInfo(issuerDN, crlPartitionIndex, isDelta);
 			if ( crlInfo==null ) {
 				if (log.isDebugEnabled()) {
 					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
 				}
+				usedCrls.remove(key);
 				return null;
 			}
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(id.getKey());
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
-			        }
-			        return cachedCRL.encoded;
-			    }
+			if (currentCRL != null && currentCRL.crl.getCrlNumber() == crlInfo.getLastCRLNumber()) {
+				if (log.isDebugEnabled()) {
+					log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
+				}
+				usedCrls.put(key, new CRLEntity(currentCRL.crl, now));
+				return currentCRL.crl;
 			}
-			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlSession.getCRL(issuerDN, crlPartitionIndex, crlNumber) );
-			} else {
-			    entry = new CRLEntity( crlInfo, this.crlSession.getLastCRL(issuerDN, crlPartitionIndex, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(id.getKey(), entry);
+			final byte[] encoded = this.crlSession.getLastCRL(issuerDN, crlPartitionIndex, isDelta);
+			if (encoded == null) {
+				return null;
 			}
+			final CachedCrl crl = new CachedCrl(encoded, crlInfo.getLastCRLNumber(), crlInfo.getCreateDate().getTime());
+			usedCrls.put(key, new CRLEntity(crl, now));
 			if (log.isDebugEnabled()) {
 				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
 			}
-			return entry.encoded;
+			return crl;
 		} finally {
-			this.rebuildlock.unlock();
+			reloadLock.unlock();
+		}
+	}
+
+	/**
+	 * A CRL is fresh if it was checked against the database within the cache time. After a CRL has been stored for the issuer on this
+	 * node, the database is checked on every request during one cache time, so a CRL that was not yet committed is not cached for long.
+	 */
+	private boolean isFresh(final CRLEntity entity, final String issuerDN, final long now) {
+		final long cacheTime = VAConfiguration.getCrlStoreCacheTime();
+		return now - entity.validatedTime < cacheTime && entity.validatedTime - CrlUpdateNotifier.INSTANCE.getLastUpdateTime(issuerDN) >= cacheTime;
+	}
+
+	private Lock getReloadLock(final Long key) {
+		Lock reloadLock = reloadLocks.get(key);
+		if (reloadLock == null) {
+			reloadLock = new ReentrantLock();
+			final Lock existing = reloadLocks.putIfAbsent(key, reloadLock);
+			if (existing != null) {
+				reloadLock = existing;
+			}
 		}
+		return reloadLock;
 	}
 }
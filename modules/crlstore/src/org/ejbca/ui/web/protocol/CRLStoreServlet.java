@@ -71,8 +71,8 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, iHash, crlPartitionIndex, isDelta(req));
+	    final CRLCache.CachedCrl crl = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
+		returnCrl(crl, req, resp, iHash, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -83,8 +83,8 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, name, crlPartitionIndex, isDelta(req));
+	    final CRLCache.CachedCrl crl = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
+		returnCrl(crl, req, resp, name, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -122,21 +122,58 @@ public class CRLStoreServlet extends StoreServletBase {
         return CertificateConstants.NO_CRL_PARTITION;
     }
 
-	private void returnCrl( byte crl[], HttpServletResponse resp, String name, final int crlPartitionIndex, boolean isDelta) throws IOException {
-		if ( crl==null || crl.length<1 ) {
+	private void returnCrl(final CRLCache.CachedCrl crl, final HttpServletRequest req, HttpServletResponse resp, String name, final int crlPartitionIndex, boolean isDelta) throws IOException {
+		if ( crl==null || crl.getEncoded().length<1 ) {
 		    if (log.isDebugEnabled()) {
 		        log.debug("CRL was not found. Hash=" + name + ", DeltaCRL=" + isDelta + ", Partition=" + crlPartitionIndex);
 		    }
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
 			return;
 		}
+		resp.setHeader("ETag", crl.getETag());
+		if (crl.getThisUpdate() > 0) {
+		    resp.setDateHeader("Last-Modified", crl.getThisUpdate());
+		}
+		if (isNotModified(crl, req)) {
+		    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		    return;
+		}
 		resp.setContentType("application/pkix-crl");
 		resp.setHeader("Content-disposition", "attachment; filename=\"" + 
 		        (isDelta?"delta":"") +
 		        StringTools.stripFilename(name) +
 		        (crlPartitionIndex != CertificateConstants.NO_CRL_PARTITION ? "_partition" + crlPartitionIndex : "") +
 		        ".crl\"");
-		resp.setContentLength(crl.length);
-		resp.getOutputStream().write(crl);
+		// The encoded CRL is shared by all requests, so it is written as is without copying
+		final byte[] encoded = crl.getEncoded();
+		resp.setContentLength(encoded.length);
+		resp.getOutputStream().write(encoded);
+	}
+
+	/** @return true if the client already has this CRL, according to the If-None-Match or If-Modified-Since request headers (RFC 7232) */
+	private boolean isNotModified(final CRLCache.CachedCrl crl, final HttpServletRequest req) {
+	    final String ifNoneMatch = req.getHeader("If-None-Match");
+	    if (ifNoneMatch != null) {
+	        // If-None-Match takes precedence over If-Modified-Since
+	        for (final String eTag : ifNoneMatch.split(",")) {
+	            final String trimmed = eTag.trim();
+	            if ("*".equals(trimmed) || crl.getETag().equals(trimmed) || crl.getETag().equals(StringUtils.removeStart(trimmed, "W/"))) {
+	                return true;
+	            }
+	        }
+	        return false;
+	    }
+	    if (crl.getThisUpdate() > 0) {
+	        try {
+	            final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+	            // HTTP dates have a resolution of seconds
+	            return ifModifiedSince != -1 && ifModifiedSince >= crl.getThisUpdate() / 1000 * 1000;
+	        } catch (IllegalArgumentException e) {
+	            if (log.isDebugEnabled()) {
+	                log.debug("Ignoring invalid If-Modified-Since header: " + e.getMessage());
+	            }
+	        }
+	    }
+	    return false;
 	}
 }
@@ -22,6 +22,7 @@ import org.cesecore.config.ConfigurationHolder;
  */
 public class VAConfiguration {
 	private final static String S_HASH_ALIAS_PREFIX = "va.sKIDHash.alias.";
+	public final static String CRLSTORE_CACHE_TIME = "crlstore.cachetime";
 
 	public static String sKIDHashFromName(String name) {
 		return ConfigurationHolder.getString(S_HASH_ALIAS_PREFIX+name);
@@ -31,4 +32,15 @@ public class VAConfiguration {
 		return ConfigurationHolder.updateConfiguration(S_HASH_ALIAS_PREFIX+name, hash);
 	}
 
+	/**
+	 * @return the time in milliseconds a CRL served by the CRL store is used without checking the database for a newer CRL, 0 to check on every request
+	 */
+	public static long getCrlStoreCacheTime() {
+		try {
+			return Math.max(0L, Long.parseLong(ConfigurationHolder.getString(CRLSTORE_CACHE_TIME)));
+		} catch (NumberFormatException e) {
+			return 0L;
+		}
+	}
+
 }
@@ -17,6 +17,7 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.cesecore.authorization.AuthorizationDeniedException;
+import org.ejbca.core.ejb.crl.CrlCreationResult;
 import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.services.BaseWorker;
@@ -58,8 +59,8 @@ public class CRLUpdateWorker extends BaseWorker {
 			    // Use true here so the service works the same as before upgrade from 3.9.0 when this function of 
 			    // selecting CAs did not exist, no CA = Any CA.
 			    Collection<Integer> caids = getCAIdsToCheck(true); 
-			    publishingCrlSession.createCRLs(getAdmin(), caids, polltime*1000);
-			    publishingCrlSession.createDeltaCRLs(getAdmin(), caids, polltime*1000);
+			    logResult(publishingCrlSession.createCRLsWithResult(getAdmin(), caids, polltime*1000));
+			    logResult(publishingCrlSession.createDeltaCRLsWithResult(getAdmin(), caids, polltime*1000));
 			} catch (AuthorizationDeniedException e) {
 			    log.error("Internal authentication token was deneied access to importing CRLs or revoking certificates.", e);
 			} finally {
@@ -70,5 +71,19 @@ public class CRLUpdateWorker extends BaseWorker {
 		}
 	}
 
-
+    /** Logs the time spent on each generated CRL partition, and on all checked partitions if debug logging is enabled */
+    private void logResult(final CrlCreationResult result) {
+        if (result.getCreatedPartitionCount() > 0) {
+            log.info(result.toString());
+        } else if (log.isDebugEnabled()) {
+            log.debug(result.toString());
+        }
+        for (final CrlCreationResult.PartitionResult partitionResult : result.getPartitionResults()) {
+            if (partitionResult.isCreated()) {
+                log.info((result.isDeltaCrl() ? "Delta CRL " : "CRL ") + partitionResult.toString());
+            } else if (log.isDebugEnabled()) {
+                log.debug((result.isDeltaCrl() ? "Delta CRL " : "CRL ") + partitionResult.toString());
+            }
+        }
+    }
 }
@@ -12,7 +12,9 @@
  *************************************************************************/
 package org.ejbca.core.model.services.workers;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -27,7 +29,8 @@ import org.ejbca.core.model.services.ServiceExecutionFailedException;
 
 /**
  * Class processing the publisher queue. Can only run on instance in one VM on
- * one node. See method docs below for information about algorithms used.
+ * one node, unless publisher.queue.claimtime is configured in ejbca.properties.
+ * See method docs below for information about algorithms used.
  * 
  * @version $Id$
  */
@@ -96,14 +99,20 @@ public class PublishQueueProcessWorker extends EmailSendingWorker {
                 if (o != null) {
                     String idstr = (String) o;
                     log.debug("Ids: " + idstr);
-                    // Loop through all handled publisher ids and process
-                    // anything in the queue
+                    // Process anything in the queue for all handled publisher ids, the queues of the publishers are processed concurrently
                     String[] ids = StringUtils.split(idstr, ';');
+                    final List<BasePublisher> publishers = new ArrayList<>();
                     for (int i = 0; i < ids.length; i++) {
                         int publisherId = Integer.valueOf(ids[i]);
-                        // Get everything from the queue for this publisher id
-                        BasePublisher publisher = publisherSession.getPublisher(publisherId);                  
-                        publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(getAdmin(), publisher);
+                        BasePublisher publisher = publisherSession.getPublisher(publisherId);
+                        if (publisher == null) {
+                            log.info("Publisher with id " + publisherId + " does not exist, its queue is not processed.");
+                        } else {
+                            publishers.add(publisher);
+                        }
+                    }
+                    if (!publishers.isEmpty()) {
+                        publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(getAdmin(), publishers);
                     }
                 } else {
                     log.debug("No publisher ids configured for worker.");
@@ -162,6 +162,16 @@ public class PublicKeyBlacklistKeyValidator extends KeyValidatorBase {
         // Use the entry class to create a correct fingerprint
         final String fingerprint = PublicKeyBlacklistEntry.createFingerprint(publicKey);
         log.info("Matching public key with blacklist fingerprint " + fingerprint + " with public key blacklist.");
+        // Large blacklists are kept in an index file, which is checked first as it does not require any database lookup
+        final PublicKeyBlacklistIndex index = PublicKeyBlacklistIndex.getInstance();
+        if (index != null && index.contains(fingerprint) && matchesKeyAlgorithms(publicKey, fingerprint)) {
+            final String message = "Public key with fingerprint " + fingerprint + " found in public key blacklist index.";
+            messages.add("Invalid: " + message);
+            if (log.isDebugEnabled()) {
+                log.debug(message);
+            }
+            return messages;
+        }
         if (!useOnlyCache) {
             // A bit hackish, make a call to blacklist session to ensure that blacklist cache has this entry loaded
             // TODO: if the key is not in the cache (which it hopefully is not) this is a database lookup for each key. Huuge performance hit
@@ -175,15 +185,7 @@ public class PublicKeyBlacklistKeyValidator extends KeyValidatorBase {
         boolean keyAlgMatched = false;
 
         if (null != entry) {
-            // Filter for key specifications.
-            final Set<String> keyAlgs = new HashSet<>(getKeyAlgorithms());
-            if (keyAlgs.contains(AlgorithmConstants.KEYALGORITHM_EC) || keyAlgs.contains(AlgorithmConstants.KEYALGORITHM_ECDSA)) {
-                keyAlgs.add(AlgorithmConstants.KEYALGORITHM_EC);
-                keyAlgs.add(AlgorithmConstants.KEYALGORITHM_ECDSA);
-            }
-            if (getKeyAlgorithms().contains("-1") || keyAlgs.contains(getKeyAlg(publicKey, fingerprint))) {
-                keyAlgMatched = true;
-            }
+            keyAlgMatched = matchesKeyAlgorithms(publicKey, fingerprint);
         }
         if (keyAlgMatched) {
             final String message = "Public key with id " + entry.getID() + " and fingerprint " + fingerprint
@@ -201,6 +203,17 @@ public class PublicKeyBlacklistKeyValidator extends KeyValidatorBase {
         return messages;
     }
 
+    /** @return true if the algorithm of the public key is one of the key algorithms of this validator */
+    private boolean matchesKeyAlgorithms(final PublicKey publicKey, final String fingerprint) {
+        // Filter for key specifications.
+        final Set<String> keyAlgs = new HashSet<>(getKeyAlgorithms());
+        if (keyAlgs.contains(AlgorithmConstants.KEYALGORITHM_EC) || keyAlgs.contains(AlgorithmConstants.KEYALGORITHM_ECDSA)) {
+            keyAlgs.add(AlgorithmConstants.KEYALGORITHM_EC);
+            keyAlgs.add(AlgorithmConstants.KEYALGORITHM_ECDSA);
+        }
+        return getKeyAlgorithms().contains("-1") || keyAlgs.contains(getKeyAlg(publicKey, fingerprint));
+    }
+
     private final String getKeyAlg(PublicKey publicKey, String fingerprint) {
         String keyAlg;
         if (publicKey instanceof BCRSAPublicKey) {
@@ -0,0 +1,157 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.novell.ldap.LDAPConnection;
+
+/**
+ * Unit tests of the connection pool of the LDAP publishers, using connections that are never connected.
+ *
+ * @version $Id$
+ */
+public class LdapConnectionPoolUnitTest {
+
+    /** Connector that keeps track of created and closed connections */
+    private static class TestConnector implements LdapConnectionPool.Connector {
+        final List<String> connectedServers = new ArrayList<>();
+        final List<LDAPConnection> disconnected = new ArrayList<>();
+        final Set<LDAPConnection> dead = new HashSet<>();
+
+        @Override
+        public LDAPConnection connect(final String server) {
+            connectedServers.add(server);
+            return new LDAPConnection();
+        }
+
+        @Override
+        public boolean isAlive(final LDAPConnection lc) {
+            return !dead.contains(lc);
+        }
+
+        @Override
+        public void disconnect(final LDAPConnection lc) {
+            disconnected.add(lc);
+        }
+    }
+
+    @Test
+    public void testReuseAndFailure() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final LdapConnectionPool pool = new LdapConnectionPool("config", connector, 2, 60000);
+        final LDAPConnection first = pool.getConnection("ldap1");
+        pool.releaseConnection("ldap1", first, false);
+        assertSame("Released connection should be reused.", first, pool.getConnection("ldap1"));
+        final LDAPConnection other = pool.getConnection("ldap2");
+        assertNotSame("Connections to another server should not be shared.", first, other);
+        assertEquals(2, connector.connectedServers.size());
+        pool.releaseConnection("ldap1", first, false);
+        // A failed operation closes the connection
+        pool.releaseConnection("ldap2", other, true);
+        assertEquals(1, connector.disconnected.size());
+        assertSame(other, connector.disconnected.get(0));
+        // Dead connections are not handed out
+        connector.dead.add(first);
+        final LDAPConnection replacement = pool.getConnection("ldap1");
+        assertNotSame("Dead connection should have been replaced.", first, replacement);
+        assertTrue(connector.disconnected.contains(first));
+        pool.releaseConnection("ldap1", replacement, false);
+        pool.close();
+        assertTrue("Idle connections should be closed with the pool.", connector.disconnected.contains(replacement));
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testSizeAndIdleTime() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final LdapConnectionPool pool = new LdapConnectionPool("config", connector, 2, 60000);
+        final List<LDAPConnection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            connections.add(pool.getConnection("ldap1"));
+        }
+        for (final LDAPConnection lc : connections) {
+            pool.releaseConnection("ldap1", lc, false);
+        }
+        assertEquals("Only the pool size should be kept open.", 2, pool.getIdleCount());
+        assertEquals(1, connector.disconnected.size());
+        // Connections are closed after the idle time
+        final LdapConnectionPool noIdlePool = new LdapConnectionPool("config", connector, 2, -1);
+        final LDAPConnection lc = noIdlePool.getConnection("ldap1");
+        noIdlePool.releaseConnection("ldap1", lc, false);
+        assertEquals(0, noIdlePool.getIdleCount());
+        assertTrue(connector.disconnected.contains(lc));
+        // Pooling can be disabled
+        final LdapConnectionPool disabledPool = new LdapConnectionPool("config", connector, 0, 60000);
+        disabledPool.releaseConnection("ldap1", disabledPool.getConnection("ldap1"), false);
+        assertEquals(0, disabledPool.getIdleCount());
+    }
+
+    @Test
+    public void testConfigurationChange() {
+        final TestConnector connector = new TestConnector();
+        final LdapConnectionPool pool = LdapConnectionPool.getInstance(4711, "config1", connector, 2, 60000);
+        assertSame(pool, LdapConnectionPool.getInstance(4711, "config1", connector, 2, 60000));
+        assertNotSame("A new pool should be used when the configuration changes.", pool,
+                LdapConnectionPool.getInstance(4711, "config2", connector, 2, 60000));
+        assertTrue("The replaced pool should have been closed.", pool.isClosed());
+    }
+
+    @Test
+    public void testCloseIdleConnections() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final LdapConnectionPool activePool = LdapConnectionPool.getInstance(4712, "config", connector, 2, 60000);
+        activePool.releaseConnection("ldap1", activePool.getConnection("ldap1"), false);
+        final LdapConnectionPool quietPool = LdapConnectionPool.getInstance(4713, "config", connector, 2, 50);
+        final LDAPConnection lc = quietPool.getConnection("ldap1");
+        quietPool.releaseConnection("ldap1", lc, false);
+        assertEquals(1, quietPool.getIdleCount());
+        Thread.sleep(100);
+        // Without any further use of the pool
+        LdapConnectionPool.closeIdleConnections();
+        assertTrue("Connection should be closed after the idle time.", connector.disconnected.contains(lc));
+        assertTrue("Pool without open connections should be closed.", quietPool.isClosed());
+        assertNotSame(quietPool, LdapConnectionPool.getInstance(4713, "config", connector, 2, 50));
+        assertEquals("Connection that has not been idle for long should be kept.", 1, activePool.getIdleCount());
+        assertSame(activePool, LdapConnectionPool.getInstance(4712, "config", connector, 2, 60000));
+        // Removing the publisher closes its pool
+        LdapConnectionPool.remove(4712);
+        assertTrue(activePool.isClosed());
+        assertEquals(0, activePool.getIdleCount());
+        assertEquals(2, connector.disconnected.size());
+    }
+
+    @Test
+    public void testCloseAll() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final LdapConnectionPool pool = LdapConnectionPool.getInstance(4714, "config", connector, 2, 60000);
+        final LDAPConnection idle = pool.getConnection("ldap1");
+        final LDAPConnection inUse = pool.getConnection("ldap1");
+        pool.releaseConnection("ldap1", idle, false);
+        LdapConnectionPool.closeAll();
+        assertTrue(connector.disconnected.contains(idle));
+        pool.releaseConnection("ldap1", inUse, false);
+        assertTrue("Connection in use should be closed when it is released.", connector.disconnected.contains(inUse));
+        assertNotSame(pool, LdapConnectionPool.getInstance(4714, "config", connector, 2, 60000));
+    }
+}
@@ -0,0 +1,105 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.util.FileTools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the public key blacklist index file and its builder.
+ *
+ * @version $Id$
+ */
+public class PublicKeyBlacklistIndexTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = FileTools.createTempDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        FileTools.delete(directory);
+    }
+
+    private static String fingerprint(final int i) {
+        final byte[] bytes = new byte[32];
+        bytes[0] = (byte) (i * 37);
+        bytes[15] = (byte) i;
+        bytes[31] = (byte) (i >> 8);
+        return Hex.toHexString(bytes);
+    }
+
+    @Test
+    public void testBuildAndLookup() throws IOException {
+        final PublicKeyBlacklistIndex.Builder builder = new PublicKeyBlacklistIndex.Builder();
+        final StringBuilder csv = new StringBuilder("# Comment\n\n");
+        // Odd numbers only, with duplicates and more than the initial capacity of the builder
+        for (int i = 1; i < 4000; i += 2) {
+            csv.append(fingerprint(i)).append(",RSA2048\n");
+            if (i % 3 == 0) {
+                csv.append(fingerprint(i).toUpperCase()).append('\n');
+            }
+        }
+        csv.append("not a fingerprint\n");
+        builder.addCsv(new StringReader(csv.toString()));
+        assertEquals("Invalid fingerprints should be skipped.", 1, builder.getSkipped());
+        final File file = new File(directory, "blacklist.idx");
+        assertEquals("Duplicates should be removed.", 2000, builder.write(file));
+        final PublicKeyBlacklistIndex index = PublicKeyBlacklistIndex.open(file);
+        assertEquals(2000, index.size());
+        for (int i = 0; i < 4000; i++) {
+            assertEquals("Wrong result for fingerprint " + i, i % 2 == 1, index.contains(fingerprint(i)));
+        }
+        assertFalse(index.contains(null));
+        assertFalse(index.contains(fingerprint(1).substring(2)));
+        assertFalse(index.contains(fingerprint(1).replace('0', 'x')));
+        // Add more fingerprints to the existing index
+        final PublicKeyBlacklistIndex.Builder appender = new PublicKeyBlacklistIndex.Builder();
+        appender.addAll(index);
+        assertTrue(appender.add(fingerprint(2)));
+        assertEquals(2001, appender.write(file));
+        final PublicKeyBlacklistIndex appended = PublicKeyBlacklistIndex.open(file);
+        assertTrue(appended.contains(fingerprint(1)));
+        assertTrue(appended.contains(fingerprint(2)));
+        assertFalse(appended.contains(fingerprint(4)));
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        final File file = new File(directory, "invalid.idx");
+        Files.write(file.toPath(), fingerprint(1).getBytes(StandardCharsets.US_ASCII));
+        try {
+            PublicKeyBlacklistIndex.open(file);
+            fail("A file that is not an index should not be opened.");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
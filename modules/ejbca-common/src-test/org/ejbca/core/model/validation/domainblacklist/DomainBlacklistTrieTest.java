@@ -0,0 +1,113 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation.domainblacklist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+/**
+ * Tests DomainBlacklistTrie functions.
+ * @version $Id$
+ */
+public class DomainBlacklistTrieTest {
+
+    private static final String[] LABELS = { "", "a", "b", "ab", "com", "bank", "example" };
+
+    @Test
+    public void testCombinedMatch() {
+        final DomainBlacklistTrie trie = new DomainBlacklistTrie.Builder()
+                .add("bank", "bankORIG")
+                .add("paypal.com", "paypalORIG.com")
+                .add("login.paypal.com", "loginORIG.paypal.com")
+                .add("paypal.com", "paypalLAST.com")
+                .build();
+        assertEquals(3, trie.size());
+        assertEquals("paypalLAST.com", trie.get("paypal.com"));
+        assertSame(trie, DomainBlacklistTrie.valueOf(trie));
+        final int all = DomainBlacklistTrie.MATCH_EXACT | DomainBlacklistTrie.MATCH_BASEDOMAIN | DomainBlacklistTrie.MATCH_COMPONENT;
+        assertEquals("loginORIG.paypal.com", trie.find("login.paypal.com", all));
+        assertEquals("loginORIG.paypal.com", trie.find("www.login.paypal.com", all));
+        assertEquals("bankORIG", trie.find("bank.example.com", all));
+        assertEquals("paypalLAST.com", trie.find("bank.paypal.com", all));
+        assertNull(trie.find("paypal.example.com", all));
+        assertEquals(trie, new HashMap<>(trie));
+    }
+
+    /** Compares the trie with the map based checks of the blacklist checkers in earlier versions */
+    @Test
+    public void testSameResultsAsMapLookups() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            final Map<String,String> blacklist = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                final String domain = randomDomain(random);
+                if (!domain.isEmpty()) {
+                    blacklist.put(domain, domain.toUpperCase());
+                }
+            }
+            final DomainBlacklistTrie trie = DomainBlacklistTrie.valueOf(blacklist);
+            assertEquals(blacklist, trie);
+            for (int i = 0; i < 100; i++) {
+                final String domain = randomDomain(random);
+                final String message = "Domain '" + domain + "' with blacklist " + blacklist.keySet();
+                assertEquals(message, blacklist.get(domain), trie.find(domain, DomainBlacklistTrie.MATCH_EXACT));
+                assertEquals(message, findBaseDomain(blacklist, domain), trie.find(domain, DomainBlacklistTrie.MATCH_BASEDOMAIN));
+                assertEquals(message, findComponent(blacklist, domain), trie.find(domain, DomainBlacklistTrie.MATCH_COMPONENT));
+            }
+        }
+    }
+
+    private static String randomDomain(final Random random) {
+        final StringBuilder sb = new StringBuilder(LABELS[random.nextInt(LABELS.length)]);
+        final int labels = random.nextInt(4);
+        for (int i = 0; i < labels; i++) {
+            sb.append('.').append(LABELS[random.nextInt(LABELS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String findBaseDomain(final Map<String,String> blacklist, final String domain) {
+        String checkingString = domain;
+        while (StringUtils.isNotEmpty(checkingString)) {
+            final String blacklistedDomain = blacklist.get(checkingString);
+            if (blacklistedDomain != null) {
+                return blacklistedDomain;
+            }
+            final int indexOfPoint = checkingString.indexOf(".");
+            if (indexOfPoint > 0) {
+                checkingString = checkingString.substring(indexOfPoint + 1);
+            } else {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private static String findComponent(final Map<String,String> blacklist, final String domain) {
+        for (final String domainPart : domain.split("\\.")) {
+            final String blacklistedDomain = blacklist.get(domainPart);
+            if (blacklistedDomain != null) {
+                return blacklistedDomain;
+            }
+        }
+        return null;
+    }
+}
@@ -261,6 +261,37 @@ public final class EjbcaConfiguration {
         return getBooleanProperty("publish.parallel.enabled", true);
     }
 
+    /** @return the number of CRL partitions to generate concurrently during scheduled CRL generation, 1 means sequential generation. */
+    public static int getCrlGenerationWorkers() {
+        return Math.max(1, getIntProperty("crlgeneration.workers", 1));
+    }
+
+    /**
+     * @param publisherId the publisher that the queue is processed for
+     * @return the number of entries in the publisher queue that are published concurrently to the publisher, 1 means sequential publishing.
+     */
+    public static int getPublisherQueueWorkers(final int publisherId) {
+        return Math.max(1, getIntProperty("publisher.queue.workers." + publisherId, getIntProperty("publisher.queue.workers", 1)));
+    }
+
+    /**
+     * @return the time in milliseconds that entries in the publisher queue are claimed by the node processing them, or 0 if entries are not
+     *         claimed (only a single node processes the queue at the time).
+     */
+    public static long getPublisherQueueClaimTime() {
+        return Math.max(0, getLongProperty("publisher.queue.claimtime", 0L));
+    }
+
+    /** @return the maximum number of connections per LDAP publisher to keep open for reuse, 0 means a new connection is made for every operation. */
+    public static int getLdapPublisherConnectionPoolSize() {
+        return Math.max(0, getIntProperty("publisher.ldap.connectionpool.size", 0));
+    }
+
+    /** @return the time in milliseconds that an unused connection to an LDAP server is kept open. */
+    public static long getLdapPublisherConnectionPoolIdleTime() {
+        return Math.max(0, getLongProperty("publisher.ldap.connectionpool.idletime", 60000L));
+    }
+
     /** @return true if TCP keep alive should be used for outgoing peer connections. */
     @Deprecated // EJBCA 6.3.0 safety for the new PeerConnector feature. Remove when default is considered stable.
     public static boolean isPeerSoKeepAlive() {
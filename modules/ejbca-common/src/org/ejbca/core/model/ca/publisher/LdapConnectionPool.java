@@ -0,0 +1,319 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Pool of connections to the LDAP servers of a publisher, so that connections do not have to be established, secured and bound
+ * for every publishing operation.
+ *
+ * Idle connections are kept per server, so the publisher can still fail over to the next server in its list. Connections are
+ * health checked when taken from the pool. Idle connections are closed after the configured idle time when any pool is used, and
+ * by {@link #closeIdleConnections()}, which is invoked periodically so the connections of a publisher that is no longer used are
+ * closed as well. When all pooled connections are in use, additional connections are created and closed again after use, so callers
+ * never wait for the pool.
+ *
+ * There is one pool per publisher and configuration. A pool is closed when the connection settings of the publisher change, when
+ * the publisher is removed, when it has no open connections left after closing idle connections, and when the application is stopped.
+ *
+ * @version $Id$
+ */
+public class LdapConnectionPool {
+
+    private static final Logger log = Logger.getLogger(LdapConnectionPool.class);
+
+    /** Creates, checks and closes connections for a pool */
+    public interface Connector {
+        /** @return a new connection to the server, ready for use (secured and bound) */
+        LDAPConnection connect(String server) throws LDAPException, UnsupportedEncodingException;
+
+        /** @return true if the connection can still be used */
+        boolean isAlive(LDAPConnection lc);
+
+        void disconnect(LDAPConnection lc);
+    }
+
+    private static class IdleConnection {
+        final LDAPConnection lc;
+        final long idleSince;
+
+        IdleConnection(final LDAPConnection lc, final long idleSince) {
+            this.lc = lc;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private static final Map<Integer, LdapConnectionPool> pools = new HashMap<>();
+
+    private final String configuration;
+    private final Connector connector;
+    private final int maxSize;
+    private final long maxIdleTime;
+    /** Idle connections per server, the most recently used last */
+    private final Map<String, Deque<IdleConnection>> idleConnections = new HashMap<>();
+    private int openConnections = 0;
+    private boolean closed = false;
+
+    /**
+     * @param configuration the connection settings the pool was created for
+     * @param connector creates the connections of the pool
+     * @param maxSize the maximum number of connections (in use or idle) that are kept open, 0 disables pooling
+     * @param maxIdleTime the time in milliseconds an unused connection is kept open
+     */
+    public LdapConnectionPool(final String configuration, final Connector connector, final int maxSize, final long maxIdleTime) {
+        this.configuration = configuration;
+        this.connector = connector;
+        this.maxSize = maxSize;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Gets the connection pool of a publisher, creating a new pool if there is none or if the connection settings of the publisher have changed.
+     *
+     * @param publisherId the id of the publisher
+     * @param configuration the connection settings of the publisher, in any format that changes when the settings change
+     * @param connector creates connections using the current settings of the publisher
+     * @param maxSize the maximum number of connections to keep open
+     * @param maxIdleTime the time in milliseconds an unused connection is kept open
+     * @return the pool to use for the publisher
+     */
+    public static LdapConnectionPool getInstance(final int publisherId, final String configuration, final Connector connector, final int maxSize,
+            final long maxIdleTime) {
+        final LdapConnectionPool pool;
+        final LdapConnectionPool replacedPool;
+        synchronized (pools) {
+            final LdapConnectionPool existing = pools.get(publisherId);
+            if (existing != null && existing.configuration.equals(configuration) && existing.maxSize == maxSize && existing.maxIdleTime == maxIdleTime
+                    && !existing.isClosed()) {
+                pool = existing;
+                replacedPool = null;
+            } else {
+                pool = new LdapConnectionPool(configuration, connector, maxSize, maxIdleTime);
+                pools.put(publisherId, pool);
+                replacedPool = existing;
+            }
+        }
+        if (replacedPool != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Connection settings of publisher " + publisherId + " changed, closing its LDAP connection pool.");
+            }
+            replacedPool.close();
+        }
+        pool.closeExpired();
+        return pool;
+    }
+
+    /**
+     * Closes the connection pool of a publisher, for example when the publisher has been changed or removed.
+     *
+     * @param publisherId the id of the publisher
+     */
+    public static void remove(final int publisherId) {
+        final LdapConnectionPool pool;
+        synchronized (pools) {
+            pool = pools.remove(publisherId);
+        }
+        if (pool != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Closing the LDAP connection pool of publisher " + publisherId + ".");
+            }
+            pool.close();
+        }
+    }
+
+    /** Closes the connections of all pools that have been idle for too long, and removes pools without open connections. */
+    public static void closeIdleConnections() {
+        final List<LdapConnectionPool> snapshot;
+        synchronized (pools) {
+            snapshot = new ArrayList<>(pools.values());
+        }
+        for (final LdapConnectionPool pool : snapshot) {
+            pool.closeExpired();
+        }
+        synchronized (pools) {
+            for (final Iterator<LdapConnectionPool> iterator = pools.values().iterator(); iterator.hasNext();) {
+                final LdapConnectionPool pool = iterator.next();
+                synchronized (pool) {
+                    if (pool.openConnections == 0) {
+                        // A connection released to the pool after this is closed instead, and the next use of the publisher creates a new pool
+                        pool.closed = true;
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Closes all pools, when the application is stopped. Connections in use are closed when they are released. */
+    public static void closeAll() {
+        final List<LdapConnectionPool> snapshot;
+        synchronized (pools) {
+            snapshot = new ArrayList<>(pools.values());
+            pools.clear();
+        }
+        for (final LdapConnectionPool pool : snapshot) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Gets a connection to the server, reusing an idle connection if there is one that is still alive.
+     * The connection must be returned with {@link #releaseConnection(String, LDAPConnection, boolean)} after use.
+     */
+    public LDAPConnection getConnection(final String server) throws LDAPException, UnsupportedEncodingException {
+        final List<LDAPConnection> expired = new ArrayList<>();
+        try {
+            while (true) {
+                final IdleConnection idle;
+                synchronized (this) {
+                    removeExpired(expired);
+                    final Deque<IdleConnection> deque = idleConnections.get(server);
+                    idle = deque == null ? null : deque.pollLast();
+                    if (idle == null) {
+                        break;
+                    }
+                }
+                if (connector.isAlive(idle.lc)) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Reusing pooled connection to LDAP server " + server);
+                    }
+                    return idle.lc;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Pooled connection to LDAP server " + server + " is no longer alive.");
+                }
+                synchronized (this) {
+                    openConnections--;
+                }
+                expired.add(idle.lc);
+            }
+        } finally {
+            disconnect(expired);
+        }
+        final LDAPConnection lc = connector.connect(server);
+        synchronized (this) {
+            openConnections++;
+        }
+        return lc;
+    }
+
+    /**
+     * Returns a connection to the pool, or closes it if the pool is full, closed or the connection failed.
+     *
+     * @param server the server the connection is to
+     * @param lc a connection from {@link #getConnection(String)}
+     * @param failed true if an operation failed on the connection, which also closes the other idle connections to the server
+     */
+    public void releaseConnection(final String server, final LDAPConnection lc, final boolean failed) {
+        final List<LDAPConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            if (failed) {
+                // A failure is likely caused by the server or the network, so the other connections to the server are probably broken too
+                final Deque<IdleConnection> deque = idleConnections.remove(server);
+                if (deque != null) {
+                    for (final IdleConnection idle : deque) {
+                        toClose.add(idle.lc);
+                    }
+                    openConnections -= deque.size();
+                }
+            }
+            if (failed || closed || openConnections > maxSize) {
+                openConnections--;
+                toClose.add(lc);
+            } else {
+                Deque<IdleConnection> deque = idleConnections.get(server);
+                if (deque == null) {
+                    deque = new ArrayDeque<>();
+                    idleConnections.put(server, deque);
+                }
+                deque.addLast(new IdleConnection(lc, System.currentTimeMillis()));
+            }
+            removeExpired(toClose);
+        }
+        disconnect(toClose);
+    }
+
+    /** Closes all idle connections, connections in use are closed when they are released. */
+    public void close() {
+        final List<LDAPConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (final Deque<IdleConnection> deque : idleConnections.values()) {
+                for (final IdleConnection idle : deque) {
+                    toClose.add(idle.lc);
+                }
+                openConnections -= deque.size();
+            }
+            idleConnections.clear();
+        }
+        disconnect(toClose);
+    }
+
+    /** @return true if the pool has been closed */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /** Closes the connections that have been idle for too long. */
+    private void closeExpired() {
+        final List<LDAPConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            removeExpired(expired);
+        }
+        disconnect(expired);
+    }
+
+    /** @return the number of idle connections in the pool */
+    public synchronized int getIdleCount() {
+        int ret = 0;
+        for (final Deque<IdleConnection> deque : idleConnections.values()) {
+            ret += deque.size();
+        }
+        return ret;
+    }
+
+    /** Moves connections that have been idle for too long to the list of connections to close. Must be called when holding the lock. */
+    private void removeExpired(final List<LDAPConnection> expired) {
+        final long idleSince = System.currentTimeMillis() - maxIdleTime;
+        for (final Iterator<Deque<IdleConnection>> iterator = idleConnections.values().iterator(); iterator.hasNext();) {
+            final Deque<IdleConnection> deque = iterator.next();
+            // The least recently used connections are first
+            while (!deque.isEmpty() && deque.peekFirst().idleSince < idleSince) {
+                expired.add(deque.pollFirst().lc);
+                openConnections--;
+            }
+            if (deque.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void disconnect(final List<LDAPConnection> connections) {
+        for (final LDAPConnection lc : connections) {
+            connector.disconnect(lc);
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.cesecore.certificates.util.DNFieldExtractor;
 import org.cesecore.util.Base64;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.StringTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.util.LdapNameStyle;
 import org.ejbca.util.LdapTools;
@@ -194,7 +195,6 @@ public class LdapPublisher extends BasePublisher {
         } else if (status == CertificateConstants.CERT_ACTIVE) {
             // Don't publish non-active certificates
     		int ldapVersion = LDAPConnection.LDAP_V3;
-    		LDAPConnection lc = createLdapConnection();
 
     		final String dn;
     		final String certdn;
@@ -221,7 +221,7 @@ public class LdapPublisher extends BasePublisher {
     		// To work well with the LdapSearchPublisher we need to pass the full certificate DN to the 
     		// search function, and not only the LDAP DN. The regular publisher should only use the LDAP DN though, 
     		// but the searchOldEntity function will take care of that.
-    		LDAPEntry oldEntry = searchOldEntity(username, ldapVersion, lc, certdn, userDN, email);
+    		LDAPEntry oldEntry = searchOldEntity(username, ldapVersion, null, certdn, userDN, email);
 
     		// PART 2: Create LDAP entry
     		LDAPEntry newEntry = null;
@@ -314,18 +314,10 @@ public class LdapPublisher extends BasePublisher {
     		do {
     			connectionFailed = false;
     			String currentServer = servers.next();
+    			LDAPConnection lc = null;
+    			LDAPException failure = null;
     			try {
-    				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-    				lc.connect(currentServer, Integer.parseInt(getPort()));
-    				// Execute a STARTTLS handshake if it was requested.
-    				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("STARTTLS to LDAP server "+currentServer);
-                        }
-    				    lc.startTLS();
-    				}
-    				// authenticate to the server
-    				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+    				lc = getConnection(currentServer);
     				// Add or modify the entry
     				if (oldEntry != null && getModifyExistingUsers()) {
     					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -365,6 +357,7 @@ public class LdapPublisher extends BasePublisher {
     					}  
     				}
     			} catch (LDAPException e) {
+    				failure = e;
     				connectionFailed = true;
     				// If multiple certificates are allowed per entity, and the certificate is already published, 
     				// an exception will be thrown. Catch this type of exception and just log an informational message.
@@ -383,13 +376,7 @@ public class LdapPublisher extends BasePublisher {
     				log.error(msg, e);
     				throw new PublisherException(msg);            
     			} finally {
-    				// disconnect with the server
-    				try {
-    					lc.disconnect(ldapDisconnectConstraints);
-    				} catch (LDAPException e) {
-    					String msg = intres.getLocalizedMessage("publisher.errordisconnect", getLoginPassword());
-    					log.error(msg, e);
-    				}
+    				releaseConnection(currentServer, lc, failure);
     			}
     		} while (connectionFailed && servers.hasNext()) ;
         } else {
@@ -494,10 +481,8 @@ public class LdapPublisher extends BasePublisher {
 			throw new PublisherException(msg);            
 		}
 
-		LDAPConnection lc = createLdapConnection();
-
 		// Check if the entry is already present, we will update it with the new CRL.
-		LDAPEntry oldEntry = searchOldEntity(null, ldapVersion, lc, crldn, userDN, null);
+		LDAPEntry oldEntry = searchOldEntity(null, ldapVersion, null, crldn, userDN, null);
 
 		LDAPEntry newEntry = null;
 		ArrayList<LDAPModification> modSet = new ArrayList<LDAPModification>();
@@ -538,19 +523,10 @@ public class LdapPublisher extends BasePublisher {
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection lc = null;
+			LDAPException failure = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				// Add or modify the entry
 				if (oldEntry != null) {
 					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -564,6 +540,7 @@ public class LdapPublisher extends BasePublisher {
 					log.info(msg);  
 				}
 			} catch (LDAPException e) {
+				failure = e;
 				connectionFailed = true;
 				if (servers.hasNext()) {
 					log.warn("Failed to publish to " + currentServer + ". Trying next in list.");
@@ -577,13 +554,7 @@ public class LdapPublisher extends BasePublisher {
 				log.error(msg, e);
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc, failure);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		if (log.isTraceEnabled()) {
@@ -625,7 +596,6 @@ public class LdapPublisher extends BasePublisher {
 		}
 
 		int ldapVersion = LDAPConnection.LDAP_V3;
-		LDAPConnection lc = createLdapConnection();
 
 		final String dn;
 		final String certdn;
@@ -648,7 +618,7 @@ public class LdapPublisher extends BasePublisher {
 		ArrayList<LDAPModification> modSet = null;
 
 		if (!CertTools.isCA(cert)) {
-			oldEntry = searchOldEntity(username, ldapVersion, lc, certdn, userDN, email);
+			oldEntry = searchOldEntity(username, ldapVersion, null, certdn, userDN, email);
 			if (log.isDebugEnabled()) {
 				log.debug("Removing end user certificate from first available server of " + getHostnames());
 			}
@@ -686,21 +656,13 @@ public class LdapPublisher extends BasePublisher {
 		while ( oldEntry!=null && isConnectionNotDone && servers.hasNext()) {
 			isConnectionNotDone = false;
 			String currentServer = servers.next(); 
+			LDAPConnection lc = null;
+			LDAPException failure = null;
 			if (log.isDebugEnabled()) {
 				log.debug("currentServer: "+currentServer);
 			}
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+				lc = getConnection(currentServer);
 				// Add or modify the entry
 				if (modSet != null && getModifyExistingUsers()) {
 					if (removecert) {
@@ -724,6 +686,7 @@ public class LdapPublisher extends BasePublisher {
 					}
 				}
 			} catch (LDAPException e) {
+				failure = e;
 				isConnectionNotDone = true;
 				if (servers.hasNext()) {
 					log.warn("Failed to publish to " + currentServer + ". Trying next in list.");
@@ -737,13 +700,7 @@ public class LdapPublisher extends BasePublisher {
 				log.error(msg, e);
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc, failure);
 			}
 		}
 		if (log.isTraceEnabled()) {
@@ -755,8 +712,9 @@ public class LdapPublisher extends BasePublisher {
 	 *  Apart from how they find existing users, the publishing works the same.
 	 *  
 	 *  @param dn the DN from the certificate, can be used to extract search information or a LDAP DN
+	 *  @param ldapConnection not used, connections are taken from the connection pool of the publisher
 	 */
-	protected LDAPEntry searchOldEntity(String username, int ldapVersion, LDAPConnection lc, String certDN, String userDN, String email) throws PublisherException {
+	protected LDAPEntry searchOldEntity(String username, int ldapVersion, LDAPConnection ldapConnection, String certDN, String userDN, String email) throws PublisherException {
 		LDAPEntry oldEntry = null; // return value
 		// Try all the listed servers
 		final Iterator<String> servers = getHostnameList().iterator();
@@ -764,23 +722,14 @@ public class LdapPublisher extends BasePublisher {
 		do {
 			connectionFailed = false;
 			final String currentServer = servers.next();
+			LDAPConnection lc = null;
+			LDAPException failure = null;
 			if (log.isDebugEnabled()) {
 				log.debug("Current server is: "+currentServer);
 			}
 			final String ldapdn = constructLDAPDN(certDN, userDN);
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				// try to read the old object
 				if (log.isDebugEnabled()) {
 					log.debug("Searching for old entry with DN '" + ldapdn+"'");
@@ -794,6 +743,7 @@ public class LdapPublisher extends BasePublisher {
 					}					
 				}
 			} catch (LDAPException e) {
+				failure = e;
 				if (e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
 					if (log.isDebugEnabled()) {
 						log.debug("No old entry exist for '" + ldapdn + "'.");
@@ -812,13 +762,7 @@ public class LdapPublisher extends BasePublisher {
 				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc, failure);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		return oldEntry;
@@ -889,7 +833,26 @@ public class LdapPublisher extends BasePublisher {
 	} 
 
 	protected LDAPConnection createLdapConnection() {
-		// Set timeouts
+		setTimeLimits();
+		LDAPConnection lc;
+
+		switch (getConnectionSecurity()) {
+		case STARTTLS:
+			lc = new LDAPConnection(new LDAPJSSEStartTLSFactory());
+			break;
+		case SSL:
+			lc = new LDAPConnection(new LDAPJSSESecureSocketFactory());
+			break;
+		default:
+			lc = new LDAPConnection();
+		}
+
+		lc.setConstraints(ldapConnectionConstraints);
+		return lc;
+	}
+
+	/** Sets the configured time limits on the constraints used for LDAP operations */
+	private void setTimeLimits() {
 		int connectiontimeout = getConnectionTimeOut();
 		ldapBindConstraints.setTimeLimit(connectiontimeout); 
 		ldapDisconnectConstraints.setTimeLimit(connectiontimeout);
@@ -904,21 +867,88 @@ public class LdapPublisher extends BasePublisher {
 			log.debug("storetimeout: "+ldapStoreConstraints.getTimeLimit());
             log.debug("connectionsecurity: "+getConnectionSecurity());
 		}
-		LDAPConnection lc;
+	}
 
-		switch (getConnectionSecurity()) {
-		case STARTTLS:
-			lc = new LDAPConnection(new LDAPJSSEStartTLSFactory());
-			break;
-		case SSL:
-			lc = new LDAPConnection(new LDAPJSSESecureSocketFactory());
-			break;
+	/**
+	 * Gets a connection to an LDAP server, that is secured and bound with the login DN of the publisher. An idle connection from the
+	 * connection pool of the publisher is used if there is one. The connection must be returned with
+	 * {@link #releaseConnection(String, LDAPConnection, LDAPException)} after use.
+	 * 
+	 * @param server the LDAP server to connect to, one of the configured hostnames
+	 */
+	protected LDAPConnection getConnection(final String server) throws LDAPException, UnsupportedEncodingException {
+		setTimeLimits();
+		return getConnectionPool().getConnection(server);
+	}
+
+	/**
+	 * Returns a connection from {@link #getConnection(String)} to the connection pool of the publisher.
+	 * 
+	 * @param lc the connection, or null if no connection was made
+	 * @param failure the exception if an operation on the connection failed, or null. The connection is closed on connection errors.
+	 */
+	protected void releaseConnection(final String server, final LDAPConnection lc, final LDAPException failure) {
+		if (lc != null) {
+			getConnectionPool().releaseConnection(server, lc, failure != null && isConnectionError(failure));
+		}
+	}
+
+	/** @return true if the failure means that the connection can not be used any more */
+	private static boolean isConnectionError(final LDAPException e) {
+		switch (e.getResultCode()) {
+		case LDAPException.BUSY:
+		case LDAPException.UNAVAILABLE:
+		case LDAPException.OTHER:
+		case LDAPException.SERVER_DOWN:
+		case LDAPException.LDAP_TIMEOUT:
+		case LDAPException.CONNECT_ERROR:
+			return true;
 		default:
-			lc = new LDAPConnection();
+			return false;
 		}
+	}
 
-		lc.setConstraints(ldapConnectionConstraints);
-		return lc;
+	private LdapConnectionPool getConnectionPool() {
+		final String configuration = getHostnames() + ";" + getPort() + ";" + getConnectionSecurity() + ";" + getLoginDN() + ";"
+				+ getLoginPassword().hashCode() + ";" + getConnectionTimeOut();
+		return LdapConnectionPool.getInstance(getPublisherId(), configuration, new LdapConnectionPool.Connector() {
+			@Override
+			public LDAPConnection connect(final String server) throws LDAPException, UnsupportedEncodingException {
+				final LDAPConnection lc = createLdapConnection();
+				try {
+					TCPTool.probeConnectionLDAP(server, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
+					lc.connect(server, Integer.parseInt(getPort()));
+					// Execute a STARTTLS handshake if it was requested.
+					if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
+						if (log.isDebugEnabled()) {
+							log.debug("STARTTLS to LDAP server "+server);
+						}
+						lc.startTLS();
+					}
+					// authenticate to the server
+					lc.bind(LDAPConnection.LDAP_V3, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+					return lc;
+				} catch (LDAPException | UnsupportedEncodingException | RuntimeException e) {
+					disconnect(lc);
+					throw e;
+				}
+			}
+
+			@Override
+			public boolean isAlive(final LDAPConnection lc) {
+				return lc.isConnected() && lc.isBound() && lc.isConnectionAlive();
+			}
+
+			@Override
+			public void disconnect(final LDAPConnection lc) {
+				try {
+					lc.disconnect(ldapDisconnectConstraints);
+				} catch (LDAPException e) {
+					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
+					log.error(msg, e);
+				}
+			}
+		}, EjbcaConfiguration.getLdapPublisherConnectionPoolSize(), EjbcaConfiguration.getLdapPublisherConnectionPoolIdleTime());
 	}
 
 	/**
@@ -21,7 +21,6 @@ import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
 import org.ejbca.core.model.InternalEjbcaResources;
-import org.ejbca.util.TCPTool;
 
 import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
@@ -70,10 +69,11 @@ public class LdapSearchPublisher extends LdapPublisher {
     /** SearchOldEntity is the only method differing between regular ldap and ldap search publishers.
      *  Apart from how they find existing users, the publishing works the same.
      *  
+     *  @param ldapConnection not used, connections are taken from the connection pool of the publisher
      *  @param certDN the DN from the certificate, can be used to extract search information or a LDAP DN
      *  @return an existing LDAPEntry, or null if not found
      */
-    protected LDAPEntry searchOldEntity(final String username, final int ldapVersion, final LDAPConnection lc, final String certDN, final String userDN, final String email) throws PublisherException {
+    protected LDAPEntry searchOldEntity(final String username, final int ldapVersion, final LDAPConnection ldapConnection, final String certDN, final String userDN, final String email) throws PublisherException {
         LDAPEntry oldEntry = null; // return value
 
 		// Try all the listed servers
@@ -82,25 +82,13 @@ public class LdapSearchPublisher extends LdapPublisher {
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection lc = null;
+			LDAPException failure = null;
 	        // PARTE 1: Search for an existing entry in the LDAP directory
 			//  If it exists, this will be returned to be populated
 			//  if not exist, nothing will be returned and a new LDAP entry created
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				log.debug("Connecting to " + currentServer);
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-
-				// authenticate to the server
-				log.debug("Logging in with BIND DN " + getLoginDN());
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				//searchFilter = "(&(objectclass=person)(uid=" + username + "))";
 				String searchFilter = getSearchFilter();
 				if (log.isDebugEnabled()) {
@@ -168,6 +156,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				try {
 					oldEntry = lc.read(ldapDN, ldapSearchConstraints);
 				} catch (LDAPException e) {
+					failure = e;
 					if (e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
 						String msg = intres.getLocalizedMessage("publisher.noentry", ldapDN);
 						log.info(msg);
@@ -177,6 +166,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 					}
 				}
 			} catch (LDAPException e) {
+				failure = e;
 				if (e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
 					String msg = intres.getLocalizedMessage("publisher.noentry", certDN +", "+userDN);
 					log.info(msg);
@@ -194,13 +184,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
 	            throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc, failure);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
         return oldEntry;
@@ -25,7 +25,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -60,6 +59,7 @@ import org.cesecore.util.ui.PropertyValidationException;
 import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistChecker;
 import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistExactMatchChecker;
 import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistNormalizer;
+import org.ejbca.core.model.validation.domainblacklist.DomainBlacklistTrie;
 
 /**
  * A Domain Blacklist Validator checks DNSName fields against a set of blacklists.
@@ -232,26 +232,27 @@ public class DomainBlacklistValidator extends ValidatorBase implements DnsNameVa
                 newInitializationFailure = true;
             }
         }
-        // Create combined blacklist
+        // Create combined blacklist, with the normalized domains computed once per load
         final Collection<String> domainSetNotNormalized = getBlacklist(); 
-        final HashMap<String,String> domainMap = new HashMap<>((int)(domainSetNotNormalized.size()/0.75)+1); // keys: normalized domains. values: unmodified blacklisted domains
+        final DomainBlacklistTrie.Builder domainTrieBuilder = new DomainBlacklistTrie.Builder(); // keys: normalized domains. values: unmodified blacklisted domains
         if (log.isDebugEnabled()) {
             log.debug("Normalizing " + domainSetNotNormalized.size() + " domains for Validator '" + getProfileName() + "'");
         }
         for (final String domain : domainSetNotNormalized) {
             // Normalize before adding to combined list
             final String normalizedDomain = normalizeDomain(newNormalizers, domain);
-            domainMap.put(normalizedDomain, domain);
+            domainTrieBuilder.add(normalizedDomain, domain);
             if (log.isTraceEnabled()) {
                 log.trace("Normalized domain '" + domain + "' to '" + normalizedDomain + "'");
             }
         }
+        final DomainBlacklistTrie domainTrie = domainTrieBuilder.build();
         // Initialize checkers
         for (final DomainBlacklistChecker checker : newCheckers) {
-            checker.initialize(data, domainMap);
+            checker.initialize(data, domainTrie);
         }
         if (log.isDebugEnabled()) {
-            log.debug("Initialized cache for Validator '" + getProfileName() + "' with " + domainMap.size() + " domains, " + newCheckers.size() + " checkers, " + newNormalizers.size() + " normalizers.");
+            log.debug("Initialized cache for Validator '" + getProfileName() + "' with " + domainTrie.size() + " domains, " + newCheckers.size() + " checkers, " + newNormalizers.size() + " normalizers.");
         }
         cache = new Cache(newInitializationFailure, newNormalizers, newCheckers); 
         log.trace("<reloadBlacklistData");
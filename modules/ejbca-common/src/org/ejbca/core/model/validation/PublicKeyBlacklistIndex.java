@@ -0,0 +1,409 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.model.validation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Compact read-only index of public key blacklist fingerprints (see {@link PublicKeyBlacklistEntry#createFingerprint(java.security.PublicKey)}),
+ * for blacklists with millions of entries such as the Debian weak keys, that would otherwise be millions of BlacklistData rows and
+ * cached {@link PublicKeyBlacklistEntry} objects.
+ *
+ * The index file is a short header followed by the sorted {@value #FINGERPRINT_LENGTH} byte binary fingerprints. It is memory-mapped,
+ * so lookups are a binary search in the operating system page cache without any allocation on the heap. Index files are created
+ * with a {@link Builder}, which streams fingerprint CSV files in the format of 'ca updatepublickeyblacklist --mode fingerprint'.
+ *
+ * Configured through CesecoreConfiguration.getPublicKeyBlacklistIndexFile(), and used in addition to the blacklist entries in the database.
+ *
+ * @version $Id$
+ */
+public final class PublicKeyBlacklistIndex {
+
+    /** Class logger. */
+    private static final Logger log = Logger.getLogger(PublicKeyBlacklistIndex.class);
+
+    /** "EJBCAPKB" */
+    private static final long MAGIC = 0x454a424341504b42L;
+    /** The magic followed by the number of fingerprints */
+    private static final int HEADER_LENGTH = 16;
+    /** Length of a {@link PublicKeyBlacklistEntry#DIGEST_ALGORITHM} fingerprint in bytes */
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int LONGS_PER_FINGERPRINT = FINGERPRINT_LENGTH / 8;
+    private static final int MAX_SIZE = (Integer.MAX_VALUE - HEADER_LENGTH) / FINGERPRINT_LENGTH;
+
+    /** The index of the configured file, or null if none is configured or it could not be opened */
+    private static volatile PublicKeyBlacklistIndex instance = null;
+    private static volatile long nextCheck = 0;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final File file;
+    private final long lastModified;
+
+    private PublicKeyBlacklistIndex(final MappedByteBuffer buffer, final int size, final File file, final long lastModified) {
+        this.buffer = buffer;
+        this.size = size;
+        this.file = file;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns the index of the configured index file. The file is checked for modifications at most once every
+     * CesecoreConfiguration.getCachePublicKeyBlacklistTime(), so a rebuilt index file is used without a restart.
+     *
+     * @return the index, or null if no index file is configured or it could not be opened
+     */
+    public static PublicKeyBlacklistIndex getInstance() {
+        final long now = System.currentTimeMillis();
+        if (now < nextCheck) {
+            return instance;
+        }
+        synchronized (PublicKeyBlacklistIndex.class) {
+            if (now >= nextCheck) {
+                instance = reload(instance, CesecoreConfiguration.getPublicKeyBlacklistIndexFile(), nextCheck == 0);
+                nextCheck = now + Math.max(CesecoreConfiguration.getCachePublicKeyBlacklistTime(), 0);
+            }
+            return instance;
+        }
+    }
+
+    private static PublicKeyBlacklistIndex reload(final PublicKeyBlacklistIndex current, final String fileName, final boolean firstCheck) {
+        if (StringUtils.isEmpty(fileName)) {
+            return null;
+        }
+        final File file = new File(fileName);
+        if (current != null && current.file.equals(file) && current.lastModified == file.lastModified()) {
+            return current;
+        }
+        if (!file.exists()) {
+            // Only logged once, and not for every check until the file is created
+            if (current != null || firstCheck) {
+                log.warn("Public key blacklist index file '" + fileName + "' does not exist.");
+            }
+            return null;
+        }
+        try {
+            final PublicKeyBlacklistIndex index = open(file);
+            log.info("Loaded public key blacklist index file '" + fileName + "' with " + index.size() + " fingerprints.");
+            return index;
+        } catch (IOException e) {
+            log.error("Failed to load public key blacklist index file '" + fileName + "': " + e.getMessage());
+            return current;
+        }
+    }
+
+    /**
+     * Opens an index file.
+     *
+     * @param file an index file written by {@link Builder#write(File)}
+     * @return the index
+     * @throws IOException if the file could not be read or is not an index file
+     */
+    public static PublicKeyBlacklistIndex open(final File file) throws IOException {
+        final long lastModified = file.lastModified();
+        // The mapping stays valid after the channel is closed
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long length = channel.size();
+            if (length < HEADER_LENGTH || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid length " + length + " of public key blacklist index file.");
+            }
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, length);
+            if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("Not a public key blacklist index file.");
+            }
+            final long size = buffer.getLong(8);
+            if (size < 0 || HEADER_LENGTH + size * FINGERPRINT_LENGTH != length) {
+                throw new IOException("Public key blacklist index file is truncated or corrupt.");
+            }
+            return new PublicKeyBlacklistIndex(buffer, (int) size, file, lastModified);
+        }
+    }
+
+    /** @return the number of fingerprints in the index */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up a fingerprint without allocating any objects.
+     *
+     * @param fingerprint a hex encoded fingerprint, as created by {@link PublicKeyBlacklistEntry#createFingerprint(java.security.PublicKey)}
+     * @return true if the fingerprint is in the index
+     */
+    public boolean contains(final String fingerprint) {
+        if (!isFingerprint(fingerprint)) {
+            return false;
+        }
+        final long word0 = parseWord(fingerprint, 0);
+        final long word1 = parseWord(fingerprint, 1);
+        final long word2 = parseWord(fingerprint, 2);
+        final long word3 = parseWord(fingerprint, 3);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int offset = HEADER_LENGTH + middle * FINGERPRINT_LENGTH;
+            int cmp = Long.compareUnsigned(buffer.getLong(offset), word0);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(buffer.getLong(offset + 8), word1);
+                if (cmp == 0) {
+                    cmp = Long.compareUnsigned(buffer.getLong(offset + 16), word2);
+                    if (cmp == 0) {
+                        cmp = Long.compareUnsigned(buffer.getLong(offset + 24), word3);
+                    }
+                }
+            }
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return true if the string is a hex encoded fingerprint of the length stored in the index */
+    private static boolean isFingerprint(final String fingerprint) {
+        if (fingerprint == null || fingerprint.length() != FINGERPRINT_LENGTH * 2) {
+            return false;
+        }
+        for (int i = 0; i < fingerprint.length(); i++) {
+            if (Character.digit(fingerprint.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the 8 bytes of the hex encoded fingerprint at the given position as a long */
+    private static long parseWord(final String fingerprint, final int word) {
+        long value = 0;
+        for (int i = word * 16; i < (word + 1) * 16; i++) {
+            value = (value << 4) | Character.digit(fingerprint.charAt(i), 16);
+        }
+        return value;
+    }
+
+    /**
+     * Builds an index file from a stream of fingerprints. The fingerprints are kept in a packed array of longs while building, i.e.
+     * {@value PublicKeyBlacklistIndex#FINGERPRINT_LENGTH} bytes per fingerprint, and duplicates are removed when the file is written.
+     */
+    public static class Builder {
+
+        private long[] fingerprints = new long[LONGS_PER_FINGERPRINT * 1024];
+        private int size = 0;
+        private long skipped = 0;
+
+        /**
+         * Adds a fingerprint.
+         *
+         * @param fingerprint a hex encoded fingerprint, as created by {@link PublicKeyBlacklistEntry#createFingerprint(java.security.PublicKey)}
+         * @return false if the fingerprint was skipped, because it is not a hex encoded {@link PublicKeyBlacklistEntry#DIGEST_ALGORITHM} fingerprint
+         */
+        public boolean add(final String fingerprint) {
+            if (!isFingerprint(fingerprint)) {
+                skipped++;
+                return false;
+            }
+            if (size >= MAX_SIZE) {
+                throw new IllegalStateException("A public key blacklist index can not contain more than " + MAX_SIZE + " fingerprints.");
+            }
+            if ((size + 1) * LONGS_PER_FINGERPRINT > fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, (int) Math.min((long) fingerprints.length * 2, (long) MAX_SIZE * LONGS_PER_FINGERPRINT));
+            }
+            final int offset = size * LONGS_PER_FINGERPRINT;
+            for (int word = 0; word < LONGS_PER_FINGERPRINT; word++) {
+                fingerprints[offset + word] = parseWord(fingerprint, word);
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * Adds the fingerprints of a CSV file, read one line at a time. The fingerprint is the first value of each line, as in
+         * 'ca updatepublickeyblacklist --mode fingerprint'. Empty lines and lines starting with '#' are ignored.
+         *
+         * @param reader the CSV file
+         * @return the number of fingerprints added
+         * @throws IOException if the file could not be read
+         */
+        public int addCsv(final Reader reader) throws IOException {
+            final BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+            int added = 0;
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final int separator = line.indexOf(',');
+                final String fingerprint = (separator == -1 ? line : line.substring(0, separator)).trim();
+                if (add(fingerprint)) {
+                    added++;
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Skipping invalid public key blacklist fingerprint '" + fingerprint + "'.");
+                }
+            }
+            return added;
+        }
+
+        /**
+         * Adds all fingerprints of an existing index, e.g. to add more fingerprints to it.
+         *
+         * @param index the index
+         */
+        public void addAll(final PublicKeyBlacklistIndex index) {
+            final long required = ((long) size + index.size()) * LONGS_PER_FINGERPRINT;
+            if (size + (long) index.size() > MAX_SIZE) {
+                throw new IllegalStateException("A public key blacklist index can not contain more than " + MAX_SIZE + " fingerprints.");
+            }
+            if (required > fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, (int) required);
+            }
+            for (int i = 0; i < index.size(); i++) {
+                final int offset = HEADER_LENGTH + i * FINGERPRINT_LENGTH;
+                for (int word = 0; word < LONGS_PER_FINGERPRINT; word++) {
+                    fingerprints[size * LONGS_PER_FINGERPRINT + word] = index.buffer.getLong(offset + word * 8);
+                }
+                size++;
+            }
+        }
+
+        /** @return the number of values that were skipped because they were not valid fingerprints */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Sorts the fingerprints, removes duplicates and writes the index file. The file is written to a temporary file first and then
+         * moved in place, so an application server never reads a partially written index.
+         *
+         * @param file the index file to create or replace
+         * @return the number of distinct fingerprints written
+         * @throws IOException if the file could not be written
+         */
+        public int write(final File file) throws IOException {
+            sort(0, size);
+            // Remove duplicates
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || compare(i, distinct - 1) != 0) {
+                    if (distinct != i) {
+                        System.arraycopy(fingerprints, i * LONGS_PER_FINGERPRINT, fingerprints, distinct * LONGS_PER_FINGERPRINT, LONGS_PER_FINGERPRINT);
+                    }
+                    distinct++;
+                }
+            }
+            size = distinct;
+            final File directory = file.getAbsoluteFile().getParentFile();
+            final File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+            try {
+                try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+                    out.writeLong(MAGIC);
+                    out.writeLong(size);
+                    for (int i = 0; i < size * LONGS_PER_FINGERPRINT; i++) {
+                        out.writeLong(fingerprints[i]);
+                    }
+                }
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                if (tempFile.exists()) {
+                    tempFile.delete();
+                }
+            }
+            return size;
+        }
+
+        /** Sorts the fingerprints from index 'from' (inclusive) to 'to' (exclusive) in the order of the index file */
+        private void sort(int from, int to) {
+            final long[] pivot = new long[LONGS_PER_FINGERPRINT];
+            while (to - from > 1) {
+                // Three-way partition around the middle fingerprint, so duplicates end up together
+                System.arraycopy(fingerprints, ((from + to) >>> 1) * LONGS_PER_FINGERPRINT, pivot, 0, LONGS_PER_FINGERPRINT);
+                int lower = from;
+                int i = from;
+                int upper = to;
+                while (i < upper) {
+                    final int cmp = compare(i, pivot);
+                    if (cmp < 0) {
+                        swap(lower++, i++);
+                    } else if (cmp > 0) {
+                        swap(i, --upper);
+                    } else {
+                        i++;
+                    }
+                }
+                // Recurse into the smaller part only, to limit the depth of the recursion
+                if (lower - from < to - upper) {
+                    sort(from, lower);
+                    from = upper;
+                } else {
+                    sort(upper, to);
+                    to = lower;
+                }
+            }
+        }
+
+        private int compare(final int index, final long[] words) {
+            final int offset = index * LONGS_PER_FINGERPRINT;
+            for (int word = 0; word < LONGS_PER_FINGERPRINT; word++) {
+                final int cmp = Long.compareUnsigned(fingerprints[offset + word], words[word]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        private int compare(final int index1, final int index2) {
+            final int offset1 = index1 * LONGS_PER_FINGERPRINT;
+            final int offset2 = index2 * LONGS_PER_FINGERPRINT;
+            for (int word = 0; word < LONGS_PER_FINGERPRINT; word++) {
+                final int cmp = Long.compareUnsigned(fingerprints[offset1 + word], fingerprints[offset2 + word]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        private void swap(final int index1, final int index2) {
+            final int offset1 = index1 * LONGS_PER_FINGERPRINT;
+            final int offset2 = index2 * LONGS_PER_FINGERPRINT;
+            for (int word = 0; word < LONGS_PER_FINGERPRINT; word++) {
+                final long tmp = fingerprints[offset1 + word];
+                fingerprints[offset1 + word] = fingerprints[offset2 + word];
+                fingerprints[offset2 + word] = tmp;
+            }
+        }
+    }
+}
@@ -14,15 +14,13 @@ package org.ejbca.core.model.validation.domainblacklist;
 
 import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
-
 /**
  * Removes subdomain one by one, and checks if subdomain is present in the blacklist
  *
  * @version $Id$
  */
 public class DomainBlacklistBaseDomainChecker implements DomainBlacklistChecker {
-    private Map<String,String> blacklist;
+    private DomainBlacklistTrie blacklist;
 
     @Override
     public String getNameKey() {
@@ -31,7 +29,7 @@ public class DomainBlacklistBaseDomainChecker implements DomainBlacklistChecker
 
     @Override
     public void initialize(final Map<Object, Object> configData, final Map<String,String> blacklist) {
-        this.blacklist = blacklist;
+        this.blacklist = DomainBlacklistTrie.valueOf(blacklist);
     }
 
     @Override
@@ -39,19 +37,6 @@ public class DomainBlacklistBaseDomainChecker implements DomainBlacklistChecker
         if (blacklist == null) {
             throw new IllegalStateException("Blacklist not configured!");
         }
-        String checkingString = domain;
-        while (StringUtils.isNotEmpty(checkingString)) {
-            final String blacklistedDomain = blacklist.get(checkingString);
-            if (blacklistedDomain != null) {
-                return blacklistedDomain; // Blacklisted
-            }
-            int indexOfPoint = checkingString.indexOf(".");
-            if (indexOfPoint > 0) {
-                checkingString = checkingString.substring(indexOfPoint + 1);
-            } else {
-                break; // No more subdomains
-            }
-        }
-        return null; // Not blacklisted
+        return blacklist.find(domain, DomainBlacklistTrie.MATCH_BASEDOMAIN); // Returns null if not blacklisted
     }
 }
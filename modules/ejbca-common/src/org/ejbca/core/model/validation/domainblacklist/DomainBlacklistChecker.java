@@ -29,6 +29,7 @@ public interface DomainBlacklistChecker extends NameTranslatable {
      * Initializes this blacklist checker with a given blacklist.
      * @param configData Data hash map with configuration options (if the checker is configurable)
      * @param blacklist Map with of all domains or domain components to blacklist. Keys are normalized domains, and values are unnormalized domains. May not be modified after initialization.
+     *      The validator passes a {@link DomainBlacklistTrie}, which checkers may use directly.
      */
     void initialize(final Map<Object,Object> configData, final Map<String,String> blacklist);
 
@@ -22,7 +22,7 @@ import java.util.Map;
 public class DomainBlacklistComponentChecker implements DomainBlacklistChecker {
 
 
-    private Map<String,String> blacklist;
+    private DomainBlacklistTrie blacklist;
 
     @Override
     public String getNameKey() {
@@ -32,7 +32,7 @@ public class DomainBlacklistComponentChecker implements DomainBlacklistChecker {
 
     @Override
     public void initialize(final Map<Object, Object> configData, final Map<String,String> blacklist) {
-        this.blacklist = blacklist;
+        this.blacklist = DomainBlacklistTrie.valueOf(blacklist);
     }
 
     @Override
@@ -40,13 +40,6 @@ public class DomainBlacklistComponentChecker implements DomainBlacklistChecker {
         if (blacklist == null) {
             throw new IllegalStateException("Blacklist not configured!");
         }
-        final String[] domainParts = domain.split("\\.");
-        for (final String domainPart : domainParts) {
-            final String blacklistedDomain = blacklist.get(domainPart);
-            if (blacklistedDomain != null) {
-                return blacklistedDomain; // Blacklisted
-            }
-        }
-        return null; // Not blacklisted
+        return blacklist.find(domain, DomainBlacklistTrie.MATCH_COMPONENT); // Returns null if not blacklisted
     }
 }
@@ -21,7 +21,7 @@ import java.util.Map;
  */
 public class DomainBlacklistExactMatchChecker implements DomainBlacklistChecker {
 
-    private Map<String,String> blacklist;
+    private DomainBlacklistTrie blacklist;
 
     @Override
     public String getNameKey() {
@@ -30,7 +30,7 @@ public class DomainBlacklistExactMatchChecker implements DomainBlacklistChecker
 
     @Override
     public void initialize(final Map<Object, Object> configData, final Map<String,String> blacklist) {
-        this.blacklist = blacklist;
+        this.blacklist = DomainBlacklistTrie.valueOf(blacklist);
     }
 
     @Override
@@ -38,7 +38,7 @@ public class DomainBlacklistExactMatchChecker implements DomainBlacklistChecker
         if (blacklist == null) {
             throw new IllegalStateException("Blacklist not configured!");
         }
-        return blacklist.get(domain); // Returns null if not blacklisted
+        return blacklist.find(domain, DomainBlacklistTrie.MATCH_EXACT); // Returns null if not blacklisted
     }
 
 }
@@ -0,0 +1,296 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation.domainblacklist;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable blacklist of normalized domains, stored as a trie of domain labels in reversed order (i.e. top level domain first).
+ * <p>
+ * All checks walk the domain from the last label to the first label once, without splitting the domain or creating any substrings,
+ * so exact, base domain and component matches can be found in the same pass. The nodes are stored in arrays in breadth first order,
+ * with the children of each node stored consecutively and sorted by label, and each distinct label is stored only once. The values
+ * are the unmodified blacklisted domains, which are shared with the blacklist of the validator.
+ * <p>
+ * The trie is also a read-only map from normalized domains to unmodified blacklisted domains, so it can be given to any
+ * {@link DomainBlacklistChecker}.
+ *
+ * @version $Id$
+ */
+public final class DomainBlacklistTrie extends AbstractMap<String,String> {
+
+    /** Match of the whole domain */
+    public static final int MATCH_EXACT = 1;
+    /** Match of the domain or any of its parent domains */
+    public static final int MATCH_BASEDOMAIN = 2;
+    /** Match of any single label of the domain */
+    public static final int MATCH_COMPONENT = 4;
+
+    private static final DomainBlacklistTrie EMPTY = new Builder().build();
+
+    /** Label of each node. The root node (index 0) has no label */
+    private final String[] labels;
+    /** The children of node i are the nodes from firstChild[i] up to, but not including, firstChild[i+1] */
+    private final int[] firstChild;
+    /** Unmodified blacklisted domain of each node, or null if the node is not the end of a blacklisted domain */
+    private final String[] values;
+    private final int size;
+
+    private DomainBlacklistTrie(final String[] labels, final int[] firstChild, final String[] values, final int size) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Builds a trie from a blacklist map, unless the map already is a trie.
+     * @param blacklist Map with normalized domains as keys, and unmodified domains as values.
+     * @return Trie with the same contents as the map.
+     */
+    public static DomainBlacklistTrie valueOf(final Map<String,String> blacklist) {
+        if (blacklist instanceof DomainBlacklistTrie) {
+            return (DomainBlacklistTrie) blacklist;
+        }
+        if (blacklist.isEmpty()) {
+            return EMPTY;
+        }
+        final Builder builder = new Builder();
+        for (final Map.Entry<String,String> entry : blacklist.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks a normalized domain against the blacklist.
+     * @param domain Normalized domain to check.
+     * @param matchTypes Bitwise OR of MATCH_EXACT, MATCH_BASEDOMAIN and MATCH_COMPONENT.
+     * @return Unmodified blacklisted domain, or null if no match was found. If several entries match, exact matches take precedence
+     *      over base domain matches, base domain matches over component matches, and longer and leftmost matches over other matches.
+     */
+    public String find(final String domain, final int matchTypes) {
+        if (domain == null || domain.isEmpty()) {
+            return null;
+        }
+        String baseDomainMatch = null;
+        String componentMatch = null;
+        int node = 0; // the node of the labels checked so far, or -1 if there is none
+        int end = domain.length();
+        while (end >= 0) {
+            final int start = domain.lastIndexOf('.', end - 1) + 1;
+            if ((matchTypes & MATCH_COMPONENT) != 0) {
+                final int component = findChild(0, domain, start, end);
+                if (component != -1 && values[component] != null) {
+                    componentMatch = values[component];
+                }
+            }
+            if (start == end) {
+                // The base domain checker does not remove any subdomains after an empty label, e.g. in ".example.com"
+                baseDomainMatch = null;
+            }
+            if (node != -1) {
+                node = findChild(node, domain, start, end);
+                if (node != -1 && values[node] != null) {
+                    if (start == 0 && (matchTypes & MATCH_EXACT) != 0) {
+                        return values[node];
+                    }
+                    baseDomainMatch = values[node];
+                }
+            }
+            if (node == -1 && (matchTypes & MATCH_COMPONENT) == 0) {
+                if (baseDomainMatch != null && hasEmptyLabel(domain, start - 1)) {
+                    baseDomainMatch = null;
+                }
+                break;
+            }
+            end = start - 1;
+        }
+        if (baseDomainMatch != null && (matchTypes & MATCH_BASEDOMAIN) != 0) {
+            return baseDomainMatch;
+        }
+        return componentMatch;
+    }
+
+    /** @return true if any of the labels before the dot at the given index is empty */
+    private static boolean hasEmptyLabel(final String domain, final int dotIndex) {
+        for (int i = 0; i <= dotIndex; i++) {
+            if (domain.charAt(i) == '.' && (i == 0 || domain.charAt(i - 1) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the child of the node with the given label, or -1 if there is no such child */
+    private int findChild(final int node, final String domain, final int start, final int end) {
+        int low = firstChild[node];
+        int high = firstChild[node + 1] - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = compareLabel(labels[middle], domain, start, end);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares a label with a part of a domain, in the same order as {@link String#compareTo(String)} */
+    private static int compareLabel(final String label, final String domain, final int start, final int end) {
+        final int length = Math.min(label.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            final int difference = label.charAt(i) - domain.charAt(start + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return label.length() - (end - start);
+    }
+
+    @Override
+    public String get(final Object key) {
+        return key instanceof String ? find((String) key, MATCH_EXACT) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Returns a snapshot of the entries. This is slow for large blacklists, and is not used by the checkers */
+    @Override
+    public Set<Map.Entry<String,String>> entrySet() {
+        final Map<String,String> entries = new LinkedHashMap<>();
+        addEntries(0, "", entries);
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+
+    private void addEntries(final int node, final String suffix, final Map<String,String> entries) {
+        for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+            final String domain = node == 0 ? labels[child] : labels[child] + "." + suffix;
+            if (values[child] != null) {
+                entries.put(domain, values[child]);
+            }
+            addEntries(child, domain, entries);
+        }
+    }
+
+    /** Builder of tries. Entries may be added in any order. If the same normalized domain is added several times, the last one is used. */
+    public static class Builder {
+        private final List<String[]> reversedLabels = new ArrayList<>();
+        private final List<String> unmodifiedDomains = new ArrayList<>();
+
+        /**
+         * @param normalizedDomain Normalized domain, or domain component.
+         * @param unmodifiedDomain Domain as given in the blacklist.
+         * @return this builder
+         */
+        public Builder add(final String normalizedDomain, final String unmodifiedDomain) {
+            if (normalizedDomain == null || normalizedDomain.isEmpty() || unmodifiedDomain == null) {
+                return this;
+            }
+            final String[] domainLabels = normalizedDomain.split("\\.", -1);
+            Collections.reverse(Arrays.asList(domainLabels));
+            reversedLabels.add(domainLabels);
+            unmodifiedDomains.add(unmodifiedDomain);
+            return this;
+        }
+
+        public DomainBlacklistTrie build() {
+            // Sort the entries by reversed labels, so the entries below each node are consecutive. The sort is stable, so the last duplicate is last.
+            final Integer[] order = new Integer[reversedLabels.size()];
+            int maxNodes = 1;
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+                maxNodes += reversedLabels.get(i).length;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer o1, final Integer o2) {
+                    final String[] labels1 = reversedLabels.get(o1);
+                    final String[] labels2 = reversedLabels.get(o2);
+                    final int length = Math.min(labels1.length, labels2.length);
+                    for (int i = 0; i < length; i++) {
+                        final int comparison = labels1[i].compareTo(labels2[i]);
+                        if (comparison != 0) {
+                            return comparison;
+                        }
+                    }
+                    return labels1.length - labels2.length;
+                }
+            });
+            final String[] labels = new String[maxNodes];
+            final int[] firstChild = new int[maxNodes + 1];
+            final String[] values = new String[maxNodes];
+            // Range of sorted entries below each node, and depth of each node. Only needed while building.
+            final int[] from = new int[maxNodes];
+            final int[] to = new int[maxNodes];
+            final int[] depth = new int[maxNodes];
+            final Map<String,String> distinctLabels = new HashMap<>();
+            to[0] = order.length;
+            int nodes = 1;
+            int size = 0;
+            for (int node = 0; node < nodes; node++) {
+                firstChild[node] = nodes;
+                final int labelIndex = depth[node];
+                int i = from[node];
+                if (i < to[node] && reversedLabels.get(order[i]).length == labelIndex) {
+                    while (i < to[node] && reversedLabels.get(order[i]).length == labelIndex) {
+                        values[node] = unmodifiedDomains.get(order[i]);
+                        i++;
+                    }
+                    size++;
+                }
+                while (i < to[node]) {
+                    final String label = reversedLabels.get(order[i])[labelIndex];
+                    int j = i + 1;
+                    while (j < to[node] && reversedLabels.get(order[j])[labelIndex].equals(label)) {
+                        j++;
+                    }
+                    String distinctLabel = distinctLabels.get(label);
+                    if (distinctLabel == null) {
+                        distinctLabel = label;
+                        distinctLabels.put(label, label);
+                    }
+                    labels[nodes] = distinctLabel;
+                    from[nodes] = i;
+                    to[nodes] = j;
+                    depth[nodes] = labelIndex + 1;
+                    nodes++;
+                    i = j;
+                }
+            }
+            firstChild[nodes] = nodes;
+            return new DomainBlacklistTrie(Arrays.copyOf(labels, nodes), Arrays.copyOf(firstChild, nodes + 1), Arrays.copyOf(values, nodes), size);
+        }
+    }
+}
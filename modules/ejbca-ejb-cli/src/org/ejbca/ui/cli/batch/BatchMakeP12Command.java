@@ -27,6 +27,13 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.ca.CaSessionRemote;
@@ -36,6 +43,7 @@ import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.util.AlgorithmConstants;
 import org.cesecore.config.GlobalCesecoreConfiguration;
 import org.cesecore.configuration.GlobalConfigurationSessionRemote;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.CryptoProviderTools;
@@ -64,12 +72,20 @@ import org.ejbca.util.keystore.P12toPEM;
  * This class generates keys and request certificates for all users with status NEW. The result is
  * generated PKCS12, JKS or PEM-files.
  *
+ * With more than one thread the end entities are processed in parallel, with key generation, certificate issuance and writing
+ * of the keystores as separate stages, so that e.g. key generation for one end entity overlaps with certificate issuance for
+ * another. An end entity keeps its status until its certificate is issued, so an interrupted batch is resumed by running it again.
+ *
  * @version $Id$
  */
 public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
 
     private static final String END_ENTITY_USERNAME_KEY = "--username";
     private static final String DIRECTORY_KEY = "-dir";
+    private static final String THREADS_KEY = "-threads";
+
+    /** The number of end entities in progress per thread in parallel mode, so that all stages of the pipeline have work */
+    private static final int IN_PROGRESS_PER_THREAD = 4;
 
     private static final Logger log = Logger.getLogger(BatchMakeP12Command.class);
 
@@ -79,6 +95,9 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
                 "The name of the end entity to generate the key for. If omitted, keys will be generated for all users with status NEW or FAILED"));
         registerParameter(new Parameter(DIRECTORY_KEY, "Directory", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
                 "The name of the directory to store the keys to. If not specified, the current EJBCA_HOME/p12 directory will be used."));
+        registerParameter(new Parameter(THREADS_KEY, "Number of threads", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "The number of threads used for each of key generation, certificate issuance and writing of keystores, when generating keys for "
+                        + "all users. If not specified, one end entity at a time is processed."));
     }
 
     private BatchToolProperties props = null;
@@ -98,6 +117,7 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
      */
     private String mainStoreDir = "";
     private Boolean usekeyrecovery = null;
+    private int threads = 1;
 
     @Override
     public String getMainCommand() {
@@ -129,6 +149,17 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
             if (directory == null) {
                 directory = getHomeDir() + "p12";
             }
+            if (parameters.get(THREADS_KEY) != null) {
+                try {
+                    threads = Integer.parseInt(parameters.get(THREADS_KEY));
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    log.error("ERROR: The number of threads must be a positive integer, was '" + parameters.get(THREADS_KEY) + "'.");
+                    return CommandResult.CLI_FAILURE;
+                }
+            }
 
             if (username == null) {
                 log.info("Use '" + getMainCommand() + " --help' for additional options.");
@@ -237,8 +268,7 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
     }
 
     /**
-     * Creates files for a user, sends request to CA, receives reply and creates
-     * P12.
+     * Sends request to CA for a user, receives reply and creates the keystore.
      * 
      * @param username
      *            username
@@ -250,13 +280,12 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
      *            a previously generated RSA keypair
      * @param createJKS
      *            if a jks should be created
-     * @param createPEM
-     *            if pem files should be created
      * @param savekeys
      *            if generated keys should be saved in db (key recovery)
      * @param orgCert
      *            if an original key recovered cert should be reused, null
      *            indicates generate new cert.
+     * @return the keystore, to be stored with {@link #storeKeyStore(KeyStore, String, String, boolean, boolean)}
      * @throws Exception
      *             if the certificate is not an X509 certificate
      * @throws Exception
@@ -266,8 +295,7 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
      * @throws Exception
      *             if keyfile (generated by ourselves) is corrupt
      */
-
-    private void createKeysForUser(String username, String password, int caid, KeyPair rsaKeys, boolean createJKS, boolean createPEM, boolean savekeys,
+    private KeyStore createKeyStore(String username, String password, int caid, KeyPair rsaKeys, boolean createJKS, boolean savekeys,
             X509Certificate orgCert) throws Exception {
         if (log.isTraceEnabled()) {
             log.trace(">createUser: username=" + username);
@@ -354,33 +382,51 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
         } else {
             ks = KeyTools.createP12(alias, rsaKeys.getPrivate(), cert, cachain);
         }
-
-        storeKeyStore(ks, username, password, createJKS, createPEM);
-        String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.createkeystore", username);
-        log.info(iMsg);
         if (log.isTraceEnabled()) {
             log.trace("<createUser: username=" + username);
         }
+        return ks;
+    }
+
+    /** An end entity on its way through the stages of keystore generation */
+    private static class BatchEntry {
+        final EndEntityInformation data;
+        final int status;
+        final boolean createJKS;
+        final boolean createPEM;
+        final boolean keyrecoverflag;
+        KeyPair keys = null;
+        X509Certificate orgCert = null;
+        KeyStore keyStore = null;
+
+        BatchEntry(final EndEntityInformation data, final int status) {
+            this.data = data;
+            this.status = status;
+            this.createJKS = (data.getTokenType() == SecConst.TOKEN_SOFT_JKS);
+            this.createPEM = (data.getTokenType() == SecConst.TOKEN_SOFT_PEM);
+            this.keyrecoverflag = (status == EndEntityConstants.STATUS_KEYRECOVERY);
+        }
     }
 
     /**
-     * Recovers or generates new keys for the user and generates keystore
+     * First stage of keystore generation: Recovers or generates new keys for the user.
      * 
-     * @param data
-     *            user data for user
-     * @param createJKS
-     *            if a jks should be created
-     * @param createPEM
-     *            if pem files should be created
-     * @param keyrecoverflag
-     *            if we should try to revoer already existing keys
+     * @param entry
+     *            the end entity, with user data and whether we should try to recover already existing keys
      * @throws Exception
      *             If something goes wrong...
      */
-    private void processUser(EndEntityInformation data, boolean createJKS, boolean createPEM, boolean keyrecoverflag) throws Exception {
-        KeyPair rsaKeys = null;
-        X509Certificate orgCert = null;
-        if (getUseKeyRecovery() && keyrecoverflag) {
+    private void recoverOrGenerateKeys(final BatchEntry entry) throws Exception {
+        final EndEntityInformation data = entry.data;
+        if (entry.keyrecoverflag) {
+            String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.retrieveingkeys", data.getUsername());
+            log.info(iMsg);
+        } else {
+            String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.generatingkeys", getProps().getKeyAlg(),
+                    getProps().getKeySpec(), data.getUsername());
+            log.info(iMsg);
+        }
+        if (getUseKeyRecovery() && entry.keyrecoverflag) {
             boolean reusecertificate = EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityProfileSessionRemote.class)
                     .getEndEntityProfile(data.getEndEntityProfileId()).getReUseKeyRecoveredCertificate();
             // Recover Keys
@@ -391,22 +437,71 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
                 EjbRemoteHelper.INSTANCE.getRemoteSession(KeyRecoverySessionRemote.class).unmarkUser(getAuthenticationToken(), data.getUsername());
             }
             if (recoveryData != null) {
-                rsaKeys = recoveryData.getKeyPair();
+                entry.keys = recoveryData.getKeyPair();
                 if (reusecertificate) {
-                    orgCert = (X509Certificate) recoveryData.getCertificate();
+                    entry.orgCert = (X509Certificate) recoveryData.getCertificate();
                 }
             } else {
                 String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errornokeyrecoverydata", data.getUsername());
                 throw new Exception(errMsg);
             }
         } else {
-            rsaKeys = KeyTools.genKeys(getProps().getKeySpec(), getProps().getKeyAlg());
+            entry.keys = KeyPairPool.getKeyPair(getProps().getKeySpec(), getProps().getKeyAlg());
+        }
+    }
+
+    /**
+     * Second stage of keystore generation: Gets certificate for user and creates keystore.
+     * 
+     * @param entry
+     *            the end entity, with keys from the first stage
+     * @throws Exception
+     *             If something goes wrong...
+     */
+    private void issueKeyStore(final BatchEntry entry) throws Exception {
+        final EndEntityInformation data = entry.data;
+        if (entry.keys != null) {
+            entry.keyStore = createKeyStore(data.getUsername(), data.getPassword(), data.getCAId(), entry.keys, entry.createJKS,
+                    !entry.keyrecoverflag && data.getKeyRecoverable(), entry.orgCert);
+        }
+    }
+
+    /**
+     * Last stage of keystore generation: Stores the keystore and resets the clear text password of the user.
+     * 
+     * @param entry
+     *            the end entity, with the keystore from the second stage
+     * @throws Exception
+     *             If something goes wrong...
+     */
+    private void writeKeyStore(final BatchEntry entry) throws Exception {
+        final EndEntityInformation data = entry.data;
+        if (entry.keyStore != null) {
+            storeKeyStore(entry.keyStore, data.getUsername(), data.getPassword(), entry.createJKS, entry.createPEM);
+            String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.createkeystore", data.getUsername());
+            log.info(iMsg);
         }
-        // Get certificate for user and create keystore
-        if (rsaKeys != null) {
-            createKeysForUser(data.getUsername(), data.getPassword(), data.getCAId(), rsaKeys, createJKS, createPEM,
-                    !keyrecoverflag && data.getKeyRecoverable(), orgCert);
+        // If all was OK, users status is set to GENERATED by the
+        // signsession when the user certificate is created.
+        // If status is still NEW, FAILED or KEYRECOVER though, it means we
+        // should set it back to what it was before, probably it had a
+        // request counter
+        // meaning that we should not reset the clear text password yet.
+
+        EndEntityInformation vo = EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityAccessSessionRemote.class).findUser(
+                getAuthenticationToken(), data.getUsername());
+        if ((vo.getStatus() == EndEntityConstants.STATUS_NEW) || (vo.getStatus() == EndEntityConstants.STATUS_FAILED)
+                || (vo.getStatus() == EndEntityConstants.STATUS_KEYRECOVERY)) {
+            EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setClearTextPassword(getAuthenticationToken(),
+                    data.getUsername(), data.getPassword());
+        } else {
+            // Delete clear text password, if we are not letting status be
+            // the same as originally
+            EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setClearTextPassword(getAuthenticationToken(),
+                    data.getUsername(), null);
         }
+        String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.generateduser", data.getUsername());
+        log.info(iMsg);
     }
 
     private boolean doCreateKeys(EndEntityInformation data, int status) throws Exception {
@@ -418,37 +513,11 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
         boolean createP12 = (tokentype == SecConst.TOKEN_SOFT_P12);
         // Only generate supported tokens
         if (createP12 || createPEM || createJKS) {
-            if (status == EndEntityConstants.STATUS_KEYRECOVERY) {
-                String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.retrieveingkeys", data.getUsername());
-                log.info(iMsg);
-            } else {
-                String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.generatingkeys", getProps().getKeyAlg(),
-                        getProps().getKeySpec(), data.getUsername());
-                log.info(iMsg);
-            }
-            processUser(data, createJKS, createPEM, (status == EndEntityConstants.STATUS_KEYRECOVERY));
-            // If all was OK, users status is set to GENERATED by the
-            // signsession when the user certificate is created.
-            // If status is still NEW, FAILED or KEYRECOVER though, it means we
-            // should set it back to what it was before, probably it had a
-            // request counter
-            // meaning that we should not reset the clear text password yet.
-
-            EndEntityInformation vo = EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityAccessSessionRemote.class).findUser(
-                    getAuthenticationToken(), data.getUsername());
-            if ((vo.getStatus() == EndEntityConstants.STATUS_NEW) || (vo.getStatus() == EndEntityConstants.STATUS_FAILED)
-                    || (vo.getStatus() == EndEntityConstants.STATUS_KEYRECOVERY)) {
-                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setClearTextPassword(getAuthenticationToken(),
-                        data.getUsername(), data.getPassword());
-            } else {
-                // Delete clear text password, if we are not letting status be
-                // the same as originally
-                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setClearTextPassword(getAuthenticationToken(),
-                        data.getUsername(), null);
-            }
+            final BatchEntry entry = new BatchEntry(data, status);
+            recoverOrGenerateKeys(entry);
+            issueKeyStore(entry);
+            writeKeyStore(entry);
             ret = true;
-            String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.generateduser", data.getUsername());
-            log.info(iMsg);
         } else {
             log.error("Cannot batchmake browser generated token for user (wrong tokentype)- " + data.getUsername());
         }
@@ -504,6 +573,183 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
         }
     }
 
+    /** Successful and failed end entities of one round of a batch, updated by all threads in parallel mode */
+    private static class BatchResult {
+        private int successcount = 0;
+        private int failcount = 0;
+        private final StringBuilder successusers = new StringBuilder();
+        private final StringBuilder failedusers = new StringBuilder();
+
+        synchronized void success(final String username) {
+            successusers.append(':').append(username);
+            successcount++;
+        }
+
+        synchronized void fail(final String username) {
+            failedusers.append(':').append(username);
+            failcount++;
+        }
+
+        synchronized int getSuccessCount() {
+            return successcount;
+        }
+
+        synchronized int getFailCount() {
+            return failcount;
+        }
+
+        synchronized String getSuccessUsers() {
+            return successusers.toString();
+        }
+
+        synchronized String getFailedUsers() {
+            return failedusers.toString();
+        }
+    }
+
+    /**
+     * Processes end entities in parallel, with a pool of threads for each stage of keystore generation. The number of end entities
+     * in progress is bounded, so that keys are not generated much faster than certificates can be issued. If the batch should be
+     * aborted, no new end entities are started, but end entities that already have keys are completed.
+     */
+    private class ParallelBatch {
+        private final int status;
+        private final BatchResult result;
+        private final ExecutorService keyExecutor;
+        private final ExecutorService issueExecutor;
+        private final ExecutorService writeExecutor;
+        private final Semaphore inProgress = new Semaphore(threads * IN_PROGRESS_PER_THREAD);
+        private final AtomicReference<Exception> abortCause = new AtomicReference<>();
+
+        ParallelBatch(final int status, final BatchResult result) {
+            this.status = status;
+            this.result = result;
+            this.keyExecutor = Executors.newFixedThreadPool(threads, getThreadFactory("BatchKeyGeneration"));
+            this.issueExecutor = Executors.newFixedThreadPool(threads, getThreadFactory("BatchIssuance"));
+            this.writeExecutor = Executors.newFixedThreadPool(threads, getThreadFactory("BatchWrite"));
+        }
+
+        /**
+         * Processes the end entities, and returns when all of them are completed.
+         * 
+         * @throws Exception the first failure that aborted the batch, as in sequential mode
+         */
+        void run(final List<EndEntityInformation> entities) throws Exception {
+            try {
+                for (final EndEntityInformation data : entities) {
+                    if (abortCause.get() != null) {
+                        break;
+                    }
+                    if ((data.getPassword() != null) && (data.getPassword().length() > 0)) {
+                        inProgress.acquire();
+                        execute(keyExecutor, new BatchEntry(data, status));
+                    } else {
+                        String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.infonoclearpwd", data.getUsername());
+                        log.info(iMsg);
+                    }
+                }
+                // Wait for the end entities in progress
+                inProgress.acquire(threads * IN_PROGRESS_PER_THREAD);
+            } finally {
+                keyExecutor.shutdown();
+                issueExecutor.shutdown();
+                writeExecutor.shutdown();
+            }
+            if (abortCause.get() != null) {
+                throw abortCause.get();
+            }
+        }
+
+        /** Runs the next stage for the end entity with the executor, which hands the end entity on to the stage after it */
+        private void execute(final ExecutorService executor, final BatchEntry entry) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean completed = true;
+                    try {
+                        if (executor == keyExecutor) {
+                            if (abortCause.get() == null) {
+                                recoverOrGenerateKeys(entry);
+                                completed = false;
+                                execute(issueExecutor, entry);
+                            }
+                        } else if (executor == issueExecutor) {
+                            issueKeyStore(entry);
+                            completed = false;
+                            execute(writeExecutor, entry);
+                        } else {
+                            writeKeyStore(entry);
+                            result.success(entry.data.getUsername());
+                        }
+                    } catch (Exception e) {
+                        completed = true;
+                        log.debug(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", "FAILED"), e);
+                        result.fail(entry.data.getUsername());
+                        try {
+                            handleFailure(entry.data, status, e);
+                        } catch (Exception abort) {
+                            abortCause.compareAndSet(null, abort);
+                        }
+                    } finally {
+                        if (completed) {
+                            inProgress.release();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static ThreadFactory getThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(0);
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Sets the status of an end entity that keystore generation failed for.
+     * 
+     * @param data
+     *            the end entity
+     * @param status
+     *            the status the end entity had
+     * @param e
+     *            the cause of the failure
+     * @throws Exception
+     *             to abort the batch, unless the keys of the end entity were not accepted
+     */
+    private void handleFailure(final EndEntityInformation data, final int status, final Exception e) throws Exception {
+        // If things went wrong set status to FAILED
+        final String newStatusString;
+        if (status == EndEntityConstants.STATUS_KEYRECOVERY) {
+            EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
+                    getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_KEYRECOVERY);
+            newStatusString = "KEYRECOVERY";
+        } else {
+            EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
+                    getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_FAILED);
+            newStatusString = "FAILED";
+        }
+        if (e instanceof IllegalKeyException) {
+            final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
+                    data.getUsername());
+            log.error(errMsg + " " + e.getMessage());
+            log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString));
+            log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorcheckconfig"));
+        } else {
+            log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString), e);
+            final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
+                    data.getUsername());
+            throw new Exception(errMsg, e);
+        }
+    }
+
     /**
      * Creates P12-files for all users with status in the local database.
      * 
@@ -518,90 +764,98 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
             log.trace(">createAllWithStatus: " + status);
         }
         CryptoProviderTools.installBCProviderIfNotAvailable(); // If this is invoked directly
-        ArrayList<EndEntityInformation> result = new ArrayList<EndEntityInformation>();
+        if (threads > 1) {
+            // Read lazily loaded configuration before it is used by several threads
+            getProps();
+            getUseKeyRecovery();
+        }
+        final long startTime = System.currentTimeMillis();
+        int totalSuccessCount = 0;
+        int totalFailCount = 0;
+        ArrayList<EndEntityInformation> result;
 
         boolean stopnow = false;
-        do {
-            for (EndEntityInformation data : EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityAccessSessionRemote.class)
-                    .findAllBatchUsersByStatusWithLimit(status)) {
-                if (data.getTokenType() == SecConst.TOKEN_SOFT_JKS || data.getTokenType() == SecConst.TOKEN_SOFT_PEM
-                        || data.getTokenType() == SecConst.TOKEN_SOFT_P12) {
-                    result.add(data);
+        try {
+            do {
+                // Processed end entities have a new status, so each round only contains the ones not processed yet
+                result = new ArrayList<EndEntityInformation>();
+                for (EndEntityInformation data : EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityAccessSessionRemote.class)
+                        .findAllBatchUsersByStatusWithLimit(status)) {
+                    if (data.getTokenType() == SecConst.TOKEN_SOFT_JKS || data.getTokenType() == SecConst.TOKEN_SOFT_PEM
+                            || data.getTokenType() == SecConst.TOKEN_SOFT_P12) {
+                        result.add(data);
+                    }
                 }
-            }
 
-            String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.generatingnoofusers", Integer.valueOf(result.size()));
-            log.info(iMsg);
+                String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.generatingnoofusers", Integer.valueOf(result.size()));
+                log.info(iMsg);
 
-            int failcount = 0;
-            int successcount = 0;
+                final GlobalConfigurationSessionRemote globalConfigurationSession = EjbRemoteHelper.INSTANCE.getRemoteSession(GlobalConfigurationSessionRemote.class);
+                final GlobalCesecoreConfiguration globalConfiguration = (GlobalCesecoreConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalCesecoreConfiguration.CESECORE_CONFIGURATION_ID);
 
-            final GlobalConfigurationSessionRemote globalConfigurationSession = EjbRemoteHelper.INSTANCE.getRemoteSession(GlobalConfigurationSessionRemote.class);
-            final GlobalCesecoreConfiguration globalConfiguration = (GlobalCesecoreConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalCesecoreConfiguration.CESECORE_CONFIGURATION_ID);
-            
-            if (result.size() > 0) {
-                if (result.size() < globalConfiguration.getMaximumQueryCount()) {
-                    stopnow = true;
-                }
-                String failedusers = "";
-                String successusers = "";
-                for (EndEntityInformation data : result) {
-                    if ((data.getPassword() != null) && (data.getPassword().length() > 0)) {
-                        try {
-                            if (doCreateKeys(data, status)) {
-                                successusers += (":" + data.getUsername());
-                                successcount++;
-                            }
-                        } catch (Exception e) {
-                            // If things went wrong set status to FAILED
-                            log.debug(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", "FAILED"), e);
-                            failedusers += (":" + data.getUsername());
-                            failcount++;
-                            final String newStatusString;
-                            if (status == EndEntityConstants.STATUS_KEYRECOVERY) {
-                                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
-                                        getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_KEYRECOVERY);
-                                newStatusString = "KEYRECOVERY";
-                            } else {
-                                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
-                                        getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_FAILED);
-                                newStatusString = "FAILED";
-                            }
-                            if (e instanceof IllegalKeyException) {
-                                final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
-                                        data.getUsername());
-                                log.error(errMsg + " " + e.getMessage());
-                                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString));
-                                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorcheckconfig"));
-                            } else {
-                                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString), e);
-                                final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
-                                        data.getUsername());
-                                throw new Exception(errMsg, e);
+                if (result.size() > 0) {
+                    if (result.size() < globalConfiguration.getMaximumQueryCount()) {
+                        stopnow = true;
+                    }
+                    final BatchResult batchResult = new BatchResult();
+                    try {
+                        if (threads > 1) {
+                            new ParallelBatch(status, batchResult).run(result);
+                        } else {
+                            for (EndEntityInformation data : result) {
+                                if ((data.getPassword() != null) && (data.getPassword().length() > 0)) {
+                                    try {
+                                        if (doCreateKeys(data, status)) {
+                                            batchResult.success(data.getUsername());
+                                        }
+                                    } catch (Exception e) {
+                                        log.debug(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", "FAILED"), e);
+                                        batchResult.fail(data.getUsername());
+                                        handleFailure(data, status, e);
+                                    }
+                                } else {
+                                    iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.infonoclearpwd", data.getUsername());
+                                    log.info(iMsg);
+                                }
                             }
-
                         }
-                    } else {
-                        iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.infonoclearpwd", data.getUsername());
-                        log.info(iMsg);
+                    } finally {
+                        totalSuccessCount += batchResult.getSuccessCount();
+                        totalFailCount += batchResult.getFailCount();
                     }
-                }
 
-                if (failedusers.length() > 0) {
-                    String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfailed", Integer.valueOf(failcount),
-                            Integer.valueOf(successcount), failedusers);
-                    log.error(errMsg);
-                    throw new Exception(errMsg);
+                    if (batchResult.getFailCount() > 0) {
+                        String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfailed",
+                                Integer.valueOf(batchResult.getFailCount()), Integer.valueOf(batchResult.getSuccessCount()), batchResult.getFailedUsers());
+                        log.error(errMsg);
+                        throw new Exception(errMsg);
+                    }
+                    iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.success", Integer.valueOf(batchResult.getSuccessCount()),
+                            batchResult.getSuccessUsers());
+                    log.info(iMsg);
+                    if (!stopnow) {
+                        log.info(getBatchSummary(status, totalSuccessCount, totalFailCount, startTime, "in progress"));
+                    }
                 }
-                iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.success", Integer.valueOf(successcount), successusers);
-                log.info(iMsg);
+            } while ((result.size() > 0) && !stopnow);
+        } finally {
+            if (totalSuccessCount + totalFailCount > 0) {
+                log.info(getBatchSummary(status, totalSuccessCount, totalFailCount, startTime, "finished"));
             }
-        } while ((result.size() > 0) && !stopnow);
+        }
         if (log.isTraceEnabled()) {
             log.trace("<createAllWithStatus: " + status);
         }
     }
 
+    /** @return a summary of the batch so far, with the number of keystores generated per second */
+    private String getBatchSummary(final int status, final int successCount, final int failCount, final long startTime, final String state) {
+        final long elapsedMillis = Math.max(System.currentTimeMillis() - startTime, 1);
+        return "Batch generation for status " + EndEntityConstants.getStatusText(status) + " " + state + ": " + successCount
+                + " keystores generated and " + failCount + " failed in " + (elapsedMillis / 1000) + " seconds ("
+                + String.format("%.1f", successCount * 1000.0 / elapsedMillis) + " keystores per second, " + threads + " threads).";
+    }
+
     /**
      * Creates P12-files for one end entity in the local database.
      * 
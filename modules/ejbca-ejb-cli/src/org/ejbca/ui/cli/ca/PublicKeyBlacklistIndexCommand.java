@@ -0,0 +1,129 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.cli.ca;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+import org.ejbca.core.model.validation.PublicKeyBlacklistEntry;
+import org.ejbca.core.model.validation.PublicKeyBlacklistIndex;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.command.EjbcaCommandBase;
+import org.ejbca.ui.cli.infrastructure.parameter.Parameter;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+
+/**
+ * Builds a public key blacklist index file from CSV files with public key fingerprints, for blacklists that are too large to keep
+ * in the database. Does not connect to the application server.
+ *
+ * @version $Id$
+ */
+public class PublicKeyBlacklistIndexCommand extends EjbcaCommandBase {
+
+    /** Class logger. */
+    private static final Logger log = Logger.getLogger(PublicKeyBlacklistIndexCommand.class);
+
+    private static final String DIRECTORY_KEY = "--dir";
+    private static final String FILE_KEY = "--file";
+    private static final String APPEND_KEY = "--append";
+
+    {
+        registerParameter(new Parameter(DIRECTORY_KEY, "Fingerprint directory", MandatoryMode.MANDATORY, StandaloneMode.ALLOW, ParameterMode.ARGUMENT,
+                "Directory with CSV files containing one public key fingerprint per line, as for updatepublickeyblacklist --mode fingerprint."));
+        registerParameter(new Parameter(FILE_KEY, "Index file", MandatoryMode.MANDATORY, StandaloneMode.ALLOW, ParameterMode.ARGUMENT,
+                "The index file to create, configured with blacklist.indexfile in cesecore.properties."));
+        registerParameter(Parameter.createFlag(APPEND_KEY, "Set to add the fingerprints to an existing index file instead of replacing it."));
+    }
+
+    @Override
+    public String getMainCommand() {
+        return "publickeyblacklistindex";
+    }
+
+    @Override
+    public String[] getCommandPath() {
+        return new String[] { "ca" };
+    }
+
+    @Override
+    public CommandResult execute(ParameterContainer parameters) {
+        final File directory = new File(parameters.get(DIRECTORY_KEY));
+        final File indexFile = new File(parameters.get(FILE_KEY));
+        final boolean append = parameters.containsKey(APPEND_KEY);
+        if (!directory.isDirectory()) {
+            log.error("'" + directory + "' is not a directory.");
+            return CommandResult.CLI_FAILURE;
+        }
+        final File[] files = directory.listFiles();
+        if (files == null || files.length < 1) {
+            log.info("No files in directory '" + directory + "'. Nothing to do.");
+            return CommandResult.SUCCESS;
+        }
+        final long startTime = System.currentTimeMillis();
+        final PublicKeyBlacklistIndex.Builder builder = new PublicKeyBlacklistIndex.Builder();
+        try {
+            if (append && indexFile.exists()) {
+                final PublicKeyBlacklistIndex existing = PublicKeyBlacklistIndex.open(indexFile);
+                builder.addAll(existing);
+                log.info("Read " + existing.size() + " fingerprints from existing index file '" + indexFile + "'.");
+            }
+            for (final File file : files) {
+                if (!file.isFile()) {
+                    continue;
+                }
+                try (final Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    final int added = builder.addCsv(reader);
+                    log.info("Read " + added + " public key fingerprints from file " + file.getAbsolutePath());
+                }
+            }
+            final int size = builder.write(indexFile);
+            log.info("Wrote " + size + " distinct public key fingerprints to index file '" + indexFile.getAbsolutePath() + "' in "
+                    + (System.currentTimeMillis() - startTime) + " ms.");
+            if (builder.getSkipped() > 0) {
+                log.warn("Skipped " + builder.getSkipped() + " values that were not hex encoded " + PublicKeyBlacklistEntry.DIGEST_ALGORITHM
+                        + " fingerprints.");
+            }
+        } catch (IOException e) {
+            log.error("Building public key blacklist index failed: " + e.getMessage());
+            return CommandResult.FUNCTIONAL_FAILURE;
+        }
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    public String getCommandDescription() {
+        return "Builds a public key blacklist index file from public key fingerprints.";
+    }
+
+    @Override
+    public String getFullHelpText() {
+        return getCommandDescription() + "\n\nThe index file is used by public key blacklist validators when configured with blacklist.indexfile in "
+                + "cesecore.properties, in addition to the public key blacklist in the database. It holds millions of fingerprints, such as the "
+                + "Debian weak keys, with much less memory and database load. Every file in the directory is treated as a CSV file with one "
+                + PublicKeyBlacklistEntry.DIGEST_ALGORITHM + " public key fingerprint per line, with optional additional values that are "
+                + "ignored. The application server reloads the index file when it is replaced.";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+}
@@ -14,6 +14,8 @@ package org.ejbca.core.ejb.ca.publisher;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 import javax.ejb.CreateException;
 import javax.ejb.Local;
@@ -83,6 +85,17 @@ public interface PublisherQueueSessionLocal {
      */
     Collection<PublisherQueueData> getPendingEntriesForPublisherWithLimit(int publisherId, int limit, int timeout, String orderBy);
 
+    /**
+     * Claims the oldest entries with status PublisherQueueData.STATUS_PENDING for a specific publisherId, that are not already claimed by
+     * another node, by setting their last update time to now. The claim is committed in a new transaction, so other nodes processing
+     * the same queue will skip the entries until the claim time has passed.
+     * 
+     * @param limit the maximum number of entries to claim
+     * @param claimTime the time in milliseconds that a claim (or the last update of an entry) is valid
+     * @return Collection of the claimed PublisherQueueData, ordered by timeCreated, never null
+     */
+    Collection<PublisherQueueData> claimPendingEntriesForPublisher(int publisherId, int limit, long claimTime);
+
     /**
      * Finds all entries for a specific fingerprint.
      * 
@@ -111,6 +124,33 @@ public interface PublisherQueueSessionLocal {
      */
     PublishingResult plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, BasePublisher publisher);
 
+    /**
+     * Intended for use from PublishQueueProcessWorker.
+     * 
+     * Processes the queues of several publishers concurrently, using {@link #plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken, BasePublisher)}
+     * for each publisher.
+     * 
+     * @return the results in the same order as the publishers are provided
+     */
+    List<PublishingResult> plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, List<BasePublisher> publishers);
+
+    /**
+     * Internal method, do not use. Processes the queue of a publisher with {@link #plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken, BasePublisher)}
+     * on a container managed thread, so the queues of several publishers can be processed concurrently.
+     */
+    Future<PublishingResult> plainFifoTryAlwaysLimit100EntriesOrderByTimeCreatedAsynchronously(AuthenticationToken admin, BasePublisher publisher);
+
+    /**
+     * Internal method, do not use. Publishes certificate entries from the queue on a container managed thread, so a chunk of the queue can be
+     * published by several workers concurrently. The entries are not updated in the queue.
+     *
+     * @param publisherQueueData the entries to publish, which must all be certificates
+     * @param certificateDatas the certificates of the entries by fingerprint
+     * @return the outcome of each entry that publishing was attempted for, true if it was published
+     */
+    Future<Map<PublisherQueueData, Boolean>> publishQueueEntriesAsynchronously(AuthenticationToken admin, BasePublisher publisher,
+            List<PublisherQueueData> publisherQueueData, Map<String, CertificateDataWrapper> certificateDatas);
+
     
     /** Publishers do not run a part of regular transactions and expect to run in auto-commit mode. */
 	boolean publishCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper cert,
@@ -138,6 +178,14 @@ public interface PublisherQueueSessionLocal {
      */
     List<Object> publishCertificateNonTransactionalInternal(List<BasePublisher> publishers, AuthenticationToken admin, CertificateDataWrapper certWrapper,
             String password, String userDN, ExtendedInformation extendedinformation);
+
+    /**
+     * Internal method, do not use. Publishes a certificate on a container managed thread, so several publishers can be published to in parallel.
+     *
+     * @return a future with the result, which is either a PublisherException (if the publishing failed) or a Boolean.TRUE (if the publishing succeeded)
+     */
+    Future<Object> publishCertificateNonTransactionalAsynchronously(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper certWrapper,
+            String password, String userDN, ExtendedInformation extendedinformation);
 	
     /** Publishers digest queues in transaction-based "chunks". */
     PublishingResult doChunk(AuthenticationToken admin, BasePublisher publisher);
@@ -103,4 +103,7 @@ public interface PublisherSessionLocal extends PublisherSession {
     
     /** @return return the query results as a List. */
     List<PublisherData> findAll();
+
+    /** Initialize the timer that closes idle connections of the LDAP publishers, if connection pooling is enabled. */
+    void initTimers();
 }
@@ -0,0 +1,124 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of a CRL or delta CRL generation run over a number of CAs, with the outcome and time spent for each CRL partition.
+ *
+ * @version $Id$
+ */
+public class CrlCreationResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Outcome of the check (and generation if needed) of a single CRL partition */
+    public static class PartitionResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int caId;
+        private final String caName;
+        private final int crlPartitionIndex;
+        private final boolean created;
+        private final long durationMillis;
+        private final String errorMessage;
+
+        public PartitionResult(final int caId, final String caName, final int crlPartitionIndex, final boolean created, final long durationMillis,
+                final String errorMessage) {
+            this.caId = caId;
+            this.caName = caName;
+            this.crlPartitionIndex = crlPartitionIndex;
+            this.created = created;
+            this.durationMillis = durationMillis;
+            this.errorMessage = errorMessage;
+        }
+
+        public int getCaId() { return caId; }
+        public String getCaName() { return caName; }
+        public int getCrlPartitionIndex() { return crlPartitionIndex; }
+        /** @return true if a new CRL was generated for the partition */
+        public boolean isCreated() { return created; }
+        /** @return the time in milliseconds it took to check and generate the CRL of the partition */
+        public long getDurationMillis() { return durationMillis; }
+        /** @return the reason generation failed, or null if it did not fail */
+        public String getErrorMessage() { return errorMessage; }
+
+        @Override
+        public String toString() {
+            return "'" + caName + "' (" + caId + ") partition " + crlPartitionIndex + ": " + (errorMessage != null ? "failed (" + errorMessage + ")"
+                    : (created ? "created" : "not needed")) + " in " + durationMillis + " ms";
+        }
+    }
+
+    private final boolean deltaCrl;
+    private final int workers;
+    private final List<PartitionResult> partitionResults = new ArrayList<>();
+    private long durationMillis = 0;
+
+    /**
+     * @param deltaCrl true if this is the result of delta CRL generation
+     * @param workers the number of partitions that were processed concurrently
+     */
+    public CrlCreationResult(final boolean deltaCrl, final int workers) {
+        this.deltaCrl = deltaCrl;
+        this.workers = workers;
+    }
+
+    public void addPartitionResult(final PartitionResult partitionResult) {
+        partitionResults.add(partitionResult);
+    }
+
+    public void setDurationMillis(final long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public boolean isDeltaCrl() { return deltaCrl; }
+    public int getWorkers() { return workers; }
+    /** @return the total (wall clock) time in milliseconds of the generation run */
+    public long getDurationMillis() { return durationMillis; }
+    public List<PartitionResult> getPartitionResults() { return Collections.unmodifiableList(partitionResults); }
+
+    /** @return the number of CAs where CRLs were generated for all partitions, which is the number returned by PublishingCrlSession.createCRLs */
+    public int getCreatedCaCount() {
+        final Set<Integer> created = new LinkedHashSet<>();
+        final Set<Integer> notCreated = new LinkedHashSet<>();
+        for (final PartitionResult partitionResult : partitionResults) {
+            (partitionResult.isCreated() ? created : notCreated).add(partitionResult.getCaId());
+        }
+        created.removeAll(notCreated);
+        return created.size();
+    }
+
+    /** @return the number of partitions a new CRL was generated for */
+    public int getCreatedPartitionCount() {
+        int ret = 0;
+        for (final PartitionResult partitionResult : partitionResults) {
+            if (partitionResult.isCreated()) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return (deltaCrl ? "Delta CRL" : "CRL") + " generation checked " + partitionResults.size() + " partitions using " + workers + " workers and created "
+                + getCreatedPartitionCount() + " CRLs in " + durationMillis + " ms.";
+    }
+}
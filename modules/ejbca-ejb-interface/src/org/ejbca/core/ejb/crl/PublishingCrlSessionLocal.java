@@ -13,6 +13,7 @@
 package org.ejbca.core.ejb.crl;
 
 import java.util.Collection;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
@@ -70,6 +71,41 @@ public interface PublishingCrlSessionLocal extends PublishingCrlSession {
      */
     int createDeltaCRLs(AuthenticationToken admin, Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException;
     
+    /**
+     * Same as {@link #createCRLs(AuthenticationToken, Collection, long)}, but returns the outcome and time spent for each CRL partition.
+     * Up to "crlgeneration.workers" (see ejbca.properties) partitions are checked and generated concurrently.
+     *
+     * @param admin administrator performing the task
+     * @param caids list of CA ids (Integer) that will be checked, or null in which case ALL CAs will be checked
+     * @param addtocrloverlaptime given in milliseconds and added to the CRL overlap time
+     * @return the result for each checked CRL partition
+     */
+    CrlCreationResult createCRLsWithResult(AuthenticationToken admin, Collection<Integer> caids, long addtocrloverlaptime) throws AuthorizationDeniedException;
+
+    /**
+     * Same as {@link #createDeltaCRLs(AuthenticationToken, Collection, long)}, but returns the outcome and time spent for each CRL partition.
+     * Up to "crlgeneration.workers" (see ejbca.properties) partitions are checked and generated concurrently.
+     *
+     * @param admin administrator performing the task
+     * @param caids list of CA ids (Integer) that will be checked, or null in which case ALL CAs will be checked
+     * @param crloverlaptime A new delta CRL is created if the current one expires within the crloverlaptime given in milliseconds
+     * @return the result for each checked CRL partition
+     */
+    CrlCreationResult createDeltaCRLsWithResult(AuthenticationToken admin, Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException;
+
+    /**
+     * Same as {@link PublishingCrlSession#createCRLNewTransactionConditioned(AuthenticationToken, int, long)}, but only for a single CRL partition
+     * of a CA that has already been read (and authorized) by the caller.
+     *
+     * @param admin administrator performing the task
+     * @param ca the CA this operation regards
+     * @param crlPartitionIndex the CRL partition, or CertificateConstants.NO_CRL_PARTITION for the CRL of an unpartitioned CA
+     * @param addToCrlOverlapTime given in milliseconds and added to the CRL overlap time
+     * @return true if a CRL was created
+     */
+    boolean createCrlPartitionNewTransactionConditioned(AuthenticationToken admin, CA ca, int crlPartitionIndex, long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException, CAOfflineException;
+
     /**
      * Method that checks if the delta CRL needs to be updated and then creates
      * it.
@@ -86,6 +122,33 @@ public interface PublishingCrlSessionLocal extends PublishingCrlSession {
      */
     boolean createDeltaCRLnewTransactionConditioned(AuthenticationToken admin, int caid, long crloverlaptime) throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException;
 
+    /**
+     * Same as {@link #createDeltaCRLnewTransactionConditioned(AuthenticationToken, int, long)}, but only for a single CRL partition
+     * of a CA that has already been read (and authorized) by the caller.
+     *
+     * @param admin administrator performing the task
+     * @param ca the CA this operation regards
+     * @param crlPartitionIndex the CRL partition, or CertificateConstants.NO_CRL_PARTITION for the CRL of an unpartitioned CA
+     * @param crloverlaptime A new delta CRL is created if the current one expires within the crloverlaptime given in milliseconds
+     * @return true if a Delta CRL was created
+     */
+    boolean createDeltaCrlPartitionNewTransactionConditioned(AuthenticationToken admin, CA ca, int crlPartitionIndex, long crloverlaptime)
+            throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException;
+
+    /**
+     * Internal method, do not use. Checks, and generates if needed, the CRL or delta CRL of a single partition on a container managed thread,
+     * so createCRLsWithResult and createDeltaCRLsWithResult can process several partitions concurrently.
+     *
+     * @param admin administrator performing the task
+     * @param caId the id of the CA this operation regards, the CA is read by the invocation since CA objects can not be shared between threads
+     * @param crlPartitionIndex the CRL partition, or CertificateConstants.NO_CRL_PARTITION for the CRL of an unpartitioned CA
+     * @param addToCrlOverlapTime given in milliseconds and added to the CRL overlap time
+     * @param deltaCrl true to check the delta CRL instead of the base CRL
+     * @return the result for the partition, where failures other than authorization are reported
+     */
+    Future<CrlCreationResult.PartitionResult> createCrlPartitionAsynchronously(AuthenticationToken admin, int caId, int crlPartitionIndex, long addToCrlOverlapTime,
+            boolean deltaCrl) throws AuthorizationDeniedException;
+
     /** Internal method, do not use. Needs to be here for transaction management. */
     String internalCreateCRL(AuthenticationToken admin, CA ca, int crlPartitionIndex, CRLInfo lastBaseCrlInfo)
             throws CAOfflineException, CryptoTokenOfflineException, AuthorizationDeniedException;
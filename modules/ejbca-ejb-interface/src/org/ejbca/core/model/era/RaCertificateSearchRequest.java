@@ -51,6 +51,8 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
     private long revokedBefore = Long.MAX_VALUE;
     private List<Integer> statuses = new ArrayList<>();
     private List<Integer> revocationReasons = new ArrayList<>();
+    private String searchCursor = null;
+    private boolean metadataOnly = false;
 
     /** Default constructor */
     public RaCertificateSearchRequest() {}
@@ -78,6 +80,8 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
         revokedBefore = request.revokedBefore;
         statuses.addAll(request.statuses);
         revocationReasons.addAll(request.revocationReasons);
+        searchCursor = request.searchCursor;
+        metadataOnly = request.metadataOnly;
     }
 
     public int getMaxResults() { return maxResults; }
@@ -90,6 +94,14 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
         this.pageNumber = pageNumber;
     }
 
+    /**
+     * @return the position to continue a keyset paginated search from, {@link RaSearchCursor#START} for the first page, or null if the
+     * search is paginated with the page number. Keyset paginated results are ordered by fingerprint.
+     */
+    public String getSearchCursor() { return searchCursor; }
+    /** @param searchCursor the cursor from the response of the previous page, {@link RaSearchCursor#START} or null, see {@link #getSearchCursor()} */
+    public void setSearchCursor(final String searchCursor) { this.searchCursor = searchCursor; }
+
     public void setMaxResults(final int maxResults) { this.maxResults = maxResults; }
     public void resetMaxResults() { this.maxResults = DEFAULT_MAX_RESULTS; }
 
@@ -173,6 +185,9 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
     public void setStatuses(final List<Integer> statuses) { this.statuses = statuses; }
     public List<Integer> getRevocationReasons() { return revocationReasons; }
     public void setRevocationReasons(final List<Integer> revocationReasons) { this.revocationReasons = revocationReasons; }
+    /** @return true if only the database columns of the certificates should be returned, and not the encoded certificates */
+    public boolean isMetadataOnly() { return metadataOnly; }
+    public void setMetadataOnly(final boolean metadataOnly) { this.metadataOnly = metadataOnly; }
 
     @Override
     public int hashCode() {
@@ -210,7 +225,8 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
                 isWider(usernameSearchExact, other.usernameSearchExact) ||
                 isWider(serialNumberSearchStringFromDec, other.serialNumberSearchStringFromDec) ||
                 isWider(serialNumberSearchStringFromHex, other.serialNumberSearchStringFromHex) ||
-                isWider(statuses, other.statuses) || isWider(revocationReasons, other.revocationReasons)) {
+                isWider(statuses, other.statuses) || isWider(revocationReasons, other.revocationReasons) ||
+                (!metadataOnly && other.metadataOnly)) {
             // This does not contain whole other → wider
             return 1;
         }
@@ -228,7 +244,8 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
                 isMoreNarrow(usernameSearchExact, other.usernameSearchExact) ||
                 isMoreNarrow(serialNumberSearchStringFromDec, other.serialNumberSearchStringFromDec) ||
                 isMoreNarrow(serialNumberSearchStringFromHex, other.serialNumberSearchStringFromHex) ||
-                isMoreNarrow(statuses, other.statuses) || isMoreNarrow(revocationReasons, other.revocationReasons)) {
+                isMoreNarrow(statuses, other.statuses) || isMoreNarrow(revocationReasons, other.revocationReasons) ||
+                (metadataOnly && !other.metadataOnly)) {
             // This does contain whole other, but other does not contain whole this → more narrow
             return -1;
         }
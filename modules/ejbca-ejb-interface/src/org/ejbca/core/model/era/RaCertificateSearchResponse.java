@@ -14,7 +14,7 @@ package org.ejbca.core.model.era;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,15 +31,20 @@ public class RaCertificateSearchResponse implements Serializable {
 
     private List<CertificateDataWrapper> cdws = new ArrayList<>();
     private boolean mightHaveMoreResults = false;
+    private String nextCursor = null;
 
     public List<CertificateDataWrapper> getCdws() { return cdws; }
     public void setCdws(List<CertificateDataWrapper> cdws) { this.cdws = cdws; }
 
     public boolean isMightHaveMoreResults() { return mightHaveMoreResults; }
     public void setMightHaveMoreResults(boolean mightHaveMoreResults) { this.mightHaveMoreResults = mightHaveMoreResults; }
+
+    /** @return the cursor of the next page of a keyset paginated search, or null if there are no more results or the search used page numbers */
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
     
     public void merge(final RaCertificateSearchResponse other) {
-        final Map<String,CertificateDataWrapper> cdwMap = new HashMap<>();
+        final Map<String,CertificateDataWrapper> cdwMap = new LinkedHashMap<>();
         for (final CertificateDataWrapper cdw : cdws) {
             cdwMap.put(cdw.getCertificateData().getFingerprint(), cdw);
         }
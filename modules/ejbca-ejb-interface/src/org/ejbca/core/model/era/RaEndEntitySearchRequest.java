@@ -43,6 +43,7 @@ public class RaEndEntitySearchRequest implements Serializable, Comparable<RaEndE
     private long modifiedBefore = Long.MAX_VALUE;
     private List<Integer> statuses = new ArrayList<>();
     private int pageNumber = 0;
+    private String searchCursor = null;
 
     /** Default constructor */
     public RaEndEntitySearchRequest() {}
@@ -63,6 +64,7 @@ public class RaEndEntitySearchRequest implements Serializable, Comparable<RaEndE
         modifiedAfter = request.modifiedAfter;
         modifiedBefore = request.modifiedBefore;
         statuses.addAll(request.statuses);
+        searchCursor = request.searchCursor;
     }
 
     public int getMaxResults() { return maxResults; }
@@ -75,6 +77,14 @@ public class RaEndEntitySearchRequest implements Serializable, Comparable<RaEndE
         this.pageNumber = pageNumber;
     }
 
+    /**
+     * @return the position to continue a keyset paginated search from, {@link RaSearchCursor#START} for the first page, or null if the
+     * search is paginated with the page number. Keyset paginated results are ordered by username.
+     */
+    public String getSearchCursor() { return searchCursor; }
+    /** @param searchCursor the cursor from the response of the previous page, {@link RaSearchCursor#START} or null, see {@link #getSearchCursor()} */
+    public void setSearchCursor(final String searchCursor) { this.searchCursor = searchCursor; }
+
     public void setMaxResults(final int maxResults) { this.maxResults = maxResults; }
     public List<Integer> getEepIds() { return eepIds; }
     public void setEepIds(final List<Integer> eepIds) { this.eepIds = eepIds; }
@@ -14,7 +14,7 @@ package org.ejbca.core.model.era;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,15 +31,20 @@ public class RaEndEntitySearchResponse implements Serializable {
 
     private List<EndEntityInformation> endEntities = new ArrayList<>();
     private boolean mightHaveMoreResults = false;
+    private String nextCursor = null;
 
     public List<EndEntityInformation> getEndEntities() { return endEntities; }
     public void setEndEntities(List<EndEntityInformation> endEntities) { this.endEntities = endEntities; }
 
     public boolean isMightHaveMoreResults() { return mightHaveMoreResults; }
     public void setMightHaveMoreResults(boolean mightHaveMoreResults) { this.mightHaveMoreResults = mightHaveMoreResults; }
+
+    /** @return the cursor of the next page of a keyset paginated search, or null if there are no more results or the search used page numbers */
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
     
     public void merge(final RaEndEntitySearchResponse other) {
-        final Map<String,EndEntityInformation> endEntitiesMap = new HashMap<>();
+        final Map<String,EndEntityInformation> endEntitiesMap = new LinkedHashMap<>();
         for (final EndEntityInformation endEntity : endEntities) {
             endEntitiesMap.put(endEntity.getUsername(), endEntity);
         }
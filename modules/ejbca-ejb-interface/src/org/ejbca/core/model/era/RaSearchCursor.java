@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cursor of a keyset paginated search over several back ends, e.g. the local database and one or more peers.
+ *
+ * Each back end that may have more results has its own cursor, which is the last key it returned (or a cursor of the same form, if the
+ * back end is itself a proxy). The cursor of the search is the cursors of the back ends by their index, so each back end continues where
+ * it left off and the results of the back ends never have to be compared with each other. Back ends that have no more results are
+ * not part of the cursor, and the first page is searched with {@link #START}.
+ *
+ * @version $Id$
+ */
+public final class RaSearchCursor {
+
+    /** Cursor for the first page of a search */
+    public static final String START = "";
+
+    private RaSearchCursor() {}
+
+    /**
+     * @param cursor a cursor created by {@link #encode(Map)} or {@link #START}
+     * @return the cursors of the back ends by index, or an empty map for {@link #START}
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static Map<Integer, String> decode(final String cursor) {
+        final Map<Integer, String> ret = new LinkedHashMap<>();
+        if (cursor == null || cursor.isEmpty()) {
+            return ret;
+        }
+        for (final String entry : cursor.split(",")) {
+            final int separator = entry.indexOf(':');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Malformed search cursor '" + cursor + "'.");
+            }
+            try {
+                ret.put(Integer.valueOf(entry.substring(0, separator)),
+                        new String(Base64.getDecoder().decode(entry.substring(separator + 1)), StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed search cursor '" + cursor + "'.", e);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param cursors the cursors of the back ends that may have more results, by index
+     * @return the cursor of the search, or null if no back end has more results
+     */
+    public static String encode(final Map<Integer, String> cursors) {
+        if (cursors.isEmpty()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<Integer, String> entry : cursors.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append(':').append(Base64.getEncoder().encodeToString(entry.getValue().getBytes(StandardCharsets.UTF_8)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,410 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.publisher;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ejb.EJBException;
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
+import org.cesecore.certificates.endentity.ExtendedInformation;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockRunner;
+import org.easymock.IAnswer;
+import org.easymock.Mock;
+import org.easymock.MockType;
+import org.easymock.TestSubject;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.ca.publisher.CustomPublisherContainer;
+import org.ejbca.core.model.ca.publisher.PublisherConst;
+import org.ejbca.core.model.ca.publisher.PublisherException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit tests of processing the publisher queue from several nodes at the same time, using an in-memory queue in place of the database.
+ * The two bean instances act as two nodes sharing the same queue.
+ *
+ * @version $Id$
+ */
+@RunWith(EasyMockRunner.class)
+public class PublisherQueueSessionBeanUnitTest {
+
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("PublisherQueueSessionBeanUnitTest"));
+    private static final int PUBLISHER_ID = 4711;
+
+    @TestSubject
+    private PublisherQueueSessionBean node1 = new PublisherQueueSessionBean();
+    @TestSubject
+    private PublisherQueueSessionBean node2 = new PublisherQueueSessionBean();
+
+    @Mock(MockType.NICE)
+    private EntityManager entityManager;
+    @Mock
+    private NoConflictCertificateStoreSessionLocal noConflictCertificateStoreSession;
+    @Mock
+    private PublisherQueueSessionLocal publisherQueueSession;
+
+    /** The queue shared by the nodes, by primary key */
+    private final Map<String, PublisherQueueData> queue = new LinkedHashMap<>();
+    private final BasePublisher publisher = new CustomPublisherContainer();
+    /** Counted down when the first node has processed its chunk */
+    private final CountDownLatch chunkDone = new CountDownLatch(1);
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        publisher.setPublisherId(PUBLISHER_ID);
+        executorService = Executors.newCachedThreadPool();
+        // Invocations of thread safe mocks are serialized, but here the nodes must be able to wait for each other inside the mocks
+        EasyMock.makeThreadSafe(noConflictCertificateStoreSession, false);
+        EasyMock.makeThreadSafe(publisherQueueSession, false);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+        EjbcaConfigurationHolder.restoreConfiguration();
+    }
+
+    /** Tests that when two nodes claim the same entries at the same time, the node that lost the race retries, and each entry is published once */
+    @Test
+    public void testClaimContention() throws Exception {
+        EjbcaConfigurationHolder.updateConfiguration("publisher.queue.claimtime", "60000");
+        addEntries(150);
+        final CyclicBarrier bothRead = new CyclicBarrier(2);
+        final AtomicInteger claims = new AtomicInteger();
+        expect(publisherQueueSession.claimPendingEntriesForPublisher(eq(PUBLISHER_ID), eq(100), eq(60000L)))
+                .andAnswer(new IAnswer<Collection<org.ejbca.core.model.ca.publisher.PublisherQueueData>>() {
+                    @Override
+                    public Collection<org.ejbca.core.model.ca.publisher.PublisherQueueData> answer() throws Exception {
+                        final boolean firstRound = claims.incrementAndGet() <= 2;
+                        final Map<String, Long> read = readUnclaimed(100, 60000L);
+                        if (firstRound) {
+                            // Make both nodes read the same unclaimed entries before any of them has claimed them
+                            bothRead.await(10, TimeUnit.SECONDS);
+                        }
+                        return claim(read);
+                    }
+                }).times(3);
+        expectQueries();
+        expectCertificateDatas();
+        final AtomicInteger published = new AtomicInteger();
+        expect(publisherQueueSession.publishCertificateNonTransactional(same(publisher), same(admin), anyObject(CertificateDataWrapper.class),
+                (String) anyObject(), (String) anyObject(), (ExtendedInformation) anyObject())).andAnswer(new IAnswer<Boolean>() {
+                    @Override
+                    public Boolean answer() {
+                        published.incrementAndGet();
+                        return Boolean.TRUE;
+                    }
+                }).anyTimes();
+        replay(noConflictCertificateStoreSession, publisherQueueSession);
+        final Future<PublishingResult> result1 = doChunk(node1);
+        final Future<PublishingResult> result2 = doChunk(node2);
+        final int successes1 = result1.get(10, TimeUnit.SECONDS).getSuccesses();
+        final int successes2 = result2.get(10, TimeUnit.SECONDS).getSuccesses();
+        verify(noConflictCertificateStoreSession, publisherQueueSession);
+        assertEquals("The node that lost the claim should have retried once.", 3, claims.get());
+        assertTrue("One node should have published a full chunk, the other one the rest.",
+                (successes1 == 100 && successes2 == 50) || (successes1 == 50 && successes2 == 100));
+        assertEquals("Each entry should have been published once.", 150, published.get());
+        assertTrue("All published entries should have been removed from the queue.", queue.isEmpty());
+    }
+
+    /** Tests that a node gives up, without publishing anything, if it keeps losing the claim */
+    @Test
+    public void testClaimContentionGivesUp() {
+        EjbcaConfigurationHolder.updateConfiguration("publisher.queue.claimtime", "60000");
+        addEntries(1);
+        expect(publisherQueueSession.claimPendingEntriesForPublisher(PUBLISHER_ID, 100, 60000L))
+                .andThrow(new EJBException(new OptimisticLockException("Claimed by another node"))).times(3);
+        replay(entityManager, noConflictCertificateStoreSession, publisherQueueSession);
+        try {
+            node1.doChunk(admin, publisher);
+            fail("Should fail after three lost claims.");
+        } catch (EJBException e) {
+            assertTrue(e.getCause() instanceof OptimisticLockException);
+        }
+        verify(noConflictCertificateStoreSession, publisherQueueSession);
+        assertEquals("Entry should still be in the queue.", 1, queue.size());
+    }
+
+    /** Tests that when two nodes fail to publish the same entry at the same time, both attempts are counted and the entry stays in the queue */
+    @Test
+    public void testConcurrentFailuresOfSameEntry() throws Exception {
+        final PublisherQueueData entry = addEntries(1).get(0);
+        expectQueries();
+        expectCertificateDatas();
+        expectPublishing(false, false);
+        replay(noConflictCertificateStoreSession, publisherQueueSession);
+        final Future<PublishingResult> result1 = doChunk(node1);
+        final Future<PublishingResult> result2 = doChunk(node2);
+        assertEquals(1, result1.get(10, TimeUnit.SECONDS).getFailures());
+        assertEquals(1, result2.get(10, TimeUnit.SECONDS).getFailures());
+        verify(noConflictCertificateStoreSession, publisherQueueSession);
+        assertEquals("Entry should still be in the queue.", 1, queue.size());
+        assertEquals("Both failed attempts should have been counted.", 2, entry.getTryCounter());
+        assertEquals(PublisherConst.STATUS_PENDING, entry.getPublishStatus());
+        assertNotEquals("Time of the last attempt should have been set.", 0L, entry.getLastUpdate());
+    }
+
+    /** Tests that an entry published by one node is removed, even if another node failed to publish it at the same time */
+    @Test
+    public void testConcurrentFailureAndSuccessOfSameEntry() throws Exception {
+        addEntries(1);
+        expectQueries();
+        expectCertificateDatas();
+        expectPublishing(true, false);
+        replay(noConflictCertificateStoreSession, publisherQueueSession);
+        final Future<PublishingResult> result1 = doChunk(node1);
+        final Future<PublishingResult> result2 = doChunk(node2);
+        final PublishingResult publishingResult1 = result1.get(10, TimeUnit.SECONDS);
+        final PublishingResult publishingResult2 = result2.get(10, TimeUnit.SECONDS);
+        verify(noConflictCertificateStoreSession, publisherQueueSession);
+        assertEquals(1, publishingResult1.getSuccesses() + publishingResult2.getSuccesses());
+        assertEquals(1, publishingResult1.getFailures() + publishingResult2.getFailures());
+        assertTrue("Published entry should have been removed from the queue.", queue.isEmpty());
+    }
+
+    /** Tests that with several workers the certificates of a chunk are divided between the calling thread and asynchronous invocations */
+    @Test
+    public void testConcurrentWorkers() throws Exception {
+        EjbcaConfigurationHolder.updateConfiguration("publisher.queue.workers", "3");
+        addEntries(10);
+        expectQueries();
+        expectCertificateDatas();
+        final AtomicInteger published = new AtomicInteger();
+        expect(publisherQueueSession.publishCertificateNonTransactional(same(publisher), same(admin), anyObject(CertificateDataWrapper.class),
+                (String) anyObject(), (String) anyObject(), (ExtendedInformation) anyObject())).andAnswer(new IAnswer<Boolean>() {
+                    @Override
+                    public Boolean answer() {
+                        published.incrementAndGet();
+                        return Boolean.TRUE;
+                    }
+                }).times(10);
+        final List<Integer> asynchronousEntries = new ArrayList<>();
+        expect(publisherQueueSession.publishQueueEntriesAsynchronously(same(admin), same(publisher), anyObject(), anyObject()))
+                .andAnswer(new IAnswer<Future<Map<org.ejbca.core.model.ca.publisher.PublisherQueueData, Boolean>>>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Future<Map<org.ejbca.core.model.ca.publisher.PublisherQueueData, Boolean>> answer() {
+                        final Object[] arguments = EasyMock.getCurrentArguments();
+                        final List<org.ejbca.core.model.ca.publisher.PublisherQueueData> entries = (List<org.ejbca.core.model.ca.publisher.PublisherQueueData>) arguments[2];
+                        asynchronousEntries.add(entries.size());
+                        // Invoked in the calling thread here, instead of on a container managed thread
+                        return node1.publishQueueEntriesAsynchronously(admin, publisher, entries, (Map<String, CertificateDataWrapper>) arguments[3]);
+                    }
+                }).times(2);
+        replay(noConflictCertificateStoreSession, publisherQueueSession);
+        final PublishingResult result = node1.doChunk(admin, publisher);
+        verify(noConflictCertificateStoreSession, publisherQueueSession);
+        assertEquals(10, result.getSuccesses());
+        assertEquals("Each entry should have been published once.", 10, published.get());
+        assertEquals("Certificates should be divided evenly between the workers.", Arrays.asList(3, 3), asynchronousEntries);
+        assertTrue("All published entries should have been removed from the queue.", queue.isEmpty());
+    }
+
+    private Future<PublishingResult> doChunk(final PublisherQueueSessionBean node) {
+        return executorService.submit(new Callable<PublishingResult>() {
+            @Override
+            public PublishingResult call() {
+                try {
+                    return node.doChunk(admin, publisher);
+                } finally {
+                    chunkDone.countDown();
+                }
+            }
+        });
+    }
+
+    private List<PublisherQueueData> addEntries(final int count) {
+        final List<PublisherQueueData> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final PublisherQueueData entry = new PublisherQueueData(PUBLISHER_ID, PublisherConst.PUBLISH_TYPE_CERT, "fingerprint" + i, null,
+                    PublisherConst.STATUS_PENDING);
+            entry.setTimeCreated(i);
+            queue.put(entry.getPk(), entry);
+            ret.add(entry);
+        }
+        return ret;
+    }
+
+    /** @return the primary keys and last update times of unclaimed entries, like the query of a claiming transaction */
+    private synchronized Map<String, Long> readUnclaimed(final int limit, final long claimTime) {
+        final Map<String, Long> ret = new LinkedHashMap<>();
+        final long now = System.currentTimeMillis();
+        for (final PublisherQueueData entry : queue.values()) {
+            if (ret.size() < limit && entry.getLastUpdate() < now - claimTime) {
+                ret.put(entry.getPk(), entry.getLastUpdate());
+            }
+        }
+        return ret;
+    }
+
+    /** Commits a claim of the read entries, failing like optimistic locking if another transaction has modified any of them since they were read */
+    private synchronized Collection<org.ejbca.core.model.ca.publisher.PublisherQueueData> claim(final Map<String, Long> read) {
+        for (final Map.Entry<String, Long> entry : read.entrySet()) {
+            final PublisherQueueData current = queue.get(entry.getKey());
+            if (current == null || current.getLastUpdate() != entry.getValue().longValue()) {
+                throw new EJBException(new OptimisticLockException("Entry " + entry.getKey() + " was claimed by another node"));
+            }
+        }
+        final long now = System.currentTimeMillis();
+        final List<org.ejbca.core.model.ca.publisher.PublisherQueueData> ret = new ArrayList<>();
+        for (final String pk : read.keySet()) {
+            final PublisherQueueData entry = queue.get(pk);
+            entry.setLastUpdate(now);
+            ret.add(new org.ejbca.core.model.ca.publisher.PublisherQueueData(pk, new Date(entry.getTimeCreated()), new Date(now),
+                    entry.getPublishStatus(), entry.getTryCounter(), entry.getPublishType(), entry.getFingerprint(), PUBLISHER_ID, null));
+        }
+        return ret;
+    }
+
+    private void expectCertificateDatas() {
+        expect(noConflictCertificateStoreSession.getCertificateDatas(anyObject())).andAnswer(new IAnswer<Map<String, CertificateDataWrapper>>() {
+            @Override
+            public Map<String, CertificateDataWrapper> answer() {
+                final Map<String, CertificateDataWrapper> ret = new HashMap<>();
+                for (final Object fingerprint : (Collection<?>) EasyMock.getCurrentArguments()[0]) {
+                    ret.put((String) fingerprint, new CertificateDataWrapper(null, null, null));
+                }
+                return ret;
+            }
+        }).anyTimes();
+    }
+
+    /**
+     * Expects both nodes to publish the entry at the same time, with the given outcomes in the order the attempts were made. The second
+     * attempt returns when the first node has updated the queue, like when the database serializes the updates of the same row.
+     */
+    private void expectPublishing(final boolean firstOutcome, final boolean secondOutcome) throws PublisherException {
+        final CyclicBarrier bothPublishing = new CyclicBarrier(2);
+        final AtomicInteger attempts = new AtomicInteger();
+        expect(publisherQueueSession.publishCertificateNonTransactional(same(publisher), same(admin), anyObject(CertificateDataWrapper.class),
+                (String) anyObject(), (String) anyObject(), (ExtendedInformation) anyObject())).andAnswer(new IAnswer<Boolean>() {
+                    @Override
+                    public Boolean answer() throws Exception {
+                        final boolean first = attempts.incrementAndGet() == 1;
+                        bothPublishing.await(10, TimeUnit.SECONDS);
+                        if (!first) {
+                            assertTrue(chunkDone.await(10, TimeUnit.SECONDS));
+                        }
+                        return Boolean.valueOf(first ? firstOutcome : secondOutcome);
+                    }
+                }).times(2);
+    }
+
+    private void expectQueries() {
+        expect(entityManager.createQuery(anyString())).andAnswer(new IAnswer<Query>() {
+            @Override
+            public Query answer() {
+                return createQuery((String) EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        expect(entityManager.createQuery(anyString(), eq(PublisherQueueData.class))).andAnswer(new IAnswer<TypedQuery<PublisherQueueData>>() {
+            @Override
+            public TypedQuery<PublisherQueueData> answer() {
+                return createQuery((String) EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        replay(entityManager);
+    }
+
+    /** @return a query on the shared queue, supporting the queries used when entries are read without claiming them, updated and removed */
+    @SuppressWarnings("unchecked")
+    private TypedQuery<PublisherQueueData> createQuery(final String jpql) {
+        final Map<String, Object> parameters = new HashMap<>();
+        final TypedQuery<PublisherQueueData> query = EasyMock.createNiceMock(TypedQuery.class);
+        expect(query.setParameter(anyString(), anyObject())).andAnswer(new IAnswer<TypedQuery<PublisherQueueData>>() {
+            @Override
+            public TypedQuery<PublisherQueueData> answer() {
+                parameters.put((String) EasyMock.getCurrentArguments()[0], EasyMock.getCurrentArguments()[1]);
+                return query;
+            }
+        }).anyTimes();
+        expect(query.setMaxResults(anyInt())).andReturn(query).anyTimes();
+        expect(query.getResultList()).andAnswer(new IAnswer<List<PublisherQueueData>>() {
+            @Override
+            public List<PublisherQueueData> answer() {
+                synchronized (PublisherQueueSessionBeanUnitTest.this) {
+                    final List<PublisherQueueData> ret = new ArrayList<>();
+                    for (final PublisherQueueData entry : queue.values()) {
+                        if (jpql.contains("a.pk IN") ? ((Collection<?>) parameters.get("pks")).contains(entry.getPk())
+                                : entry.getPublishStatus() == ((Integer) parameters.get("publishStatus")).intValue()) {
+                            ret.add(entry);
+                        }
+                    }
+                    return ret;
+                }
+            }
+        }).anyTimes();
+        expect(query.executeUpdate()).andAnswer(new IAnswer<Integer>() {
+            @Override
+            public Integer answer() {
+                assertTrue("Unexpected update: " + jpql, jpql.startsWith("DELETE"));
+                synchronized (PublisherQueueSessionBeanUnitTest.this) {
+                    int removed = 0;
+                    for (final Iterator<String> iterator = queue.keySet().iterator(); iterator.hasNext();) {
+                        if (((Collection<?>) parameters.get("pks")).contains(iterator.next())) {
+                            iterator.remove();
+                            removed++;
+                        }
+                    }
+                    return removed;
+                }
+            }
+        }).anyTimes();
+        replay(query);
+        return query;
+    }
+}
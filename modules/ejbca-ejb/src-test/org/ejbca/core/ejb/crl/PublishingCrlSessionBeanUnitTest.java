@@ -0,0 +1,230 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CA;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.ca.catoken.CAToken;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.keys.token.CryptoTokenOfflineException;
+import org.easymock.EasyMock;
+import org.easymock.EasyMockRunner;
+import org.easymock.IAnswer;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit tests for the CRL partition fan-out and result aggregation of {@link PublishingCrlSessionBean}.
+ *
+ * @version $Id$
+ */
+@RunWith(EasyMockRunner.class)
+public class PublishingCrlSessionBeanUnitTest {
+
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("PublishingCrlSessionBeanUnitTest"));
+
+    @TestSubject
+    private PublishingCrlSessionBean publishingCrlSessionBean = new PublishingCrlSessionBean();
+
+    @Mock
+    private CaSessionLocal caSession;
+    @Mock
+    private PublishingCrlSessionLocal publishingCrlSession;
+    @Mock
+    private SecurityEventsLoggerSessionLocal logSession;
+
+    @After
+    public void tearDown() {
+        EjbcaConfigurationHolder.restoreConfiguration();
+    }
+
+    /** Tests that all partitions of all CAs are processed, no more than the configured number at a time, and that each CA is read once */
+    @Test
+    public void testPartitionFanOut() throws Exception {
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.workers", "3");
+        final CA ca1 = mockCa(10, "CA1", 4);
+        final CA ca2 = mockCa(20, "CA2", 0);
+        expect(caSession.getCA(admin, 10)).andReturn(ca1).once();
+        expect(caSession.getCA(admin, 20)).andReturn(ca2).once();
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+        final List<Integer> submitted = new ArrayList<>();
+        expect(publishingCrlSession.createCrlPartitionAsynchronously(same(admin), anyInt(), anyInt(), eq(1000L), eq(false)))
+                .andAnswer(new IAnswer<Future<CrlCreationResult.PartitionResult>>() {
+                    @Override
+                    public Future<CrlCreationResult.PartitionResult> answer() {
+                        final int caId = (Integer) EasyMock.getCurrentArguments()[1];
+                        final int crlPartitionIndex = (Integer) EasyMock.getCurrentArguments()[2];
+                        submitted.add(caId * 100 + crlPartitionIndex);
+                        maxOutstanding.set(Math.max(maxOutstanding.get(), outstanding.incrementAndGet()));
+                        return new PendingResult(outstanding, new CrlCreationResult.PartitionResult(caId, "CA" + caId / 10, crlPartitionIndex,
+                                crlPartitionIndex != 3, 1, null));
+                    }
+                }).times(6);
+        replay(caSession, publishingCrlSession);
+        final CrlCreationResult result = publishingCrlSessionBean.createCRLsWithResult(admin, Arrays.asList(10, 20), 1000L);
+        verify(caSession, publishingCrlSession);
+        assertEquals("Wrong partitions processed.", Arrays.asList(1000, 1001, 1002, 1003, 1004, 2000), submitted);
+        assertEquals("No more partitions than workers should be processed at a time.", 3, maxOutstanding.get());
+        assertEquals("All results should have been collected.", 0, outstanding.get());
+        assertEquals(3, result.getWorkers());
+        assertEquals(6, result.getPartitionResults().size());
+        assertEquals(5, result.getCreatedPartitionCount());
+        assertEquals("Only CA2 had CRLs created for all partitions.", 1, result.getCreatedCaCount());
+    }
+
+    /** Tests that failed partitions and missing CAs are reported in the result without stopping generation for the other partitions */
+    @Test
+    public void testErrorAggregation() throws Exception {
+        final CA ca1 = mockCa(10, "CA1", 2);
+        expect(caSession.getCA(admin, 10)).andReturn(ca1).once();
+        expect(caSession.getCA(admin, 20)).andReturn(null).once();
+        expect(publishingCrlSession.createCrlPartitionNewTransactionConditioned(admin, ca1, CertificateConstants.NO_CRL_PARTITION, 0)).andReturn(false);
+        expect(publishingCrlSession.createCrlPartitionNewTransactionConditioned(admin, ca1, 1, 0)).andThrow(new CryptoTokenOfflineException("offline"));
+        expect(publishingCrlSession.createCrlPartitionNewTransactionConditioned(admin, ca1, 2, 0)).andReturn(true);
+        replay(caSession, publishingCrlSession);
+        final CrlCreationResult result = publishingCrlSessionBean.createCRLsWithResult(admin, Arrays.asList(10, 20), 0);
+        verify(caSession, publishingCrlSession);
+        assertEquals("Partitions should be processed sequentially with the default configuration.", 1, result.getWorkers());
+        final List<CrlCreationResult.PartitionResult> partitionResults = result.getPartitionResults();
+        assertEquals(4, partitionResults.size());
+        assertNull(partitionResults.get(0).getErrorMessage());
+        assertEquals("offline", partitionResults.get(1).getErrorMessage());
+        assertTrue(partitionResults.get(2).isCreated());
+        assertEquals(20, partitionResults.get(3).getCaId());
+        assertNotNull("Missing CA should be reported.", partitionResults.get(3).getErrorMessage());
+        assertEquals(1, result.getCreatedPartitionCount());
+        assertEquals(0, result.getCreatedCaCount());
+    }
+
+    /** Tests that an authorization failure is thrown, but only after the partitions of the other CAs have been processed */
+    @Test
+    public void testAuthorizationDeniedAfterAllPartitions() throws Exception {
+        EjbcaConfigurationHolder.updateConfiguration("crlgeneration.workers", "2");
+        final CA ca2 = mockCa(20, "CA2", 2);
+        expect(caSession.getCA(admin, 10)).andThrow(new AuthorizationDeniedException("denied"));
+        expect(caSession.getCA(admin, 20)).andReturn(ca2).once();
+        final AtomicInteger outstanding = new AtomicInteger();
+        expect(publishingCrlSession.createCrlPartitionAsynchronously(same(admin), eq(20), anyInt(), anyLong(), anyBoolean()))
+                .andAnswer(new IAnswer<Future<CrlCreationResult.PartitionResult>>() {
+                    @Override
+                    public Future<CrlCreationResult.PartitionResult> answer() {
+                        outstanding.incrementAndGet();
+                        return new PendingResult(outstanding, new CrlCreationResult.PartitionResult(20, "CA2", (Integer) EasyMock.getCurrentArguments()[2],
+                                true, 1, null));
+                    }
+                }).times(3);
+        replay(caSession, publishingCrlSession);
+        try {
+            publishingCrlSessionBean.createDeltaCRLsWithResult(admin, Arrays.asList(10, 20), 0);
+            fail("Authorization failure should be thrown.");
+        } catch (AuthorizationDeniedException e) {
+            assertEquals("denied", e.getMessage());
+        }
+        verify(caSession, publishingCrlSession);
+        assertEquals("All results should have been collected.", 0, outstanding.get());
+    }
+
+    /** Tests that an asynchronously processed partition uses its own copy of the CA, read from the database */
+    @Test
+    public void testAsynchronousPartitionReadsOwnCa() throws Exception {
+        final CA ownCa = mockCa(10, "CA1", 2);
+        expect(caSession.getCAForEdit(admin, 10)).andReturn(ownCa).once();
+        expect(caSession.getCAForEdit(admin, 20)).andReturn(null).once();
+        expect(publishingCrlSession.createCrlPartitionNewTransactionConditioned(same(admin), same(ownCa), eq(1), eq(0L))).andReturn(true);
+        replay(caSession, publishingCrlSession);
+        assertTrue(publishingCrlSessionBean.createCrlPartitionAsynchronously(admin, 10, 1, 0, false).get().isCreated());
+        final CrlCreationResult.PartitionResult missing = publishingCrlSessionBean.createCrlPartitionAsynchronously(admin, 20, 1, 0, false).get();
+        assertNotNull("Missing CA should be reported.", missing.getErrorMessage());
+        verify(caSession, publishingCrlSession);
+    }
+
+    private CA mockCa(final int caId, final String name, final int crlPartitions) {
+        final X509CAInfo cainfo = new X509CAInfo("CN=" + name, name, CAConstants.CA_ACTIVE, CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA, "3650d",
+                CAInfo.SELFSIGNED, null, new CAToken(0, new Properties()));
+        cainfo.setCAId(caId);
+        cainfo.setUsePartitionedCrl(crlPartitions > 0);
+        cainfo.setCrlPartitions(crlPartitions);
+        final CA ca = EasyMock.createNiceMock(CA.class);
+        expect(ca.getCAId()).andReturn(caId).anyTimes();
+        expect(ca.getName()).andReturn(name).anyTimes();
+        expect(ca.getCAInfo()).andReturn(cainfo).anyTimes();
+        replay(ca);
+        return ca;
+    }
+
+    /** Result of an asynchronous invocation, that is counted as outstanding until it has been retrieved */
+    private static class PendingResult implements Future<CrlCreationResult.PartitionResult> {
+        private final AtomicInteger outstanding;
+        private final CrlCreationResult.PartitionResult result;
+
+        private PendingResult(final AtomicInteger outstanding, final CrlCreationResult.PartitionResult result) {
+            this.outstanding = outstanding;
+            this.result = result;
+        }
+
+        @Override
+        public CrlCreationResult.PartitionResult get() {
+            outstanding.decrementAndGet();
+            return result;
+        }
+
+        @Override
+        public CrlCreationResult.PartitionResult get(final long timeout, final TimeUnit unit) throws ExecutionException {
+            return get();
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) { return false; }
+        @Override
+        public boolean isCancelled() { return false; }
+        @Override
+        public boolean isDone() { return true; }
+    }
+}
@@ -0,0 +1,88 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.certificates.certificate.CertificateData;
+import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.easymock.Capture;
+import org.junit.Test;
+
+/**
+ * Unit test of the searches over several back ends in RaMasterApiProxyBean.
+ *
+ * @version $Id$
+ */
+public class RaMasterApiProxyBeanUnitTest {
+
+    private final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken("RaMasterApiProxyBeanUnitTest");
+
+    private static RaCertificateSearchResponse getResponse(final String nextCursor, final String... fingerprints) {
+        final RaCertificateSearchResponse response = new RaCertificateSearchResponse();
+        for (final String fingerprint : fingerprints) {
+            final CertificateData certificateData = new CertificateData();
+            certificateData.setFingerprint(fingerprint);
+            response.getCdws().add(new CertificateDataWrapper(null, certificateData, null));
+        }
+        response.setMightHaveMoreResults(nextCursor != null);
+        response.setNextCursor(nextCursor);
+        return response;
+    }
+
+    @Test
+    public void testKeysetPaginatedCertificateSearch() {
+        final RaMasterApi backend0 = createMock(RaMasterApi.class);
+        final RaMasterApi backend1 = createMock(RaMasterApi.class);
+        final Capture<RaCertificateSearchRequest> request0 = Capture.newInstance();
+        final Capture<RaCertificateSearchRequest> request1 = Capture.newInstance();
+        for (final RaMasterApi backend : new RaMasterApi[] { backend0, backend1 }) {
+            expect(backend.isBackendAvailable()).andReturn(true).anyTimes();
+            expect(backend.getApiVersion()).andReturn(8).anyTimes();
+        }
+        expect(backend0.searchForCertificates(anyObject(AuthenticationToken.class), capture(request0))).andReturn(getResponse("0b", "0a", "0b"));
+        expect(backend1.searchForCertificates(anyObject(AuthenticationToken.class), capture(request1))).andReturn(getResponse(null, "0a", "1a"));
+        expect(backend0.searchForCertificates(anyObject(AuthenticationToken.class), capture(request0))).andReturn(getResponse(null, "0c"));
+        replay(backend0, backend1);
+        // The back ends are given local last, and searched local first
+        final RaMasterApiProxyBean proxy = new RaMasterApiProxyBean(null, null, null, backend1, backend0);
+        final RaCertificateSearchRequest request = new RaCertificateSearchRequest();
+        request.setSearchCursor(RaSearchCursor.START);
+        final RaCertificateSearchResponse firstPage = proxy.searchForCertificates(admin, request);
+        assertEquals(RaSearchCursor.START, request0.getValue().getSearchCursor());
+        assertEquals(RaSearchCursor.START, request1.getValue().getSearchCursor());
+        assertEquals("Results of the back ends should be merged.", 3, firstPage.getCdws().size());
+        assertTrue(firstPage.isMightHaveMoreResults());
+        final Map<Integer, String> cursors = RaSearchCursor.decode(firstPage.getNextCursor());
+        assertEquals("Only back ends with more results should be in the cursor.", Collections.singletonMap(0, "0b"), cursors);
+        request.setSearchCursor(firstPage.getNextCursor());
+        final RaCertificateSearchResponse secondPage = proxy.searchForCertificates(admin, request);
+        assertEquals("0b", request0.getValue().getSearchCursor());
+        assertEquals(1, secondPage.getCdws().size());
+        assertNull("There should be no more pages.", secondPage.getNextCursor());
+        verify(backend0, backend1);
+    }
+}
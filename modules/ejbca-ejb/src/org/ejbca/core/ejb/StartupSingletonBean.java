@@ -72,6 +72,7 @@ import org.ejbca.core.ejb.audit.enums.EjbcaModuleTypes;
 import org.ejbca.core.ejb.audit.enums.EjbcaServiceTypes;
 import org.ejbca.core.ejb.authorization.AuthorizationSystemSessionLocal;
 import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
+import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspKeyRenewalSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
@@ -82,6 +83,7 @@ import org.ejbca.core.ejb.upgrade.UpgradeSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.approval.ApprovalException;
 import org.ejbca.core.model.approval.WaitingForApprovalException;
+import org.ejbca.core.model.ca.publisher.LdapConnectionPool;
 import org.ejbca.util.DatabaseIndexUtil;
 import org.ejbca.util.JDBCUtil;
 
@@ -122,6 +124,8 @@ public class StartupSingletonBean {
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
     @EJB
+    private PublisherSessionLocal publisherSession;
+    @EJB
     private OcspKeyRenewalSessionLocal ocspKeyRenewalSession;
     @EJB
     private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
@@ -134,6 +138,8 @@ public class StartupSingletonBean {
     private void shutdown() {
         String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("startservice.shutdown");
         log.info(iMsg);
+        // Close the connections kept open by the LDAP publishers
+        LdapConnectionPool.closeAll();
         // Make a log row that EJBCA is stopping
         //final Map<String, Object> details = new LinkedHashMap<String, Object>();
         //details.put("msg", iMsg);
@@ -339,6 +345,8 @@ public class StartupSingletonBean {
         ocspResponseGeneratorSession.initTimers();
         // Start CA certificate cache reload
         certificateStoreSession.initTimers();
+        // Start closing of idle LDAP publisher connections
+        publisherSession.initTimers();
         // Start legacy background service for renewal of OCSP signers via EJBCA WS calls to CA
         ocspKeyRenewalSession.startTimer();
         // Verify that the EJB CLI user (if present) cannot be used to generate certificates
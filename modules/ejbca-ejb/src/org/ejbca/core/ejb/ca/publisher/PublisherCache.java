@@ -28,7 +28,7 @@ import org.ejbca.core.model.ca.publisher.BasePublisher;
 public enum PublisherCache implements CommonCache<BasePublisher> {
     INSTANCE;
 
-    final private CommonCache<BasePublisher> cache = new CommonCacheBase<BasePublisher>() {
+    final private CommonCacheBase<BasePublisher> cache = new CommonCacheBase<BasePublisher>() {
         @Override
         protected long getCacheTime() {
             return EjbcaConfiguration.getCachePublisherTime();
@@ -63,6 +63,16 @@ public enum PublisherCache implements CommonCache<BasePublisher> {
         cache.updateWith(id, digest, name, object);
     }
 
+    /** @see CommonCacheBase#shouldCheckForUpdates(int, org.cesecore.internal.CommonCacheBase.VersionSource) */
+    public boolean shouldCheckForUpdates(final int id, final CommonCacheBase.VersionSource versionSource) {
+        return cache.shouldCheckForUpdates(id, versionSource);
+    }
+
+    /** Update the cache with a publisher read from the database, where version is the rowVersion of the database row. */
+    public void updateWith(int id, int digest, String name, BasePublisher object, int version) {
+        cache.updateWith(id, digest, name, object, version);
+    }
+
     @Override
     public void removeEntry(int id) {
         cache.removeEntry(id);
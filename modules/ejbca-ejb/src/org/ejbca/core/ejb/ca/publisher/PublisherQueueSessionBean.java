@@ -16,20 +16,23 @@ package org.ejbca.core.ejb.ca.publisher;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.CreateException;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
@@ -68,9 +71,6 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
 
     private static final Logger log = Logger.getLogger(PublisherQueueSessionBean.class);
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
-    private static final ReentrantLock executorServiceLock = new ReentrantLock(false);
-    private static final AtomicInteger beanInstanceCount = new AtomicInteger(0);
-    private static volatile ExecutorService executorService = null;
 
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
@@ -87,39 +87,6 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
     @PostConstruct
     public void postConstruct() {
         publisherQueueSession = sessionContext.getBusinessObject(PublisherQueueSessionLocal.class);
-        // Keep track of number of instances of this bean, so we can free the executorService thread pool when the last is destroyed
-        beanInstanceCount.incrementAndGet();
-    }
-
-    @PreDestroy
-    public void preDestroy() {
-        // Shut down the thread pool when the last instance of this SSB is destroyed
-        if (beanInstanceCount.decrementAndGet() == 0) {
-            executorServiceLock.lock();
-            try {
-                if (executorService != null) {
-                    executorService.shutdown();
-                    executorService = null;
-                }
-            } finally {
-                executorServiceLock.unlock();
-            }
-        }
-    }
-
-    /** @return a reference to the "CachedThreadPool" executor service (creating one if needed). */
-    private ExecutorService getExecutorService() {
-        if (executorService == null) {
-            executorServiceLock.lock();
-            try {
-                if (executorService == null) {
-                    executorService = Executors.newCachedThreadPool();
-                }
-            } finally {
-                executorServiceLock.unlock();
-            }
-        }
-        return executorService;
     }
 
     @Override
@@ -272,6 +239,29 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         log.trace("<updateData()");
     }
 
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public Collection<PublisherQueueData> claimPendingEntriesForPublisher(int publisherId, int limit, long claimTime) {
+        if (log.isTraceEnabled()) {
+            log.trace(">claimPendingEntriesForPublisher(publisherId: " + publisherId + ", limit: " + limit + ")");
+        }
+        final long now = System.currentTimeMillis();
+        final Collection<PublisherQueueData> ret = new ArrayList<PublisherQueueData>();
+        final List<org.ejbca.core.ejb.ca.publisher.PublisherQueueData> publisherQueueDataList = org.ejbca.core.ejb.ca.publisher.PublisherQueueData
+                .findDataByPublisherIdAndStatusUpdatedBefore(entityManager, publisherId, PublisherConst.STATUS_PENDING, now - claimTime, limit);
+        for (org.ejbca.core.ejb.ca.publisher.PublisherQueueData publisherQueueData : publisherQueueDataList) {
+            // Optimistic locking (rowVersion) makes the transaction fail if another node claims the same entry at the same time
+            publisherQueueData.setLastUpdate(now);
+            ret.add(new PublisherQueueData(publisherQueueData.getPk(), new Date(publisherQueueData.getTimeCreated()), new Date(now),
+                    PublisherConst.STATUS_PENDING, publisherQueueData.getTryCounter(), publisherQueueData.getPublishType(),
+                    publisherQueueData.getFingerprint(), publisherId, publisherQueueData.getPublisherQueueVolatileData()));
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<claimPendingEntriesForPublisher() claimed " + ret.size() + " entries");
+        }
+        return ret;
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public PublishingResult plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, BasePublisher publisher) {
@@ -280,143 +270,310 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         // this is because when publishing starts to work we want to publish everything in one go, if possible.
         // However we don't want to publish more than 20000 certificates each time, because we want to commit to the database some time as well.
         int totalcount = 0;
+        PublishingResult chunkResult;
         do {
-            result.append(publisherQueueSession.doChunk(admin, publisher));
-            totalcount += result.getSuccesses();
-        } while ((result.getSuccesses() > 0) && (totalcount < 20000));
+            chunkResult = publisherQueueSession.doChunk(admin, publisher);
+            result.append(chunkResult);
+            totalcount += chunkResult.getSuccesses();
+        } while ((chunkResult.getSuccesses() > 0) && (totalcount < 20000));
         return result;
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public List<PublishingResult> plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(final AuthenticationToken admin, final List<BasePublisher> publishers) {
+        final List<PublishingResult> ret = new ArrayList<>();
+        if (publishers.size() == 1) {
+            ret.add(plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(admin, publishers.get(0)));
+            return ret;
+        }
+        // Process the queue of each publisher on its own container managed thread, so a slow or unavailable publisher does not hold up the others
+        final List<Future<PublishingResult>> futures = new ArrayList<>();
+        for (final BasePublisher publisher : publishers) {
+            futures.add(publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreatedAsynchronously(admin, publisher));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ret.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EJBException(e);
+            } catch (ExecutionException e) {
+                log.info("Processing of the queue for publisher " + publishers.get(i).getPublisherId() + " failed: " + e.getCause().getMessage());
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing of the publisher queue failed.", e.getCause());
+                }
+                ret.add(new PublishingResult());
+            }
+        }
+        return ret;
+    }
+
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public Future<PublishingResult> plainFifoTryAlwaysLimit100EntriesOrderByTimeCreatedAsynchronously(final AuthenticationToken admin,
+            final BasePublisher publisher) {
+        return new AsyncResult<PublishingResult>(plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(admin, publisher));
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public PublishingResult doChunk(AuthenticationToken admin, BasePublisher publisher) {
-        final Collection<PublisherQueueData> publisherQueueDatas = getPendingEntriesForPublisherWithLimit(publisher.getPublisherId(), 100, 60, "order by timeCreated");
+        final long claimTime = EjbcaConfiguration.getPublisherQueueClaimTime();
+        final Collection<PublisherQueueData> publisherQueueDatas;
+        if (claimTime > 0) {
+            publisherQueueDatas = claimPendingEntries(publisher.getPublisherId(), 100, claimTime);
+        } else {
+            publisherQueueDatas = getPendingEntriesForPublisherWithLimit(publisher.getPublisherId(), 100, 60, "order by timeCreated");
+        }
         return doPublish(admin, publisher, publisherQueueDatas);
     }
 
+    /**
+     * Claims entries in a separate transaction. If another node claimed some of the same entries at the same time, the claim is retried
+     * and will then skip the entries that the other node got.
+     */
+    private Collection<PublisherQueueData> claimPendingEntries(final int publisherId, final int limit, final long claimTime) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return publisherQueueSession.claimPendingEntriesForPublisher(publisherId, limit, claimTime);
+            } catch (EJBException e) {
+                if (attempt >= 3) {
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to claim entries in the queue for publisher " + publisherId + ", another node probably claimed them: " + e.getMessage());
+                }
+            }
+        }
+    }
+
     /** 
-     * @param admin
-     * @param publisherId
-     * @param publisher
-     *  
+     * Publishes the entries to the publisher, using a number of concurrent workers if configured, and then updates or removes the entries in
+     * the queue in the current transaction.
+     * 
      * @return how many publishing operations that succeeded and failed */
-    private PublishingResult doPublish(AuthenticationToken admin, BasePublisher publisher, Collection<PublisherQueueData> publisherQueueData) {
-        int publisherId = publisher.getPublisherId();
+    private PublishingResult doPublish(final AuthenticationToken admin, final BasePublisher publisher, final Collection<PublisherQueueData> publisherQueueData) {
+        final int publisherId = publisher.getPublisherId();
         if (log.isDebugEnabled()) {
             log.debug("Found " + publisherQueueData.size() + " certificates to republish for publisher " + publisherId);
         }
-        PublishingResult result = new PublishingResult();
-        for (PublisherQueueData pqd : publisherQueueData) {
-
-            String fingerprint = pqd.getFingerprint();
-            int publishType = pqd.getPublishType();
-            if (log.isDebugEnabled()) {
-                log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
-                        + ", type: " + publishType);
+        final PublishingResult result = new PublishingResult();
+        if (publisherQueueData.isEmpty()) {
+            return result;
+        }
+        // Read the certificates of the whole chunk at once, instead of one at the time. CRLs are rare in the queue, so they are read one by one.
+        final Set<String> certificateFingerprints = new HashSet<>();
+        final Map<String, CRLData> crlDatas = new HashMap<>();
+        for (final PublisherQueueData pqd : publisherQueueData) {
+            if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT) {
+                certificateFingerprints.add(pqd.getFingerprint());
+            } else if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CRL && !crlDatas.containsKey(pqd.getFingerprint())) {
+                crlDatas.put(pqd.getFingerprint(), CRLData.findByFingerprint(entityManager, pqd.getFingerprint()));
             }
-            PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
-            String password = null;
-            ExtendedInformation ei = null;
-            String userDataDN = null;
-            if (voldata != null) {
-                password = voldata.getPassword();
-                ei = voldata.getExtendedInformation();
-                userDataDN = voldata.getUserDN();
+        }
+        final Map<String, CertificateDataWrapper> certificateDatas = noConflictCertificateStoreSession.getCertificateDatas(certificateFingerprints);
+        final Map<PublisherQueueData, Boolean> outcomes = new LinkedHashMap<>();
+        final int workers = Math.min(EjbcaConfiguration.getPublisherQueueWorkers(publisherId), publisherQueueData.size());
+        if (workers == 1) {
+            outcomes.putAll(publishEntries(admin, publisher, publisherQueueData, certificateDatas, crlDatas));
+        } else {
+            // The certificates are divided between the workers, of which all but the first run on container managed threads. CRLs are
+            // published by the first worker, since they are rare in the queue.
+            final List<List<PublisherQueueData>> workerEntries = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                workerEntries.add(new ArrayList<PublisherQueueData>());
             }
-            boolean published = false;
-
-            try {
-                if (publishType == PublisherConst.PUBLISH_TYPE_CERT) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing Certificate");
-                    }
-                    if (publisher != null) {
-                        // Read the actual certificate and try to publish it again
-                        // TODO: we might need change fetch-type for all but the actual cert or a native query w SqlResultSetMapping..
-                        final CertificateDataWrapper certificateDataWrapper = noConflictCertificateStoreSession.getCertificateData(fingerprint);
-                        if (certificateDataWrapper==null) {
-                            throw new FinderException();
-                        }
-                        try {
-                            published = publisherQueueSession.publishCertificateNonTransactional(publisher, admin, certificateDataWrapper, password, userDataDN, ei);
-                        } catch (EJBException e) {
-                            final Throwable t = e.getCause();
-                            if (t instanceof PublisherException) {
-                                throw (PublisherException) t;
-                            } else {
-                                throw e;
-                            }
-                        }
-                    } else {
-                        String msg = intres.getLocalizedMessage("publisher.nopublisher", publisherId);
-                        log.info(msg);
-                    }
-                } else if (publishType == PublisherConst.PUBLISH_TYPE_CRL) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing CRL");
-                    }
-
-                    CRLData crlData = CRLData.findByFingerprint(entityManager, fingerprint);
-
-                    if (crlData == null) {
-                        throw new FinderException();
-                    }
-                    try {
-                        published = publisherQueueSession.publishCRLNonTransactional(publisher, admin, crlData.getCRLBytes(),
-                                crlData.getCaFingerprint(), crlData.getCrlNumber(), userDataDN);
-                    } catch (EJBException e) {
-                        final Throwable t = e.getCause();
-                        if (t instanceof PublisherException) {
-                            throw (PublisherException) t;
-                        } else {
-                            throw e;
-                        }
-                    }
+            int next = 0;
+            for (final PublisherQueueData pqd : publisherQueueData) {
+                if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT) {
+                    workerEntries.get(next++ % workers).add(pqd);
                 } else {
-                    String msg = intres.getLocalizedMessage("publisher.unknowntype", publishType);
-                    log.error(msg);
+                    workerEntries.get(0).add(pqd);
                 }
-            } catch (FinderException e) {
-                final String msg = intres.getLocalizedMessage("publisher.errornocert", fingerprint) + e.getMessage();
-                log.info(msg);
-                result.addFailure(fingerprint);
-            } catch (PublisherException e) {
-                // Publisher session have already logged this error nicely to
-                // getLogSession().log
-                log.debug(e.getMessage());
-                // We failed to publish, update failcount so we can break early if nothing succeeds but everything fails.
-                result.addFailure(fingerprint);
             }
-            if (published) {
-                if (publisher.getKeepPublishedInQueue()) {
-                    // Update with information that publishing was successful
-                    updateData(pqd.getPk(), PublisherConst.STATUS_SUCCESS, pqd.getTryCounter());
-                } else {
-                    // We are done with this one.. nuke it!
-                    removeQueueData(pqd.getPk());
+            final List<Future<Map<PublisherQueueData, Boolean>>> futures = new ArrayList<>();
+            for (int i = 1; i < workers; i++) {
+                futures.add(publisherQueueSession.publishQueueEntriesAsynchronously(admin, publisher, workerEntries.get(i), certificateDatas));
+            }
+            outcomes.putAll(publishEntries(admin, publisher, workerEntries.get(0), certificateDatas, crlDatas));
+            for (final Future<Map<PublisherQueueData, Boolean>> future : futures) {
+                try {
+                    outcomes.putAll(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException(e);
+                } catch (ExecutionException e) {
+                    // publishEntry handles publisher failures, so this is unexpected. Entries that were published are still updated below.
+                    log.error("Unexpected failure when publishing from queue to publisher " + publisherId + ": " + e.getCause().getMessage(), e.getCause());
                 }
-                result.addSuccess(fingerprint); // jipeee update success counter
+            }
+        }
+        for (final Map.Entry<PublisherQueueData, Boolean> outcome : outcomes.entrySet()) {
+            if (outcome.getValue().booleanValue()) {
+                result.addSuccess(outcome.getKey().getFingerprint()); // jipeee update success counter
             } else {
-                // Update with new tryCounter, but same status as before
-                int tryCount = pqd.getTryCounter() + 1;
-                updateData(pqd.getPk(), pqd.getPublishStatus(), tryCount);
-                result.addFailure(fingerprint);
+                result.addFailure(outcome.getKey().getFingerprint());
             }
-            // If we don't manage to publish anything, but fails on all the
-            // first ten ones we expect that this publisher is dead for now. We
-            // don't have to try with every record.
+        }
+        updatePublishedEntries(publisher, outcomes);
+        if (log.isDebugEnabled()) {
+            log.debug("Returning from publisher with " + result.getSuccesses() + " entries published successfully.");
+        }
+        return result;
+    }
+
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public Future<Map<PublisherQueueData, Boolean>> publishQueueEntriesAsynchronously(final AuthenticationToken admin, final BasePublisher publisher,
+            final List<PublisherQueueData> publisherQueueData, final Map<String, CertificateDataWrapper> certificateDatas) {
+        return new AsyncResult<Map<PublisherQueueData, Boolean>>(
+                publishEntries(admin, publisher, publisherQueueData, certificateDatas, Collections.<String, CRLData> emptyMap()));
+    }
+
+    /**
+     * Publishes the entries one at the time, until all are published, or we have given up on the publisher.
+     *
+     * @return the outcome of each entry that publishing was attempted for, true if it was published
+     */
+    private Map<PublisherQueueData, Boolean> publishEntries(final AuthenticationToken admin, final BasePublisher publisher,
+            final Collection<PublisherQueueData> publisherQueueData, final Map<String, CertificateDataWrapper> certificateDatas,
+            final Map<String, CRLData> crlDatas) {
+        final Map<PublisherQueueData, Boolean> outcomes = new LinkedHashMap<>();
+        final PublishingResult result = new PublishingResult();
+        for (final PublisherQueueData pqd : publisherQueueData) {
+            // If we don't manage to publish anything, but fails on all the first ten ones we expect that this publisher is dead
+            // for now. We don't have to try with every record.
             if (result.shouldBreakPublishingOperation()) {
                 if (log.isDebugEnabled()) {
                     log.debug("Breaking out of publisher loop because everything seems to fail (at least the first 10 entries)");
                 }
                 break;
             }
+            final boolean published = publishEntry(admin, publisher, pqd, certificateDatas, crlDatas);
+            outcomes.put(pqd, Boolean.valueOf(published));
+            if (published) {
+                result.addSuccess(pqd.getFingerprint());
+            } else {
+                result.addFailure(pqd.getFingerprint());
+            }
         }
+        return outcomes;
+    }
 
+    /** Updates the queue for all published entries at once, removing the published entries with a single statement. */
+    private void updatePublishedEntries(final BasePublisher publisher, final Map<PublisherQueueData, Boolean> outcomes) {
+        final List<String> removePks = new ArrayList<>();
+        final Map<String, PublisherQueueData> updates = new HashMap<>();
+        for (final Map.Entry<PublisherQueueData, Boolean> outcome : outcomes.entrySet()) {
+            final PublisherQueueData pqd = outcome.getKey();
+            if (outcome.getValue().booleanValue() && !publisher.getKeepPublishedInQueue()) {
+                // We are done with this one.. nuke it!
+                removePks.add(pqd.getPk());
+            } else {
+                updates.put(pqd.getPk(), pqd);
+            }
+        }
+        if (!removePks.isEmpty()) {
+            final int removed = org.ejbca.core.ejb.ca.publisher.PublisherQueueData.deleteByPks(entityManager, removePks);
+            if (log.isDebugEnabled()) {
+                log.debug("Removed " + removed + " published entries from the queue of publisher " + publisher.getPublisherId());
+            }
+        }
+        // Updated entries are modified through the entities, so they keep their database integrity protection
+        final long now = System.currentTimeMillis();
+        for (final org.ejbca.core.ejb.ca.publisher.PublisherQueueData data : org.ejbca.core.ejb.ca.publisher.PublisherQueueData.findByPks(entityManager,
+                updates.keySet())) {
+            final PublisherQueueData pqd = updates.get(data.getPk());
+            if (outcomes.get(pqd).booleanValue()) {
+                // Update with information that publishing was successful
+                data.setPublishStatus(PublisherConst.STATUS_SUCCESS);
+            } else {
+                // Update with new tryCounter, but same status as before. Counted from the current value, since another node may
+                // have failed to publish the same entry since it was read.
+                data.setTryCounter(data.getTryCounter() + 1);
+            }
+            data.setLastUpdate(now);
+        }
+    }
+
+    /**
+     * Publishes a single entry from the queue. This may be invoked from several threads at the same time, so it must not use the entity manager.
+     * 
+     * @return true if the entry was published
+     */
+    private boolean publishEntry(final AuthenticationToken admin, final BasePublisher publisher, final PublisherQueueData pqd,
+            final Map<String, CertificateDataWrapper> certificateDatas, final Map<String, CRLData> crlDatas) {
+        final int publisherId = publisher.getPublisherId();
+        final String fingerprint = pqd.getFingerprint();
+        final int publishType = pqd.getPublishType();
         if (log.isDebugEnabled()) {
-            log.debug("Returning from publisher with " + result.getSuccesses() + " entries published successfully.");
+            log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
+                    + ", type: " + publishType);
         }
-        return result;
+        PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
+        String password = null;
+        ExtendedInformation ei = null;
+        String userDataDN = null;
+        if (voldata != null) {
+            password = voldata.getPassword();
+            ei = voldata.getExtendedInformation();
+            userDataDN = voldata.getUserDN();
+        }
+        boolean published = false;
+        try {
+            if (publishType == PublisherConst.PUBLISH_TYPE_CERT) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Publishing Certificate");
+                }
+                final CertificateDataWrapper certificateDataWrapper = certificateDatas.get(fingerprint);
+                if (certificateDataWrapper==null) {
+                    throw new FinderException();
+                }
+                try {
+                    published = publisherQueueSession.publishCertificateNonTransactional(publisher, admin, certificateDataWrapper, password, userDataDN, ei);
+                } catch (EJBException e) {
+                    final Throwable t = e.getCause();
+                    if (t instanceof PublisherException) {
+                        throw (PublisherException) t;
+                    } else {
+                        throw e;
+                    }
+                }
+            } else if (publishType == PublisherConst.PUBLISH_TYPE_CRL) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Publishing CRL");
+                }
+                final CRLData crlData = crlDatas.get(fingerprint);
+                if (crlData == null) {
+                    throw new FinderException();
+                }
+                try {
+                    published = publisherQueueSession.publishCRLNonTransactional(publisher, admin, crlData.getCRLBytes(),
+                            crlData.getCaFingerprint(), crlData.getCrlNumber(), userDataDN);
+                } catch (EJBException e) {
+                    final Throwable t = e.getCause();
+                    if (t instanceof PublisherException) {
+                        throw (PublisherException) t;
+                    } else {
+                        throw e;
+                    }
+                }
+            } else {
+                String msg = intres.getLocalizedMessage("publisher.unknowntype", publishType);
+                log.error(msg);
+            }
+        } catch (FinderException e) {
+            final String msg = intres.getLocalizedMessage("publisher.errornocert", fingerprint) + e.getMessage();
+            log.info(msg);
+        } catch (PublisherException e) {
+            // Publisher session have already logged this error nicely to
+            // getLogSession().log
+            log.debug(e.getMessage());
+        }
+        return published;
     }
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
@@ -457,24 +614,16 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         final boolean parallel = EjbcaConfiguration.isPublishParallelEnabled();
         // Are we doing parallel publishing (only meaningful if there is more than one publisher configured)?
         if (parallel && publishers.size() > 1) {
-            final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            final List<Future<Object>> futures = new ArrayList<Future<Object>>();
             BasePublisher publisherFirst = null;
             for (final BasePublisher publisher : publishers) {
                 if (publisherFirst == null) {
                     // We will execute the first of the publishers in the main thread...
                     publisherFirst = publisher;
                 } else {
-                    // ...and the rest of the publishers will be executed in new threads
-                    final Future<Boolean> future = getExecutorService().submit(new Callable<Boolean>() {
-                        @Override
-                        public Boolean call() throws Exception {
-                            if (!publishCertificateNonTransactional(publisher, admin, certWrapper, password, userDN, extendedinformation)) {
-                                throw new PublisherException("Return code from publisher is false.");
-                            }
-                            return Boolean.TRUE;
-                        }
-                    });
-                    futures.add(future);
+                    // ...and the rest of the publishers will be executed on container managed threads
+                    futures.add(publisherQueueSession.publishCertificateNonTransactionalAsynchronously(publisher, admin, certWrapper, password, userDN,
+                            extendedinformation));
                 }
             }
             // Wait at most 300 seconds in total for all the publishers to complete.
@@ -491,11 +640,11 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
             }
             publisherResults.add(publisherResultFirst);
             // Wait for all the background threads to finish and get the result from each invocation
-            for (final Future<Boolean> future : futures) {
+            for (final Future<Object> future : futures) {
                 Object publisherResult;
                 try {
                     final long maxTimeToWait = Math.max(1000L, deadline - System.currentTimeMillis());
-                    publisherResult = new Boolean(future.get(maxTimeToWait, TimeUnit.MILLISECONDS));
+                    publisherResult = future.get(maxTimeToWait, TimeUnit.MILLISECONDS);
                 } catch (Exception e) {
                     publisherResult = getAsPublisherException(e);
                 }
@@ -517,6 +666,21 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return publisherResults;
     }
 
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public Future<Object> publishCertificateNonTransactionalAsynchronously(final BasePublisher publisher, final AuthenticationToken admin,
+            final CertificateDataWrapper certWrapper, final String password, final String userDN, final ExtendedInformation extendedinformation) {
+        try {
+            if (!publishCertificateNonTransactional(publisher, admin, certWrapper, password, userDN, extendedinformation)) {
+                throw new PublisherException("Return code from publisher is false.");
+            }
+            return new AsyncResult<Object>(Boolean.TRUE);
+        } catch (Exception e) {
+            return new AsyncResult<Object>(getAsPublisherException(e));
+        }
+    }
+
     private PublisherException getAsPublisherException(final Exception e) {
         if (log.isDebugEnabled()) {
             log.debug("Publisher threw exception", e);
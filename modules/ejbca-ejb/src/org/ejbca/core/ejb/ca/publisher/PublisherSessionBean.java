@@ -13,9 +13,6 @@
 
 package org.ejbca.core.ejb.ca.publisher;
 
-import java.beans.XMLDecoder;
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.util.ArrayList;
@@ -27,10 +24,17 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeSet;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.CreateException;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
@@ -56,11 +60,14 @@ import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.common.exception.ReferencesToItemExistException;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
+import org.cesecore.internal.CommonCacheBase;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.DataMapSerializer;
 import org.cesecore.util.EjbRemoteHelper;
 import org.cesecore.util.ProfileID;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.ejb.audit.enums.EjbcaEventTypes;
 import org.ejbca.core.ejb.audit.enums.EjbcaModuleTypes;
@@ -73,6 +80,7 @@ import org.ejbca.core.model.ca.publisher.BasePublisher;
 import org.ejbca.core.model.ca.publisher.CustomPublisherContainer;
 import org.ejbca.core.model.ca.publisher.FatalPublisherConnectionException;
 import org.ejbca.core.model.ca.publisher.GeneralPurposeCustomPublisher;
+import org.ejbca.core.model.ca.publisher.LdapConnectionPool;
 import org.ejbca.core.model.ca.publisher.LdapPublisher;
 import org.ejbca.core.model.ca.publisher.LdapSearchPublisher;
 import org.ejbca.core.model.ca.publisher.LegacyValidationAuthorityPublisher;
@@ -98,8 +106,14 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
 
+    /** Info of the timer that closes idle connections of the LDAP publishers */
+    private static final String TIMERINFO_LDAPCONNECTIONPOOL = "LdapConnectionPool";
+
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
+    @Resource
+    private SessionContext sessionContext;
+    private TimerService timerService;
 
     @EJB
     private AuthorizationSessionLocal authorizationSession;
@@ -116,6 +130,35 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
     @EJB
     private SecurityEventsLoggerSessionLocal auditSession;
 
+    @PostConstruct
+    public void postConstruct() {
+        timerService = sessionContext.getTimerService();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void initTimers() {
+        // Cancel timers left from before a redeployment, in case the configuration changed
+        for (final Timer timer : timerService.getTimers()) {
+            if (TIMERINFO_LDAPCONNECTIONPOOL.equals(timer.getInfo())) {
+                timer.cancel();
+            }
+        }
+        if (EjbcaConfiguration.getLdapPublisherConnectionPoolSize() > 0) {
+            final long interval = Math.max(1000L, EjbcaConfiguration.getLdapPublisherConnectionPoolIdleTime());
+            timerService.createIntervalTimer(interval, interval, new TimerConfig(TIMERINFO_LDAPCONNECTIONPOOL, false));
+        }
+    }
+
+    /** Closes the idle connections of the LDAP publishers, also of publishers that are no longer used. */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void timeoutHandler(final Timer timer) {
+        if (TIMERINFO_LDAPCONNECTIONPOOL.equals(timer.getInfo())) {
+            LdapConnectionPool.closeIdleConnections();
+        }
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public void flushPublisherCache() {
@@ -465,6 +508,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
             htp.setPublisher(publisher);
             // Since loading a Publisher is quite complex, we simple purge the cache here
             PublisherCache.INSTANCE.removeEntry(htp.getId());
+            LdapConnectionPool.remove(htp.getId());
             final String msg = intres.getLocalizedMessage("publisher.changedpublisher", name);
             final Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", msg);
@@ -536,6 +580,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
                 entityManager.remove(htp);
                 // Purge the cache here
                 PublisherCache.INSTANCE.removeEntry(htp.getId());
+                LdapConnectionPool.remove(htp.getId());
                 final String msg = intres.getLocalizedMessage("publisher.removedpublisher", name);
                 final Map<String, Object> details = new LinkedHashMap<>();
                 details.put("msg", msg);
@@ -780,6 +825,14 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         return ProfileID.getNotUsedID(db);
     }
 
+    /** Reads the row versions of all publishers, used for detecting which cached publishers have been changed on any node */
+    private final CommonCacheBase.VersionSource publisherVersionSource = new CommonCacheBase.VersionSource() {
+        @Override
+        public Map<Integer, Integer> getVersions() {
+            return PublisherData.findRowVersions(entityManager);
+        }
+    };
+
     /**
      * Internal method for getting Publisher, to avoid code duplication. Tries to find the Publisher even if the id is wrong due to CA certificate DN not being
      * the same as CA DN. Uses PublisherCache directly if configured to do so.
@@ -804,7 +857,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         }
         BasePublisher returnval = null;
         // If we should read from cache, and we have an id to use in the cache, and the cache does not need to be updated
-        if (fromCache && idValue != null && !PublisherCache.INSTANCE.shouldCheckForUpdates(idValue)) {
+        if (fromCache && idValue != null && !PublisherCache.INSTANCE.shouldCheckForUpdates(idValue, publisherVersionSource)) {
             // Get from cache (or null)
             returnval = PublisherCache.INSTANCE.getEntry(idValue);
         }
@@ -826,11 +879,13 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
                 final int digest = pd.getProtectString(0).hashCode();
                 // The cache compares the database data with what is in the cache
                 // If database is different from cache, replace it in the cache
-                PublisherCache.INSTANCE.updateWith(pd.getId(), digest, pd.getName(), returnval);
+                PublisherCache.INSTANCE.updateWith(pd.getId(), digest, pd.getName(), returnval, pd.getRowVersion());
             } else {
                 // Ensure that it is removed from cache if it exists
                 if (idValue != null) {
                     PublisherCache.INSTANCE.removeEntry(idValue);
+                    // The publisher was removed on another node
+                    LdapConnectionPool.remove(idValue);
                 }
             }
         }
@@ -844,14 +899,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
     private BasePublisher getPublisher(PublisherData pData) {
         BasePublisher publisher = pData.getCachedPublisher();
         if (publisher == null) {
-            XMLDecoder decoder;
-            try {
-                decoder = new XMLDecoder(new ByteArrayInputStream(pData.getData().getBytes("UTF8")));
-            } catch (UnsupportedEncodingException e) {
-                throw new EJBException(e);
-            }
-            HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-            decoder.close();
+            HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.deserialize(pData.getData());
             // Handle Base64 encoded string values
             HashMap<?, ?> data = new Base64GetHashMap(h);
 
@@ -909,14 +957,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         for (PublisherData publisherData : findAll()) {
             // Extract the data payload instead of the BasePublisher since the original BasePublisher implementation might no longer
             // be on the classpath
-            XMLDecoder decoder;
-            try {
-                decoder = new XMLDecoder(new ByteArrayInputStream(publisherData.getData().getBytes("UTF8")));
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
-            }
-            HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-            decoder.close();
+            HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.deserialize(publisherData.getData());
             // Handle Base64 encoded string values
             @SuppressWarnings("unchecked")
             HashMap<Object, Object> data = new Base64GetHashMap(h);
@@ -936,14 +977,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         for (PublisherData publisherData : findAll()) {
             // Extract the data payload instead of the BasePublisher since the original BasePublisher implementation might no longer
             // be on the classpath
-            XMLDecoder decoder;
-            try {
-                decoder = new XMLDecoder(new ByteArrayInputStream(publisherData.getData().getBytes("UTF8")));
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
-            }
-            HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-            decoder.close();
+            HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.deserialize(publisherData.getData());
             // Handle Base64 encoded string values
             @SuppressWarnings("unchecked")
             HashMap<Object, Object> data = new Base64GetHashMap(h);
@@ -15,16 +15,22 @@ package org.ejbca.core.ejb.crl;
 import java.security.cert.CRLException;
 import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.FinderException;
@@ -68,6 +74,7 @@ import org.cesecore.keys.token.CryptoTokenOfflineException;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.CompressedCollection;
 import org.cesecore.util.CryptoProviderTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 
 /**
@@ -126,68 +133,186 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
 
     @Override
     public int createCRLs(final AuthenticationToken admin, final Collection<Integer> caids, final long addtocrloverlaptime) throws AuthorizationDeniedException {
+        return createCRLsWithResult(admin, caids, addtocrloverlaptime).getCreatedCaCount();
+    }
+
+    @Override
+    public int createDeltaCRLs(final AuthenticationToken admin, final Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException {
+        return createDeltaCRLsWithResult(admin, caids, crloverlaptime).getCreatedCaCount();
+    }
+
+    @Override
+    public CrlCreationResult createCRLsWithResult(final AuthenticationToken admin, final Collection<Integer> caids, final long addtocrloverlaptime)
+            throws AuthorizationDeniedException {
+        return createCrlsForAllPartitions(admin, caids, addtocrloverlaptime, false);
+    }
+
+    @Override
+    public CrlCreationResult createDeltaCRLsWithResult(final AuthenticationToken admin, final Collection<Integer> caids, final long crloverlaptime)
+            throws AuthorizationDeniedException {
+        return createCrlsForAllPartitions(admin, caids, crloverlaptime, true);
+    }
+
+    /**
+     * Checks all CRL partitions of the given CAs, and generates the CRLs or delta CRLs that are needed. Each partition is checked and
+     * generated in a separate transaction. With {@link EjbcaConfiguration#getCrlGenerationWorkers()} greater than one, up to that many
+     * partitions are processed concurrently using asynchronous invocations, otherwise the partitions are processed one at a time.
+     */
+    private CrlCreationResult createCrlsForAllPartitions(final AuthenticationToken admin, final Collection<Integer> caids, final long addToCrlOverlapTime,
+            final boolean deltaCrl) throws AuthorizationDeniedException {
+        final long startTime = System.currentTimeMillis();
         final Collection<Integer> caIdsToProcess;
         if (caids==null || caids.contains(Integer.valueOf(CAConstants.ALLCAS))) {
             caIdsToProcess = caSession.getAllCaIds();
         } else {
             caIdsToProcess = caids;
         }
-        int createdcrls = 0;
+        final int workers = EjbcaConfiguration.getCrlGenerationWorkers();
+        final CrlCreationResult result = new CrlCreationResult(deltaCrl, workers);
+        // Partitions being processed asynchronously, oldest first
+        final Deque<Future<CrlCreationResult.PartitionResult>> pending = new ArrayDeque<>();
+        AuthorizationDeniedException authorizationDeniedException = null;
         for (final int caid : caIdsToProcess) {
             if (log.isDebugEnabled()) {
-                log.debug("createCRLs for caid: " + caid);
+                log.debug((deltaCrl ? "createDeltaCRLs" : "createCRLs") + " for caid: " + caid);
             }
+            // Get CA checks authorization to the CA. The CA is read once and used for all its partitions processed by this thread, partitions
+            // processed asynchronously use their own copy.
+            final CA ca;
             try {
-                if (publishingCrlSession.createCRLNewTransactionConditioned(admin, caid, addtocrloverlaptime)) {
-                    createdcrls++;
+                ca = (CA) caSession.getCA(admin, caid);
+            } catch (AuthorizationDeniedException e) {
+                // Continue with the other CAs, and throw when done
+                authorizationDeniedException = e;
+                continue;
+            }
+            if (ca == null) {
+                final String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, intres.getLocalizedMessage("caadmin.canotexistsid", caid));
+                log.error(msg);
+                result.addPartitionResult(new CrlCreationResult.PartitionResult(caid, String.valueOf(caid), CertificateConstants.NO_CRL_PARTITION, false, 0, msg));
+                continue;
+            }
+            final List<Integer> crlPartitionIndexes = new ArrayList<>();
+            crlPartitionIndexes.add(CertificateConstants.NO_CRL_PARTITION);
+            final IntRange crlPartitions = ca.getCAInfo().getAllCrlPartitionIndexes();
+            if (crlPartitions != null) {
+                for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
+                    crlPartitionIndexes.add(crlPartitionIndex);
                 }
-            } catch (CryptoTokenOfflineException | CAOfflineException | CADoesntExistsException e) {
-                // Don't fail all generation just because one of the CAs had token offline or similar.
-                // Continue working with the others, but log an error message in system logs, use error logging
-                // since it might be something that should call for attention of the operators, CRL generation is important.
-                String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
-                log.error(msg, e);
+            }
+            for (final int crlPartitionIndex : crlPartitionIndexes) {
+                if (workers > 1) {
+                    if (pending.size() >= workers) {
+                        // Wait for the oldest partition before starting another one, so no more than "workers" partitions are processed at a time
+                        authorizationDeniedException = addPartitionResult(result, pending.removeFirst(), authorizationDeniedException);
+                    }
+                    pending.add(publishingCrlSession.createCrlPartitionAsynchronously(admin, ca.getCAId(), crlPartitionIndex, addToCrlOverlapTime, deltaCrl));
+                } else {
+                    try {
+                        result.addPartitionResult(createCrlForPartition(admin, ca, crlPartitionIndex, addToCrlOverlapTime, deltaCrl));
+                    } catch (AuthorizationDeniedException e) {
+                        authorizationDeniedException = e;
+                    }
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            authorizationDeniedException = addPartitionResult(result, pending.removeFirst(), authorizationDeniedException);
+        }
+        if (authorizationDeniedException != null) {
+            throw authorizationDeniedException;
+        }
+        result.setDurationMillis(System.currentTimeMillis() - startTime);
+        if (log.isDebugEnabled()) {
+            log.debug(result.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Waits for an asynchronously processed partition and adds its result.
+     * @return the authorization failure of the partition, or the previous one if authorization did not fail
+     */
+    private AuthorizationDeniedException addPartitionResult(final CrlCreationResult result, final Future<CrlCreationResult.PartitionResult> future,
+            final AuthorizationDeniedException authorizationDeniedException) {
+        try {
+            result.addPartitionResult(future.get());
+            return authorizationDeniedException;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException("Interrupted while waiting for CRL generation.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AuthorizationDeniedException) {
+                return (AuthorizationDeniedException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new EJBException(e);
             }
         }
-        return createdcrls;
     }
 
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
-    public int createDeltaCRLs(final AuthenticationToken admin, final Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException {
-        final Collection<Integer> caIdsToProcess;
-        if (caids==null || caids.contains(Integer.valueOf(CAConstants.ALLCAS))) {
-            caIdsToProcess = caSession.getAllCaIds();
-        } else {
-            caIdsToProcess = caids;
+    public Future<CrlCreationResult.PartitionResult> createCrlPartitionAsynchronously(final AuthenticationToken admin, final int caId, final int crlPartitionIndex,
+            final long addToCrlOverlapTime, final boolean deltaCrl) throws AuthorizationDeniedException {
+        // CA objects are not thread safe, so each partition reads its own copy of the CA from the database instead of sharing the cached one
+        final CA ca = (CA) caSession.getCAForEdit(admin, caId);
+        if (ca == null) {
+            final String msg = intres.getLocalizedMessage("createcrl.errorcreate", caId, intres.getLocalizedMessage("caadmin.canotexistsid", caId));
+            log.error(msg);
+            return new AsyncResult<CrlCreationResult.PartitionResult>(new CrlCreationResult.PartitionResult(caId, String.valueOf(caId), crlPartitionIndex,
+                    false, 0, msg));
         }
-        int createddeltacrls = 0;
-        for (final int caid : caIdsToProcess) {
-            if (log.isDebugEnabled()) {
-                log.debug("createDeltaCRLs for caid: " + caid);
+        return new AsyncResult<CrlCreationResult.PartitionResult>(createCrlForPartition(admin, ca, crlPartitionIndex, addToCrlOverlapTime, deltaCrl));
+    }
+
+    /** Checks, and generates if needed, the CRL or delta CRL of a single partition in a new transaction. Failures other than authorization are returned in the result. */
+    private CrlCreationResult.PartitionResult createCrlForPartition(final AuthenticationToken admin, final CA ca, final int crlPartitionIndex,
+            final long addToCrlOverlapTime, final boolean deltaCrl) throws AuthorizationDeniedException {
+        final long startTime = System.currentTimeMillis();
+        try {
+            final boolean created;
+            if (deltaCrl) {
+                created = publishingCrlSession.createDeltaCrlPartitionNewTransactionConditioned(admin, ca, crlPartitionIndex, addToCrlOverlapTime);
+            } else {
+                created = publishingCrlSession.createCrlPartitionNewTransactionConditioned(admin, ca, crlPartitionIndex, addToCrlOverlapTime);
             }
-            try {
-                if (publishingCrlSession.createDeltaCRLnewTransactionConditioned(admin, caid, crloverlaptime)) {
-                    createddeltacrls++;
-                }
-            } catch (CesecoreException e) {
-                // Don't fail all generation just because one of the CAs had token offline or similar.
-                // Continue working with the others, but log a warning message in system logs.
-                final String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
-                log.error(msg, e);
+            return new CrlCreationResult.PartitionResult(ca.getCAId(), ca.getName(), crlPartitionIndex, created, System.currentTimeMillis() - startTime, null);
+        } catch (CesecoreException e) {
+            // Don't fail all generation just because one of the CAs had token offline or similar.
+            // Continue working with the others, but log an error message in system logs, use error logging
+            // since it might be something that should call for attention of the operators, CRL generation is important.
+            final String msg = intres.getLocalizedMessage("createcrl.errorcreate", ca.getCAId(), e.getMessage());
+            log.error(msg, e);
+            if (deltaCrl) {
                 final Map<String, Object> details = new LinkedHashMap<>();
                 details.put("msg", msg);
-                logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
+                logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(ca.getCAId()), null, null, details);
             }
+            return new CrlCreationResult.PartitionResult(ca.getCAId(), ca.getName(), crlPartitionIndex, false, System.currentTimeMillis() - startTime, e.getMessage());
         }
-        return createddeltacrls;
     }
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public boolean createCRLNewTransactionConditioned(AuthenticationToken admin, int caId, long addToCrlOverlapTime) throws CryptoTokenOfflineException, CADoesntExistsException, AuthorizationDeniedException, CAOfflineException {
-        final Date now = new Date();
         // Get CA checks authorization to the CA
         final CA ca = (CA) caSession.getCA(admin, caId);
+        return createCrlConditioned(admin, ca, null, addToCrlOverlapTime);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public boolean createCrlPartitionNewTransactionConditioned(AuthenticationToken admin, CA ca, int crlPartitionIndex, long addToCrlOverlapTime) throws CryptoTokenOfflineException, AuthorizationDeniedException, CAOfflineException {
+        return createCrlConditioned(admin, ca, crlPartitionIndex, addToCrlOverlapTime);
+    }
+
+    /** Checks the CA and creates the CRL of the given partition if needed, or of all partitions if crlPartitionIndex is null */
+    private boolean createCrlConditioned(final AuthenticationToken admin, final CA ca, final Integer crlPartitionIndexToCreate, final long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException, CAOfflineException {
+        final Date now = new Date();
         final CAInfo cainfo = ca.getCAInfo();
         try {
             if (cainfo.getStatus() == CAConstants.CA_EXTERNAL) {
@@ -215,6 +340,8 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             // Normal event to not create CRLs for CAs that are deliberately set off line
                             String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
                             log.info(msg);
+                        } else if (crlPartitionIndexToCreate != null) {
+                            return createCrlForActiveCa(admin, ca, cacert, crlPartitionIndexToCreate, now, addToCrlOverlapTime);
                         } else {
                             boolean result = createCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
                             final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
@@ -234,7 +361,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             }
             return false;
         } catch (CryptoTokenOfflineException e) {
-            log.warn("Crypto token is offline for CA "+caId+" generating CRL.");
+            log.warn("Crypto token is offline for CA "+ca.getCAId()+" generating CRL.");
             throw e;
         }
     }
@@ -308,9 +435,21 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public boolean createDeltaCRLnewTransactionConditioned(AuthenticationToken admin, int caid, long addToCrlOverlapTime) throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException {
+        final CA ca = (CA) caSession.getCA(admin, caid);
+        return createDeltaCrlConditioned(admin, ca, null, addToCrlOverlapTime);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public boolean createDeltaCrlPartitionNewTransactionConditioned(AuthenticationToken admin, CA ca, int crlPartitionIndex, long addToCrlOverlapTime) throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException {
+        return createDeltaCrlConditioned(admin, ca, crlPartitionIndex, addToCrlOverlapTime);
+    }
+
+    /** Checks the CA and creates the delta CRL of the given partition if needed, or of all partitions if crlPartitionIndex is null */
+    private boolean createDeltaCrlConditioned(final AuthenticationToken admin, final CA ca, final Integer crlPartitionIndexToCreate, final long addToCrlOverlapTime)
+            throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException {
         boolean ret = false;
         final Date now = new Date();
-        final CA ca = (CA) caSession.getCA(admin, caid);
         final CAInfo cainfo = ca.getCAInfo();
         try{
             if (cainfo.getStatus() == CAConstants.CA_EXTERNAL) {
@@ -339,6 +478,8 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                                 // Normal event to not create CRLs for CAs that are deliberately set off line
                                 String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
                                 log.info(msg);
+                            } else if (crlPartitionIndexToCreate != null) {
+                                return createDeltaCrlForActiveCa(admin, ca, cacert, crlPartitionIndexToCreate, now, addToCrlOverlapTime);
                             } else {
                                 boolean result = createDeltaCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
                                 final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
@@ -358,7 +499,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 }
             }
         } catch (CryptoTokenOfflineException e) {
-            log.warn("Crypto token is offline for CA "+caid+" generating CRL.");
+            log.warn("Crypto token is offline for CA "+ca.getCAId()+" generating CRL.");
             throw e;
         }
         return ret;
@@ -55,6 +55,7 @@ import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.keys.util.KeyStoreTools;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.keys.util.PublicKeyWrapper;
@@ -245,7 +246,7 @@ public class KeyStoreCreateSessionBean implements KeyStoreCreateSessionLocal, Ke
                 }
             }
             // generate new keys.
-            rsaKeys = KeyTools.genKeys(keyspec, keyalg);
+            rsaKeys = KeyPairPool.getKeyPair(keyspec, keyalg);
     	}
     	X509Certificate cert = null;
     	if ((reusecertificate) && (keyData != null)) {
@@ -38,6 +38,10 @@ import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
  * 
  * The intention of this design is better throughput than fully ordered sequential updates.
  * 
+ * When the cache time has expired, the row versions of all profiles are read first, and only profiles that were changed (on any node)
+ * since they were cached are read again. A forced update reads all profiles, and the next update after it does the same, since the
+ * forced update may have read changes that were never committed.
+ * 
  * @version $Id$
  */
 public enum EndEntityProfileCache {
@@ -59,6 +63,8 @@ public enum EndEntityProfileCache {
     private volatile Map<String, Integer> nameIdMapCache = null;
     /** Cache of end entity profiles, with Id as keys */
     private volatile Map<Integer, EndEntityProfile> profileCache = null;
+    /** Row versions of the cached profiles, with Id as keys, or null if all profiles should be read at the next update */
+    private volatile Map<Integer, Integer> versionCache = null;
     
     private volatile long lastUpdate = 0;
 
@@ -100,10 +106,19 @@ public enum EndEntityProfileCache {
         } finally {
         	lock.unlock();
         }
+        if (!force && versionCache != null && updateChangedProfiles(entityManager)) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("<updateProfileCache only read changed profiles, took: "+(System.currentTimeMillis()-now)+"ms");
+            }
+            return;
+        }
+        Map<Integer, Integer> versions = null;
         final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
         final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
         final Map<Integer, EndEntityProfile> profCache = new HashMap<Integer, EndEntityProfile>();
         try {
+        	// Versions are read first, so a profile changed while reading is read again at the next update
+        	final Map<Integer, Integer> currentVersions = force ? null : EndEntityProfileData.findRowVersions(entityManager);
         	final List<EndEntityProfileData> result = EndEntityProfileData.findAll(entityManager);
         	for (final EndEntityProfileData next : result) {
         		final Integer id = Integer.valueOf(next.getId());
@@ -112,18 +127,70 @@ public enum EndEntityProfileCache {
         		nameIdCache.put(profileName, id);
         		profCache.put(id, next.getProfile());
         	}
+        	versions = currentVersions;
         } catch (Exception e) {
         	LOG.error(INTRES.getLocalizedMessage("ra.errorreadprofiles"), e);
         }
         idNameMapCache = idNameCache;
         nameIdMapCache = nameIdCache;
         profileCache = profCache;
+        versionCache = versions;
         if (LOG.isTraceEnabled()) {
             final long end = System.currentTimeMillis();
             LOG.trace("<updateProfileCache took: "+(end-now)+"ms");
         }
 	}
 
+    /**
+     * Reads the row versions of all profiles, and reads only the profiles that were added or changed since they were cached.
+     * 
+     * @return false if the profiles could not be read, and all profiles should be read instead
+     */
+    private boolean updateChangedProfiles(final EntityManager entityManager) {
+        try {
+            final Map<Integer, Integer> versions = EndEntityProfileData.findRowVersions(entityManager);
+            final Map<Integer, Integer> cachedVersions = versionCache;
+            if (versions.equals(cachedVersions)) {
+                return true;
+            }
+            final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
+            final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
+            final Map<Integer, EndEntityProfile> profCache = new HashMap<Integer, EndEntityProfile>();
+            int changed = 0;
+            for (final Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+                final Integer id = entry.getKey();
+                final String profileName;
+                final EndEntityProfile profile;
+                if (entry.getValue().equals(cachedVersions.get(id)) && profileCache.containsKey(id)) {
+                    profileName = idNameMapCache.get(id);
+                    profile = profileCache.get(id);
+                } else {
+                    final EndEntityProfileData next = EndEntityProfileData.findById(entityManager, id.intValue());
+                    if (next == null) {
+                        continue; // Removed since the versions were read
+                    }
+                    profileName = next.getProfileName();
+                    profile = next.getProfile();
+                    changed++;
+                }
+                idNameCache.put(id, profileName);
+                nameIdCache.put(profileName, id);
+                profCache.put(id, profile);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Read " + changed + " added or changed end entity profiles.");
+            }
+            idNameMapCache = idNameCache;
+            nameIdMapCache = nameIdCache;
+            profileCache = profCache;
+            versionCache = versions;
+            return true;
+        } catch (Exception e) {
+            LOG.error(INTRES.getLocalizedMessage("ra.errorreadprofiles"), e);
+            return false;
+        }
+    }
+
 	/** @return the latest object from the cache or a current database representation if no caching is used. */
 	public Map<Integer, EndEntityProfile> getProfileCache(final EntityManager entityManager) {
 		updateProfileCache(entityManager, false);
@@ -43,8 +43,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.DependsOn;
@@ -98,6 +104,7 @@ import org.cesecore.certificates.util.AlgorithmTools;
 import org.cesecore.config.RaStyleInfo;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.roles.AccessRulesHelper;
 import org.cesecore.roles.Role;
@@ -188,6 +195,9 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
 
     private RaMasterApi[] raMasterApis = null;
     private RaMasterApi[] raMasterApisLocalFirst = null;
+    // NOTE: Should be replaced by a ManagedExecutorService when we drop support for JEE 6
+    /** Searches remote back ends in parallel with the local back end */
+    private final ExecutorService searchExecutorService = Executors.newCachedThreadPool();
 
     /** Default constructor */
     public RaMasterApiProxyBean() {
@@ -234,6 +244,11 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         this.raMasterApisLocalFirst = implementations.toArray(new RaMasterApi[implementations.size()]);
     }
 
+    @PreDestroy
+    private void preDestroy() {
+        searchExecutorService.shutdown();
+    }
+
     // Use in tests only!
     @Override
     public void deferLocalForTest() {
@@ -744,27 +759,35 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     }
 
     @Override
-    public RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken,
-            RaCertificateSearchRequest raCertificateSearchRequest) {
+    public RaCertificateSearchResponse searchForCertificates(final AuthenticationToken authenticationToken,
+            final RaCertificateSearchRequest raCertificateSearchRequest) {
         final RaCertificateSearchResponse ret = new RaCertificateSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
+        final Map<Integer, String> nextCursors = new LinkedHashMap<>();
+        final Map<Integer, RaCertificateSearchResponse> responses = searchAllBackends(raCertificateSearchRequest.getSearchCursor(),
+                new BackendSearch<RaCertificateSearchResponse>() {
+            @Override
+            public RaCertificateSearchResponse search(final RaMasterApi raMasterApi, final String searchCursor) {
+                final RaCertificateSearchRequest request = new RaCertificateSearchRequest(raCertificateSearchRequest);
+                request.setSearchCursor(searchCursor);
+                return raMasterApi.searchForCertificates(authenticationToken, request);
+            }
+        }, nextCursors);
+        for (final RaCertificateSearchResponse response : responses.values()) {
+            if (response == null) {
+                // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+                ret.setMightHaveMoreResults(true);
+            } else {
+                ret.merge(response);
             }
         }
+        for (final Map.Entry<Integer, RaCertificateSearchResponse> entry : responses.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getNextCursor() != null) {
+                nextCursors.put(entry.getKey(), entry.getValue().getNextCursor());
+            }
+        }
+        if (raCertificateSearchRequest.getSearchCursor() != null) {
+            ret.setNextCursor(RaSearchCursor.encode(nextCursors));
+        }
         return ret;
     }
 
@@ -810,24 +833,130 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     }
 
     @Override
-    public RaEndEntitySearchResponse searchForEndEntities(AuthenticationToken authenticationToken,
-            RaEndEntitySearchRequest raEndEntitySearchRequest) {
+    public RaEndEntitySearchResponse searchForEndEntities(final AuthenticationToken authenticationToken,
+            final RaEndEntitySearchRequest raEndEntitySearchRequest) {
         final RaEndEntitySearchResponse ret = new RaEndEntitySearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
+        final Map<Integer, String> nextCursors = new LinkedHashMap<>();
+        final Map<Integer, RaEndEntitySearchResponse> responses = searchAllBackends(raEndEntitySearchRequest.getSearchCursor(),
+                new BackendSearch<RaEndEntitySearchResponse>() {
+            @Override
+            public RaEndEntitySearchResponse search(final RaMasterApi raMasterApi, final String searchCursor) {
+                final RaEndEntitySearchRequest request = new RaEndEntitySearchRequest(raEndEntitySearchRequest);
+                request.setSearchCursor(searchCursor);
+                return raMasterApi.searchForEndEntities(authenticationToken, request);
+            }
+        }, nextCursors);
+        for (final RaEndEntitySearchResponse response : responses.values()) {
+            if (response == null) {
+                // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+                ret.setMightHaveMoreResults(true);
+            } else {
+                ret.merge(response);
+            }
+        }
+        for (final Map.Entry<Integer, RaEndEntitySearchResponse> entry : responses.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getNextCursor() != null) {
+                nextCursors.put(entry.getKey(), entry.getValue().getNextCursor());
+            }
+        }
+        if (raEndEntitySearchRequest.getSearchCursor() != null) {
+            ret.setNextCursor(RaSearchCursor.encode(nextCursors));
+        }
+        return ret;
+    }
+
+    /** Search of one back end */
+    private interface BackendSearch<T> {
+        /**
+         * @param raMasterApi the back end
+         * @param searchCursor the cursor of the back end, or null if the search is paginated with page numbers
+         * @return the response of the back end
+         */
+        T search(RaMasterApi raMasterApi, String searchCursor);
+    }
+
+    /**
+     * Searches all available back ends, with the remote back ends searched in parallel with the local one.
+     *
+     * Keyset paginated searches only continue on the back ends that are part of the cursor, see {@link RaSearchCursor}. Back ends with
+     * an API version before 8 (EJBCA 7.2.0) are only searched for the first page, since they do not support keyset pagination.
+     *
+     * @param searchCursor the cursor of the search, or null if the search is paginated with page numbers
+     * @param backendSearch the search of one back end
+     * @param nextCursors the cursors of the back ends that timed out, to retry them on the next page
+     * @return the responses by back end index in the order of the back ends, with null for back ends that timed out
+     */
+    private <T> Map<Integer, T> searchAllBackends(final String searchCursor, final BackendSearch<T> backendSearch, final Map<Integer, String> nextCursors) {
+        final Map<Integer, String> cursors = searchCursor == null ? null : RaSearchCursor.decode(searchCursor);
+        final Map<Integer, String> backendCursors = new LinkedHashMap<>();
+        final Map<Integer, Future<T>> futures = new LinkedHashMap<>();
+        for (int i = 0; i < raMasterApisLocalFirst.length; i++) {
+            final RaMasterApi raMasterApi = raMasterApisLocalFirst[i];
+            if (!raMasterApi.isBackendAvailable()) {
+                continue;
+            }
+            final String backendCursor;
+            if (cursors == null) {
+                backendCursor = null;
+            } else if (raMasterApi.getApiVersion() < 8) {
+                // Only the first page, with the page number of the request
+                if (!cursors.isEmpty()) {
+                    continue;
+                }
+                backendCursor = null;
+            } else if (cursors.isEmpty()) {
+                backendCursor = RaSearchCursor.START;
+            } else if (cursors.containsKey(i)) {
+                backendCursor = cursors.get(i);
+            } else {
+                // There are no more results from this back end
+                continue;
+            }
+            backendCursors.put(i, backendCursor);
+            if (raMasterApi != raMasterApiSession) {
+                futures.put(i, searchExecutorService.submit(new Callable<T>() {
+                    @Override
+                    public T call() {
+                        return backendSearch.search(raMasterApi, backendCursor);
+                    }
+                }));
+            }
+        }
+        final Map<Integer, T> ret = new LinkedHashMap<>();
+        for (final Map.Entry<Integer, String> entry : backendCursors.entrySet()) {
+            final int index = entry.getKey();
+            try {
+                final Future<T> future = futures.get(index);
+                if (future == null) {
+                    ret.put(index, backendSearch.search(raMasterApisLocalFirst[index], entry.getValue()));
+                } else {
+                    try {
+                        ret.put(index, future.get());
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
+                        }
+                        throw new IllegalStateException(e.getCause());
                     }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
+                }
+            } catch (UnsupportedOperationException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Trouble during back end invocation: " + e.getMessage());
+                }
+                // Just try next implementation
+            } catch (RaMasterBackendUnavailableException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Timeout during back end invocation.", e);
+                }
+                ret.put(index, null);
+                if (entry.getValue() != null) {
+                    nextCursors.put(index, entry.getValue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ret.put(index, null);
+                if (entry.getValue() != null) {
+                    nextCursors.put(index, entry.getValue());
                 }
             }
         }
@@ -1174,7 +1303,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
                     // Create new key pair and CSR
                     final String keyalg = storedEndEntity.getExtendedInformation().getKeyStoreAlgorithmType();
                     final String keyspec = storedEndEntity.getExtendedInformation().getKeyStoreAlgorithmSubType();
-                    kp = KeyTools.genKeys(keyspec, keyalg);
+                    kp = KeyPairPool.getKeyPair(keyspec, keyalg);
                     // requestCertForEndEntity verifies the password and performs the finishUser operation
                     cert = requestCertForEndEntity(authenticationToken, storedEndEntity, endEntity.getPassword(), kp);
                     // Store key pair
@@ -90,6 +90,7 @@ import org.cesecore.certificates.ca.SignRequestSignatureException;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateCreateException;
 import org.cesecore.certificates.certificate.CertificateCreateSessionLocal;
+import org.cesecore.certificates.certificate.CertificateData;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateRevokeException;
 import org.cesecore.certificates.certificate.CertificateStatus;
@@ -333,8 +334,9 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
      * <tr><th>5<td>=<td>6.15.0
      * <tr><th>6<td>=<td>7.0.0
      * <tr><th>7<td>=<td>7.1.0
+     * <tr><th>8<td>=<td>7.2.0
      */
-    private static final int RA_MASTER_API_VERSION = 7;
+    private static final int RA_MASTER_API_VERSION = 8;
 
     /** Cached value of an active CA, so we don't have to list through all CAs every time as this is a critical path executed every time */
     private int activeCaIdCache = -1;
@@ -1077,7 +1079,9 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         final String usernameSearchString = request.getUsernameSearchString();
         final String serialNumberSearchStringFromDec = request.getSerialNumberSearchStringFromDec();
         final String serialNumberSearchStringFromHex = request.getSerialNumberSearchStringFromHex();
-        final StringBuilder sb = new StringBuilder("SELECT a.fingerprint FROM CertificateData a WHERE (a.issuerDN IN (:issuerDN))");
+        final String searchCursor = request.getSearchCursor();
+        final StringBuilder sb = new StringBuilder(request.isMetadataOnly() ? CERTIFICATE_METADATA_SELECT : "SELECT a.fingerprint");
+        sb.append(" FROM CertificateData a WHERE (a.issuerDN IN (:issuerDN))");
         if (!subjectDnSearchString.isEmpty() || !subjectAnSearchString.isEmpty() || !usernameSearchString.isEmpty() ||
                 !serialNumberSearchStringFromDec.isEmpty() || !serialNumberSearchStringFromHex.isEmpty()) {
             sb.append(" AND (");
@@ -1153,8 +1157,18 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         if (!accessAnyEepAvailable || !request.getEepIds().isEmpty()) {
             sb.append(" AND (a.endEntityProfileId IN (:endEntityProfileId))");
         }
+        // Keyset pagination on the primary key, so later pages are as fast as the first one
+        if (searchCursor != null) {
+            if (!searchCursor.isEmpty()) {
+                sb.append(" AND (a.fingerprint > :searchCursor)");
+            }
+            sb.append(" ORDER BY a.fingerprint");
+        }
         final Query query = entityManager.createQuery(sb.toString());
         query.setParameter("issuerDN", issuerDns);
+        if (searchCursor != null && !searchCursor.isEmpty()) {
+            query.setParameter("searchCursor", searchCursor);
+        }
         if (!accessAnyCpAvailable || !request.getCpIds().isEmpty()) {
             query.setParameter("certificateProfileId", authorizedCpIds);
         }
@@ -1233,9 +1247,10 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             }
         }
         final int maxResults = Math.min(getGlobalCesecoreConfiguration().getMaximumQueryCount(), request.getMaxResults());
-        final int offset = request.getPageNumber() * maxResults;
         query.setMaxResults(maxResults);
-        query.setFirstResult(offset);
+        if (searchCursor == null) {
+            query.setFirstResult(request.getPageNumber() * maxResults);
+        }
 
         /* Try to use the non-portable hint (depends on DB and JDBC driver) to specify how long in milliseconds the query may run. Possible behaviors:
          * - The hint is ignored
@@ -1246,15 +1261,25 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         if (queryTimeout>0L) {
             query.setHint("javax.persistence.query.timeout", String.valueOf(queryTimeout));
         }
-        final List<String> fingerprints;
+        // If the query fails, the same page can be requested again
+        response.setNextCursor(searchCursor);
         try {
-            fingerprints = query.getResultList();
-            for (final String fingerprint : fingerprints) {
-                response.getCdws().add(certificateStoreSession.getCertificateData(fingerprint));
+            final List<?> rows = query.getResultList();
+            String fingerprint = null;
+            for (final Object row : rows) {
+                if (request.isMetadataOnly()) {
+                    final CertificateData certificateData = getCertificateMetadata((Object[]) row);
+                    fingerprint = certificateData.getFingerprint();
+                    response.getCdws().add(new CertificateDataWrapper(null, certificateData, null));
+                } else {
+                    fingerprint = (String) row;
+                    response.getCdws().add(certificateStoreSession.getCertificateData(fingerprint));
+                }
             }
-            response.setMightHaveMoreResults(fingerprints.size()==maxResults);
+            response.setMightHaveMoreResults(rows.size()==maxResults);
+            response.setNextCursor(searchCursor != null && response.isMightHaveMoreResults() ? fingerprint : null);
             if (log.isDebugEnabled()) {
-                log.debug("Certificate search query: " + sb.toString() + " LIMIT " + maxResults + " \u2192 " + fingerprints.size() + " results. queryTimeout=" + queryTimeout + "ms");
+                log.debug("Certificate search query: " + sb.toString() + " LIMIT " + maxResults + " \u2192 " + rows.size() + " results. queryTimeout=" + queryTimeout + "ms");
             }
         } catch (QueryTimeoutException e) {
             // Query.toString() does not return the SQL query executed just a java object hash. If Hibernate is being used we can get it using:
@@ -1280,6 +1305,36 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         return response;
     }
 
+    /** Selects the columns of CertificateData that are read by {@link #getCertificateMetadata(Object[])}, i.e. all but the encoded certificate and request */
+    private static final String CERTIFICATE_METADATA_SELECT = "SELECT a.fingerprint, a.issuerDN, a.subjectDN, a.subjectAltName, a.caFingerprint, a.status,"
+            + " a.type, a.serialNumber, a.notBefore, a.expireDate, a.revocationDate, a.revocationReason, a.username, a.tag, a.certificateProfileId,"
+            + " a.endEntityProfileId, a.crlPartitionIndex, a.updateTime, a.subjectKeyId";
+
+    /** @return a detached CertificateData without the encoded certificate from a row selected by {@link #CERTIFICATE_METADATA_SELECT} */
+    private CertificateData getCertificateMetadata(final Object[] row) {
+        final CertificateData certificateData = new CertificateData();
+        certificateData.setFingerprint((String) row[0]);
+        certificateData.setIssuerDN((String) row[1]);
+        certificateData.setSubjectDN((String) row[2]);
+        certificateData.setSubjectAltName((String) row[3]);
+        certificateData.setCaFingerprint((String) row[4]);
+        certificateData.setStatus(((Number) row[5]).intValue());
+        certificateData.setType(((Number) row[6]).intValue());
+        certificateData.setSerialNumber((String) row[7]);
+        certificateData.setNotBefore(row[8] == null ? null : ((Number) row[8]).longValue());
+        certificateData.setExpireDate(((Number) row[9]).longValue());
+        certificateData.setRevocationDate(((Number) row[10]).longValue());
+        certificateData.setRevocationReason(((Number) row[11]).intValue());
+        certificateData.setUsername((String) row[12]);
+        certificateData.setTag((String) row[13]);
+        certificateData.setCertificateProfileId(row[14] == null ? null : ((Number) row[14]).intValue());
+        certificateData.setEndEntityProfileId(row[15] == null ? null : ((Number) row[15]).intValue());
+        certificateData.setCrlPartitionIndex(row[16] == null ? null : ((Number) row[16]).intValue());
+        certificateData.setUpdateTime(row[17] == null ? null : ((Number) row[17]).longValue());
+        certificateData.setSubjectKeyId((String) row[18]);
+        return certificateData;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public RaEndEntitySearchResponse searchForEndEntities(AuthenticationToken authenticationToken, RaEndEntitySearchRequest request) {
@@ -1369,8 +1424,19 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         if (!accessAnyEepAvailable || !request.getEepIds().isEmpty()) {
             sb.append(" AND (a.endEntityProfileId IN (:endEntityProfileId))");
         }
+        // Keyset pagination on the primary key, so later pages are as fast as the first one
+        final String searchCursor = request.getSearchCursor();
+        if (searchCursor != null) {
+            if (!searchCursor.isEmpty()) {
+                sb.append(" AND (a.username > :searchCursor)");
+            }
+            sb.append(" ORDER BY a.username");
+        }
         final Query query = entityManager.createQuery(sb.toString());
         query.setParameter("caId", authorizedLocalCaIds);
+        if (searchCursor != null && !searchCursor.isEmpty()) {
+            query.setParameter("searchCursor", searchCursor);
+        }
         if (!accessAnyCpAvailable || !request.getCpIds().isEmpty()) {
             query.setParameter("certificateProfileId", authorizedCpIds);
         }
@@ -1421,9 +1487,10 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             query.setParameter("status", request.getStatuses());
         }
         final int maxResults = Math.min(getGlobalCesecoreConfiguration().getMaximumQueryCount(), request.getMaxResults());
-        final int offset = maxResults * request.getPageNumber();
         query.setMaxResults(maxResults);
-        query.setFirstResult(offset);
+        if (searchCursor == null) {
+            query.setFirstResult(maxResults * request.getPageNumber());
+        }
         /* Try to use the non-portable hint (depends on DB and JDBC driver) to specify how long in milliseconds the query may run. Possible behaviors:
          * - The hint is ignored
          * - A QueryTimeoutException is thrown
@@ -1434,12 +1501,15 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
             query.setHint("javax.persistence.query.timeout", String.valueOf(queryTimeout));
         }
         final List<String> usernames;
+        // If the query fails, the same page can be requested again
+        response.setNextCursor(searchCursor);
         try {
             usernames = query.getResultList();
             for (final String username : usernames) {
                 response.getEndEntities().add(endEntityAccessSession.findUser(username));
             }
             response.setMightHaveMoreResults(usernames.size()==maxResults);
+            response.setNextCursor(searchCursor != null && response.isMightHaveMoreResults() ? usernames.get(usernames.size() - 1) : null);
             if (log.isDebugEnabled()) {
                 log.debug("Certificate search query: " + sb.toString() + " LIMIT " + maxResults + " \u2192 " + usernames.size() + " results. queryTimeout=" + queryTimeout + "ms");
             }
@@ -14,8 +14,8 @@
 package org.ejbca.core.ejb.ca.publisher;
 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
+import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -23,6 +23,7 @@ import javax.persistence.PostLoad;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
@@ -31,6 +32,7 @@ import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
 import org.cesecore.util.QueryResultWrapper;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
 
@@ -116,18 +118,11 @@ public class PublisherData extends ProtectedData implements Serializable {
 		// We must base64 encode string for UTF safety
         HashMap a = new Base64PutHashMap();
 		a.putAll((HashMap)publisher.saveData());
-		java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-		java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-		encoder.writeObject(a);
-		encoder.close();
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Publisher data: \n" + baos.toString("UTF8"));
-            }
-            setData(baos.toString("UTF8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+		final String data = DataMapSerializer.serialize(a);
+		if (log.isDebugEnabled()) {
+		    log.debug("Publisher data: \n" + data);
+		}
+		setData(data);
 		this.publisher = publisher;
 		setUpdateCounter(getUpdateCounter() + 1);
 	}
@@ -183,6 +178,16 @@ public class PublisherData extends ProtectedData implements Serializable {
 	    return entityManager.find(PublisherData.class, id);
 	}
 
+	/** @return map of publisher id to row version for all publishers */
+	public static Map<Integer, Integer> findRowVersions(EntityManager entityManager) {
+		final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM PublisherData a", Object[].class);
+		final Map<Integer, Integer> ret = new HashMap<>();
+		for (final Object[] row : query.getResultList()) {
+			ret.put((Integer) row[0], (Integer) row[1]);
+		}
+		return ret;
+	}
+
 	/**
 	 * @throws javax.persistence.NonUniqueResultException if more than one entity with the name exists
 	 * @return the found entity instance or null if the entity does not exist
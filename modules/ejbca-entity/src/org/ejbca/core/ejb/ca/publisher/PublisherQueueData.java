@@ -16,6 +16,7 @@ package org.ejbca.core.ejb.ca.publisher;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -27,6 +28,7 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.DatabaseProtectionException;
@@ -295,6 +297,52 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     	return query.getResultList();
     }
 
+    /**
+     * Finds the oldest entries with a given status that have not been updated since a given time, for example entries that are not currently
+     * claimed by any node.
+     *
+     * @param lastUpdateBefore only entries with a lastUpdate before this time (in milliseconds) are returned
+     * @param maxRows If set > 0, limits the number of rows fetched.
+     *
+     * @return return the query results as a List, ordered by timeCreated. */
+    public static List<PublisherQueueData> findDataByPublisherIdAndStatusUpdatedBefore(EntityManager entityManager, int publisherId, int publishStatus,
+            long lastUpdateBefore, int maxRows) {
+        final TypedQuery<PublisherQueueData> query = entityManager.createQuery("SELECT a FROM PublisherQueueData a WHERE a.publisherId=:publisherId"
+                + " AND a.publishStatus=:publishStatus AND a.lastUpdate<:lastUpdateBefore ORDER BY a.timeCreated", PublisherQueueData.class);
+        query.setParameter("publisherId", publisherId);
+        query.setParameter("publishStatus", publishStatus);
+        query.setParameter("lastUpdateBefore", lastUpdateBefore);
+        if (maxRows > 0) {
+            query.setMaxResults(maxRows);
+        }
+        return query.getResultList();
+    }
+
+    /** @return the entities found for the given primary keys in a single query, entities that do not exist are not returned */
+    public static List<PublisherQueueData> findByPks(EntityManager entityManager, Collection<String> pks) {
+        if (pks.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final TypedQuery<PublisherQueueData> query = entityManager.createQuery("SELECT a FROM PublisherQueueData a WHERE a.pk IN (:pks)",
+                PublisherQueueData.class);
+        query.setParameter("pks", pks);
+        return query.getResultList();
+    }
+
+    /**
+     * Removes the entries with the given primary keys using a single statement.
+     *
+     * @return the number of removed entries
+     */
+    public static int deleteByPks(EntityManager entityManager, Collection<String> pks) {
+        if (pks.isEmpty()) {
+            return 0;
+        }
+        final Query query = entityManager.createQuery("DELETE FROM PublisherQueueData a WHERE a.pk IN (:pks)");
+        query.setParameter("pks", pks);
+        return query.executeUpdate();
+    }
+
 	/** @return return the count. */
 	public static long findCountOfPendingEntriesForPublisher(EntityManager entityManager, int publisherId) {
 		Query query = entityManager.createQuery("SELECT COUNT(a) FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND publishStatus=" + PublisherConst.STATUS_PENDING);
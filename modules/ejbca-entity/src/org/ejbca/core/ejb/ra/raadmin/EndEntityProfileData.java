@@ -17,6 +17,7 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -26,6 +27,7 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.DatabaseProtectionException;
@@ -209,4 +211,14 @@ public class EndEntityProfileData extends ProtectedData implements Serializable
 		Query query = entityManager.createQuery("SELECT a FROM EndEntityProfileData a");
 		return query.getResultList();
 	}
+
+	/** @return map of profile id to row version for all end entity profiles */
+	public static Map<Integer, Integer> findRowVersions(EntityManager entityManager) {
+		final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.id, a.rowVersion FROM EndEntityProfileData a", Object[].class);
+		final Map<Integer, Integer> ret = new HashMap<>();
+		for (final Object[] row : query.getResultList()) {
+			ret.put((Integer) row[0], (Integer) row[1]);
+		}
+		return ret;
+	}
 }
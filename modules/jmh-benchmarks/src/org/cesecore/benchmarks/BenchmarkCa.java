@@ -0,0 +1,112 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.bouncycastle.jce.X509KeyUsage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CAFactory;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.ca.catoken.CAToken;
+import org.cesecore.certificates.ca.catoken.CATokenConstants;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.token.CryptoToken;
+import org.cesecore.keys.token.CryptoTokenFactory;
+import org.cesecore.keys.token.SoftCryptoToken;
+import org.cesecore.keys.token.p11.exception.NoSuchSlotException;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.StringTools;
+
+/**
+ * A self signed X.509 CA with its keys in an auto-activated soft crypto token, for use in benchmarks.
+ *
+ * @version $Id$
+ */
+public class BenchmarkCa {
+
+    private final CryptoToken cryptoToken;
+    private final X509CA ca;
+
+    /**
+     * Creates a new CA with new keys.
+     *
+     * @param subjectDn the subject DN of the CA
+     * @param keySpec the key specification, e.g. "2048" or "prime256v1"
+     * @param signatureAlgorithm the signature algorithm, e.g. {@link AlgorithmConstants#SIGALG_SHA256_WITH_RSA}
+     */
+    public BenchmarkCa(final String subjectDn, final String keySpec, final String signatureAlgorithm) throws Exception {
+        CryptoProviderTools.installBCProvider();
+        final Properties cryptoTokenProperties = new Properties();
+        cryptoTokenProperties.setProperty(CryptoToken.AUTOACTIVATE_PIN_PROPERTY, "foo1234");
+        try {
+            cryptoToken = CryptoTokenFactory.createCryptoToken(SoftCryptoToken.class.getName(), cryptoTokenProperties, null, 17, "Benchmark");
+        } catch (NoSuchSlotException e) {
+            throw new IllegalStateException("Attempted to find a slot for a soft crypto token. This should not happen.", e);
+        }
+        cryptoToken.generateKeyPair(keySpec, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        cryptoToken.generateKeyPair("2048", CAToken.SOFTPRIVATEDECKEYALIAS);
+        final Properties caTokenProperties = new Properties();
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CERTSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CRLSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_DEFAULT_STRING, CAToken.SOFTPRIVATEDECKEYALIAS);
+        final CAToken caToken = new CAToken(cryptoToken.getId(), caTokenProperties);
+        caToken.setKeySequence(CAToken.DEFAULT_KEYSEQUENCE);
+        caToken.setKeySequenceFormat(StringTools.KEY_SEQUENCE_FORMAT_NUMERIC);
+        caToken.setSignatureAlgorithm(signatureAlgorithm);
+        caToken.setEncryptionAlgorithm(AlgorithmConstants.SIGALG_SHA256_WITH_RSA);
+        final X509CAInfo caInfo = new X509CAInfo(subjectDn, "Benchmark", CAConstants.CA_ACTIVE, CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA,
+                "3650d", CAInfo.SELFSIGNED, null, caToken);
+        ca = (X509CA) CAFactory.INSTANCE.getX509CAImpl(caInfo);
+        ca.setCAToken(caToken);
+        final PublicKey publicKey = getPublicKey();
+        final PrivateKey privateKey = getPrivateKey();
+        final X509Certificate caCertificate = CertTools.genSelfCertForPurpose(subjectDn, 3650L, null, privateKey, publicKey, signatureAlgorithm, true,
+                X509KeyUsage.keyCertSign + X509KeyUsage.cRLSign, null, null, BouncyCastleProvider.PROVIDER_NAME);
+        final List<Certificate> certificateChain = new ArrayList<>();
+        certificateChain.add(caCertificate);
+        ca.setCertificateChain(certificateChain);
+    }
+
+    public CryptoToken getCryptoToken() {
+        return cryptoToken;
+    }
+
+    public X509CA getCa() {
+        return ca;
+    }
+
+    public X509Certificate getCaCertificate() {
+        return (X509Certificate) ca.getCACertificate();
+    }
+
+    /** @return the private key used for signing certificates, CRLs and OCSP responses */
+    public PrivateKey getPrivateKey() throws Exception {
+        return cryptoToken.getPrivateKey(ca.getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN));
+    }
+
+    public PublicKey getPublicKey() throws Exception {
+        return cryptoToken.getPublicKey(ca.getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN));
+    }
+}
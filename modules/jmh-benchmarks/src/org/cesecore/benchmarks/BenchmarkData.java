@@ -0,0 +1,67 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.util.DnComponents;
+import org.cesecore.util.CompressedCollection;
+import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
+
+/**
+ * Test data shared by the benchmarks.
+ *
+ * @version $Id$
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    /** @return revoked certificate entries with unique serial numbers and fingerprints, as read from the database before CRL generation */
+    public static CompressedCollection<RevokedCertInfo> getRevokedCertInfos(final int count) {
+        final CompressedCollection<RevokedCertInfo> ret = new CompressedCollection<>();
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            final BigInteger serialNumber = BigInteger.valueOf(0x7fffffffL * i + 0x10000000L);
+            final String fingerprint = String.format("%040x", serialNumber);
+            ret.add(new RevokedCertInfo(fingerprint.getBytes(), serialNumber.toByteArray(), now - i * 1000L,
+                    RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, now + 365L * 24 * 3600 * 1000));
+        }
+        ret.closeForWrite();
+        return ret;
+    }
+
+    /** @return the data map of a large end entity profile, with many subject DN and altName fields */
+    public static LinkedHashMap<Object, Object> getLargeProfileData() {
+        final EndEntityProfile profile = new EndEntityProfile(true);
+        final String[] fields = { DnComponents.ORGANIZATIONALUNIT, DnComponents.DNSNAME, DnComponents.RFC822NAME, DnComponents.IPADDRESS };
+        for (int i = 0; i < 25; i++) {
+            for (final String field : fields) {
+                profile.addField(field);
+            }
+        }
+        return profile.getRawData();
+    }
+
+    /** @return the data map of a large end entity profile, with the keys as strings as in audit log details */
+    public static Map<String, Object> getLargeProfileDataWithStringKeys() {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        for (final Map.Entry<Object, Object> entry : getLargeProfileData().entrySet()) {
+            ret.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,97 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.certificates.endentity.EndEntityType;
+import org.cesecore.certificates.endentity.EndEntityTypes;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of DN normalization and certificate parsing in CertTools.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CertToolsBenchmark {
+
+    private static final String DN = "CN=Benchmark User,SN=123456789,OU=Unit 1,OU=Unit 2,O=PrimeKey Solutions AB,L=Stockholm,ST=Stockholm,C=SE";
+
+    private byte[] certificate;
+    private byte[] pemChain;
+
+    @Setup
+    public void setup() throws Exception {
+        final BenchmarkCa benchmarkCa = new BenchmarkCa("CN=Benchmark CA,O=PrimeKey,C=SE", "2048", "SHA256WithRSA");
+        final EndEntityInformation endEntity = new EndEntityInformation("benchmark", DN, benchmarkCa.getCa().getCAId(),
+                "dNSName=benchmark.example.com,rfc822Name=benchmark@example.com", "benchmark@example.com", new EndEntityType(EndEntityTypes.ENDUSER),
+                0, 0, EndEntityConstants.TOKEN_USERGEN, null);
+        final Certificate userCertificate = benchmarkCa.getCa().generateCertificate(benchmarkCa.getCryptoToken(), endEntity,
+                KeyTools.genKeys("2048", "RSA").getPublic(), 0, null, "365d", new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER),
+                "00000", new AvailableCustomCertificateExtensionsConfiguration());
+        certificate = userCertificate.getEncoded();
+        final List<Certificate> chain = new ArrayList<>();
+        chain.add(userCertificate);
+        chain.add(benchmarkCa.getCaCertificate());
+        pemChain = CertTools.getPemFromCertificateChain(chain);
+    }
+
+    @Benchmark
+    public String stringToBcDnString() {
+        return CertTools.stringToBCDNString(DN);
+    }
+
+    @Benchmark
+    public List<X509Certificate> getCertsFromPem() throws Exception {
+        return CertTools.getCertsFromPEM(new ByteArrayInputStream(pemChain), X509Certificate.class);
+    }
+
+    @Benchmark
+    public X509Certificate getCertFromByteArray() throws Exception {
+        return CertTools.getCertfromByteArray(certificate, X509Certificate.class);
+    }
+
+    /** Parses a certificate and reads the DNs, as is done for each certificate received in a request */
+    @Benchmark
+    public String getSubjectAndIssuerDn() throws Exception {
+        final X509Certificate parsed = CertTools.getCertfromByteArray(certificate, X509Certificate.class);
+        return CertTools.getSubjectDN(parsed) + CertTools.getIssuerDN(parsed);
+    }
+}
@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.util.CompressedCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of adding revoked certificate entries to a CompressedCollection and of iterating over them.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressedCollectionBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int entries;
+
+    private List<RevokedCertInfo> revokedCertInfos;
+    private CompressedCollection<RevokedCertInfo> compressedCollection;
+
+    @Setup
+    public void setup() {
+        compressedCollection = BenchmarkData.getRevokedCertInfos(entries);
+        revokedCertInfos = new ArrayList<>(entries);
+        for (final RevokedCertInfo revokedCertInfo : compressedCollection) {
+            revokedCertInfos.add(revokedCertInfo);
+        }
+    }
+
+    @Benchmark
+    public CompressedCollection<RevokedCertInfo> add() {
+        final CompressedCollection<RevokedCertInfo> ret = new CompressedCollection<>();
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            ret.add(revokedCertInfo);
+        }
+        ret.closeForWrite();
+        return ret;
+    }
+
+    @Benchmark
+    public long iterate() {
+        long ret = 0;
+        for (final RevokedCertInfo revokedCertInfo : compressedCollection) {
+            ret += revokedCertInfo.getRevocationDate().getTime();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,97 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.cert.ocsp.jcajce.JcaRespID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.ocsp.HsmResponseThread;
+import org.cesecore.certificates.ocsp.OCSPResponseItem;
+import org.cesecore.certificates.ocsp.SHA1DigestCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of building and signing OCSP responses, the same way as OcspResponseGeneratorSessionBean does it but without the
+ * signing thread pool and the OCSP signing cache.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcspResponseBenchmark {
+
+    @Param({ "SHA256WithRSA", "SHA256withECDSA" })
+    public String signatureAlgorithm;
+
+    /** Number of single responses in each OCSP response */
+    @Param({ "1", "10" })
+    public int singleResponses;
+
+    private PrivateKey signerKey;
+    private X509Certificate[] chain;
+    private RespID respId;
+    private final List<CertificateID> certificateIds = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        final String keySpec = signatureAlgorithm.endsWith("ECDSA") ? "prime256v1" : "2048";
+        final BenchmarkCa benchmarkCa = new BenchmarkCa("CN=Benchmark OCSP CA,O=PrimeKey,C=SE", keySpec, signatureAlgorithm);
+        signerKey = benchmarkCa.getPrivateKey();
+        chain = new X509Certificate[] { benchmarkCa.getCaCertificate() };
+        respId = new JcaRespID(benchmarkCa.getPublicKey(), SHA1DigestCalculator.buildSha1Instance());
+        for (int i = 0; i < singleResponses; i++) {
+            certificateIds.add(new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), benchmarkCa.getCaCertificate(),
+                    BigInteger.valueOf(0x10000000L + i)));
+        }
+    }
+
+    @Benchmark
+    public byte[] buildResponse() throws Exception {
+        final BasicOCSPRespBuilder basicRes = new BasicOCSPRespBuilder(respId);
+        for (final CertificateID certificateId : certificateIds) {
+            final OCSPResponseItem item = new OCSPResponseItem(certificateId, CertificateStatus.GOOD, 3600000L);
+            basicRes.addResponse(item.getCertID(), item.getCertStatus(), item.getThisUpdate(), item.getNextUpdate(), item.buildExtensions());
+        }
+        final BasicOCSPResp basicResp = new HsmResponseThread(basicRes, signatureAlgorithm, signerKey, chain, BouncyCastleProvider.PROVIDER_NAME,
+                new Date()).call();
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResp).getEncoded();
+    }
+}
@@ -0,0 +1,116 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.util.DataMapSerializer;
+import org.cesecore.util.SecureXMLDecoder;
+import org.cesecore.util.XmlSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of encoding and decoding of a large profile with XmlSerializer, DataMapSerializer and SecureXMLDecoder.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    private LinkedHashMap<Object, Object> profileData;
+    private Map<String, Object> profileDataWithStringKeys;
+    private String xmlSerializerData;
+    private String compactData;
+    private byte[] xmlData;
+
+    @Setup
+    public void setup() {
+        profileData = BenchmarkData.getLargeProfileData();
+        profileDataWithStringKeys = BenchmarkData.getLargeProfileDataWithStringKeys();
+        xmlSerializerData = XmlSerializer.encode(profileDataWithStringKeys);
+        compactData = DataMapSerializer.encodeCompact(profileData);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final XMLEncoder encoder = new XMLEncoder(baos);
+        encoder.writeObject(profileData);
+        encoder.close();
+        xmlData = baos.toByteArray();
+    }
+
+    @Benchmark
+    public String xmlSerializerEncode() {
+        return XmlSerializer.encode(profileDataWithStringKeys);
+    }
+
+    @Benchmark
+    public Map<String, Object> xmlSerializerDecode() {
+        return XmlSerializer.decode(xmlSerializerData);
+    }
+
+    @Benchmark
+    public String compactEncode() {
+        return DataMapSerializer.encodeCompact(profileData);
+    }
+
+    @Benchmark
+    public Map<?, ?> compactDecode() {
+        return DataMapSerializer.decodeCompact(compactData);
+    }
+
+    @Benchmark
+    public String xmlEncode() {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final XMLEncoder encoder = new XMLEncoder(baos);
+        encoder.writeObject(profileData);
+        encoder.close();
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object secureXmlDecode() throws Exception {
+        try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(xmlData))) {
+            return decoder.readObject();
+        }
+    }
+
+    /** For comparison with SecureXMLDecoder */
+    @Benchmark
+    public Object xmlDecode() {
+        final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(xmlData));
+        try {
+            return decoder.readObject();
+        } finally {
+            decoder.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.benchmarks;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.X509CRLHolder;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.certificates.endentity.EndEntityType;
+import org.cesecore.certificates.endentity.EndEntityTypes;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CompressedCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of certificate and CRL generation with X509CAImpl.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class X509CABenchmark {
+
+    /** A CA and an end entity with a certificate profile, per signature algorithm */
+    @State(Scope.Benchmark)
+    public static class CaState {
+        @Param({ "SHA256WithRSA", "SHA256withECDSA" })
+        public String signatureAlgorithm;
+
+        BenchmarkCa benchmarkCa;
+        EndEntityInformation endEntity;
+        KeyPair keyPair;
+        CertificateProfile certificateProfile;
+        final AvailableCustomCertificateExtensionsConfiguration cceConfig = new AvailableCustomCertificateExtensionsConfiguration();
+
+        @Setup
+        public void setup() throws Exception {
+            final String keySpec = signatureAlgorithm.endsWith("ECDSA") ? "prime256v1" : "2048";
+            benchmarkCa = new BenchmarkCa("CN=Benchmark CA,O=PrimeKey,C=SE", keySpec, signatureAlgorithm);
+            endEntity = new EndEntityInformation("benchmark", "CN=Benchmark User,O=PrimeKey,C=SE", benchmarkCa.getCa().getCAId(),
+                    "dNSName=benchmark.example.com", "benchmark@example.com", new EndEntityType(EndEntityTypes.ENDUSER), 0, 0,
+                    EndEntityConstants.TOKEN_USERGEN, null);
+            keyPair = KeyTools.genKeys(keySpec, signatureAlgorithm.endsWith("ECDSA") ? "EC" : "RSA");
+            certificateProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        }
+    }
+
+    /** Revoked certificate entries for CRL generation */
+    @State(Scope.Benchmark)
+    public static class CrlState {
+        @Param({ "0", "1000", "10000", "100000" })
+        public int revokedCertificates;
+
+        CompressedCollection<RevokedCertInfo> revokedCertInfos;
+
+        @Setup
+        public void setup() {
+            revokedCertInfos = BenchmarkData.getRevokedCertInfos(revokedCertificates);
+        }
+    }
+
+    @Benchmark
+    public Certificate generateCertificate(final CaState state) throws Exception {
+        return state.benchmarkCa.getCa().generateCertificate(state.benchmarkCa.getCryptoToken(), state.endEntity, state.keyPair.getPublic(), 0, null,
+                "365d", state.certificateProfile, "00000", state.cceConfig);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public X509CRLHolder generateCrl(final CaState state, final CrlState crlState) throws Exception {
+        return state.benchmarkCa.getCa().generateCRL(state.benchmarkCa.getCryptoToken(), CertificateConstants.NO_CRL_PARTITION, crlState.revokedCertInfos, 1);
+    }
+}
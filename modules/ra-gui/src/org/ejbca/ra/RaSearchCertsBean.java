@@ -50,6 +50,7 @@ import org.ejbca.core.model.approval.WaitingForApprovalException;
 import org.ejbca.core.model.era.RaCertificateSearchRequest;
 import org.ejbca.core.model.era.RaCertificateSearchResponse;
 import org.ejbca.core.model.era.RaMasterApiProxyBeanLocal;
+import org.ejbca.core.model.era.RaSearchCursor;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
 import org.ejbca.ra.RaCertificateDetails.Callbacks;
 
@@ -86,6 +87,8 @@ public class RaSearchCertsBean implements Serializable {
 
     private RaCertificateSearchRequest stagedRequest = new RaCertificateSearchRequest();
     private RaCertificateSearchRequest lastExecutedRequest = null;
+    /** Cursors of the previous pages of a keyset paginated search */
+    private final List<String> previousPageCursors = new ArrayList<>();
     private RaCertificateSearchResponse lastExecutedResponse = null;
 
     private String genericSearchString = "";
@@ -166,6 +169,8 @@ public class RaSearchCertsBean implements Serializable {
         boolean search = compared > 0;
         if (compared != 0) {
             stagedRequest.setPageNumber(0);
+            stagedRequest.setSearchCursor(RaSearchCursor.START);
+            previousPageCursors.clear();
         }
         if (compared<=0 && lastExecutedResponse!=null) {
             // More narrow search → filter and check if there are sufficient results left
@@ -497,6 +502,9 @@ public class RaSearchCertsBean implements Serializable {
      * Query for the next page of search results.
      */
     public void queryNextPage(final AjaxBehaviorEvent event) {
+        previousPageCursors.add(stagedRequest.getSearchCursor());
+        // Continues with page numbers if the search could not be keyset paginated
+        stagedRequest.setSearchCursor(lastExecutedResponse == null ? null : lastExecutedResponse.getNextCursor());
         stagedRequest.setPageNumber(stagedRequest.getPageNumber() + 1);
         searchForCertificates();
     }
@@ -505,6 +513,9 @@ public class RaSearchCertsBean implements Serializable {
      * Query for the previous page of search results.
      */
     public void queryPreviousPage(final AjaxBehaviorEvent event) {
+        if (!previousPageCursors.isEmpty()) {
+            stagedRequest.setSearchCursor(previousPageCursors.remove(previousPageCursors.size() - 1));
+        }
         stagedRequest.setPageNumber(stagedRequest.getPageNumber() - 1);
         searchForCertificates();
     }
@@ -53,6 +53,7 @@ import org.ejbca.core.model.era.RaCertificateSearchResponse;
 import org.ejbca.core.model.era.RaEndEntitySearchRequest;
 import org.ejbca.core.model.era.RaEndEntitySearchResponse;
 import org.ejbca.core.model.era.RaMasterApiProxyBeanLocal;
+import org.ejbca.core.model.era.RaSearchCursor;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
 import org.ejbca.ra.RaEndEntityDetails.Callbacks;
@@ -90,6 +91,8 @@ public class RaSearchEesBean implements Serializable {
 
     private RaEndEntitySearchRequest stagedRequest = new RaEndEntitySearchRequest();
     private RaEndEntitySearchRequest lastExecutedRequest = null;
+    /** Cursors of the previous pages of a keyset paginated search */
+    private final List<String> previousPageCursors = new ArrayList<>();
     private RaEndEntitySearchResponse lastExecutedResponse = null;
 
     private String genericSearchString = "";
@@ -145,6 +148,8 @@ public class RaSearchEesBean implements Serializable {
         boolean search = compared > 0;
         if (compared != 0) {
             stagedRequest.setPageNumber(0);
+            stagedRequest.setSearchCursor(RaSearchCursor.START);
+            previousPageCursors.clear();
         }
         if (compared<=0 && lastExecutedResponse!=null) {
             // More narrow search → filter and check if there are sufficient results left
@@ -540,6 +545,9 @@ public class RaSearchEesBean implements Serializable {
      * Query for the next page of search results.
      */
     public void queryNextPage(final AjaxBehaviorEvent event) {
+        previousPageCursors.add(stagedRequest.getSearchCursor());
+        // Continues with page numbers if the search could not be keyset paginated
+        stagedRequest.setSearchCursor(lastExecutedResponse == null ? null : lastExecutedResponse.getNextCursor());
         stagedRequest.setPageNumber(stagedRequest.getPageNumber() + 1);
         searchForEndEntities();
     }
@@ -548,6 +556,9 @@ public class RaSearchEesBean implements Serializable {
      * Query for the previous page of search results.
      */
     public void queryPreviousPage(final AjaxBehaviorEvent event) {
+        if (!previousPageCursors.isEmpty()) {
+            stagedRequest.setSearchCursor(previousPageCursors.remove(previousPageCursors.size() - 1));
+        }
         stagedRequest.setPageNumber(stagedRequest.getPageNumber() - 1);
         searchForEndEntities();
     }
@@ -110,6 +110,19 @@ public class BatchMakeP12CommandTest extends CaTestCase {
         assertEquals("User2 was not generated.", EndEntityConstants.STATUS_GENERATED, user2.getStatus()); 
     }
 
+    @Test
+    public void testMakeP12AllInParallel() throws Exception {
+        BatchMakeP12Command makep12 = new BatchMakeP12Command();
+        File tmpfile = File.createTempFile("ejbca", "p12");
+        makep12.execute("-dir", tmpfile.getParent(), "-threads", "2");
+        assertTrue("No file was created.", new File(tmpfile.getParent(), username1 + ".p12").exists());
+        assertTrue("No file was created.", new File(tmpfile.getParent(), username2 + ".p12").exists());
+        EndEntityInformation user1 = endEntityAccessSession.findUser(admin, username1);
+        EndEntityInformation user2 = endEntityAccessSession.findUser(admin, username2);
+        assertEquals("User1 was not generated.", EndEntityConstants.STATUS_GENERATED, user1.getStatus());
+        assertEquals("User2 was not generated.", EndEntityConstants.STATUS_GENERATED, user2.getStatus());
+    }
+
     @Test
     public void testMakeP12ForSingleUser() throws Exception {
         BatchMakeP12Command makep12 = new BatchMakeP12Command();